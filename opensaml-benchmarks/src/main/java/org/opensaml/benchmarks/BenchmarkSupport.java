@@ -0,0 +1,199 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.config.InitializationException;
+import org.opensaml.core.config.InitializationService;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLObjectBuilder;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.common.SAMLObjectBuilder;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.AttributeStatement;
+import org.opensaml.saml.saml2.core.AttributeValue;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.testing.SAML2ActionTestingSupport;
+
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.xml.SerializeSupport;
+
+/**
+ * Fixtures shared by the benchmarks.
+ *
+ * <p>Everything is generated locally so that the benchmarks can be run without network access.</p>
+ */
+@ThreadSafe
+public final class BenchmarkSupport {
+
+    /** Entity ID of the issuer of generated messages. */
+    @Nonnull @NotEmpty public static final String ISSUER = "https://idp.example.org/idp/shibboleth";
+
+    /** Constructor. */
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Initialize the library.
+     *
+     * @throws InitializationException if initialization fails
+     */
+    public static void initialize() throws InitializationException {
+        InitializationService.initialize();
+    }
+
+    /**
+     * Build a response containing an assertion typical of a browser SSO profile.
+     *
+     * @param attributeCount number of attributes in the assertion
+     *
+     * @return the response
+     */
+    @Nonnull public static Response buildResponse(final int attributeCount) {
+        final Response response = SAML2ActionTestingSupport.buildResponse();
+        response.setIssuer(SAML2ActionTestingSupport.buildIssuer(ISSUER));
+        response.setDestination("https://sp.example.org/Shibboleth.sso/SAML2/POST");
+        response.getAssertions().add(buildAssertion(attributeCount));
+        return response;
+    }
+
+    /**
+     * Build an assertion typical of a browser SSO profile.
+     *
+     * @param attributeCount number of attributes in the assertion
+     *
+     * @return the assertion
+     */
+    @Nonnull public static Assertion buildAssertion(final int attributeCount) {
+        final Assertion assertion = SAML2ActionTestingSupport.buildAssertion();
+        assertion.setIssuer(SAML2ActionTestingSupport.buildIssuer(ISSUER));
+        assertion.setSubject(SAML2ActionTestingSupport.buildSubject("jdoe"));
+        assertion.getAuthnStatements().add(SAML2ActionTestingSupport.buildAuthnStatement());
+
+        final AttributeStatement statement = SAML2ActionTestingSupport.buildAttributeStatement();
+        final SAMLObjectBuilder<Attribute> attributeBuilder = (SAMLObjectBuilder<Attribute>)
+                XMLObjectProviderRegistrySupport.getBuilderFactory().<Attribute>ensureBuilder(
+                        Attribute.DEFAULT_ELEMENT_NAME);
+        final XMLObjectBuilder<XSString> valueBuilder =
+                XMLObjectProviderRegistrySupport.getBuilderFactory().<XSString>ensureBuilder(XSString.TYPE_NAME);
+        for (int i = 0; i < attributeCount; i++) {
+            final Attribute attribute = attributeBuilder.buildObject();
+            attribute.setName("urn:oid:1.3.6.1.4.1.5923.1.1.1." + i);
+            attribute.setFriendlyName("attribute" + i);
+            attribute.setNameFormat(Attribute.URI_REFERENCE);
+            for (int j = 0; j < 2; j++) {
+                final XSString value = valueBuilder.buildObject(AttributeValue.DEFAULT_ELEMENT_NAME,
+                        XSString.TYPE_NAME);
+                value.setValue("value" + j + "@example.org");
+                attribute.getAttributeValues().add(value);
+            }
+            statement.getAttributes().add(attribute);
+        }
+        assertion.getAttributeStatements().add(statement);
+
+        return assertion;
+    }
+
+    /**
+     * Serialize an object.
+     *
+     * @param xmlObject object to serialize
+     *
+     * @return the serialized object
+     *
+     * @throws MarshallingException if the object cannot be marshalled
+     */
+    @Nonnull public static byte[] serialize(@Nonnull final XMLObject xmlObject) throws MarshallingException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SerializeSupport.writeNode(XMLObjectSupport.marshall(xmlObject), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Get the entity ID of an entity in a generated aggregate.
+     *
+     * @param index index of the entity
+     *
+     * @return the entity ID
+     */
+    @Nonnull @NotEmpty public static String getEntityID(final int index) {
+        return "https://sp" + index + ".example.org/shibboleth";
+    }
+
+    /**
+     * Build a metadata aggregate of service providers.
+     *
+     * @param entityCount number of entities in the aggregate
+     *
+     * @return the serialized aggregate
+     */
+    @Nonnull public static byte[] buildAggregate(final int entityCount) {
+        final StringBuilder builder = new StringBuilder(entityCount * 1024);
+        builder.append("<md:EntitiesDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\" ")
+            .append("xmlns:mdui=\"urn:oasis:names:tc:SAML:metadata:ui\" Name=\"urn:example:aggregate\">");
+        for (int i = 0; i < entityCount; i++) {
+            final String host = "sp" + i + ".example.org";
+            builder.append("<md:EntityDescriptor entityID=\"").append(getEntityID(i)).append("\">")
+                .append("<md:SPSSODescriptor protocolSupportEnumeration=\"urn:oasis:names:tc:SAML:2.0:protocol\">")
+                .append("<md:Extensions><mdui:UIInfo>")
+                .append("<mdui:DisplayName xml:lang=\"en\">Service ").append(i).append("</mdui:DisplayName>")
+                .append("<mdui:Description xml:lang=\"en\">Example service provider number ").append(i)
+                .append("</mdui:Description></mdui:UIInfo></md:Extensions>")
+                .append("<md:NameIDFormat>urn:oasis:names:tc:SAML:2.0:nameid-format:transient</md:NameIDFormat>")
+                .append("<md:AssertionConsumerService index=\"0\" ")
+                .append("Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST\" Location=\"https://")
+                .append(host).append("/Shibboleth.sso/SAML2/POST\"/>")
+                .append("<md:AssertionConsumerService index=\"1\" ")
+                .append("Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-Artifact\" Location=\"https://")
+                .append(host).append("/Shibboleth.sso/SAML2/Artifact\"/>")
+                .append("</md:SPSSODescriptor>")
+                .append("<md:Organization><md:OrganizationName xml:lang=\"en\">Organization ").append(i)
+                .append("</md:OrganizationName><md:OrganizationDisplayName xml:lang=\"en\">Organization ")
+                .append(i).append("</md:OrganizationDisplayName><md:OrganizationURL xml:lang=\"en\">https://")
+                .append(host).append("/</md:OrganizationURL></md:Organization>")
+                .append("<md:ContactPerson contactType=\"technical\"><md:EmailAddress>mailto:admin@")
+                .append(host).append("</md:EmailAddress></md:ContactPerson>")
+                .append("</md:EntityDescriptor>");
+        }
+        builder.append("</md:EntitiesDescriptor>");
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the heap in use after garbage collection.
+     *
+     * @return bytes in use
+     *
+     * @throws InterruptedException if interrupted
+     */
+    public static long usedMemory() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
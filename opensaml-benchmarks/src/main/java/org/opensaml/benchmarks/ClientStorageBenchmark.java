@@ -0,0 +1,164 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.storage.MutableStorageRecord;
+import org.opensaml.storage.impl.client.ClientStorageService;
+import org.opensaml.storage.impl.client.ClientStorageService.ClientStorageSource;
+import org.opensaml.storage.impl.client.ClientStorageServiceOperation;
+import org.opensaml.storage.impl.client.ClientStorageServiceStore;
+import org.opensaml.storage.impl.client.CompactClientStorageServiceStore.CompactClientStorageServiceStoreFactory;
+import org.opensaml.storage.impl.client.JSONClientStorageServiceStore.JSONClientStorageServiceStoreFactory;
+import org.springframework.core.io.ClassPathResource;
+
+import net.shibboleth.shared.net.CookieManager;
+import net.shibboleth.shared.security.DataSealer;
+import net.shibboleth.shared.security.impl.BasicKeystoreKeyStrategy;
+import net.shibboleth.shared.servlet.impl.ThreadLocalHttpServletRequestSupplier;
+import net.shibboleth.shared.servlet.impl.ThreadLocalHttpServletResponseSupplier;
+import net.shibboleth.shared.spring.resource.ResourceHelper;
+
+/**
+ * Benchmarks for saving and loading client-side storage in each supported serialization format.
+ *
+ * <p>Saving includes sealing the data, and loading includes unsealing it, as happens per request.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientStorageBenchmark {
+
+    /** Serialization format. */
+    @Param({"compact", "json"})
+    private String format;
+
+    /** Number of contexts stored. */
+    @Param({"10"})
+    private int contexts;
+
+    /** Store factory for the format. */
+    private ClientStorageServiceStore.Factory factory;
+
+    /** Storage service providing the data sealer. */
+    private ClientStorageService storageService;
+
+    /** Populated store. */
+    private ClientStorageServiceStore store;
+
+    /** Sealed form of the store. */
+    private String sealed;
+
+    /**
+     * Set up fixtures.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        factory = "json".equals(format) ? new JSONClientStorageServiceStoreFactory()
+                : new CompactClientStorageServiceStoreFactory();
+
+        final BasicKeystoreKeyStrategy strategy = new BasicKeystoreKeyStrategy();
+        strategy.setKeyAlias("secret");
+        strategy.setKeyPassword("kpassword");
+        strategy.setKeystorePassword("password");
+        strategy.setKeystoreResource(
+                ResourceHelper.of(new ClassPathResource("/org/opensaml/benchmarks/SealerKeyStore.jks")));
+        strategy.setKeyVersionResource(
+                ResourceHelper.of(new ClassPathResource("/org/opensaml/benchmarks/SealerKeyStore.kver")));
+        strategy.initialize();
+
+        final DataSealer sealer = new DataSealer();
+        sealer.setKeyStrategy(strategy);
+        sealer.initialize();
+
+        final CookieManager cookieManager = new CookieManager();
+        cookieManager.setHttpServletRequestSupplier(new ThreadLocalHttpServletRequestSupplier());
+        cookieManager.setHttpServletResponseSupplier(new ThreadLocalHttpServletResponseSupplier());
+        cookieManager.initialize();
+
+        storageService = new ClientStorageService();
+        storageService.setId("storage");
+        storageService.setStorageName("shib_idp_session_ss");
+        storageService.setCookieManager(cookieManager);
+        storageService.setDataSealer(sealer);
+        storageService.setHttpServletRequestSupplier(new ThreadLocalHttpServletRequestSupplier());
+        storageService.initialize();
+
+        store = factory.load(null, ClientStorageSource.COOKIE);
+        final long expiration = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        for (int i = 0; i < contexts; i++) {
+            final Map<String,MutableStorageRecord<?>> records = new HashMap<>();
+            for (int j = 0; j < 5; j++) {
+                records.put("key" + j, new MutableStorageRecord<>("value" + i + "_" + j, expiration + j));
+            }
+            store.getContextMap().put("context" + i, records);
+        }
+        sealed = save().getValue();
+    }
+
+    /** Release fixtures. */
+    @TearDown
+    public void tearDown() {
+        storageService.destroy();
+    }
+
+    /**
+     * Serialize and seal the store.
+     *
+     * @return the operation to save the store
+     *
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public ClientStorageServiceOperation save() throws Exception {
+        store.forceSave();
+        return store.save(storageService);
+    }
+
+    /**
+     * Unseal and parse the store.
+     *
+     * @return the loaded store
+     *
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public ClientStorageServiceStore load() throws Exception {
+        final String raw = storageService.getDataSealer().unwrap(sealed, new StringBuffer());
+        return factory.load(raw, ClientStorageSource.COOKIE);
+    }
+
+}
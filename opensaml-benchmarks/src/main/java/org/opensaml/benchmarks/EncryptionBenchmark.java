@@ -0,0 +1,163 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.EncryptedAssertion;
+import org.opensaml.saml.saml2.encryption.Decrypter;
+import org.opensaml.saml.saml2.encryption.Encrypter;
+import org.opensaml.saml.saml2.encryption.Encrypter.KeyPlacement;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialSupport;
+import org.opensaml.security.crypto.KeySupport;
+import org.opensaml.xmlsec.encryption.EncryptedData;
+import org.opensaml.xmlsec.encryption.support.DataEncryptionParameters;
+import org.opensaml.xmlsec.encryption.support.EncryptionConstants;
+import org.opensaml.xmlsec.encryption.support.InlineEncryptedKeyResolver;
+import org.opensaml.xmlsec.encryption.support.KeyEncryptionParameters;
+import org.opensaml.xmlsec.keyinfo.impl.StaticKeyInfoCredentialResolver;
+
+import net.shibboleth.shared.xml.ParserPool;
+
+/**
+ * Benchmarks for encrypting an assertion, decrypting it, and the round trip between the two.
+ *
+ * <p>Each assertion is encrypted with a new AES-GCM key, transported with RSA-OAEP.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncryptionBenchmark {
+
+    /** Number of attributes in the assertion. */
+    @Param({"10", "100"})
+    private int attributes;
+
+    /** Parser pool. */
+    private ParserPool parserPool;
+
+    /** Assertion to encrypt. */
+    private Assertion assertion;
+
+    /** Encrypter. */
+    private Encrypter encrypter;
+
+    /** Decrypter. */
+    private Decrypter decrypter;
+
+    /** Encrypted data from a parsed encrypted assertion. */
+    private EncryptedData encryptedData;
+
+    /**
+     * Set up fixtures.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+        parserPool = XMLObjectProviderRegistrySupport.getParserPool();
+
+        final KeyPair keyPair = KeySupport.generateKeyPair("RSA", 2048, null);
+        final Credential kek = CredentialSupport.getSimpleCredential(keyPair.getPublic(), keyPair.getPrivate());
+
+        final DataEncryptionParameters dataParams = new DataEncryptionParameters();
+        dataParams.setAlgorithm(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128_GCM);
+        final KeyEncryptionParameters keyParams = new KeyEncryptionParameters();
+        keyParams.setAlgorithm(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP);
+        keyParams.setEncryptionCredential(CredentialSupport.getSimpleCredential(keyPair.getPublic(), null));
+        encrypter = new Encrypter(dataParams, keyParams);
+        encrypter.setKeyPlacement(KeyPlacement.INLINE);
+
+        decrypter = new Decrypter(null, new StaticKeyInfoCredentialResolver(kek), new InlineEncryptedKeyResolver());
+        decrypter.setRootInNewDocument(true);
+
+        assertion = BenchmarkSupport.buildAssertion(attributes);
+        encryptedData = parse(encrypter.encrypt(assertion)).getEncryptedData();
+    }
+
+    /**
+     * Encrypt the assertion.
+     *
+     * @return the encrypted assertion
+     *
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public EncryptedAssertion encrypt() throws Exception {
+        return encrypter.encrypt(assertion);
+    }
+
+    /**
+     * Decrypt the parsed encrypted assertion.
+     *
+     * @return the decrypted assertion
+     *
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public XMLObject decryptData() throws Exception {
+        return decrypter.decryptData(encryptedData);
+    }
+
+    /**
+     * Encrypt the assertion, then serialize, parse and decrypt it.
+     *
+     * @return the decrypted assertion
+     *
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public Assertion roundTrip() throws Exception {
+        return decrypter.decrypt(parse(encrypter.encrypt(assertion)));
+    }
+
+    /**
+     * Serialize and parse an encrypted assertion.
+     *
+     * @param encrypted the encrypted assertion
+     *
+     * @return the parsed encrypted assertion
+     *
+     * @throws Exception if an error occurs
+     */
+    private EncryptedAssertion parse(final EncryptedAssertion encrypted) throws Exception {
+        return (EncryptedAssertion) XMLObjectSupport.unmarshallFromInputStream(parserPool,
+                new ByteArrayInputStream(BenchmarkSupport.serialize(encrypted)));
+    }
+
+}
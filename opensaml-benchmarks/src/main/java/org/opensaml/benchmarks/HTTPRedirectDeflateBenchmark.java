@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.benchmarks;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml2.binding.impl.HTTPRedirectDeflateSupport;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import net.shibboleth.shared.xml.ParserPool;
+
+/**
+ * Benchmarks for the DEFLATE encoding and decoding of messages in the SAML 2.0 HTTP Redirect binding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HTTPRedirectDeflateBenchmark {
+
+    /** Limit on the inflated size of a message. */
+    private static final long MAX_INFLATED_SIZE = 1024 * 1024;
+
+    /** Number of attributes in the message. */
+    @Param({"10"})
+    private int attributes;
+
+    /** Parser pool. */
+    private ParserPool parserPool;
+
+    /** Message to encode. */
+    private Element message;
+
+    /** Encoded message. */
+    private String encoded;
+
+    /**
+     * Set up fixtures.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+        parserPool = XMLObjectProviderRegistrySupport.getParserPool();
+        message = XMLObjectSupport.marshall(BenchmarkSupport.buildResponse(attributes));
+        encoded = encode();
+    }
+
+    /**
+     * Serialize, compress and encode the message.
+     *
+     * @return the encoded message
+     *
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public String encode() throws Exception {
+        return HTTPRedirectDeflateSupport.deflateAndBase64Encode(message);
+    }
+
+    /**
+     * Decode, inflate and parse the message.
+     *
+     * @return the parsed message
+     *
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public Document decode() throws Exception {
+        try (final InputStream in = HTTPRedirectDeflateSupport.newInflatingStream(encoded, MAX_INFLATED_SIZE)) {
+            return parserPool.parse(in);
+        }
+    }
+
+}
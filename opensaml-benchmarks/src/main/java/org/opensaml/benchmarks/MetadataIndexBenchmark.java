@@ -0,0 +1,255 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.criterion.EndpointCriterion;
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
+import org.opensaml.saml.metadata.resolver.index.MetadataIndexKey;
+import org.opensaml.saml.metadata.resolver.index.impl.EndpointMetadataIndex;
+import org.opensaml.saml.metadata.resolver.index.impl.MetadataIndexManager;
+import org.opensaml.saml.metadata.resolver.index.impl.RoleMetadataIndex;
+import org.opensaml.saml.saml2.metadata.AssertionConsumerService;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+
+import net.shibboleth.shared.collection.CollectionSupport;
+import net.shibboleth.shared.resolver.CriteriaSet;
+
+/**
+ * Benchmarks for secondary index lookups over a large aggregate, comparing {@link MetadataIndexManager} with
+ * an equivalent of the set based index store it previously used.
+ * 
+ * <p>Lookups combine a role criterion, which matches every entity, with an endpoint criterion matching one.
+ * Run with {@code -prof gc} to compare allocation per lookup. The heap retained by each implementation's
+ * index structures is printed during setup.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MetadataIndexBenchmark {
+
+    /** Number of distinct lookups to cycle through. */
+    private static final int LOOKUPS = 1024;
+
+    /** Number of entities in the aggregate. */
+    @Param({"100000"})
+    private int entities;
+
+    /** Current index manager. */
+    private MetadataIndexManager<EntityDescriptor> manager;
+
+    /** Set based equivalent of the previous index manager. */
+    private SetIndexManager setManager;
+
+    /** Criteria for lookups. */
+    private CriteriaSet[] criteria;
+
+    /**
+     * Set up fixtures.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+
+        final List<EntityDescriptor> descriptors = new ArrayList<>(entities);
+        for (int i = 0; i < entities; i++) {
+            descriptors.add(buildEntity(i));
+        }
+        final Set<MetadataIndex> indexes = CollectionSupport.setOf(new RoleMetadataIndex(),
+                new EndpointMetadataIndex());
+
+        long before = BenchmarkSupport.usedMemory();
+        manager = new MetadataIndexManager<>(indexes, new MetadataIndexManager.IdentityExtractionFunction());
+        for (final EntityDescriptor descriptor : descriptors) {
+            manager.indexEntityDescriptor(descriptor);
+        }
+        System.out.printf("%nIndex manager retains %,d bytes%n", BenchmarkSupport.usedMemory() - before);
+
+        before = BenchmarkSupport.usedMemory();
+        setManager = new SetIndexManager(indexes);
+        for (final EntityDescriptor descriptor : descriptors) {
+            setManager.index(descriptor);
+        }
+        System.out.printf("Set based index manager retains %,d bytes%n", BenchmarkSupport.usedMemory() - before);
+
+        criteria = new CriteriaSet[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            final AssertionConsumerService endpoint = (AssertionConsumerService) XMLObjectSupport.buildXMLObject(
+                    AssertionConsumerService.DEFAULT_ELEMENT_NAME);
+            endpoint.setLocation(getLocation(ThreadLocalRandom.current().nextInt(entities)));
+            criteria[i] = new CriteriaSet(new EntityRoleCriterion(SPSSODescriptor.DEFAULT_ELEMENT_NAME),
+                    new EndpointCriterion<>(endpoint));
+        }
+    }
+
+    /**
+     * Look up an entity by role and endpoint with the current index manager.
+     *
+     * @return the matching entities
+     */
+    @Benchmark
+    public Optional<Set<EntityDescriptor>> lookup() {
+        return manager.lookupIndexedItems(criteria[ThreadLocalRandom.current().nextInt(LOOKUPS)]);
+    }
+
+    /**
+     * Look up an entity by role and endpoint with the set based index manager.
+     *
+     * @return the matching entities
+     */
+    @Benchmark
+    public Optional<Set<EntityDescriptor>> lookupSetBased() {
+        return setManager.lookup(criteria[ThreadLocalRandom.current().nextInt(LOOKUPS)]);
+    }
+
+    /**
+     * Get the location of the endpoint of an entity.
+     *
+     * @param index index of the entity
+     *
+     * @return the location
+     */
+    @Nonnull private static String getLocation(final int index) {
+        return "https://sp" + index + ".example.org/Shibboleth.sso/SAML2/POST";
+    }
+
+    /**
+     * Build a service provider entity with a single endpoint.
+     *
+     * @param index index of the entity
+     *
+     * @return the entity
+     */
+    @Nonnull private static EntityDescriptor buildEntity(final int index) {
+        final EntityDescriptor entity =
+                (EntityDescriptor) XMLObjectSupport.buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+        entity.setEntityID(BenchmarkSupport.getEntityID(index));
+        final SPSSODescriptor role =
+                (SPSSODescriptor) XMLObjectSupport.buildXMLObject(SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        role.addSupportedProtocol(SAMLConstants.SAML20P_NS);
+        final AssertionConsumerService endpoint = (AssertionConsumerService) XMLObjectSupport.buildXMLObject(
+                AssertionConsumerService.DEFAULT_ELEMENT_NAME);
+        endpoint.setBinding(SAMLConstants.SAML2_POST_BINDING_URI);
+        endpoint.setLocation(getLocation(index));
+        endpoint.setIndex(0);
+        role.getAssertionConsumerServices().add(endpoint);
+        entity.getRoleDescriptors().add(role);
+        return entity;
+    }
+
+    /** Index manager storing a set of entities per key, and intersecting index results as sets. */
+    private static final class SetIndexManager {
+
+        /** Entities indexed under each key, by index. */
+        @Nonnull private final Map<MetadataIndex, Map<MetadataIndexKey, Set<EntityDescriptor>>> stores;
+
+        /**
+         * Constructor.
+         *
+         * @param indexes indexes to maintain
+         */
+        SetIndexManager(@Nonnull final Set<MetadataIndex> indexes) {
+            stores = new HashMap<>();
+            for (final MetadataIndex index : indexes) {
+                stores.put(index, new HashMap<>());
+            }
+        }
+
+        /**
+         * Index an entity.
+         *
+         * @param descriptor the entity
+         */
+        void index(@Nonnull final EntityDescriptor descriptor) {
+            for (final Map.Entry<MetadataIndex, Map<MetadataIndexKey, Set<EntityDescriptor>>> entry
+                    : stores.entrySet()) {
+                final Set<MetadataIndexKey> keys = entry.getKey().generateKeys(descriptor);
+                if (keys != null) {
+                    for (final MetadataIndexKey key : keys) {
+                        entry.getValue().computeIfAbsent(key, k -> new HashSet<>()).add(descriptor);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Look up entities.
+         *
+         * @param criteriaSet lookup criteria
+         *
+         * @return the matching entities, or empty if no index applied
+         */
+        @Nonnull Optional<Set<EntityDescriptor>> lookup(@Nullable final CriteriaSet criteriaSet) {
+            final Set<EntityDescriptor> items = new HashSet<>();
+            for (final Map.Entry<MetadataIndex, Map<MetadataIndexKey, Set<EntityDescriptor>>> entry
+                    : stores.entrySet()) {
+                final Set<MetadataIndexKey> keys = entry.getKey().generateKeys(criteriaSet);
+                if (keys != null && !keys.isEmpty()) {
+                    final Set<EntityDescriptor> indexResult = new HashSet<>();
+                    for (final MetadataIndexKey key : keys) {
+                        final Set<EntityDescriptor> found = entry.getValue().get(key);
+                        if (found != null) {
+                            // The store returned a copy of each set.
+                            indexResult.addAll(CollectionSupport.copyToSet(found));
+                        }
+                    }
+                    if (items.isEmpty()) {
+                        items.addAll(indexResult);
+                    } else {
+                        items.retainAll(indexResult);
+                    }
+                    if (items.isEmpty()) {
+                        return Optional.of(CollectionSupport.emptySet());
+                    }
+                }
+            }
+            return items.isEmpty() ? Optional.empty() : Optional.of(items);
+        }
+    }
+
+}
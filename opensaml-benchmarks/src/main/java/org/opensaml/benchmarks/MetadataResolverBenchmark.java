@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.saml.metadata.resolver.impl.DOMMetadataResolver;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.w3c.dom.Element;
+
+import net.shibboleth.shared.resolver.CriteriaSet;
+import net.shibboleth.shared.xml.ParserPool;
+
+/**
+ * Benchmarks for loading a large metadata aggregate, and for resolving entities from it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MetadataResolverBenchmark {
+
+    /** Number of entities in the aggregate. */
+    @Param({"1000", "10000"})
+    private int entities;
+
+    /** Parser pool. */
+    private ParserPool parserPool;
+
+    /** Serialized aggregate. */
+    private byte[] aggregate;
+
+    /** Resolver loaded with the aggregate. */
+    private DOMMetadataResolver resolver;
+
+    /**
+     * Set up fixtures.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+        parserPool = XMLObjectProviderRegistrySupport.getParserPool();
+        aggregate = BenchmarkSupport.buildAggregate(entities);
+        resolver = load();
+    }
+
+    /** Release fixtures. */
+    @TearDown
+    public void tearDown() {
+        resolver.destroy();
+    }
+
+    /**
+     * Resolve a randomly chosen entity by ID.
+     *
+     * @return the resolved entity
+     *
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public EntityDescriptor resolveSingle() throws Exception {
+        final String entityID = BenchmarkSupport.getEntityID(ThreadLocalRandom.current().nextInt(entities));
+        return resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID)));
+    }
+
+    /**
+     * Parse the aggregate and load it into a new resolver.
+     *
+     * @return the initialized resolver
+     *
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public DOMMetadataResolver load() throws Exception {
+        final Element element = parserPool.parse(new ByteArrayInputStream(aggregate)).getDocumentElement();
+        final DOMMetadataResolver result = new DOMMetadataResolver(element);
+        result.setId("aggregate");
+        result.setParserPool(parserPool);
+        result.initialize();
+        return result;
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.io.UnmarshallerFactory;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import net.shibboleth.shared.xml.DOMTypeSupport;
+import net.shibboleth.shared.xml.QNameSupport;
+
+/**
+ * Benchmarks for resolving the unmarshaller of each element in a response, with the factory's lookup cache and with
+ * the QName-based lookup the factory used before it, alongside the cost of unmarshalling the whole response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProviderLookupBenchmark {
+
+    /** Number of attributes in the response's assertion. */
+    @Param({"10", "100"})
+    private int attributes;
+
+    /** Unmarshaller factory. */
+    private UnmarshallerFactory unmarshallerFactory;
+
+    /** Parsed response. */
+    private Document document;
+
+    /** Every element in the response. */
+    private Element[] elements;
+
+    /**
+     * Set up fixtures.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+        unmarshallerFactory = XMLObjectProviderRegistrySupport.getUnmarshallerFactory();
+        document = XMLObjectProviderRegistrySupport.getParserPool().parse(
+                new ByteArrayInputStream(BenchmarkSupport.serialize(BenchmarkSupport.buildResponse(attributes))));
+
+        final NodeList nodes = document.getElementsByTagNameNS("*", "*");
+        elements = new Element[nodes.getLength()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = (Element) nodes.item(i);
+        }
+        System.out.printf("%nResponse contains %,d elements%n", elements.length);
+    }
+
+    /**
+     * Resolve the unmarshaller of every element through the factory's lookup cache.
+     *
+     * @return the number of elements resolved
+     */
+    @Benchmark
+    public int cachedLookup() {
+        int resolved = 0;
+        for (final Element element : elements) {
+            if (unmarshallerFactory.getUnmarshaller(element) != null) {
+                resolved++;
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Resolve the unmarshaller of every element by constructing QNames for the schema type and element name.
+     *
+     * @return the number of elements resolved
+     */
+    @Benchmark
+    public int qnameLookup() {
+        int resolved = 0;
+        for (final Element element : elements) {
+            Unmarshaller unmarshaller = null;
+            final QName xsitype = DOMTypeSupport.getXSIType(element);
+            if (xsitype != null) {
+                unmarshaller = unmarshallerFactory.getUnmarshaller(xsitype);
+            }
+            if (unmarshaller == null) {
+                unmarshaller = unmarshallerFactory.getUnmarshaller(QNameSupport.getNodeQName(element));
+            }
+            if (unmarshaller != null) {
+                resolved++;
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Unmarshall the parsed response.
+     *
+     * @return the response
+     *
+     * @throws UnmarshallingException if unmarshalling fails
+     */
+    @Benchmark
+    public XMLObject unmarshall() throws UnmarshallingException {
+        final Element root = document.getDocumentElement();
+        return unmarshallerFactory.ensureUnmarshaller(root).unmarshall(root);
+    }
+
+}
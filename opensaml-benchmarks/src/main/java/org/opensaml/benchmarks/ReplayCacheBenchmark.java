@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.benchmarks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.opensaml.storage.impl.StorageServiceReplayCache;
+
+/**
+ * Benchmarks for {@link StorageServiceReplayCache#check(String, String, Instant)} under contention.
+ *
+ * <p>Compares synchronized checks against those relying on atomic record creation in the striped
+ * {@link MemoryStorageService}.</p>
+ *
+ * <p>The thread count is deliberately not fixed, since the interesting result is how throughput scales with
+ * contention. Sweep it from the command line, e.g. {@code java -jar benchmarks.jar ReplayCacheBenchmark -t 1}
+ * followed by {@code -t 2}, {@code -t 4}, {@code -t 8} and so on up to at least the core count; without
+ * {@code -t} JMH runs a single uncontended thread.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplayCacheBenchmark {
+
+    /** Replay context. */
+    private static final String CONTEXT = "https://sp.example.org/shibboleth";
+
+    /** Whether the cache relies on atomic record creation. */
+    @Param({"false", "true"})
+    private boolean concurrent;
+
+    /** Storage service. */
+    private MemoryStorageService storage;
+
+    /** Replay cache. */
+    private StorageServiceReplayCache replayCache;
+
+    /** Source of unique message IDs. */
+    private AtomicLong counter;
+
+    /** Expiration of cache entries. */
+    private Instant expires;
+
+    /**
+     * Set up fixtures.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        storage = new MemoryStorageService();
+        storage.setId("storage");
+        storage.initialize();
+
+        replayCache = new StorageServiceReplayCache();
+        replayCache.setId("replayCache");
+        replayCache.setStorage(storage);
+        replayCache.setConcurrent(concurrent);
+        replayCache.initialize();
+
+        counter = new AtomicLong();
+        expires = Instant.now().plus(Duration.ofHours(1));
+        replayCache.check(CONTEXT, "replayed", expires);
+    }
+
+    /** Release fixtures. */
+    @TearDown
+    public void tearDown() {
+        replayCache.destroy();
+        storage.destroy();
+    }
+
+    /**
+     * Check a message ID not seen before.
+     *
+     * @return the result of the check
+     */
+    @Benchmark
+    public boolean checkUnique() {
+        return replayCache.check(CONTEXT, "_" + counter.incrementAndGet(), expires);
+    }
+
+    /**
+     * Check a replayed message ID.
+     *
+     * @return the result of the check
+     */
+    @Benchmark
+    public boolean checkReplayed() {
+        return replayCache.check(CONTEXT, "replayed", expires);
+    }
+
+}
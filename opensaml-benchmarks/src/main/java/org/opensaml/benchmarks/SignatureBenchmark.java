@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialSupport;
+import org.opensaml.security.crypto.KeySupport;
+import org.opensaml.xmlsec.SignatureSigningParameters;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureSupport;
+import org.opensaml.xmlsec.signature.support.SignatureValidator;
+
+import net.shibboleth.shared.xml.ParserPool;
+
+/**
+ * Benchmarks for signing a response, validating its signature, and the round trip between the two.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureBenchmark {
+
+    /** Key algorithm. */
+    @Param({"RSA", "EC"})
+    private String keyAlgorithm;
+
+    /** Number of attributes in the response. */
+    @Param({"10"})
+    private int attributes;
+
+    /** Parser pool. */
+    private ParserPool parserPool;
+
+    /** Signing credential. */
+    private Credential credential;
+
+    /** Signing parameters. */
+    private SignatureSigningParameters signingParameters;
+
+    /** Signature on a parsed response. */
+    private Signature signature;
+
+    /**
+     * Set up fixtures.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+        parserPool = XMLObjectProviderRegistrySupport.getParserPool();
+
+        final KeyPair keyPair;
+        signingParameters = new SignatureSigningParameters();
+        if ("EC".equals(keyAlgorithm)) {
+            keyPair = KeySupport.generateKeyPair("EC", 256, null);
+            signingParameters.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_ECDSA_SHA256);
+        } else {
+            keyPair = KeySupport.generateKeyPair("RSA", 2048, null);
+            signingParameters.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        }
+        credential = CredentialSupport.getSimpleCredential(keyPair.getPublic(), keyPair.getPrivate());
+        signingParameters.setSigningCredential(credential);
+        signingParameters.setSignatureReferenceDigestMethod(SignatureConstants.ALGO_ID_DIGEST_SHA256);
+        signingParameters.setSignatureCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+
+        signature = parse(sign());
+    }
+
+    /**
+     * Sign a newly built response.
+     *
+     * @return the signed response
+     *
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public Response sign() throws Exception {
+        final Response response = BenchmarkSupport.buildResponse(attributes);
+        SignatureSupport.signObject(response, signingParameters);
+        return response;
+    }
+
+    /**
+     * Validate the signature on a parsed response.
+     *
+     * @return the signature
+     *
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public Signature validate() throws Exception {
+        SignatureValidator.validate(signature, credential);
+        return signature;
+    }
+
+    /**
+     * Sign a newly built response, then serialize, parse and validate it.
+     *
+     * @return the signature
+     *
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public Signature roundTrip() throws Exception {
+        final Signature parsed = parse(sign());
+        SignatureValidator.validate(parsed, credential);
+        return parsed;
+    }
+
+    /**
+     * Serialize and parse a signed response.
+     *
+     * @param response the response
+     *
+     * @return the signature on the parsed response
+     *
+     * @throws Exception if an error occurs
+     */
+    private Signature parse(final Response response) throws Exception {
+        final Response parsed = (Response) XMLObjectSupport.unmarshallFromInputStream(parserPool,
+                new ByteArrayInputStream(BenchmarkSupport.serialize(response)));
+        return parsed.getSignature();
+    }
+
+}
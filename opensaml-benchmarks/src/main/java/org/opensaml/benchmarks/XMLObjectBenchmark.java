@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.StreamingUnmarshaller;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml2.core.Response;
+import org.w3c.dom.Element;
+
+import net.shibboleth.shared.xml.ParserPool;
+import net.shibboleth.shared.xml.XMLParserException;
+
+/**
+ * Benchmarks for parsing and unmarshalling, by way of a DOM and directly from a stream, and marshalling, a response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XMLObjectBenchmark {
+
+    /** Number of attributes in the response. */
+    @Param({"10", "100"})
+    private int attributes;
+
+    /** Parser pool. */
+    private ParserPool parserPool;
+
+    /** Response to marshall. */
+    private Response response;
+
+    /** Serialized response. */
+    private byte[] serialized;
+
+    /** Unmarshaller reading directly from a stream. */
+    private StreamingUnmarshaller streamingUnmarshaller;
+
+    /**
+     * Set up fixtures.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+        parserPool = XMLObjectProviderRegistrySupport.getParserPool();
+        response = BenchmarkSupport.buildResponse(attributes);
+        serialized = BenchmarkSupport.serialize(response);
+        streamingUnmarshaller = new StreamingUnmarshaller(parserPool,
+                XMLObjectProviderRegistrySupport.getUnmarshallerFactory());
+    }
+
+    /**
+     * Parse and unmarshall the response.
+     *
+     * @return the response
+     *
+     * @throws XMLParserException if parsing fails
+     * @throws UnmarshallingException if unmarshalling fails
+     */
+    @Benchmark
+    public XMLObject unmarshall() throws XMLParserException, UnmarshallingException {
+        return XMLObjectSupport.unmarshallFromInputStream(parserPool, new ByteArrayInputStream(serialized));
+    }
+
+    /**
+     * Parse and unmarshall the response, then release its DOM, as is usual for inbound messages.
+     *
+     * @return the response
+     *
+     * @throws XMLParserException if parsing fails
+     * @throws UnmarshallingException if unmarshalling fails
+     */
+    @Benchmark
+    public XMLObject unmarshallReleasingDOM() throws XMLParserException, UnmarshallingException {
+        final XMLObject xmlObject =
+                XMLObjectSupport.unmarshallFromInputStream(parserPool, new ByteArrayInputStream(serialized));
+        xmlObject.releaseDOM();
+        xmlObject.releaseChildrenDOM(true);
+        return xmlObject;
+    }
+
+    /**
+     * Unmarshall the response directly from the stream, without a DOM.
+     *
+     * @return the response
+     *
+     * @throws UnmarshallingException if unmarshalling fails
+     */
+    @Benchmark
+    public XMLObject unmarshallStreaming() throws UnmarshallingException {
+        return streamingUnmarshaller.unmarshall(new ByteArrayInputStream(serialized));
+    }
+
+    /**
+     * Marshall the response, discarding any cached DOM first.
+     *
+     * @return the marshalled response
+     *
+     * @throws MarshallingException if marshalling fails
+     */
+    @Benchmark
+    public Element marshall() throws MarshallingException {
+        response.releaseDOM();
+        response.releaseChildrenDOM(true);
+        return XMLObjectSupport.marshall(response);
+    }
+
+}
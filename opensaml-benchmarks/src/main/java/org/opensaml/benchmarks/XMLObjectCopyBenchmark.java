@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.CopyingException;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.w3c.dom.Element;
+
+/**
+ * Benchmarks for copying an unmarshalled assertion, directly and by way of its DOM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XMLObjectCopyBenchmark {
+
+    /** Number of attributes in the assertion. */
+    @Param({"10", "100"})
+    private int attributes;
+
+    /** Unmarshalled assertion, with its DOM cached. */
+    private Assertion assertion;
+
+    /** Unmarshaller for the assertion. */
+    private Unmarshaller unmarshaller;
+
+    /**
+     * Set up fixtures.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+        final byte[] serialized = BenchmarkSupport.serialize(BenchmarkSupport.buildAssertion(attributes));
+        assertion = (Assertion) XMLObjectSupport.unmarshallFromInputStream(
+                XMLObjectProviderRegistrySupport.getParserPool(), new ByteArrayInputStream(serialized));
+        unmarshaller = XMLObjectProviderRegistrySupport.getUnmarshallerFactory().getUnmarshaller(
+                Assertion.DEFAULT_ELEMENT_NAME);
+    }
+
+    /**
+     * Copy the assertion directly.
+     *
+     * @return the copy
+     *
+     * @throws CopyingException if copying fails
+     */
+    @Benchmark
+    public Assertion copy() throws CopyingException {
+        return XMLObjectSupport.copyXMLObject(assertion);
+    }
+
+    /**
+     * Copy the assertion by cloning its cached DOM and unmarshalling the clone, as cloning did before copiers.
+     *
+     * @return the copy
+     *
+     * @throws MarshallingException if marshalling fails
+     * @throws UnmarshallingException if unmarshalling fails
+     */
+    @Benchmark
+    public Assertion domClone() throws MarshallingException, UnmarshallingException {
+        final Element element = (Element) XMLObjectSupport.marshall(assertion).cloneNode(true);
+        final Assertion clone = (Assertion) unmarshaller.unmarshall(element);
+        clone.releaseDOM();
+        clone.releaseChildrenDOM(true);
+        return clone;
+    }
+
+}
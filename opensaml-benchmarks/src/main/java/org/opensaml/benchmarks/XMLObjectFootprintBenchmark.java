@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+
+import net.shibboleth.shared.xml.ParserPool;
+import net.shibboleth.shared.xml.XMLParserException;
+
+/**
+ * Measures the heap retained by an unmarshalled metadata aggregate of roughly the size of a large federation's,
+ * once its DOM has been released, and the cost of unmarshalling it.
+ * 
+ * <p>The retained size, in total and per {@link XMLObject}, is printed during setup. Run with {@code -prof gc} to
+ * compare allocation during unmarshalling.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class XMLObjectFootprintBenchmark {
+
+    /** Number of entities in the aggregate. */
+    @Param({"10000"})
+    private int entities;
+
+    /** Parser pool. */
+    private ParserPool parserPool;
+
+    /** Serialized aggregate. */
+    private byte[] serialized;
+
+    /** Unmarshalled aggregate, held so that it is retained. */
+    private XMLObject aggregate;
+
+    /**
+     * Set up fixtures.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+        parserPool = XMLObjectProviderRegistrySupport.getParserPool();
+        serialized = BenchmarkSupport.buildAggregate(entities);
+
+        final long before = BenchmarkSupport.usedMemory();
+        aggregate = unmarshall();
+        final long retained = BenchmarkSupport.usedMemory() - before;
+        final long nodes = countNodes(aggregate);
+        System.out.printf("%nAggregate of %,d objects retains %,d bytes, %,d bytes per object%n", nodes, retained,
+                retained / nodes);
+    }
+
+    /**
+     * Parse and unmarshall the aggregate, then release its DOM as a metadata resolver would.
+     *
+     * @return the aggregate
+     *
+     * @throws XMLParserException if parsing fails
+     * @throws UnmarshallingException if unmarshalling fails
+     */
+    @Benchmark
+    public XMLObject unmarshall() throws XMLParserException, UnmarshallingException {
+        final XMLObject xmlObject =
+                XMLObjectSupport.unmarshallFromInputStream(parserPool, new ByteArrayInputStream(serialized));
+        xmlObject.releaseDOM();
+        xmlObject.releaseChildrenDOM(true);
+        return xmlObject;
+    }
+
+    /**
+     * Count the objects in a tree.
+     *
+     * @param xmlObject root of the tree
+     *
+     * @return number of objects
+     */
+    private static long countNodes(final XMLObject xmlObject) {
+        long count = 1;
+        final List<XMLObject> children = xmlObject.getOrderedChildren();
+        if (children != null) {
+            for (final XMLObject child : children) {
+                if (child != null) {
+                    count += countNodes(child);
+                }
+            }
+        }
+        return count;
+    }
+
+}
@@ -19,6 +19,7 @@ import javax.annotation.Nullable;
 
 import org.opensaml.core.config.ConfigurationService;
 
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
@@ -246,5 +247,18 @@ public final class MetricsSupport {
     @Nullable public static Long stopTimer(@Nullable final Context context) {
         return context != null ? context.stop() : null;
     }
+    
+    /**
+     * Increment the specified counter.
+     * 
+     * @param counter the counter to increment, may be null
+     * 
+     * @since 5.1.0
+     */
+    public static void increment(@Nullable final Counter counter) {
+        if (counter != null) {
+            counter.inc();
+        }
+    }
 
 }
\ No newline at end of file
@@ -17,6 +17,7 @@ package org.opensaml.core.xml;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -38,11 +39,22 @@ import net.shibboleth.shared.xml.XMLConstants;
 
 /**
  * An abstract implementation of XMLObject.
+ * 
+ * <p>
+ * The namespace manager, object metadata and ID index are only allocated when first used, since most objects in a
+ * large tree never need them.
+ * </p>
  */
 public abstract class AbstractXMLObject implements XMLObject {
 
     /** Class logger. */
-    @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractXMLObject.class);
+    @Nonnull private static final Logger LOG = LoggerFactory.getLogger(AbstractXMLObject.class);
+
+    /** Updater used to allocate the object metadata on first use. */
+    @SuppressWarnings("rawtypes")
+    @Nonnull private static final AtomicReferenceFieldUpdater<AbstractXMLObject, LockableClassToInstanceMultiMap>
+        OBJECT_METADATA_UPDATER = AtomicReferenceFieldUpdater.newUpdater(AbstractXMLObject.class,
+                LockableClassToInstanceMultiMap.class, "objectMetadata");
 
     /** Parent of this element. */
     @Nullable private XMLObject parent;
@@ -65,17 +77,20 @@ public abstract class AbstractXMLObject implements XMLObject {
     /** The value of the <code>xsi:nil</code> attribute. */
     @Nullable private XSBooleanValue nil;
     
-    /** The namespace manager for this XML object. */
-    @Nonnull private NamespaceManager nsManager;
+    /** The namespace manager for this XML object, allocated on first use. */
+    @Nullable private NamespaceManager nsManager;
     
-    /** The multimap holding class-indexed instances of additional info associated with this XML object. */
-    @Nonnull private final LockableClassToInstanceMultiMap<Object> objectMetadata;
+    /**
+     * The multimap holding class-indexed instances of additional info associated with this XML object, allocated on
+     * first use.
+     */
+    @Nullable private volatile LockableClassToInstanceMultiMap<Object> objectMetadata;
 
     /**
      * Mapping of ID attributes to XMLObjects in the subtree rooted at this object. This allows constant-time
-     * dereferencing of ID-typed attributes within the subtree.
+     * dereferencing of ID-typed attributes within the subtree. Allocated on first use.
      */
-    @Nonnull private final IDIndex idIndex;
+    @Nullable private IDIndex idIndex;
 
     /**
      * Constructor.
@@ -86,13 +101,13 @@ public abstract class AbstractXMLObject implements XMLObject {
      */
     protected AbstractXMLObject(@Nullable final String namespaceURI, @Nonnull @NotEmpty final String elementLocalName,
             @Nullable final String namespacePrefix) {
-        nsManager = new NamespaceManager(this);
-        idIndex = new IDIndex(this);
-        elementQname = QNameSupport.constructQName(namespaceURI, elementLocalName, namespacePrefix);
-        if(namespaceURI != null){
-            setElementNamespacePrefix(namespacePrefix);
+        if (namespaceURI != null) {
+            // equivalent to setElementNamespacePrefix(), without the namespace registration a new object defers
+            elementQname = namespacePrefix == null ? new QName(namespaceURI, elementLocalName)
+                    : new QName(namespaceURI, elementLocalName, namespacePrefix);
+        } else {
+            elementQname = QNameSupport.constructQName(namespaceURI, elementLocalName, namespacePrefix);
         }
-        objectMetadata = new LockableClassToInstanceMultiMap<>(true);
     }
 
     /** {@inheritDoc} */
@@ -121,17 +136,43 @@ public abstract class AbstractXMLObject implements XMLObject {
 
     /** {@inheritDoc} */
     @Nonnull public IDIndex getIDIndex() {
+        IDIndex index = idIndex;
+        if (index == null) {
+            index = new IDIndex(this);
+            idIndex = index;
+        }
+        return index;
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public IDIndex getExistingIDIndex() {
         return idIndex;
     }
+
+    /** {@inheritDoc} */
+    public boolean hasIDMappings() {
+        final IDIndex index = idIndex;
+        return index != null ? !index.isEmpty() : IDIndex.hasMappings(this);
+    }
     
     /** {@inheritDoc} */
     @Nonnull public NamespaceManager getNamespaceManager() {
-        return nsManager;
+        NamespaceManager manager = nsManager;
+        if (manager == null) {
+            manager = new NamespaceManager(this);
+            nsManager = manager;
+        }
+        return manager;
     }
 
     /** {@inheritDoc} */
     @Nonnull public Set<Namespace> getNamespaces() {
-        return getNamespaceManager().getNamespaces();
+        final NamespaceManager manager = nsManager;
+        if (manager != null) {
+            return manager.getNamespaces();
+        }
+        // nothing has been registered, so a throwaway manager derives the same result from this object alone
+        return new NamespaceManager(this).getNamespaces();
     }
 
     /** {@inheritDoc} */
@@ -175,8 +216,8 @@ public abstract class AbstractXMLObject implements XMLObject {
     protected void manageQualifiedAttributeNamespace(@Nonnull final QName attributeName, final boolean hasValue) {
         if (hasValue) {
             getNamespaceManager().registerAttributeName(attributeName);
-        } else {
-            getNamespaceManager().deregisterAttributeName(attributeName);
+        } else if (nsManager != null) {
+            nsManager.deregisterAttributeName(attributeName);
         }
     }
     
@@ -350,8 +391,12 @@ public abstract class AbstractXMLObject implements XMLObject {
         if (oldValue == null) {
             if (newValue != null) {
                 releaseThisandParentDOM();
+                // Check while the new value is still the root of its own tree, when no walk is needed.
+                final boolean hasIDMappings = newValue.hasIDMappings();
                 newValue.setParent(this);
-                idIndex.registerIDMappings(newValue.getIDIndex());
+                if (hasIDMappings) {
+                    getIDIndex().registerIDMappings(newValue.getIDIndex());
+                }
                 return newValue;
 
             } else {
@@ -360,12 +405,18 @@ public abstract class AbstractXMLObject implements XMLObject {
         }
 
         if (!oldValue.equals(newValue)) {
+            // Deregister while still attached so the old subtree's mappings can be located in root indexing mode.
+            if (oldValue.hasIDMappings()) {
+                getIDIndex().deregisterIDMappings(oldValue.getIDIndex());
+            }
             oldValue.setParent(null);
             releaseThisandParentDOM();
-            idIndex.deregisterIDMappings(oldValue.getIDIndex());
             if (newValue != null) {
+                final boolean hasIDMappings = newValue.hasIDMappings();
                 newValue.setParent(this);
-                idIndex.registerIDMappings(newValue.getIDIndex());
+                if (hasIDMappings) {
+                    getIDIndex().registerIDMappings(newValue.getIDIndex());
+                }
             }
         }
 
@@ -384,19 +435,19 @@ public abstract class AbstractXMLObject implements XMLObject {
         final String newString = StringSupport.trimOrNull(newID);
 
         if (!Objects.equals(oldID, newString)) {
-            if (oldID != null) {
-                idIndex.deregisterIDMapping(oldID);
+            if (oldID != null && idIndex != null) {
+                getIDIndex().deregisterIDMapping(oldID);
             }
 
             if (newString != null) {
-                idIndex.registerIDMapping(newString, this);
+                getIDIndex().registerIDMapping(newString, this);
             }
         }
     }
 
     /** {@inheritDoc} */
     public void releaseChildrenDOM(final boolean propagateRelease) {
-        log.trace("Releasing cached DOM reprsentation for children of {} with propagation set to {}",
+        LOG.trace("Releasing cached DOM reprsentation for children of {} with propagation set to {}",
                 getElementQName(), propagateRelease);
         final List<XMLObject> children = getOrderedChildren();
         if (children != null) {
@@ -413,17 +464,18 @@ public abstract class AbstractXMLObject implements XMLObject {
 
     /** {@inheritDoc} */
     public void releaseDOM() {
-        log.trace("Releasing cached DOM reprsentation for {}", getElementQName());
+        LOG.trace("Releasing cached DOM reprsentation for {}", getElementQName());
         setDOM(null);
-        if (getObjectMetadata().containsKey(XMLObjectSource.class)) {
-            log.trace("Releasing cached XMLObjectSource for {}", getElementQName());
-            getObjectMetadata().remove(XMLObjectSource.class);
+        final LockableClassToInstanceMultiMap<Object> metadata = objectMetadata;
+        if (metadata != null && metadata.containsKey(XMLObjectSource.class)) {
+            LOG.trace("Releasing cached XMLObjectSource for {}", getElementQName());
+            metadata.remove(XMLObjectSource.class);
         }
     }
 
     /** {@inheritDoc} */
     public void releaseParentDOM(final boolean propagateRelease) {
-        log.trace("Releasing cached DOM reprsentation for parent of {} with propagation set to {}", getElementQName(),
+        LOG.trace("Releasing cached DOM reprsentation for parent of {} with propagation set to {}", getElementQName(),
                 propagateRelease);
         final XMLObject parentElement = getParent();
         if (parentElement != null) {
@@ -458,7 +510,8 @@ public abstract class AbstractXMLObject implements XMLObject {
 
     /** {@inheritDoc} */
     @Nullable public XMLObject resolveID(@Nonnull @NotEmpty final String id) {
-        return idIndex.lookup(id);
+        final IDIndex index = idIndex;
+        return index != null ? index.lookup(id) : IDIndex.lookup(this, id);
     }
 
     /** {@inheritDoc} */
@@ -486,7 +539,9 @@ public abstract class AbstractXMLObject implements XMLObject {
         } else {
             elementQname = new QName(elementQname.getNamespaceURI(), elementQname.getLocalPart(), prefix);
         }
-        getNamespaceManager().registerElementName(elementQname);
+        if (nsManager != null) {
+            nsManager.registerElementName(elementQname);
+        }
     }
 
     /**
@@ -498,7 +553,9 @@ public abstract class AbstractXMLObject implements XMLObject {
         Constraint.isNotNull(name, "Element QName cannot be null");
         elementQname = QNameSupport.constructQName(name.getNamespaceURI(), QNameSupport.ensureLocalPart(name),
                 name.getPrefix());
-        getNamespaceManager().registerElementName(elementQname);
+        if (nsManager != null) {
+            nsManager.registerElementName(elementQname);
+        }
     }
 
     /** {@inheritDoc} */
@@ -528,7 +585,9 @@ public abstract class AbstractXMLObject implements XMLObject {
      */
     protected void setSchemaType(@Nullable final QName type) {
         typeQname = type;
-        getNamespaceManager().registerElementType(typeQname);
+        if (nsManager != null) {
+            nsManager.registerElementType(typeQname);
+        }
         manageQualifiedAttributeNamespace(XMLConstants.XSI_TYPE_ATTRIB_NAME, typeQname != null);
     }
     
@@ -563,8 +622,16 @@ public abstract class AbstractXMLObject implements XMLObject {
     }
 
     /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
     @Nonnull public LockableClassToInstanceMultiMap<Object> getObjectMetadata() {
-        return objectMetadata;
+        final LockableClassToInstanceMultiMap<Object> metadata = objectMetadata;
+        if (metadata != null) {
+            return metadata;
+        }
+        OBJECT_METADATA_UPDATER.compareAndSet(this, null, new LockableClassToInstanceMultiMap<>(true));
+        final LockableClassToInstanceMultiMap<Object> result = objectMetadata;
+        assert result != null;
+        return result;
     }
 
 }
\ No newline at end of file
@@ -16,6 +16,7 @@ package org.opensaml.core.xml;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.xml.XMLConstants;
 import javax.xml.namespace.QName;
 
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
@@ -66,7 +67,16 @@ public abstract class AbstractXMLObjectBuilder<XMLObjectType extends XMLObject>
     /** {@inheritDoc} */
     @Nonnull public XMLObjectType buildObject(@Nonnull final Element element) {
         final QName schemaType = DOMTypeSupport.getXSIType(element);
-        return buildObject(QNameSupport.getNodeQName(element), schemaType);
+        final String localName = element.getLocalName();
+        if (localName == null) {
+            return buildObject(QNameSupport.getNodeQName(element), schemaType);
+        }
+
+        // Pass the name through directly rather than via a QName, normalized as QName would.
+        final String namespaceURI = element.getNamespaceURI();
+        final String prefix = element.getPrefix();
+        return buildObject(namespaceURI != null ? namespaceURI : XMLConstants.NULL_NS_URI, localName,
+                prefix != null ? prefix : XMLConstants.DEFAULT_NS_PREFIX, schemaType);
     }
 
 }
\ No newline at end of file
@@ -85,6 +85,17 @@ public abstract class AbstractXSAnyAdapter implements XSAnyAdapter {
         return adapted.getIDIndex();
     }
 
+    /** {@inheritDoc} */
+    @Nullable
+    public IDIndex getExistingIDIndex() {
+        return adapted.getExistingIDIndex();
+    }
+
+    /** {@inheritDoc} */
+    public boolean hasIDMappings() {
+        return adapted.hasIDMappings();
+    }
+
     /** {@inheritDoc} */
     @Nonnull
     public NamespaceManager getNamespaceManager() {
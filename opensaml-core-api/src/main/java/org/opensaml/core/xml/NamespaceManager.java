@@ -15,6 +15,7 @@
 package org.opensaml.core.xml;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -66,14 +67,14 @@ public class NamespaceManager {
     /** XMLObject type namespace. */
     @Nullable private Namespace elementType;
     
-    /** Explicitly declared namespaces. */
-    @Nonnull private final Set<Namespace> decls;
+    /** Explicitly declared namespaces, a shared empty set until the first is registered. */
+    @Nonnull private Set<Namespace> decls;
     
-    /** Registered namespaces of attribute names. */
-    @Nonnull private final Set<Namespace> attrNames;
+    /** Registered namespaces of attribute names, a shared empty set until the first is registered. */
+    @Nonnull private Set<Namespace> attrNames;
     
-    /** Registered namespaces of attribute values. */
-    @Nonnull private final Map<String, Namespace> attrValues;
+    /** Registered namespaces of attribute values, a shared empty map until the first is registered. */
+    @Nonnull private Map<String, Namespace> attrValues;
     
     /** Registered namespaces of content values. */
     @Nullable private Namespace contentValue;
@@ -86,9 +87,9 @@ public class NamespaceManager {
     public NamespaceManager(@Nonnull final XMLObject owningObject) {
         owner = Constraint.isNotNull(owningObject, "Owner XMLObject cannot be null");
         
-        decls = new LazySet<>();
-        attrNames = new LazySet<>();
-        attrValues = new LazyMap<>();
+        decls = Collections.emptySet();
+        attrNames = Collections.emptySet();
+        attrValues = Collections.emptyMap();
     }
     
     /**
@@ -132,6 +133,9 @@ public class NamespaceManager {
      * @param namespace the namespace to register
      */
     public void registerNamespaceDeclaration(@Nonnull final Namespace namespace) {
+        if (decls == Collections.<Namespace>emptySet()) {
+            decls = new LazySet<>();
+        }
         addNamespace(decls, namespace);
     }
     
@@ -160,6 +164,9 @@ public class NamespaceManager {
      */
     public void registerAttributeName(@Nonnull final QName attributeName) {
         if (checkQName(attributeName)) {
+            if (attrNames == Collections.<Namespace>emptySet()) {
+                attrNames = new LazySet<>();
+            }
             addNamespace(attrNames, buildNamespace(attributeName));
         }
     }
@@ -183,6 +190,9 @@ public class NamespaceManager {
      */
     public void registerAttributeValue(@Nonnull final String attributeID, @Nonnull final QName attributeValue) {
         if (checkQName(attributeValue)) {
+            if (attrValues == Collections.<String, Namespace>emptyMap()) {
+                attrValues = new LazyMap<>();
+            }
             attrValues.put(attributeID, buildNamespace(attributeValue));
         }
     }
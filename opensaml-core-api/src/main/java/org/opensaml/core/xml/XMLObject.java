@@ -74,6 +74,33 @@ public interface XMLObject {
      * @return the IDIndex owned by this XMLObject
      */
     @Nonnull public IDIndex getIDIndex();
+
+    /**
+     * Get the IDIndex owned by this XMLObject, without allocating one if it has none.
+     * 
+     * @return the IDIndex owned by this XMLObject, or null if none has been allocated
+     * 
+     * @since 5.1.0
+     */
+    @Nullable default IDIndex getExistingIDIndex() {
+        return getIDIndex();
+    }
+
+    /**
+     * Gets whether any ID-to-XMLObject mappings are held for this XMLObject's subtree.
+     * 
+     * <p>
+     * Unlike calling {@link IDIndex#isEmpty()} on {@link #getIDIndex()}, this need not allocate an index for objects
+     * that have none.
+     * </p>
+     * 
+     * @return true iff the subtree rooted at this object has ID mappings
+     * 
+     * @since 5.1.0
+     */
+    default boolean hasIDMappings() {
+        return !getIDIndex().isEmpty();
+    }
     
     /**
      * Gets the {@link NamespaceManager} instance for this object.
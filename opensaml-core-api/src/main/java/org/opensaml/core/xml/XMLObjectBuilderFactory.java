@@ -26,9 +26,8 @@ import net.shibboleth.shared.annotation.constraint.Unmodifiable;
 import net.shibboleth.shared.collection.CollectionSupport;
 import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.primitive.LoggerFactory;
-import net.shibboleth.shared.xml.DOMTypeSupport;
-import net.shibboleth.shared.xml.QNameSupport;
 
+import org.opensaml.core.xml.util.ProviderLookupCache;
 import org.slf4j.Logger;
 
 import org.w3c.dom.Element;
@@ -46,9 +45,13 @@ public class XMLObjectBuilderFactory {
     /** Registered builders. */
     @Nonnull private final Map<QName, XMLObjectBuilder<?>> builders;
 
+    /** Cache of builders resolved for DOM elements. */
+    @Nonnull private final ProviderLookupCache<XMLObjectBuilder<?>> lookupCache;
+
     /** Constructor. */
     public XMLObjectBuilderFactory() {
         builders = new ConcurrentHashMap<>();
+        lookupCache = new ProviderLookupCache<>(builders::get);
     }
 
     /**
@@ -71,19 +74,7 @@ public class XMLObjectBuilderFactory {
      * @return the builder for the XMLObject the given element can be unmarshalled into, or null
      */
     @Nullable public XMLObjectBuilder<?> getBuilder(@Nonnull final Element domElement) {
-    
-        XMLObjectBuilder<?> builder = null;
-        
-        final QName xsitype = DOMTypeSupport.getXSIType(domElement);
-        if (xsitype != null) {
-            builder = getBuilder(xsitype);
-        }
-    
-        if (builder == null) {
-            builder = getBuilder(QNameSupport.getNodeQName(domElement));
-        }
-    
-        return builder;
+        return lookupCache.get(domElement);
     }
 
     /**
@@ -152,6 +143,7 @@ public class XMLObjectBuilderFactory {
         log.debug("Registering builder {} under key {}",  builder.getClass().getName(), builderKey);
 
         builders.put(builderKey, builder);
+        lookupCache.invalidate();
     }
 
     /**
@@ -165,6 +157,8 @@ public class XMLObjectBuilderFactory {
         Constraint.isNotNull(builderKey, "Builder key QName cannot be null");
         
         log.debug("Deregistering builder for object type {}", builderKey);
-        return builders.remove(builderKey);
+        final XMLObjectBuilder<?> builder = builders.remove(builderKey);
+        lookupCache.invalidate();
+        return builder;
     }
 }
\ No newline at end of file
@@ -42,6 +42,7 @@ import net.shibboleth.shared.xml.impl.BasicParserPool;
 
 import org.opensaml.core.config.ConfigurationService;
 import org.opensaml.core.xml.XMLObjectBuilder;
+import org.opensaml.core.xml.io.Copier;
 import org.opensaml.core.xml.io.Marshaller;
 import org.opensaml.core.xml.io.Unmarshaller;
 import org.slf4j.Logger;
@@ -256,7 +257,11 @@ public class XMLConfigurator {
                 assert configuration != null;
                 final Unmarshaller unmarshaller = (Unmarshaller) createClassInstance(configuration);
 
-                getRegistry().registerObjectProvider(objectProviderName, builder, marshaller, unmarshaller);
+                configuration = (Element) objectProvider
+                        .getElementsByTagNameNS(XMLTOOLING_CONFIG_NS, "CopyingClass").item(0);
+                final Copier copier = configuration != null ? (Copier) createClassInstance(configuration) : null;
+
+                getRegistry().registerObjectProvider(objectProviderName, builder, marshaller, unmarshaller, copier);
 
                 log.debug("{} initialized and configuration cached", objectProviderName);
             } catch (final XMLConfigurationException e) {
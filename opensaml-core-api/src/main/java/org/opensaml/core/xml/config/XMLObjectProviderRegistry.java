@@ -25,6 +25,8 @@ import javax.xml.namespace.QName;
 
 import org.opensaml.core.xml.XMLObjectBuilder;
 import org.opensaml.core.xml.XMLObjectBuilderFactory;
+import org.opensaml.core.xml.io.Copier;
+import org.opensaml.core.xml.io.CopierFactory;
 import org.opensaml.core.xml.io.Marshaller;
 import org.opensaml.core.xml.io.MarshallerFactory;
 import org.opensaml.core.xml.io.Unmarshaller;
@@ -38,7 +40,7 @@ import net.shibboleth.shared.xml.ParserPool;
 
 /** Configuration registry component for registering and retrieving implementation instances 
  * and related configuration relevant to working with XMLObjects, 
- * including builders, marshallers and unmarshallers.
+ * including builders, marshallers, unmarshallers and copiers.
  * 
  * <p>
  * The registry instance to use would typically be retrieved from the
@@ -67,18 +69,25 @@ public class XMLObjectProviderRegistry {
     /** Configured XMLObject unmarshaller factory. */
     @Nonnull private UnmarshallerFactory unmarshallerFactory;
 
+    /** Configured XMLObject copier factory. */
+    @Nonnull private CopierFactory copierFactory;
+
     /** Configured set of attribute QNames which have been globally registered as having an ID type. */
     @Nonnull private final Set<QName> idAttributeNames;
 
     /** Configured parser pool. */
     @Nullable private ParserPool parserPool;
 
+    /** Whether ID-to-XMLObject mappings are held only by the index of the root of each tree. */
+    private boolean rootIDIndexing;
+
     /** Constructor. */
     public XMLObjectProviderRegistry() {
         configuredObjectProviders = new ConcurrentHashMap<>(0);
         builderFactory = new XMLObjectBuilderFactory();
         marshallerFactory = new MarshallerFactory();
         unmarshallerFactory = new UnmarshallerFactory();
+        copierFactory = new CopierFactory();
         idAttributeNames = new CopyOnWriteArraySet<>();
         
         registerIDAttribute(new QName(javax.xml.XMLConstants.XML_NS_URI, "id"));
@@ -123,16 +132,44 @@ public class XMLObjectProviderRegistry {
      */
     public void registerObjectProvider(@Nonnull final QName providerName, @Nonnull final XMLObjectBuilder<?> builder,
             @Nonnull final Marshaller marshaller, @Nonnull final Unmarshaller unmarshaller) {
+        registerObjectProvider(providerName, builder, marshaller, unmarshaller, null);
+    }
+
+    /**
+     * Adds an object provider to this configuration.
+     * 
+     * <p>
+     * Any copier previously registered for the provider is removed if none is supplied, so that objects built by the
+     * new builder are not copied by a copier written for another implementation.
+     * </p>
+     * 
+     * @param providerName the name of the object provider, corresponding to the element name or type name that the
+     *            builder, marshaller, unmarshaller and copier operate on
+     * @param builder the builder for that given provider
+     * @param marshaller the marshaller for the provider
+     * @param unmarshaller the unmarshaller for the provider
+     * @param copier the optional copier for the provider
+     * 
+     * @since 5.1.0
+     */
+    public void registerObjectProvider(@Nonnull final QName providerName, @Nonnull final XMLObjectBuilder<?> builder,
+            @Nonnull final Marshaller marshaller, @Nonnull final Unmarshaller unmarshaller,
+            @Nullable final Copier copier) {
         log.debug("Registering new builder, marshaller, and unmarshaller for {}", providerName);
         builderFactory.registerBuilder(providerName, builder);
         marshallerFactory.registerMarshaller(providerName, marshaller);
         unmarshallerFactory.registerUnmarshaller(providerName, unmarshaller);
+        if (copier != null) {
+            copierFactory.registerCopier(providerName, copier);
+        } else {
+            copierFactory.deregisterCopier(providerName);
+        }
     }
 
     /**
-     * Removes the builder, marshaller, and unmarshaller registered to the given key.
+     * Removes the builder, marshaller, unmarshaller and copier registered to the given key.
      * 
-     * @param key the key of the builder, marshaller, and unmarshaller to be removed
+     * @param key the key of the builder, marshaller, unmarshaller and copier to be removed
      */
     public void deregisterObjectProvider(@Nonnull final QName key) {
         log.debug("Unregistering builder, marshaller, and unmarshaller for {}", key);
@@ -140,6 +177,7 @@ public class XMLObjectProviderRegistry {
         builderFactory.deregisterBuilder(key);
         marshallerFactory.deregisterMarshaller(key);
         unmarshallerFactory.deregisterUnmarshaller(key);
+        copierFactory.deregisterCopier(key);
     }
 
     /**
@@ -170,6 +208,17 @@ public class XMLObjectProviderRegistry {
         return unmarshallerFactory;
     }
 
+    /**
+     * Gets the XMLObject copier factory that has been configured with information from loaded configuration files.
+     * 
+     * @return the XMLObject copier factory
+     * 
+     * @since 5.1.0
+     */
+    @Nonnull public CopierFactory getCopierFactory() {
+        return copierFactory;
+    }
+
     /**
      * Register an attribute as having a type of ID.
      * 
@@ -201,5 +250,32 @@ public class XMLObjectProviderRegistry {
     public boolean isIDAttribute(@Nonnull final QName attributeName) {
         return idAttributeNames.contains(attributeName);
     }
+
+    /**
+     * Get whether ID-to-XMLObject mappings are held only by the {@link org.opensaml.core.xml.util.IDIndex} of the
+     * root of each tree, rather than by the index of every ancestor of an ID-bearing object.
+     * 
+     * @return whether root ID indexing is enabled
+     * 
+     * @since 5.1.0
+     */
+    public boolean isRootIDIndexing() {
+        return rootIDIndexing;
+    }
+
+    /**
+     * Set whether ID-to-XMLObject mappings are held only by the {@link org.opensaml.core.xml.util.IDIndex} of the
+     * root of each tree, rather than by the index of every ancestor of an ID-bearing object.
+     * 
+     * <p>Each index fixes its mode when it is created, so this must be set before any ID-bearing
+     * {@link org.opensaml.core.xml.XMLObject} trees are built.</p>
+     * 
+     * @param flag whether to enable root ID indexing
+     * 
+     * @since 5.1.0
+     */
+    public void setRootIDIndexing(final boolean flag) {
+        rootIDIndexing = flag;
+    }
     
 }
\ No newline at end of file
@@ -21,6 +21,7 @@ import javax.xml.namespace.QName;
 import org.opensaml.core.config.ConfigurationService;
 import org.opensaml.core.xml.XMLObjectBuilder;
 import org.opensaml.core.xml.XMLObjectBuilderFactory;
+import org.opensaml.core.xml.io.CopierFactory;
 import org.opensaml.core.xml.io.Marshaller;
 import org.opensaml.core.xml.io.MarshallerFactory;
 import org.opensaml.core.xml.io.Unmarshaller;
@@ -81,18 +82,20 @@ public final class XMLObjectProviderRegistrySupport {
         registry.getBuilderFactory().registerBuilder(providerName, builder);
         registry.getMarshallerFactory().registerMarshaller(providerName, marshaller);
         registry.getUnmarshallerFactory().registerUnmarshaller(providerName, unmarshaller);
+        registry.getCopierFactory().deregisterCopier(providerName);
     }
 
     /**
-     * Removes the builder, marshaller, and unmarshaller registered to the given key.
+     * Removes the builder, marshaller, unmarshaller and copier registered to the given key.
      * 
-     * @param key the key of the builder, marshaller, and unmarshaller to be removed
+     * @param key the key of the builder, marshaller, unmarshaller and copier to be removed
      */
     public static void deregisterObjectProvider(@Nonnull final QName key) {
         final XMLObjectProviderRegistry registry = ConfigurationService.ensure(XMLObjectProviderRegistry.class);
         registry.getBuilderFactory().deregisterBuilder(key);
         registry.getMarshallerFactory().deregisterMarshaller(key);
         registry.getUnmarshallerFactory().deregisterUnmarshaller(key);
+        registry.getCopierFactory().deregisterCopier(key);
     }
 
     /**
@@ -123,6 +126,17 @@ public final class XMLObjectProviderRegistrySupport {
         return ConfigurationService.ensure(XMLObjectProviderRegistry.class).getUnmarshallerFactory();
     }
 
+    /**
+     * Gets the XMLObject copier factory that has been configured with information from loaded configuration files.
+     * 
+     * @return the XMLObject copier factory
+     * 
+     * @since 5.1.0
+     */
+    @Nonnull public static CopierFactory getCopierFactory() {
+        return ConfigurationService.ensure(XMLObjectProviderRegistry.class).getCopierFactory();
+    }
+
     /**
      * Register an attribute as having a type of ID.
      * 
@@ -151,4 +165,16 @@ public final class XMLObjectProviderRegistrySupport {
         return ConfigurationService.ensure(XMLObjectProviderRegistry.class).isIDAttribute(attributeName);
     }
 
+    /**
+     * Get whether ID-to-XMLObject mappings are held only by the index of the root of each tree.
+     * 
+     * @return true if a registry is configured and has root ID indexing enabled
+     * 
+     * @since 5.1.0
+     */
+    public static boolean isRootIDIndexing() {
+        final XMLObjectProviderRegistry registry = ConfigurationService.get(XMLObjectProviderRegistry.class);
+        return registry != null && registry.isRootIDIndexing();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,257 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.shared.primitive.LoggerFactory;
+
+import org.opensaml.core.xml.AttributeExtensibleXMLObject;
+import org.opensaml.core.xml.ElementExtensibleXMLObject;
+import org.opensaml.core.xml.Namespace;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLObjectBuilder;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.schema.XSBooleanValue;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.slf4j.Logger;
+
+/**
+ * A thread safe, abstract implementation of the {@link Copier} interface. This class handles most of the boilerplate
+ * code:
+ * <ul>
+ * <li>Building the copy with the builder registered for the original's xsi:type or element QName</li>
+ * <li>Copying the xsi:nil, xsi:schemaLocation and xsi:noNamespaceSchemaLocation attributes</li>
+ * <li>Copying the namespace declarations of the original</li>
+ * <li>Copying the unknown attributes and unknown child elements of extensible objects</li>
+ * <li>Checking that every child of the original has been carried over to the copy</li>
+ * </ul>
+ * 
+ * <p>
+ * Subclasses copy the type-specific attributes, content and child elements. A child for which no copier is
+ * registered causes a {@link CopyingException}, in which case callers fall back to copying via the DOM.
+ * </p>
+ * 
+ * @since 5.1.0
+ */
+public abstract class AbstractXMLObjectCopier implements Copier {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractXMLObjectCopier.class);
+
+    /** {@inheritDoc} */
+    @Nonnull public XMLObject copy(@Nonnull final XMLObject xmlObject) throws CopyingException {
+        log.trace("Starting to copy {}", xmlObject.getElementQName());
+
+        final XMLObject target = buildTarget(xmlObject);
+
+        if (xmlObject.isNilXSBoolean() != null) {
+            target.setNil(copyBooleanValue(xmlObject.isNilXSBoolean()));
+        }
+        if (xmlObject.getSchemaLocation() != null) {
+            target.setSchemaLocation(xmlObject.getSchemaLocation());
+        }
+        if (xmlObject.getNoNamespaceSchemaLocation() != null) {
+            target.setNoNamespaceSchemaLocation(xmlObject.getNoNamespaceSchemaLocation());
+        }
+        for (final Namespace namespace : xmlObject.getNamespaceManager().getNamespaceDeclarations()) {
+            target.getNamespaceManager().registerNamespaceDeclaration(namespace);
+        }
+
+        copyAttributes(xmlObject, target);
+        if (xmlObject instanceof AttributeExtensibleXMLObject source) {
+            ((AttributeExtensibleXMLObject) target).getUnknownAttributes().copyFrom(source.getUnknownAttributes());
+        }
+
+        copyElementContent(xmlObject, target);
+
+        copyChildElements(xmlObject, target);
+        if (xmlObject instanceof ElementExtensibleXMLObject source) {
+            copyChildren(source.getUnknownXMLObjects(), ((ElementExtensibleXMLObject) target).getUnknownXMLObjects());
+        }
+
+        if (countChildren(xmlObject) != countChildren(target)) {
+            throw new CopyingException("Copier " + getClass().getName() + " did not copy all children of "
+                    + xmlObject.getElementQName());
+        }
+
+        log.trace("Finished copying {}", xmlObject.getElementQName());
+        return target;
+    }
+
+    /**
+     * Copies the type-specific attributes of the original onto the copy.
+     * 
+     * <p>
+     * The default implementation does nothing.
+     * </p>
+     * 
+     * @param source the object being copied
+     * @param target the copy
+     * 
+     * @throws CopyingException thrown if there is a problem copying the attributes
+     */
+    protected void copyAttributes(@Nonnull final XMLObject source, @Nonnull final XMLObject target)
+            throws CopyingException {
+    }
+
+    /**
+     * Copies the text content of the original onto the copy.
+     * 
+     * <p>
+     * The default implementation does nothing.
+     * </p>
+     * 
+     * @param source the object being copied
+     * @param target the copy
+     * 
+     * @throws CopyingException thrown if there is a problem copying the content
+     */
+    protected void copyElementContent(@Nonnull final XMLObject source, @Nonnull final XMLObject target)
+            throws CopyingException {
+    }
+
+    /**
+     * Copies the type-specific child elements of the original onto the copy.
+     * 
+     * <p>
+     * The default implementation does nothing.
+     * </p>
+     * 
+     * @param source the object being copied
+     * @param target the copy
+     * 
+     * @throws CopyingException thrown if there is a problem copying the children
+     */
+    protected void copyChildElements(@Nonnull final XMLObject source, @Nonnull final XMLObject target)
+            throws CopyingException {
+    }
+
+    /**
+     * Copies a single child with the copier registered for it.
+     * 
+     * @param <T> type of the child
+     * @param child the child to copy, may be null
+     * 
+     * @return the copy, or null if the child was null
+     * 
+     * @throws CopyingException thrown if no copier is registered for the child or the child can not be copied
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable protected <T extends XMLObject> T copyChild(@Nullable final T child) throws CopyingException {
+        if (child == null) {
+            return null;
+        }
+
+        final Copier copier = XMLObjectSupport.getCopier(child);
+        if (copier == null) {
+            throw new CopyingException("No copier registered for " + child.getElementQName());
+        }
+
+        return (T) copier.copy(child);
+    }
+
+    /**
+     * Copies each member of a list of children into another list.
+     * 
+     * @param <T> type of the children
+     * @param from the children to copy
+     * @param to the list to add the copies to
+     * 
+     * @throws CopyingException thrown if any of the children can not be copied
+     */
+    protected <T extends XMLObject> void copyChildren(@Nonnull final List<? extends T> from,
+            @Nonnull final List<T> to) throws CopyingException {
+        for (final T child : from) {
+            final T copy = copyChild(child);
+            if (copy != null) {
+                to.add(copy);
+            }
+        }
+    }
+
+    /**
+     * Copies a mutable boolean value so that the copy does not share it with the original.
+     * 
+     * @param value the value to copy, may be null
+     * 
+     * @return the copied value, or null
+     */
+    @Nullable protected XSBooleanValue copyBooleanValue(@Nullable final XSBooleanValue value) {
+        if (value == null) {
+            return null;
+        }
+        return new XSBooleanValue(value.getValue(), value.isNumericRepresentation());
+    }
+
+    /**
+     * Builds the empty object the original will be copied onto.
+     * 
+     * @param xmlObject the object being copied
+     * 
+     * @return the empty copy
+     * 
+     * @throws CopyingException thrown if no builder is registered for the object
+     */
+    @Nonnull private XMLObject buildTarget(@Nonnull final XMLObject xmlObject) throws CopyingException {
+        final QName elementName = xmlObject.getElementQName();
+        final QName schemaType = xmlObject.getSchemaType();
+
+        XMLObjectBuilder<?> builder = null;
+        if (schemaType != null) {
+            builder = XMLObjectProviderRegistrySupport.getBuilderFactory().getBuilder(schemaType);
+        }
+        if (builder == null) {
+            builder = XMLObjectProviderRegistrySupport.getBuilderFactory().getBuilder(elementName);
+        }
+        if (builder == null) {
+            builder = XMLObjectProviderRegistrySupport.getBuilderFactory().getBuilder(
+                    XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+        }
+        if (builder == null) {
+            throw new CopyingException("No builder registered for " + elementName);
+        }
+
+        return builder.buildObject(elementName.getNamespaceURI(), elementName.getLocalPart(),
+                elementName.getPrefix(), schemaType);
+    }
+
+    /**
+     * Counts the non-null children of an object.
+     * 
+     * @param xmlObject the object
+     * 
+     * @return the number of children
+     */
+    private int countChildren(@Nonnull final XMLObject xmlObject) {
+        final List<XMLObject> children = xmlObject.getOrderedChildren();
+        if (children == null) {
+            return 0;
+        }
+
+        int count = 0;
+        for (final XMLObject child : children) {
+            if (child != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
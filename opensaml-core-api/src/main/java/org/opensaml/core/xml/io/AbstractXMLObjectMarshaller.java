@@ -290,10 +290,11 @@ public abstract class AbstractXMLObjectMarshaller implements Marshaller {
     protected void marshallNamespaces(@Nonnull final XMLObject xmlObject, @Nonnull final Element domElement) {
         log.trace("Marshalling namespace attributes for XMLObject {}", xmlObject.getElementQName());
         final Set<Namespace> namespaces = xmlObject.getNamespaces();
+        final Set<Namespace> declarations = xmlObject.getNamespaceManager().getNamespaceDeclarations();
 
         for (final Namespace namespace : namespaces) {
             log.trace("Candidate namespace from getNamespaces(): {}", namespace.toString());
-            if (!xmlObject.getNamespaceManager().getNamespaceDeclarations().contains(namespace)) {
+            if (!declarations.contains(namespace)) {
                 log.trace("NamespaceManager getNamespaceDeclarations() did NOT contain namespace: {}",
                         namespace.toString());
                 if (Objects.equals(namespace.getNamespacePrefix(), XMLConstants.XML_PREFIX)
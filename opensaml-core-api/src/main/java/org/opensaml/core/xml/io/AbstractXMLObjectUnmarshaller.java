@@ -110,7 +110,9 @@ public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
     // Checkstyle: CyclomaticComplexity OFF
     @Override
     @Nonnull public XMLObject unmarshall(@Nonnull final Element domElement) throws UnmarshallingException {
-        log.trace("Starting to unmarshall DOM element {}", QNameSupport.getNodeQName(domElement));
+        if (log.isTraceEnabled()) {
+            log.trace("Starting to unmarshall DOM element {}", QNameSupport.getNodeQName(domElement));
+        }
 
         final XMLObject xmlObject = buildXMLObject(domElement);
 
@@ -0,0 +1,44 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.xml.XMLObject;
+
+/**
+ * Copiers are used to produce a deep copy of a {@link org.opensaml.core.xml.XMLObject} directly, without marshalling
+ * it to and unmarshalling it from a DOM.
+ * 
+ * <p>
+ * The copy has no DOM, and no parent.
+ * </p>
+ * 
+ * @since 5.1.0
+ */
+public interface Copier {
+
+    /**
+     * Copy an object and its children.
+     * 
+     * @param xmlObject the object to copy
+     * 
+     * @return the copy
+     * 
+     * @throws CopyingException thrown if the object, or any of its children, can not be copied
+     */
+    @Nonnull XMLObject copy(@Nonnull final XMLObject xmlObject) throws CopyingException;
+
+}
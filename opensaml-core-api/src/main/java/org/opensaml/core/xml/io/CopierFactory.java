@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+
+import org.opensaml.core.xml.XMLObject;
+import org.slf4j.Logger;
+
+import net.shibboleth.shared.annotation.constraint.NotLive;
+import net.shibboleth.shared.annotation.constraint.Unmodifiable;
+import net.shibboleth.shared.collection.CollectionSupport;
+import net.shibboleth.shared.logic.Constraint;
+import net.shibboleth.shared.primitive.LoggerFactory;
+
+/**
+ * This thread-safe factory holds the {@link Copier}s that can be used to copy {@link XMLObject}s directly. Copiers
+ * are stored and retrieved by a {@link QName} key, which is either the XML Schema Type or element QName of the
+ * XMLObject, as for {@link MarshallerFactory}.
+ * 
+ * <p>
+ * Registering a copier is optional. An object with no registered copier is copied by way of its DOM.
+ * </p>
+ * 
+ * @since 5.1.0
+ */
+public class CopierFactory {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(CopierFactory.class);
+
+    /** Map of copiers to the elements they are for. */
+    @Nonnull private final Map<QName, Copier> copiers;
+
+    /**
+     * Constructor.
+     */
+    public CopierFactory() {
+        copiers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets the Copier for a particular element or null if no copier is registered for an element.
+     * 
+     * @param key the key the copier was registered under
+     * 
+     * @return the Copier or null
+     */
+    @Nullable public Copier getCopier(@Nonnull final QName key) {
+        return copiers.get(key);
+    }
+
+    /**
+     * Retrieves the copier for the given XMLObject. The schema type, if present, is tried first as the key with the
+     * element QName used if no schema type is present or does not have a copier registered under it.
+     * 
+     * @param xmlObject the XMLObject to retrieve the copier for
+     * 
+     * @return the copier that can be used for the given XMLObject, or null
+     */
+    @Nullable public Copier getCopier(@Nonnull final XMLObject xmlObject) {
+        Copier copier = null;
+
+        final QName xsitype = xmlObject.getSchemaType();
+        if (xsitype != null) {
+            copier = getCopier(xsitype);
+        }
+
+        if (copier == null) {
+            copier = getCopier(xmlObject.getElementQName());
+        }
+
+        return copier;
+    }
+
+    /**
+     * Gets an immutable listing of all the Copiers currently registered.
+     * 
+     * @return a listing of all the Copiers currently registered
+     */
+    @Nonnull @Unmodifiable @NotLive public Map<QName, Copier> getCopiers() {
+        return CollectionSupport.copyToMap(copiers);
+    }
+
+    /**
+     * Registers a Copier with this factory. If a Copier exists for the key given it is replaced with the given copier.
+     * 
+     * @param key the key the copier is registered under
+     * @param copier the Copier
+     */
+    public void registerCopier(@Nonnull final QName key, @Nonnull final Copier copier) {
+        Constraint.isNotNull(key, "Copier key cannot be null");
+        Constraint.isNotNull(copier, "Copier cannot be null");
+        log.debug("Registering copier, {}, for object type {}", copier.getClass().getName(), key);
+
+        copiers.put(key, copier);
+    }
+
+    /**
+     * Deregisters the copier for the given element.
+     * 
+     * @param key the key the copier was registered under
+     * 
+     * @return the Copier previously registered or null
+     */
+    @Nullable public Copier deregisterCopier(@Nonnull final QName key) {
+        log.debug("Deregistering copier for object type {}", key);
+        return copiers.remove(key);
+    }
+    
+}
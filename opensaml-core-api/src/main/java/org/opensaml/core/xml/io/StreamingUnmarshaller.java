@@ -0,0 +1,539 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Predicate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.slf4j.Logger;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+import net.shibboleth.shared.logic.Constraint;
+import net.shibboleth.shared.logic.PredicateSupport;
+import net.shibboleth.shared.primitive.LoggerFactory;
+import net.shibboleth.shared.xml.ParserPool;
+import net.shibboleth.shared.xml.QNameSupport;
+import net.shibboleth.shared.xml.XMLConstants;
+import net.shibboleth.shared.xml.XMLParserException;
+
+/**
+ * Unmarshalls a document into an {@link XMLObject} tree directly from a StAX stream, without first parsing the
+ * document into a DOM.
+ * 
+ * <p>
+ * Each element is presented to its {@link AbstractXMLObjectUnmarshaller} as a "skeleton" DOM element holding only
+ * its namespace declarations and attributes, attached to the skeletons of its open ancestors so that prefixes
+ * resolve as usual, and its content is delivered as it is read. A skeleton is discarded when its element ends, so
+ * the DOM held at any time is limited to the path from the document element to the current position. The
+ * resulting objects have no cached DOM, just as if it had been released after unmarshalling.
+ * </p>
+ * 
+ * <p>
+ * An element is instead parsed into a DOM of its own, with all the namespace declarations in scope at that point,
+ * and unmarshalled from it in the usual way, if its unmarshaller is not derived from
+ * {@link AbstractXMLObjectUnmarshaller} or overrides its traversal of the DOM, or if the object built for it meets
+ * the DOM retention condition. Such objects retain their DOM. Validating a signature requires the DOM of the signed
+ * element, so a caller that will validate signatures should supply a condition selecting the objects that may be
+ * signed; a signature read within a streamed element cannot be validated.
+ * </p>
+ * 
+ * @since 5.1.0
+ */
+@ThreadSafe
+public final class StreamingUnmarshaller {
+
+    /** Whether each unmarshaller class can be driven from the stream, rather than from a DOM. */
+    @Nonnull private static final ClassValue<Boolean> STREAMABLE = new ClassValue<>() {
+        /** {@inheritDoc} */
+        protected Boolean computeValue(final Class<?> type) {
+            return AbstractXMLObjectUnmarshaller.class.isAssignableFrom(type)
+                    && !overrides(type, "unmarshall", Element.class)
+                    && !overrides(type, "unmarshallChildElement", XMLObject.class, Element.class);
+        }
+    };
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(StreamingUnmarshaller.class);
+
+    /** Source of DOM documents. */
+    @Nonnull private final ParserPool parserPool;
+
+    /** Source of unmarshallers. */
+    @Nonnull private final UnmarshallerFactory unmarshallerFactory;
+
+    /** Condition selecting the objects to be unmarshalled from, and to retain, a DOM. */
+    @Nonnull private final Predicate<XMLObject> domRetentionCondition;
+
+    /** Factory for stream readers. */
+    @Nonnull private final XMLInputFactory inputFactory;
+
+    /**
+     * Constructor.
+     *
+     * @param pool the parser pool used to create DOM documents
+     * @param factory the unmarshaller factory
+     */
+    public StreamingUnmarshaller(@Nonnull final ParserPool pool, @Nonnull final UnmarshallerFactory factory) {
+        this(pool, factory, PredicateSupport.alwaysFalse());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pool the parser pool used to create DOM documents
+     * @param factory the unmarshaller factory
+     * @param condition condition selecting the objects to be unmarshalled from, and to retain, a DOM
+     */
+    public StreamingUnmarshaller(@Nonnull final ParserPool pool, @Nonnull final UnmarshallerFactory factory,
+            @Nonnull final Predicate<XMLObject> condition) {
+        parserPool = Constraint.isNotNull(pool, "ParserPool cannot be null");
+        unmarshallerFactory = Constraint.isNotNull(factory, "UnmarshallerFactory cannot be null");
+        domRetentionCondition = Constraint.isNotNull(condition, "DOM retention condition cannot be null");
+
+        inputFactory = XMLInputFactory.newFactory();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Unmarshall a document.
+     *
+     * @param input the document
+     *
+     * @return the object for the document element
+     *
+     * @throws UnmarshallingException if the document cannot be parsed or unmarshalled
+     */
+    @Nonnull public XMLObject unmarshall(@Nonnull final InputStream input) throws UnmarshallingException {
+        Constraint.isNotNull(input, "Input cannot be null");
+
+        final XMLStreamReader reader;
+        try {
+            reader = inputFactory.createXMLStreamReader(input);
+        } catch (final XMLStreamException e) {
+            throw new UnmarshallingException("Unable to read document", e);
+        }
+
+        try {
+            return new Parse(reader).run();
+        } catch (final XMLStreamException | XMLParserException | DOMException e) {
+            throw new UnmarshallingException("Unable to read document", e);
+        } finally {
+            try {
+                reader.close();
+            } catch (final XMLStreamException e) {
+                log.debug("Error closing stream reader", e);
+            }
+        }
+    }
+
+    /**
+     * Get the unmarshaller for an element, falling back to that of the default provider.
+     *
+     * @param element the element
+     *
+     * @return the unmarshaller
+     *
+     * @throws UnmarshallingException if no unmarshaller is available
+     */
+    @Nonnull private Unmarshaller getUnmarshaller(@Nonnull final Element element) throws UnmarshallingException {
+        Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(element);
+        if (unmarshaller == null) {
+            unmarshaller = unmarshallerFactory.getUnmarshaller(
+                    XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+            if (unmarshaller == null) {
+                throw new UnmarshallingException("No unmarshaller available for "
+                        + QNameSupport.getNodeQName(element));
+            }
+        }
+        return unmarshaller;
+    }
+
+    /** State of an element being unmarshalled from the stream. */
+    private static final class Frame {
+
+        /** The element's unmarshaller. */
+        @Nonnull private final AbstractXMLObjectUnmarshaller unmarshaller;
+
+        /** The object being unmarshalled. */
+        @Nonnull private final XMLObject xmlObject;
+
+        /** The skeleton DOM element. */
+        @Nonnull private final Element skeleton;
+
+        /** Character data read since the start tag or the last child. */
+        @Nullable private StringBuilder text;
+
+        /**
+         * Constructor.
+         *
+         * @param elementUnmarshaller the element's unmarshaller
+         * @param object the object being unmarshalled
+         * @param skeletonElement the skeleton DOM element
+         */
+        Frame(@Nonnull final AbstractXMLObjectUnmarshaller elementUnmarshaller, @Nonnull final XMLObject object,
+                @Nonnull final Element skeletonElement) {
+            unmarshaller = elementUnmarshaller;
+            xmlObject = object;
+            skeleton = skeletonElement;
+        }
+    }
+
+    /** The state of a single parse. */
+    private final class Parse {
+
+        /** The reader. */
+        @Nonnull private final XMLStreamReader reader;
+
+        /** The document holding the skeleton elements. */
+        @Nullable private Document skeletonDocument;
+
+        /** The elements being unmarshalled from the stream, innermost first. */
+        @Nonnull private final Deque<Frame> frames;
+
+        /** The DOM node to which content is being added, if any. */
+        @Nullable private Node domParent;
+
+        /** Depth of the current position within the DOM being built. */
+        private int domDepth;
+
+        /** The object for the document element, once unmarshalled. */
+        @Nullable private XMLObject result;
+
+        /**
+         * Constructor.
+         *
+         * @param streamReader the reader
+         */
+        Parse(@Nonnull final XMLStreamReader streamReader) {
+            reader = streamReader;
+            frames = new ArrayDeque<>();
+        }
+
+        /**
+         * Read the document.
+         *
+         * @return the object for the document element
+         *
+         * @throws XMLStreamException if the document cannot be parsed
+         * @throws XMLParserException if a DOM document cannot be created
+         * @throws UnmarshallingException if an element cannot be unmarshalled
+         */
+        @Nonnull XMLObject run() throws XMLStreamException, XMLParserException, UnmarshallingException {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        startElement();
+                        break;
+
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement();
+                        break;
+
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        characters(reader.getText());
+                        break;
+
+                    case XMLStreamConstants.DTD:
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        throw new XMLStreamException("DOCTYPE declarations and entity references are not supported",
+                                reader.getLocation());
+
+                    default:
+                        // Comments and processing instructions are ignored, as they are when unmarshalling a DOM.
+                        break;
+                }
+            }
+
+            final XMLObject xmlObject = result;
+            if (xmlObject == null) {
+                throw new XMLStreamException("Document contained no root element");
+            }
+            return xmlObject;
+        }
+
+        /**
+         * Process the start of an element.
+         *
+         * @throws XMLParserException if a DOM document cannot be created
+         * @throws UnmarshallingException if the element cannot be unmarshalled
+         */
+        private void startElement() throws XMLParserException, UnmarshallingException {
+            final Node parent = domParent;
+            if (parent != null) {
+                final Element element = createElement(parent.getOwnerDocument(), null);
+                parent.appendChild(element);
+                domParent = element;
+                domDepth++;
+                return;
+            }
+
+            final Frame parentFrame = frames.peek();
+            final Node skeletonParent;
+            if (parentFrame != null) {
+                flushText(parentFrame);
+                skeletonParent = parentFrame.skeleton;
+            } else {
+                skeletonParent = ensureSkeletonDocument();
+            }
+            final Element skeleton = createElement(ensureSkeletonDocument(), null);
+            skeletonParent.appendChild(skeleton);
+
+            final Unmarshaller unmarshaller = getUnmarshaller(skeleton);
+            if (unmarshaller instanceof AbstractXMLObjectUnmarshaller streamable
+                    && STREAMABLE.get(unmarshaller.getClass())) {
+                final XMLObject xmlObject = streamable.buildXMLObject(skeleton);
+                if (!domRetentionCondition.test(xmlObject)) {
+                    final NamedNodeMap attributes = skeleton.getAttributes();
+                    for (int i = 0; i < attributes.getLength(); i++) {
+                        streamable.unmarshallAttribute(xmlObject, (Attr) attributes.item(i));
+                    }
+                    frames.push(new Frame(streamable, xmlObject, skeleton));
+                    return;
+                }
+            }
+
+            // Build a DOM for the element instead, declaring the namespaces it inherits.
+            skeletonParent.removeChild(skeleton);
+            final Document document = parserPool.newDocument();
+            final Element element =
+                    createElement(document, parentFrame != null ? parentFrame.skeleton : null);
+            document.appendChild(element);
+            domParent = element;
+            domDepth = 1;
+        }
+
+        /**
+         * Process the end of an element.
+         *
+         * @throws UnmarshallingException if the element cannot be unmarshalled
+         */
+        private void endElement() throws UnmarshallingException {
+            final Node parent = domParent;
+            if (parent != null) {
+                if (--domDepth > 0) {
+                    domParent = parent.getParentNode();
+                    return;
+                }
+                domParent = null;
+                final Element element = (Element) parent;
+                complete(getUnmarshaller(element).unmarshall(element));
+                return;
+            }
+
+            final Frame frame = frames.pop();
+            flushText(frame);
+            final Node skeletonParent = frame.skeleton.getParentNode();
+            if (skeletonParent != null) {
+                skeletonParent.removeChild(frame.skeleton);
+            }
+            complete(frame.xmlObject);
+        }
+
+        /**
+         * Process character data.
+         *
+         * @param text the characters
+         */
+        private void characters(@Nonnull final String text) {
+            final Node parent = domParent;
+            if (parent != null) {
+                final Node last = parent.getLastChild();
+                if (last instanceof Text lastText) {
+                    lastText.appendData(text);
+                } else {
+                    parent.appendChild(parent.getOwnerDocument().createTextNode(text));
+                }
+                return;
+            }
+
+            final Frame frame = frames.peek();
+            if (frame != null) {
+                if (frame.text == null) {
+                    frame.text = new StringBuilder(text);
+                } else {
+                    frame.text.append(text);
+                }
+            }
+        }
+
+        /**
+         * Deliver the character data read for an element as a text node, as it would appear in a DOM.
+         *
+         * @param frame the element's state
+         *
+         * @throws UnmarshallingException if the content cannot be unmarshalled
+         */
+        private void flushText(@Nonnull final Frame frame) throws UnmarshallingException {
+            final StringBuilder text = frame.text;
+            if (text == null) {
+                return;
+            }
+            frame.text = null;
+
+            final Text content = frame.skeleton.getOwnerDocument().createTextNode(text.toString());
+            frame.skeleton.appendChild(content);
+            frame.unmarshaller.unmarshallTextContent(frame.xmlObject, content);
+            frame.skeleton.removeChild(content);
+        }
+
+        /**
+         * Hand a completed object to the unmarshaller of its parent, or record it as the result.
+         *
+         * @param xmlObject the completed object
+         *
+         * @throws UnmarshallingException if the parent cannot accept the object
+         */
+        private void complete(@Nonnull final XMLObject xmlObject) throws UnmarshallingException {
+            final Frame parentFrame = frames.peek();
+            if (parentFrame == null) {
+                result = xmlObject;
+            } else {
+                parentFrame.unmarshaller.processChildElement(parentFrame.xmlObject, xmlObject);
+            }
+        }
+
+        /**
+         * Get the document holding the skeleton elements, creating it if necessary.
+         *
+         * @return the document
+         *
+         * @throws XMLParserException if the document cannot be created
+         */
+        @Nonnull private Document ensureSkeletonDocument() throws XMLParserException {
+            Document document = skeletonDocument;
+            if (document == null) {
+                document = parserPool.newDocument();
+                skeletonDocument = document;
+            }
+            return document;
+        }
+
+        /**
+         * Create a DOM element for the current start tag.
+         *
+         * @param document the owning document
+         * @param scope the element whose namespaces in scope are to be declared on the new element, if any
+         *
+         * @return the element
+         */
+        @Nonnull private Element createElement(@Nonnull final Document document, @Nullable final Element scope) {
+            final String prefix = reader.getPrefix();
+            final Element element = document.createElementNS(nullIfEmpty(reader.getNamespaceURI()),
+                    qualify(prefix, reader.getLocalName()));
+
+            final int namespaceCount = reader.getNamespaceCount();
+            for (int i = 0; i < namespaceCount; i++) {
+                final String namespacePrefix = reader.getNamespacePrefix(i);
+                final String namespaceURI = reader.getNamespaceURI(i);
+                element.setAttributeNS(XMLConstants.XMLNS_NS,
+                        namespacePrefix == null || namespacePrefix.isEmpty() ? XMLConstants.XMLNS_PREFIX
+                                : XMLConstants.XMLNS_PREFIX + ':' + namespacePrefix,
+                        namespaceURI != null ? namespaceURI : "");
+            }
+
+            Node ancestor = scope;
+            while (ancestor instanceof Element ancestorElement) {
+                final NamedNodeMap attributes = ancestorElement.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    final Attr attribute = (Attr) attributes.item(i);
+                    if (XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())
+                            && !element.hasAttributeNS(XMLConstants.XMLNS_NS, attribute.getLocalName())) {
+                        element.setAttributeNS(XMLConstants.XMLNS_NS, attribute.getName(), attribute.getValue());
+                    }
+                }
+                ancestor = ancestor.getParentNode();
+            }
+
+            final int attributeCount = reader.getAttributeCount();
+            for (int i = 0; i < attributeCount; i++) {
+                element.setAttributeNS(nullIfEmpty(reader.getAttributeNamespace(i)),
+                        qualify(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                        reader.getAttributeValue(i));
+            }
+
+            return element;
+        }
+    }
+
+    /**
+     * Check whether an unmarshaller class overrides a method of {@link AbstractXMLObjectUnmarshaller}.
+     *
+     * @param type the unmarshaller class
+     * @param name the method name
+     * @param parameterTypes the method's parameter types
+     *
+     * @return true iff the class or a superclass below {@link AbstractXMLObjectUnmarshaller} declares the method
+     */
+    private static boolean overrides(@Nonnull final Class<?> type, @Nonnull final String name,
+            @Nonnull final Class<?>... parameterTypes) {
+        Class<?> current = type;
+        while (current != null && current != AbstractXMLObjectUnmarshaller.class) {
+            try {
+                current.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (final NoSuchMethodException e) {
+                current = current.getSuperclass();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Form a qualified name.
+     *
+     * @param prefix the prefix, if any
+     * @param localName the local name
+     *
+     * @return the qualified name
+     */
+    @Nonnull private static String qualify(@Nullable final String prefix, @Nonnull final String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+    }
+
+    /**
+     * Convert the empty string to null.
+     *
+     * @param s the string
+     *
+     * @return the string, or null
+     */
+    @Nullable private static String nullIfEmpty(@Nullable final String s) {
+        return s == null || s.isEmpty() ? null : s;
+    }
+
+}
@@ -26,10 +26,10 @@ import net.shibboleth.shared.annotation.constraint.Unmodifiable;
 import net.shibboleth.shared.collection.CollectionSupport;
 import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.primitive.LoggerFactory;
-import net.shibboleth.shared.xml.DOMTypeSupport;
 import net.shibboleth.shared.xml.QNameSupport;
 
 import org.opensaml.core.xml.XMLRuntimeException;
+import org.opensaml.core.xml.util.ProviderLookupCache;
 import org.slf4j.Logger;
 import org.w3c.dom.Element;
 
@@ -47,11 +47,15 @@ public class UnmarshallerFactory {
     /** Map of unmarshallers to the elements they are for. */
     @Nonnull private final Map<QName, Unmarshaller> unmarshallers;
 
+    /** Cache of unmarshallers resolved for DOM elements. */
+    @Nonnull private final ProviderLookupCache<Unmarshaller> lookupCache;
+
     /**
      * Constructor.
      */
     public UnmarshallerFactory() {
         unmarshallers = new ConcurrentHashMap<>();
+        lookupCache = new ProviderLookupCache<>(unmarshallers::get);
     }
 
     /**
@@ -74,18 +78,7 @@ public class UnmarshallerFactory {
      * @return the unmarshaller for the XMLObject the given element can be unmarshalled into
      */
     @Nullable public Unmarshaller getUnmarshaller(@Nonnull final Element domElement) {
-        Unmarshaller unmarshaller = null;
-
-        final QName xsitype = DOMTypeSupport.getXSIType(domElement);
-        if (xsitype != null) {
-            unmarshaller = getUnmarshaller(xsitype);
-        }
-
-        if (unmarshaller == null) {
-            unmarshaller = getUnmarshaller(QNameSupport.getNodeQName(domElement));
-        }
-
-        return unmarshaller;
+        return lookupCache.get(domElement);
     }
     
     /**
@@ -149,6 +142,7 @@ public class UnmarshallerFactory {
         log.debug("Registering unmarshaller, {}, for object type, {}", unmarshaller.getClass().getName(), key);
         
         unmarshallers.put(key, unmarshaller);
+        lookupCache.invalidate();
     }
 
     /**
@@ -160,7 +154,9 @@ public class UnmarshallerFactory {
      */
     @Nullable public Unmarshaller deregisterUnmarshaller(@Nonnull final QName key) {
         log.debug("Deregistering marshaller for object type {}", key);
-        return unmarshallers.remove(key);
+        final Unmarshaller unmarshaller = unmarshallers.remove(key);
+        lookupCache.invalidate();
+        return unmarshaller;
     }
 
 }
\ No newline at end of file
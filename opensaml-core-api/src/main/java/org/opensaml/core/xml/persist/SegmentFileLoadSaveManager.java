@@ -0,0 +1,802 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.core.xml.persist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSource;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.slf4j.Logger;
+
+import net.shibboleth.shared.annotation.ParameterName;
+import net.shibboleth.shared.annotation.constraint.NotLive;
+import net.shibboleth.shared.annotation.constraint.Unmodifiable;
+import net.shibboleth.shared.collection.CollectionSupport;
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.logic.Constraint;
+import net.shibboleth.shared.primitive.LoggerFactory;
+import net.shibboleth.shared.primitive.StringSupport;
+import net.shibboleth.shared.xml.ParserPool;
+import net.shibboleth.shared.xml.XMLParserException;
+
+/**
+ * Implementation of {@link XMLObjectLoadSaveManager} which stores serialized XML as records in a single
+ * append-only segment file, read through a memory mapping.
+ * 
+ * <p>
+ * Each record carries, alongside the serialized XML, its key, an optional name (for example an entityID) and
+ * an optional expiration instant, produced by the supplied strategy functions when the object is saved.
+ * Opening the file only scans the record headers to build an in-memory index, so the cost of startup does not
+ * depend on the size of the stored objects, and no object is parsed until it is first loaded. Expired records
+ * are treated as absent without being parsed at all.
+ * </p>
+ * 
+ * <p>
+ * Saving, removing and re-keying append new records; superseded records are reclaimed by {@link #compact()},
+ * which is also run when the file is opened if more than half of it is unused. A record left incomplete by a
+ * failed write is discarded when the file is next opened.
+ * </p>
+ * 
+ * <p>
+ * The mapping is limited to 2GB and some platforms cannot replace a file which is mapped, so this is suited to
+ * caches of moderate size on POSIX systems.
+ * </p>
+ *
+ * @param <T> the specific base XML object type being managed
+ * 
+ * @since 5.1.0
+ */
+@ThreadSafe
+public class SegmentFileLoadSaveManager<T extends XMLObject> implements XMLObjectLoadSaveManager<T> {
+    
+    /** Value identifying the file format. */
+    private static final int FILE_MAGIC = 0x4f534d53;
+    
+    /** Version of the file format. */
+    private static final int FILE_VERSION = 1;
+    
+    /** Length of the file header. */
+    private static final int FILE_HEADER_LENGTH = 8;
+    
+    /** Value at the start of every record. */
+    private static final int RECORD_MAGIC = 0x52454331;
+    
+    /** Record type of a stored object. */
+    private static final byte TYPE_OBJECT = 1;
+    
+    /** Record type of a removal. */
+    private static final byte TYPE_REMOVAL = 2;
+    
+    /** Length of the fixed part of a record header: magic, type, expiration and key length. */
+    private static final int RECORD_HEADER_LENGTH = 17;
+    
+    /** Logger. */
+    @Nonnull private Logger log = LoggerFactory.getLogger(SegmentFileLoadSaveManager.class);
+    
+    /** The segment file. */
+    @Nonnull private final File segmentFile;
+    
+    /** Parser pool instance for deserializing XML. */
+    @Nonnull private final ParserPool parserPool;
+    
+    /** Optional strategy producing the name stored with an object. */
+    @Nullable private final Function<? super T,String> nameStrategy;
+    
+    /** Optional strategy producing the instant after which a stored object is treated as absent. */
+    @Nullable private final Function<? super T,Instant> expirationStrategy;
+    
+    /** Index of the live records by key. */
+    @Nonnull private final Map<String,Record> index;
+    
+    /** Channel used to append to the file, or null if not open. */
+    @Nullable private FileChannel channel;
+    
+    /** Read-only mapping of the file, or null if not yet mapped. */
+    @Nullable private MappedByteBuffer mapping;
+    
+    /** Length of the file. */
+    private long fileLength;
+    
+    /** Number of bytes in the file occupied by superseded records. */
+    private long garbageLength;
+
+    /**
+     * Constructor.
+     * 
+     * <p>Objects are stored without a name or expiration.</p>
+     *
+     * @param file the segment file, created if it does not exist
+     */
+    public SegmentFileLoadSaveManager(@ParameterName(name="segmentFile") @Nonnull final File file) {
+        this(file, null, null, null);
+    }
+    
+    /**
+     * Constructor.
+     *
+     * @param file the segment file, created if it does not exist
+     * @param pp the parser pool instance to use
+     * @param nameFunction strategy producing the name stored with an object, may be null
+     * @param expirationFunction strategy producing the instant after which a stored object is treated as absent,
+     *          may be null
+     */
+    public SegmentFileLoadSaveManager(
+            @ParameterName(name="segmentFile") @Nonnull final File file,
+            @ParameterName(name="parserPool") @Nullable final ParserPool pp,
+            @ParameterName(name="nameStrategy") @Nullable final Function<? super T,String> nameFunction,
+            @ParameterName(name="expirationStrategy") @Nullable final Function<? super T,Instant> expirationFunction) {
+        
+        segmentFile = Constraint.isNotNull(file, "Segment file was null");
+        Constraint.isTrue(segmentFile.isAbsolute(), "Segment file specified was not an absolute path");
+        Constraint.isFalse(segmentFile.isDirectory(), "Segment file specified was a directory");
+        
+        if (pp != null) {
+            parserPool = pp;
+        } else {
+            parserPool = Constraint.isNotNull(XMLObjectProviderRegistrySupport.getParserPool(),
+                    "Specified ParserPool was null and global ParserPool was not available");
+        }
+        
+        nameStrategy = nameFunction;
+        expirationStrategy = expirationFunction;
+        index = new HashMap<>();
+    }
+    
+    /**
+     * Get whether a name is stored with each saved object.
+     * 
+     * @return true iff this manager was supplied with a name strategy
+     */
+    public boolean isStoringNames() {
+        return nameStrategy != null;
+    }
+    
+    /** {@inheritDoc} */
+    @Nonnull @NotLive @Unmodifiable public synchronized Set<String> listKeys() throws IOException {
+        ensureOpen();
+        final long now = System.currentTimeMillis();
+        return index.entrySet().stream()
+                .filter(e -> !e.getValue().isExpired(now))
+                .map(Map.Entry::getKey)
+                .collect(CollectionSupport.nonnullCollector(Collectors.toUnmodifiableSet())).get();
+    }
+    
+    /**
+     * Get the names stored with the unexpired objects, indexed by key.
+     * 
+     * <p>This is answered from the index alone, without loading any object.</p>
+     * 
+     * @return map of key to name, with a null value for objects stored without a name
+     * 
+     * @throws IOException if the segment file cannot be opened
+     */
+    @Nonnull @NotLive @Unmodifiable public synchronized Map<String,String> listKeysByName() throws IOException {
+        ensureOpen();
+        final long now = System.currentTimeMillis();
+        final Map<String,String> names = new LinkedHashMap<>();
+        for (final Map.Entry<String,Record> entry : index.entrySet()) {
+            if (!entry.getValue().isExpired(now)) {
+                names.put(entry.getKey(), entry.getValue().name);
+            }
+        }
+        return Collections.unmodifiableMap(names);
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull @NotLive @Unmodifiable public Iterable<Pair<String,T>> listAll() throws IOException {
+        final List<String> keys = new ArrayList<>(listKeys());
+        return () -> new RecordIterator(keys.iterator());
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean exists(@Nonnull final String key) throws IOException {
+        ensureOpen();
+        final Record record = index.get(key);
+        return record != null && !record.isExpired(System.currentTimeMillis());
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public T load(@Nonnull final String key) throws IOException {
+        final byte[] source = readPayload(key);
+        if (source == null) {
+            log.debug("Record with key '{}' does not exist in segment file: {}", key, segmentFile.getAbsolutePath());
+            return null;
+        }
+        
+        try (final ByteArrayInputStream bais = new ByteArrayInputStream(source)) {
+            final XMLObject xmlObject = XMLObjectSupport.unmarshallFromInputStream(parserPool, bais);
+            xmlObject.getObjectMetadata().put(new XMLObjectSource(source));
+            return (T) xmlObject;
+        } catch (final XMLParserException | UnmarshallingException e) {
+            throw new IOException(String.format("Error loading record with key '%s' from segment file: %s",
+                    key, segmentFile.getAbsolutePath()), e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void save(@Nonnull final String key, @Nonnull final T xmlObject) throws IOException {
+        save(key, xmlObject, false);
+    }
+
+    /** {@inheritDoc} */
+    public void save(@Nonnull final String key, @Nonnull final T xmlObject, final boolean overwrite)
+            throws IOException {
+        final String trimmedKey = Constraint.isNotNull(StringSupport.trimOrNull(key), "Input key was null or empty");
+        
+        // Serialize outside the lock.
+        final byte[] payload;
+        final List<XMLObjectSource> sources = xmlObject.getObjectMetadata().get(XMLObjectSource.class);
+        if (sources.size() == 1) {
+            log.debug("XMLObject contained 1 XMLObjectSource instance, persisting existing byte[]");
+            payload = sources.get(0).getObjectSource();
+        } else {
+            log.debug("XMLObject contained {} XMLObjectSource instances, persisting marshalled object", 
+                    sources.size());
+            try (final ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+                XMLObjectSupport.marshallToOutputStream(xmlObject, baos);
+                payload = baos.toByteArray();
+            } catch (final MarshallingException e) {
+                throw new IOException(String.format("Error saving record with key '%s' to segment file: %s",
+                        trimmedKey, segmentFile.getAbsolutePath()), e);
+            }
+        }
+        
+        final String name = nameStrategy != null ? nameStrategy.apply(xmlObject) : null;
+        final Instant expiration = expirationStrategy != null ? expirationStrategy.apply(xmlObject) : null;
+        
+        synchronized (this) {
+            if (!overwrite && exists(trimmedKey)) {
+                throw new IOException(
+                        String.format("Record already exists for key '%s' and overwrite not indicated", trimmedKey));
+            }
+            append(TYPE_OBJECT, trimmedKey, name, expiration != null ? Math.max(1, expiration.toEpochMilli()) : 0,
+                    payload);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean remove(@Nonnull final String key) throws IOException {
+        if (!exists(key)) {
+            return false;
+        }
+        append(TYPE_REMOVAL, key, null, 0, null);
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean updateKey(@Nonnull final String currentKey, @Nonnull final String newKey)
+            throws IOException {
+        if (!exists(currentKey)) {
+            return false;
+        }
+        final String trimmedKey = Constraint.isNotNull(StringSupport.trimOrNull(newKey), "New key was null or empty");
+        if (exists(trimmedKey)) {
+            throw new IOException(String.format("Specified new key already exists: %s", trimmedKey));
+        }
+        
+        final Record record = index.get(currentKey);
+        assert record != null;
+        append(TYPE_OBJECT, trimmedKey, record.name, record.expiration, readPayload(record));
+        append(TYPE_REMOVAL, currentKey, null, 0, null);
+        return true;
+    }
+    
+    /**
+     * Rewrite the segment file so that it contains only the unexpired live records.
+     * 
+     * @throws IOException if the file cannot be rewritten
+     */
+    public synchronized void compact() throws IOException {
+        ensureOpen();
+        final FileChannel current = channel;
+        assert current != null;
+        
+        final File temp = new File(segmentFile.getAbsolutePath() + ".compact");
+        final long now = System.currentTimeMillis();
+        final Map<String,Record> compacted = new HashMap<>();
+        long length = FILE_HEADER_LENGTH;
+        try (final FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, fileHeader());
+            for (final Map.Entry<String,Record> entry : index.entrySet()) {
+                final Record record = entry.getValue();
+                if (record.isExpired(now)) {
+                    continue;
+                }
+                final ByteBuffer buffer = encode(TYPE_OBJECT, entry.getKey(), record.name, record.expiration,
+                        readPayload(record));
+                final int recordLength = buffer.remaining();
+                writeFully(out, buffer);
+                compacted.put(entry.getKey(), new Record(length + recordLength - record.payloadLength,
+                        record.payloadLength, recordLength, record.name, record.expiration));
+                length += recordLength;
+            }
+            out.force(true);
+        }
+        
+        current.close();
+        channel = null;
+        mapping = null;
+        Files.move(temp.toPath(), segmentFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        
+        log.debug("Compacted segment file {} from {} to {} bytes", segmentFile.getAbsolutePath(), fileLength,
+                length);
+        index.clear();
+        index.putAll(compacted);
+        fileLength = length;
+        garbageLength = 0;
+    }
+    
+    /**
+     * Close the segment file.
+     * 
+     * <p>It will be reopened if the manager is used again.</p>
+     * 
+     * @throws IOException if the file cannot be closed
+     */
+    public synchronized void close() throws IOException {
+        mapping = null;
+        index.clear();
+        if (channel != null) {
+            try {
+                channel.close();
+            } finally {
+                channel = null;
+            }
+        }
+    }
+    
+    /**
+     * Open the segment file if necessary, building the index from its record headers.
+     * 
+     * @throws IOException if the file cannot be opened, or is not a segment file
+     */
+    private void ensureOpen() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        
+        final File parent = segmentFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException(String.format("Could not create parent directory of segment file: %s",
+                    segmentFile.getAbsolutePath()));
+        }
+        
+        final FileChannel opened = FileChannel.open(segmentFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (opened.size() == 0) {
+                writeFully(opened, fileHeader());
+                fileLength = FILE_HEADER_LENGTH;
+            } else {
+                fileLength = scan(opened);
+            }
+        } catch (final IOException e) {
+            index.clear();
+            opened.close();
+            throw e;
+        }
+        channel = opened;
+        
+        log.debug("Opened segment file {} with {} records", segmentFile.getAbsolutePath(), index.size());
+        if (garbageLength > fileLength / 2) {
+            compact();
+        }
+    }
+    
+    /**
+     * Build the index by scanning the record headers, discarding any incomplete record at the end of the file.
+     * 
+     * @param in the channel to scan
+     * 
+     * @return the length of the complete records
+     * 
+     * @throws IOException if the file cannot be read, or is not a segment file
+     */
+    private long scan(@Nonnull final FileChannel in) throws IOException {
+        final long size = in.size();
+        final ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+        if (in.read(fileHeader, 0) != FILE_HEADER_LENGTH || fileHeader.getInt(0) != FILE_MAGIC) {
+            throw new IOException(String.format("File is not a segment file: %s", segmentFile.getAbsolutePath()));
+        } else if (fileHeader.getInt(4) != FILE_VERSION) {
+            throw new IOException(String.format("Segment file has unsupported version %d: %s",
+                    fileHeader.getInt(4), segmentFile.getAbsolutePath()));
+        }
+        
+        index.clear();
+        garbageLength = 0;
+        long position = FILE_HEADER_LENGTH;
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+        while (position < size) {
+            try {
+                header.clear();
+                readFully(in, header, position);
+                if (header.getInt(0) != RECORD_MAGIC) {
+                    throw new EOFException("Record header is invalid");
+                }
+                final byte type = header.get(4);
+                final long expiration = header.getLong(5);
+                final int keyLength = header.getInt(13);
+                long cursor = position + RECORD_HEADER_LENGTH;
+                final String key = readString(in, cursor, keyLength, size);
+                cursor += keyLength;
+                final int nameLength = readInt(in, cursor, size);
+                cursor += 4;
+                final String name = nameLength < 0 ? null : readString(in, cursor, nameLength, size);
+                cursor += Math.max(0, nameLength);
+                final int payloadLength = readInt(in, cursor, size);
+                cursor += 4;
+                if (payloadLength < 0 || cursor + payloadLength > size) {
+                    throw new EOFException("Record payload is truncated");
+                }
+                cursor += payloadLength;
+                
+                final Record previous;
+                if (type == TYPE_OBJECT) {
+                    previous = index.put(key,
+                            new Record(cursor - payloadLength, payloadLength, cursor - position, name, expiration));
+                } else if (type == TYPE_REMOVAL) {
+                    previous = index.remove(key);
+                    garbageLength += cursor - position;
+                } else {
+                    throw new EOFException("Record type is invalid");
+                }
+                if (previous != null) {
+                    garbageLength += previous.recordLength;
+                }
+                position = cursor;
+            } catch (final EOFException e) {
+                log.warn("Segment file {} has an incomplete or corrupt record at offset {}, discarding {} bytes",
+                        segmentFile.getAbsolutePath(), position, size - position);
+                in.truncate(position);
+                break;
+            }
+        }
+        return position;
+    }
+    
+    /**
+     * Append a record to the file and update the index.
+     * 
+     * @param type the record type
+     * @param key the record key
+     * @param name the name stored with the object, or null
+     * @param expiration the expiration in milliseconds since the epoch, or 0
+     * @param payload the serialized object, or null for a removal
+     * 
+     * @throws IOException if the record cannot be written
+     */
+    private void append(final byte type, @Nonnull final String key, @Nullable final String name,
+            final long expiration, @Nullable final byte[] payload) throws IOException {
+        ensureOpen();
+        final FileChannel out = channel;
+        assert out != null;
+        
+        final ByteBuffer buffer = encode(type, key, name, expiration, payload);
+        final int recordLength = buffer.remaining();
+        if (fileLength + recordLength > Integer.MAX_VALUE) {
+            throw new IOException(String.format("Segment file would exceed its maximum size: %s",
+                    segmentFile.getAbsolutePath()));
+        }
+        try {
+            while (buffer.hasRemaining()) {
+                out.write(buffer, fileLength + buffer.position());
+            }
+        } catch (final IOException e) {
+            // Don't leave a partial record for subsequent appends to follow.
+            out.truncate(fileLength);
+            throw e;
+        }
+        
+        final Record previous;
+        if (type == TYPE_OBJECT) {
+            assert payload != null;
+            previous = index.put(key, new Record(fileLength + recordLength - payload.length, payload.length,
+                    recordLength, name, expiration));
+        } else {
+            previous = index.remove(key);
+            garbageLength += recordLength;
+        }
+        if (previous != null) {
+            garbageLength += previous.recordLength;
+        }
+        fileLength += recordLength;
+    }
+    
+    /**
+     * Copy the serialized object with the given key out of the mapped file.
+     * 
+     * @param key the record key
+     * 
+     * @return the serialized object, or null if there is no unexpired record with that key
+     * 
+     * @throws IOException if the file cannot be read
+     */
+    @Nullable private synchronized byte[] readPayload(@Nonnull final String key) throws IOException {
+        ensureOpen();
+        final Record record = index.get(key);
+        if (record == null || record.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return readPayload(record);
+    }
+    
+    /**
+     * Copy the serialized object of a record out of the mapped file.
+     * 
+     * @param record the record
+     * 
+     * @return the serialized object
+     * 
+     * @throws IOException if the file cannot be read
+     */
+    @Nonnull private byte[] readPayload(@Nonnull final Record record) throws IOException {
+        MappedByteBuffer current = mapping;
+        if (current == null || current.capacity() < record.payloadOffset + record.payloadLength) {
+            final FileChannel in = channel;
+            assert in != null;
+            current = in.map(FileChannel.MapMode.READ_ONLY, 0, fileLength);
+            mapping = current;
+        }
+        final byte[] payload = new byte[record.payloadLength];
+        current.get((int) record.payloadOffset, payload);
+        return payload;
+    }
+    
+    /**
+     * Encode a record.
+     * 
+     * @param type the record type
+     * @param key the record key
+     * @param name the name stored with the object, or null
+     * @param expiration the expiration in milliseconds since the epoch, or 0
+     * @param payload the serialized object, or null for a removal
+     * 
+     * @return buffer ready to be written
+     */
+    @Nonnull private static ByteBuffer encode(final byte type, @Nonnull final String key, @Nullable final String name,
+            final long expiration, @Nullable final byte[] payload) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final byte[] nameBytes = name != null ? name.getBytes(StandardCharsets.UTF_8) : null;
+        final int payloadLength = payload != null ? payload.length : 0;
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_LENGTH + keyBytes.length + 4
+                + (nameBytes != null ? nameBytes.length : 0) + 4 + payloadLength);
+        buffer.putInt(RECORD_MAGIC).put(type).putLong(expiration).putInt(keyBytes.length).put(keyBytes);
+        if (nameBytes != null) {
+            buffer.putInt(nameBytes.length).put(nameBytes);
+        } else {
+            buffer.putInt(-1);
+        }
+        buffer.putInt(payloadLength);
+        if (payload != null) {
+            buffer.put(payload);
+        }
+        return buffer.flip();
+    }
+    
+    /**
+     * Build the file header.
+     * 
+     * @return buffer ready to be written
+     */
+    @Nonnull private static ByteBuffer fileHeader() {
+        return ByteBuffer.allocate(FILE_HEADER_LENGTH).putInt(FILE_MAGIC).putInt(FILE_VERSION).flip();
+    }
+    
+    /**
+     * Write a buffer to the end of a channel.
+     * 
+     * @param out the channel
+     * @param buffer the buffer
+     * 
+     * @throws IOException if the buffer cannot be written
+     */
+    private static void writeFully(@Nonnull final FileChannel out, @Nonnull final ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+    
+    /**
+     * Fill a buffer from a position in a channel.
+     * 
+     * @param in the channel
+     * @param buffer the buffer
+     * @param position the position
+     * 
+     * @throws IOException if the buffer cannot be filled
+     */
+    private static void readFully(@Nonnull final FileChannel in, @Nonnull final ByteBuffer buffer,
+            final long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+    
+    /**
+     * Read an integer from a position in a channel.
+     * 
+     * @param in the channel
+     * @param position the position
+     * @param size the size of the channel
+     * 
+     * @return the integer
+     * 
+     * @throws IOException if the integer cannot be read
+     */
+    private static int readInt(@Nonnull final FileChannel in, final long position, final long size)
+            throws IOException {
+        if (position + 4 > size) {
+            throw new EOFException();
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(4);
+        readFully(in, buffer, position);
+        return buffer.getInt(0);
+    }
+    
+    /**
+     * Read a UTF-8 string from a position in a channel.
+     * 
+     * @param in the channel
+     * @param position the position
+     * @param length the length of the encoded string
+     * @param size the size of the channel
+     * 
+     * @return the string
+     * 
+     * @throws IOException if the string cannot be read
+     */
+    @Nonnull private static String readString(@Nonnull final FileChannel in, final long position, final int length,
+            final long size) throws IOException {
+        if (length < 0 || position + length > size) {
+            throw new EOFException();
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(in, buffer, position);
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+    
+    /** Location and attributes of a live record. */
+    private static final class Record {
+        
+        /** Offset of the serialized object in the file. */
+        private final long payloadOffset;
+        
+        /** Length of the serialized object. */
+        private final int payloadLength;
+        
+        /** Length of the whole record. */
+        private final long recordLength;
+        
+        /** Name stored with the object, or null. */
+        @Nullable private final String name;
+        
+        /** Expiration in milliseconds since the epoch, or 0. */
+        private final long expiration;
+        
+        /**
+         * Constructor.
+         *
+         * @param offset offset of the serialized object in the file
+         * @param length length of the serialized object
+         * @param total length of the whole record
+         * @param recordName name stored with the object, or null
+         * @param expires expiration in milliseconds since the epoch, or 0
+         */
+        Record(final long offset, final int length, final long total, @Nullable final String recordName,
+                final long expires) {
+            payloadOffset = offset;
+            payloadLength = length;
+            recordLength = total;
+            name = recordName;
+            expiration = expires;
+        }
+        
+        /**
+         * Get whether the record has expired.
+         * 
+         * @param now the current time in milliseconds since the epoch
+         * 
+         * @return whether the record has expired
+         */
+        boolean isExpired(final long now) {
+            return expiration != 0 && expiration <= now;
+        }
+    }
+    
+    /** Iterator which loads objects as they are reached, skipping any removed since the keys were listed. */
+    private class RecordIterator implements Iterator<Pair<String,T>> {
+        
+        /** Iterator over the keys. */
+        @Nonnull private final Iterator<String> keys;
+        
+        /** Current value to return from next(). */
+        @Nullable private Pair<String,T> current;
+        
+        /**
+         * Constructor.
+         *
+         * @param keyIterator iterator over the keys
+         */
+        RecordIterator(@Nonnull final Iterator<String> keyIterator) {
+            keys = keyIterator;
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasNext() {
+            while (current == null && keys.hasNext()) {
+                final String key = keys.next();
+                assert key != null;
+                try {
+                    final T xmlObject = load(key);
+                    if (xmlObject != null) {
+                        current = new Pair<>(key, xmlObject);
+                    }
+                } catch (final IOException e) {
+                    log.warn("Error loading record with key '{}'", key, e);
+                }
+            }
+            return current != null;
+        }
+
+        /** {@inheritDoc} */
+        public Pair<String,T> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Pair<String,T> next = current;
+            current = null;
+            return next;
+        }
+    }
+
+}
@@ -47,20 +47,20 @@ import com.google.common.base.Strings;
 public class AttributeMap implements Map<QName, String> {
     
     /** Logger. */
-    @Nonnull private final Logger log = LoggerFactory.getLogger(AttributeMap.class);
+    @Nonnull private static final Logger LOG = LoggerFactory.getLogger(AttributeMap.class);
 
     /** XMLObject owning the attributes. */
     @Nonnull private final XMLObject attributeOwner;
 
-    /** Map of attributes. */
+    /** Map of attributes, a shared empty map until the first attribute is added. */
     @Nonnull private Map<QName, String> attributes;
     
     /** Set of attribute QNames which have been locally registered as having an ID type within this 
-     * AttributeMap instance. */
+     * AttributeMap instance, a shared empty set until the first is registered. */
     @Nonnull private Set<QName> idAttribNames;
     
     /** Set of attribute QNames which have been locally registered as having an QName value type within this 
-     * AttributeMap instance. */
+     * AttributeMap instance, a shared empty set until the first is registered. */
     @Nonnull private Set<QName> qnameAttribNames;
     
     /** Flag indicating whether an attempt should be made to infer QName values, 
@@ -76,9 +76,9 @@ public class AttributeMap implements Map<QName, String> {
         Constraint.isNotNull(newOwner, "Attribute owner XMLObject cannot be null");
 
         attributeOwner = newOwner;
-        attributes = new LazyMap<>();
-        idAttribNames = new LazySet<>();
-        qnameAttribNames = new LazySet<>();
+        attributes = Collections.emptyMap();
+        idAttribNames = Collections.emptySet();
+        qnameAttribNames = Collections.emptySet();
     }
 
     /** {@inheritDoc} */
@@ -88,7 +88,7 @@ public class AttributeMap implements Map<QName, String> {
         final String oldValue = get(attributeName);
         if (!Objects.equals(value, oldValue)) {
             releaseDOM();
-            attributes.put(attributeName, value);
+            ensureAttributes().put(attributeName, value);
             if (isIDAttribute(attributeName) || XMLObjectProviderRegistrySupport.isIDAttribute(attributeName)) {
                 attributeOwner.getIDIndex().deregisterIDMapping(oldValue);
                 attributeOwner.getIDIndex().registerIDMapping(value, attributeOwner);
@@ -131,7 +131,7 @@ public class AttributeMap implements Map<QName, String> {
             if (value != null) {
                 // new value is not null, old value was either null or non-equal
                 final String newStringValue = constructAttributeValue(value);
-                attributes.put(attributeName, newStringValue);
+                ensureAttributes().put(attributeName, newStringValue);
                 registerQNameValue(attributeName, value);
                 attributeOwner.getNamespaceManager().registerAttributeName(attributeName);
             } else {
@@ -144,6 +144,26 @@ public class AttributeMap implements Map<QName, String> {
         return oldValue;
     }
 
+    /**
+     * Copy the attributes of another map into this one, along with their registration as ID or QName typed
+     * attributes and the QName value inference setting.
+     * 
+     * @param source the map to copy
+     * 
+     * @since 5.1.0
+     */
+    public void copyFrom(@Nonnull final AttributeMap source) {
+        Constraint.isNotNull(source, "Source AttributeMap cannot be null");
+        inferQNameValues = source.inferQNameValues;
+        for (final QName name : source.qnameAttribNames) {
+            registerQNameAttribute(name);
+        }
+        putAll(source.attributes);
+        for (final QName name : source.idAttribNames) {
+            registerID(name);
+        }
+    }
+
     /** {@inheritDoc} */
     public void clear() {
         final LazySet<QName> keys = new LazySet<>();
@@ -231,6 +251,18 @@ public class AttributeMap implements Map<QName, String> {
         return Collections.unmodifiableSet(attributes.entrySet());
     }
     
+    /**
+     * Get the modifiable map of attributes, replacing the shared empty map on first use.
+     * 
+     * @return the map of attributes
+     */
+    @Nonnull private Map<QName, String> ensureAttributes() {
+        if (attributes == Collections.<QName, String>emptyMap()) {
+            attributes = new LazyMap<>();
+        }
+        return attributes;
+    }
+
     /**
      * Register an attribute as having a type of ID.
      * 
@@ -238,6 +270,9 @@ public class AttributeMap implements Map<QName, String> {
      */
     public void registerID(@Nonnull final QName attributeName) {
         if (! idAttribNames.contains(attributeName)) {
+            if (idAttribNames == Collections.<QName>emptySet()) {
+                idAttribNames = new LazySet<>();
+            }
             idAttribNames.add(attributeName);
         }
         
@@ -282,6 +317,9 @@ public class AttributeMap implements Map<QName, String> {
      * @param attributeName the name of the QName-valued attribute to be registered
      */
     public void registerQNameAttribute(@Nonnull final QName attributeName) {
+        if (qnameAttribNames == Collections.<QName>emptySet()) {
+            qnameAttribNames = new LazySet<>();
+        }
         qnameAttribNames.add(attributeName);
     }
     
@@ -348,11 +386,11 @@ public class AttributeMap implements Map<QName, String> {
         
         final QName qnameValue = checkQName(attributeName, attributeValue);
         if (qnameValue != null) {
-            log.trace("Attribute '{}' with value '{}' was evaluated to be QName type", 
+            LOG.trace("Attribute '{}' with value '{}' was evaluated to be QName type", 
                     attributeName, attributeValue);
             registerQNameValue(attributeName, qnameValue);
         } else {
-            log.trace("Attribute '{}' with value '{}' was not evaluated to be QName type", 
+            LOG.trace("Attribute '{}' with value '{}' was not evaluated to be QName type", 
                     attributeName, attributeValue);
         }
         
@@ -367,7 +405,7 @@ public class AttributeMap implements Map<QName, String> {
     private void registerQNameValue(@Nonnull final QName attributeName, @Nonnull final QName attributeValue) {
         
         final String attributeID = NamespaceManager.generateAttributeID(attributeName);
-        log.trace("Registering QName attribute value '{}' under attibute ID '{}'",
+        LOG.trace("Registering QName attribute value '{}' under attibute ID '{}'",
                 attributeValue, attributeID);
         attributeOwner.getNamespaceManager().registerAttributeValue(attributeID, attributeValue);
     }
@@ -387,11 +425,11 @@ public class AttributeMap implements Map<QName, String> {
         
         final QName qnameValue = checkQName(attributeName, attributeValue);
         if (qnameValue != null) {
-            log.trace("Attribute '{}' with value '{}' was evaluated to be QName type", 
+            LOG.trace("Attribute '{}' with value '{}' was evaluated to be QName type", 
                     attributeName, attributeValue);
             deregisterQNameValue(attributeName);
         } else {
-            log.trace("Attribute '{}' with value '{}' was not evaluated to be QName type", 
+            LOG.trace("Attribute '{}' with value '{}' was not evaluated to be QName type", 
                     attributeName, attributeValue);
         }
     }
@@ -403,7 +441,7 @@ public class AttributeMap implements Map<QName, String> {
      */
     private void deregisterQNameValue(@Nonnull final QName attributeName) {
         final String attributeID = NamespaceManager.generateAttributeID(attributeName);
-        log.trace("Deregistering QName attribute with attibute ID '{}'", attributeID);
+        LOG.trace("Deregistering QName attribute with attibute ID '{}'", attributeID);
         attributeOwner.getNamespaceManager().deregisterAttributeValue(attributeID);
     }
     
@@ -415,37 +453,37 @@ public class AttributeMap implements Map<QName, String> {
      * @return the QName if the attribute value is a QName type, otherwise null
      */
     private QName checkQName(@Nonnull final QName attributeName, @Nullable final String attributeValue) {
-        log.trace("Checking whether attribute '{}' with value {} is a QName type", attributeName, attributeValue);
+        LOG.trace("Checking whether attribute '{}' with value {} is a QName type", attributeName, attributeValue);
         
         if (attributeValue == null) {
-            log.trace("Attribute value was null, returning null");
+            LOG.trace("Attribute value was null, returning null");
             return null;
         }
         
         if (isQNameAttribute(attributeName)) {
-            log.trace("Configuration indicates attribute with name '{}' is a QName type, resolving value QName", 
+            LOG.trace("Configuration indicates attribute with name '{}' is a QName type, resolving value QName", 
                     attributeName);
             // Do support the default namespace in this scenario, since we know it should be a QName
             final QName valueName = resolveQName(attributeValue, true);
             if (valueName != null) {
-                log.trace("Successfully resolved attribute value to QName: {}", valueName);
+                LOG.trace("Successfully resolved attribute value to QName: {}", valueName);
             } else {
-                log.trace("Could not resolve attribute value to QName, returning null");
+                LOG.trace("Could not resolve attribute value to QName, returning null");
             }
             return valueName;
         } else if (isInferQNameValues()) {
-            log.trace("Attempting to infer whether attribute value is a QName");
+            LOG.trace("Attempting to infer whether attribute value is a QName");
             // Do not support the default namespace in this scenario, since we're trying to infer.
             // Better to fail to resolve than to infer a bogus QName value.
             final QName valueName = resolveQName(attributeValue, false);
             if (valueName != null) {
-                log.trace("Resolved attribute as a QName: '{}'", valueName);
+                LOG.trace("Resolved attribute as a QName: '{}'", valueName);
             } else {
-                log.trace("Attribute value was not resolveable to a QName, returning null");
+                LOG.trace("Attribute value was not resolveable to a QName, returning null");
             }
             return valueName;
         } else {
-            log.trace("Attribute was not registered in configuration as a QName type and QName inference is disabled");
+            LOG.trace("Attribute was not registered in configuration as a QName type and QName inference is disabled");
             return null;
         }
 
@@ -464,7 +502,7 @@ public class AttributeMap implements Map<QName, String> {
         if (attributeValue == null) {
             return null;
         }
-        log.trace("Attemtping to resolve QName from attribute value '{}'", attributeValue);
+        LOG.trace("Attemtping to resolve QName from attribute value '{}'", attributeValue);
         
         // Attempt to resolve value as a QName by splitting on colon and then attempting to resolve
         // this candidate prefix into a namespace URI. 
@@ -473,32 +511,32 @@ public class AttributeMap implements Map<QName, String> {
         final int ci = attributeValue.indexOf(':');
         if (ci > -1) {
             candidatePrefix = attributeValue.substring(0, ci);
-            log.trace("Evaluating candiate namespace prefix '{}'", candidatePrefix);
+            LOG.trace("Evaluating candiate namespace prefix '{}'", candidatePrefix);
             localPart = attributeValue.substring(ci+1);
         } else {
             // No prefix - possibly evaluate as if in the default namespace
             if (isDefaultNSOK) {
                 candidatePrefix = null;
-                log.trace("Value did not contain a colon, evaluating as default namespace");
+                LOG.trace("Value did not contain a colon, evaluating as default namespace");
                 localPart = attributeValue;
             } else {
-                log.trace("Value did not contain a colon, default namespace is disallowed, returning null");
+                LOG.trace("Value did not contain a colon, default namespace is disallowed, returning null");
                 return null;
             }
         }
         
-        log.trace("Evaluated QName local part as '{}'", localPart);
+        LOG.trace("Evaluated QName local part as '{}'", localPart);
         
         final String nsURI = XMLObjectSupport.lookupNamespaceURI(attributeOwner, candidatePrefix);
-        log.trace("Resolved namespace URI '{}'", nsURI);
+        LOG.trace("Resolved namespace URI '{}'", nsURI);
         if (nsURI != null) {
             final QName name = QNameSupport.constructQName(nsURI, localPart, candidatePrefix);
-            log.trace("Resolved QName '{}'", name);
+            LOG.trace("Resolved QName '{}'", name);
             return name;
         }
-        log.trace("Namespace URI for candidate prefix '{}' could not be resolved", candidatePrefix);
+        LOG.trace("Namespace URI for candidate prefix '{}' could not be resolved", candidatePrefix);
         
-        log.trace("Value was either not a QName, or namespace URI could not be resolved");
+        LOG.trace("Value was either not a QName, or namespace URI could not be resolved");
         
         return null;
     }
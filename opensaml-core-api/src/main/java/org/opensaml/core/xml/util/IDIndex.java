@@ -14,6 +14,10 @@
 
 package org.opensaml.core.xml.util;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -29,23 +33,43 @@ import net.shibboleth.shared.collection.LazyMap;
 import net.shibboleth.shared.logic.Constraint;
 
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 
 /**
  * Class which provides storage for the ID-to-XMLObject index mapping on an owning
  * {@link org.opensaml.core.xml.XMLObject}.
+ * 
+ * <p>By default each index holds the mappings for the entire subtree rooted at its owner, so every ID is stored
+ * once per ancestor. When root indexing is enabled via
+ * {@link org.opensaml.core.xml.config.XMLObjectProviderRegistry#setRootIDIndexing(boolean)}, each index records
+ * only its owner's own mappings and the index of a tree's root additionally holds the mappings for the whole tree.
+ * The subtree scoping of a non-root index is then computed on demand, at a cost proportional to the depth of the
+ * tree for lookups and to the size of the subtree otherwise. The observable behavior of the index is the same in
+ * both modes.</p>
  */
 @NotThreadSafe
 public class IDIndex {
-    
+
     /** The XMLObject which owns this ID index. */
     @Nonnull private final XMLObject owner;
+
+    /** Whether mappings for the whole tree are held only by the index of its root. */
+    private final boolean rootIndexing;
     
     /** Mapping of ID attributes to XMLObjects in the subtree rooted at this object's owner.
-     * This allows constant-time dereferencing of ID-typed attributes within the subtree.  */
+     * This allows constant-time dereferencing of ID-typed attributes within the subtree.
+     * 
+     * <p>In root indexing mode this is only populated while the owner is the root of its tree.</p> */
     @Nonnull private Map<String, XMLObject> idMappings;
 
+    /** Mappings registered for this index's owner itself, only maintained in root indexing mode. */
+    @Nonnull private final Map<String, XMLObject> ownMappings;
+
     /**
      * Constructor.
+     * 
+     * <p>The indexing mode is fixed at construction from
+     * {@link XMLObjectProviderRegistrySupport#isRootIDIndexing()}.</p>
      *
      * @param newOwner the XMLObject which owns this ID-to-XMLObject index
      */
@@ -53,10 +77,22 @@ public class IDIndex {
         Constraint.isNotNull(newOwner, "ID-owning XMLObject may not be null");
         
         owner = newOwner;
+        rootIndexing = XMLObjectProviderRegistrySupport.isRootIDIndexing();
         idMappings = new LazyMap<>();
+        ownMappings = new LazyMap<>();
     }
-    
 
+    /**
+     * Get whether mappings for the whole tree are held only by the index of its root.
+     * 
+     * @return whether this index operates in root indexing mode
+     * 
+     * @since 5.1.0
+     */
+    public boolean isRootIndexing() {
+        return rootIndexing;
+    }
+    
     /**
      * Register an ID-to-XMLObject mapping for one of this object's owner's children.
      * 
@@ -64,6 +100,12 @@ public class IDIndex {
      * @param referent the XMLObject child
      */
     public void registerIDMapping(@Nonnull @NotEmpty final String id, @Nonnull final XMLObject referent) {
+        if (rootIndexing) {
+            ownMappings.put(id, referent);
+            getRootIndex().idMappings.put(id, referent);
+            return;
+        }
+
         idMappings.put(id, referent);
         if (owner.hasParent()) {
             final XMLObject parent = owner.getParent();
@@ -75,9 +117,24 @@ public class IDIndex {
     /**
      * Register multiple ID-to-XMLObject mappings for this object's owner's children.
      * 
+     * <p>In root indexing mode the other index's owner must just have been attached below this index's owner, and
+     * its mappings move to the index of the root of this tree.</p>
+     * 
      * @param idIndex the ID-to-XMLObject mapping to register
      */
     public void registerIDMappings(@Nonnull final IDIndex idIndex) {
+        if (rootIndexing) {
+            if (idIndex == null || idIndex == this || idIndex.idMappings.isEmpty()) {
+                return;
+            }
+            final IDIndex rootIndex = getRootIndex();
+            if (rootIndex != idIndex) {
+                rootIndex.idMappings.putAll(idIndex.idMappings);
+                idIndex.idMappings = new LazyMap<>();
+            }
+            return;
+        }
+
         if (idIndex == null || idIndex.isEmpty()) {
             return;
         }
@@ -96,6 +153,12 @@ public class IDIndex {
      * @param id the ID attribute value of the XMLObject child to deregister
      */  
     public void deregisterIDMapping(@Nonnull @NotEmpty final String id) {
+        if (rootIndexing) {
+            ownMappings.remove(id);
+            getRootIndex().idMappings.remove(id);
+            return;
+        }
+
         idMappings.remove(id);
         if (owner.hasParent()) {
             final XMLObject parent = owner.getParent();
@@ -107,9 +170,30 @@ public class IDIndex {
     /**
      * Deregister multiple ID-to-XMLObject mappings for this object's owner's children.
      * 
+     * <p>In root indexing mode the other index's owner must still be attached below this index's owner. Its
+     * subtree's mappings are handed over to its index, which becomes responsible for them once its owner is
+     * detached from this tree.</p>
+     * 
      * @param idIndex the ID-to-XMLObject mappings to deregister
      */
     public void deregisterIDMappings(@Nonnull final IDIndex idIndex) {
+        if (rootIndexing) {
+            if (idIndex == null || idIndex == this) {
+                return;
+            }
+            final IDIndex rootIndex = findRootIndex();
+            if (rootIndex == null || rootIndex == idIndex) {
+                return;
+            }
+            final Map<String, XMLObject> mappings = collectSubtreeMappings(idIndex.owner);
+            for (final String id : mappings.keySet()) {
+                rootIndex.idMappings.remove(id);
+            }
+            idIndex.idMappings = new LazyMap<>();
+            idIndex.idMappings.putAll(mappings);
+            return;
+        }
+
         if (idIndex == null || idIndex.isEmpty()) {
             return;
         }
@@ -131,6 +215,11 @@ public class IDIndex {
      * @return the XMLObject identified by the ID attribute value
      */
     @Nullable public XMLObject lookup(@Nonnull @NotEmpty final String id) {
+        if (rootIndexing && owner.hasParent()) {
+            final IDIndex rootIndex = findRootIndex();
+            final XMLObject referent = rootIndex != null ? rootIndex.idMappings.get(id) : null;
+            return referent != null && isDescendant(referent, owner) ? referent : null;
+        }
         return idMappings.get(id);
     }
     
@@ -140,7 +229,17 @@ public class IDIndex {
      * @return true if the index is currently empty
      */
     public boolean isEmpty() {
-        return idMappings.isEmpty();
+        if (!idMappings.isEmpty()) {
+            // In root indexing mode, a former root's mappings remain here until it has been registered with its tree.
+            return false;
+        } else if (!rootIndexing || !owner.hasParent()) {
+            return true;
+        } else if (!ownMappings.isEmpty()) {
+            return false;
+        }
+
+        final IDIndex rootIndex = findRootIndex();
+        return rootIndex == null || rootIndex.idMappings.isEmpty() || !hasDescendantMappings(owner);
     }
     
     /**
@@ -150,7 +249,7 @@ public class IDIndex {
      */
     @SuppressWarnings("null")
     @Nonnull @Unmodifiable @NotLive public Set<String> getIDs() {
-        return CollectionSupport.copyToSet(idMappings.keySet());
+        return getIDMappings().keySet();
     }
     
     /**
@@ -159,7 +258,181 @@ public class IDIndex {
      * @return the ID-to-XMLObject mapping
      */
     @Nonnull @Unmodifiable @NotLive protected Map<String, XMLObject> getIDMappings() {
-        return CollectionSupport.copyToMap(idMappings);
+        if (!rootIndexing || !owner.hasParent()) {
+            return CollectionSupport.copyToMap(idMappings);
+        }
+        return CollectionSupport.copyToMap(collectSubtreeMappings(owner));
+    }
+
+    /**
+     * Check whether any ID-to-XMLObject mappings are held for the subtree rooted at an object which has not
+     * allocated an index of its own, without allocating one.
+     * 
+     * <p>Such an object can only have mappings in its subtree if it is not the root of its tree, and the root's
+     * index operates in root indexing mode. The indexing mode is taken from that index rather than looked up.</p>
+     * 
+     * @param object the object without an index
+     * 
+     * @return true iff the subtree rooted at the object has ID mappings
+     * 
+     * @since 5.1.0
+     */
+    public static boolean hasMappings(@Nonnull final XMLObject object) {
+        final IDIndex rootIndex = findRootIndex(object);
+        return rootIndex != null && hasDescendantMappings(object);
+    }
+
+    /**
+     * Lookup the XMLObject identified by the specified ID attribute in the subtree rooted at an object which has
+     * not allocated an index of its own, without allocating one.
+     * 
+     * @param object the object without an index
+     * @param id the ID attribute value to lookup
+     * 
+     * @return the XMLObject identified by the ID attribute value
+     * 
+     * @since 5.1.0
+     */
+    @Nullable public static XMLObject lookup(@Nonnull final XMLObject object, @Nonnull @NotEmpty final String id) {
+        final IDIndex rootIndex = findRootIndex(object);
+        final XMLObject referent = rootIndex != null ? rootIndex.idMappings.get(id) : null;
+        return referent != null && isDescendant(referent, object) ? referent : null;
+    }
+
+    /**
+     * Get the index of the root of the tree containing a non-root object, if the root's index operates in root
+     * indexing mode and holds any mappings.
+     * 
+     * @param object the object
+     * 
+     * @return the root's index, or null
+     */
+    @Nullable private static IDIndex findRootIndex(@Nonnull final XMLObject object) {
+        XMLObject root = object;
+        XMLObject parent = root.getParent();
+        if (parent == null) {
+            return null;
+        }
+        while (parent != null) {
+            root = parent;
+            parent = root.getParent();
+        }
+        final IDIndex rootIndex = root.getExistingIDIndex();
+        return rootIndex != null && rootIndex.rootIndexing && !rootIndex.idMappings.isEmpty() ? rootIndex : null;
+    }
+
+    /**
+     * Get the index of the root of the tree containing this index's owner, allocating it if necessary.
+     * 
+     * @return the root's index
+     */
+    @Nonnull private IDIndex getRootIndex() {
+        final XMLObject root = getRoot();
+        return root == owner ? this : root.getIDIndex();
+    }
+
+    /**
+     * Get the index of the root of the tree containing this index's owner, if it has been allocated.
+     * 
+     * @return the root's index, or null
+     */
+    @Nullable private IDIndex findRootIndex() {
+        final XMLObject root = getRoot();
+        return root == owner ? this : root.getExistingIDIndex();
+    }
+
+    /**
+     * Get the root of the tree containing this index's owner.
+     * 
+     * @return the root of the tree
+     */
+    @Nonnull private XMLObject getRoot() {
+        XMLObject root = owner;
+        XMLObject parent = root.getParent();
+        while (parent != null) {
+            root = parent;
+            parent = root.getParent();
+        }
+        return root;
+    }
+
+    /**
+     * Collect the mappings registered for the objects in a subtree, in root indexing mode.
+     * 
+     * @param subtree the root of the subtree
+     * 
+     * @return the subtree's mappings
+     */
+    @Nonnull private static Map<String, XMLObject> collectSubtreeMappings(@Nonnull final XMLObject subtree) {
+        final Map<String, XMLObject> mappings = new HashMap<>();
+        final Deque<XMLObject> pending = new ArrayDeque<>();
+        pending.push(subtree);
+        while (!pending.isEmpty()) {
+            final XMLObject current = pending.pop();
+            final IDIndex index = current.getExistingIDIndex();
+            if (index != null) {
+                mappings.putAll(index.ownMappings);
+            }
+            pushChildren(current, pending);
+        }
+        return mappings;
+    }
+
+    /**
+     * Check whether any object below the root of a subtree has mappings registered, in root indexing mode.
+     * 
+     * @param subtree the root of the subtree
+     * 
+     * @return true iff a descendant of the subtree's root has mappings
+     */
+    private static boolean hasDescendantMappings(@Nonnull final XMLObject subtree) {
+        final Deque<XMLObject> pending = new ArrayDeque<>();
+        pushChildren(subtree, pending);
+        while (!pending.isEmpty()) {
+            final XMLObject current = pending.pop();
+            final IDIndex index = current.getExistingIDIndex();
+            if (index != null && !index.ownMappings.isEmpty()) {
+                return true;
+            }
+            pushChildren(current, pending);
+        }
+        return false;
+    }
+
+    /**
+     * Add the children of an object to a traversal stack.
+     * 
+     * @param parent the object
+     * @param pending the traversal stack
+     */
+    private static void pushChildren(@Nonnull final XMLObject parent, @Nonnull final Deque<XMLObject> pending) {
+        final List<XMLObject> children = parent.getOrderedChildren();
+        if (children != null) {
+            for (final XMLObject child : children) {
+                if (child != null) {
+                    pending.push(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether an object is the given ancestor or lies in the subtree below it.
+     * 
+     * @param candidate the object to check
+     * @param ancestor the root of the subtree
+     * 
+     * @return true iff the candidate is the ancestor or one of its descendants
+     */
+    private static boolean isDescendant(@Nonnull final XMLObject candidate, @Nonnull final XMLObject ancestor) {
+        XMLObject current = candidate;
+        while (current != null) {
+            if (current == ancestor) {
+                return true;
+            }
+            current = current.getParent();
+        }
+        return false;
     }
     
-}
\ No newline at end of file
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.shared.logic.Constraint;
+import net.shibboleth.shared.xml.DOMTypeSupport;
+import net.shibboleth.shared.xml.QNameSupport;
+
+import org.w3c.dom.Element;
+
+/**
+ * A lookup cache placed in front of the {@link QName}-keyed maps of the XMLObject provider factories, which resolves
+ * DOM elements to their registered provider without constructing {@link QName}s for the element name.
+ * 
+ * <p>Entries are keyed by namespace URI and local name. Parsers intern these strings, so the key comparisons in the
+ * cache generally succeed on identity. Only successful lookups are cached, which bounds the cache by the number of
+ * registered providers regardless of the content being processed.</p>
+ * 
+ * <p>The owning factory must call {@link #invalidate()} after every change to its registrations. Invalidation
+ * replaces the cache contents as a whole, so a lookup racing with a registration change can only populate the
+ * discarded contents.</p>
+ * 
+ * @param <T> type of provider being cached
+ * 
+ * @since 5.1.0
+ */
+@ThreadSafe
+public final class ProviderLookupCache<T> {
+
+    /** Strategy for resolving a provider from the owning factory's registrations. */
+    @Nonnull private final Function<QName, T> lookupStrategy;
+
+    /** Cached providers, indexed by namespace URI and then local name. */
+    @Nonnull private volatile Map<String, Map<String, T>> entries;
+
+    /**
+     * Constructor.
+     *
+     * @param strategy strategy for resolving a provider from the owning factory's registrations
+     */
+    public ProviderLookupCache(@Nonnull final Function<QName, T> strategy) {
+        lookupStrategy = Constraint.isNotNull(strategy, "Lookup strategy cannot be null");
+        entries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the provider for the given element. The schema type, if present, is tried first with the element name used
+     * if no schema type is present or does not have a provider registered under it.
+     * 
+     * @param domElement the element to retrieve the provider for
+     * 
+     * @return the provider, or null
+     */
+    @Nullable public T get(@Nonnull final Element domElement) {
+        final QName xsitype = DOMTypeSupport.getXSIType(domElement);
+        if (xsitype != null) {
+            final T provider = get(xsitype.getNamespaceURI(), xsitype.getLocalPart());
+            if (provider != null) {
+                return provider;
+            }
+        }
+
+        final String localName = domElement.getLocalName();
+        if (localName == null) {
+            // DOM Level 1 node, resolve it uncached
+            return lookupStrategy.apply(QNameSupport.getNodeQName(domElement));
+        }
+        return get(domElement.getNamespaceURI(), localName);
+    }
+
+    /**
+     * Get the provider for the given name.
+     * 
+     * @param namespaceURI namespace URI of the name, which may be null for no namespace
+     * @param localName local part of the name
+     * 
+     * @return the provider, or null
+     */
+    @Nullable public T get(@Nullable final String namespaceURI, @Nonnull final String localName) {
+        final String ns = namespaceURI != null ? namespaceURI : XMLConstants.NULL_NS_URI;
+        final Map<String, Map<String, T>> current = entries;
+
+        final Map<String, T> names = current.get(ns);
+        if (names != null) {
+            final T provider = names.get(localName);
+            if (provider != null) {
+                return provider;
+            }
+        }
+
+        final T provider = lookupStrategy.apply(new QName(ns, localName));
+        if (provider != null) {
+            current.computeIfAbsent(ns, k -> new ConcurrentHashMap<>()).put(localName, provider);
+        }
+        return provider;
+    }
+
+    /** Discard all cached entries. */
+    public void invalidate() {
+        entries = new ConcurrentHashMap<>();
+    }
+
+}
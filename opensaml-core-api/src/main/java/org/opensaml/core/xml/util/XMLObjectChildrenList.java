@@ -118,18 +118,24 @@ public class XMLObjectChildrenList<ElementType extends XMLObject> extends Abstra
             return null;
         }
 
+        // Check while the element is still the root of its own tree, when no walk of its subtree is needed.
+        final boolean hasIDMappings = element.hasIDMappings();
         setParent(element);
 
         final ElementType removedElement = elements.set(index, element);
         if (removedElement != null) {
+            if (removedElement.hasIDMappings()) {
+                parent.getIDIndex().deregisterIDMappings(removedElement.getIDIndex());
+            }
             removedElement.setParent(null);
-            parent.getIDIndex().deregisterIDMappings(removedElement.getIDIndex());
         }
         
         // Note: to avoid ordering problems, this needs to be called after
         // the deregistration, in case the added element has a same ID string 
         // value as the removed one, else you will lose it.
-        parent.getIDIndex().registerIDMappings(element.getIDIndex());
+        if (hasIDMappings) {
+            parent.getIDIndex().registerIDMappings(element.getIDIndex());
+        }
 
         modCount++;
         return removedElement;
@@ -150,8 +156,12 @@ public class XMLObjectChildrenList<ElementType extends XMLObject> extends Abstra
             return;
         }
 
+        // Check while the element is still the root of its own tree, when no walk of its subtree is needed.
+        final boolean hasIDMappings = element.hasIDMappings();
         setParent(element);
-        parent.getIDIndex().registerIDMappings(element.getIDIndex());
+        if (hasIDMappings) {
+            parent.getIDIndex().registerIDMappings(element.getIDIndex());
+        }
 
         modCount++;
         elements.add(index, element);
@@ -163,8 +173,10 @@ public class XMLObjectChildrenList<ElementType extends XMLObject> extends Abstra
 
         if (element != null) {
             element.releaseParentDOM(true);
+            if (element.hasIDMappings()) {
+                parent.getIDIndex().deregisterIDMappings(element.getIDIndex());
+            }
             element.setParent(null);
-            parent.getIDIndex().deregisterIDMappings(element.getIDIndex());
         }
 
         modCount++;
@@ -184,8 +196,10 @@ public class XMLObjectChildrenList<ElementType extends XMLObject> extends Abstra
         if (elementRemoved) {
             if (element != null) {
                 element.releaseParentDOM(true);
+                if (element.hasIDMappings()) {
+                    parent.getIDIndex().deregisterIDMappings(element.getIDIndex());
+                }
                 element.setParent(null);
-                parent.getIDIndex().deregisterIDMappings(element.getIDIndex());
             }
         }
 
@@ -41,6 +41,8 @@ import org.opensaml.core.xml.XMLObjectBuilder;
 import org.opensaml.core.xml.XMLRuntimeException;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistry;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Copier;
+import org.opensaml.core.xml.io.CopyingException;
 import org.opensaml.core.xml.io.Marshaller;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.io.Unmarshaller;
@@ -116,6 +118,11 @@ public final class XMLObjectSupport {
      * 3) Unmarshall a new XMLObject tree around it.
      * </p>
      * 
+     * <p>
+     * When the DOM is to be dropped and a {@link Copier} is registered for every object in the tree, the tree is
+     * instead copied directly with {@link #copyXMLObject(XMLObject)}, avoiding the round trip through the DOM.
+     * </p>
+     * 
      * @param originalXMLObject the object to be cloned
      * @param cloneOutputOption  the option for handling the cloned object output
      * @param <T> the type of object being cloned
@@ -128,6 +135,15 @@ public final class XMLObjectSupport {
     @Nonnull public static <T extends XMLObject> T cloneXMLObject(@Nonnull final T originalXMLObject,
             @Nonnull final CloneOutputOption cloneOutputOption) throws MarshallingException, UnmarshallingException {
         
+        if (CloneOutputOption.DropDOM.equals(cloneOutputOption)) {
+            try {
+                return copyXMLObject(originalXMLObject);
+            } catch (final CopyingException e) {
+                LOG.trace("Unable to copy {} directly, cloning via DOM: {}", originalXMLObject.getElementQName(),
+                        e.getMessage());
+            }
+        }
+
         Element origElement = originalXMLObject.getDOM();
         if (origElement == null) {
             final Marshaller marshaller = getMarshaller(originalXMLObject);
@@ -179,6 +195,35 @@ public final class XMLObjectSupport {
         return clonedXMLObject;
     }
     
+    /**
+     * Copy an XMLObject and its children directly, using the {@link Copier}s registered for each object.
+     * 
+     * <p>
+     * The copy has no DOM and no parent. Unlike {@link #cloneXMLObject(XMLObject)} there is no fallback: an object
+     * without a registered copier, or one the copier does not fully support, results in an exception.
+     * </p>
+     * 
+     * @param originalXMLObject the object to be copied
+     * @param <T> the type of object being copied
+     * 
+     * @return a copy of the original object
+     * 
+     * @throws CopyingException if the object, or one of its children, can not be copied directly
+     * 
+     * @since 5.1.0
+     */
+    @Nonnull public static <T extends XMLObject> T copyXMLObject(@Nonnull final T originalXMLObject)
+            throws CopyingException {
+        final Copier copier = getCopier(originalXMLObject);
+        if (copier == null) {
+            throw new CopyingException("No copier registered for " + originalXMLObject.getElementQName());
+        }
+
+        @SuppressWarnings("unchecked")
+        final T copy = (T) copier.copy(originalXMLObject);
+        return copy;
+    }
+
     /**
      * Unmarshall a Document from an InputSteam.
      * 
@@ -551,6 +596,34 @@ public final class XMLObjectSupport {
         return getProviderRegistry().getUnmarshallerFactory().getUnmarshaller(element);
     }
     
+    /**
+     * Obtain an XMLObject copier for the given XMLObject.
+     * 
+     * <p>
+     * An object with no builder registered for its type or name was built by the default provider, and so is copied
+     * with the copier registered for the default provider, if any.
+     * </p>
+     * 
+     * @param xmlObject the XMLObject to be copied
+     * @return an XMLObject copier, or null if no copier registered
+     * 
+     * @since 5.1.0
+     */
+    @Nullable public static Copier getCopier(@Nonnull final XMLObject xmlObject) {
+        final XMLObjectProviderRegistry registry = getProviderRegistry();
+        final Copier copier = registry.getCopierFactory().getCopier(xmlObject);
+        if (copier != null) {
+            return copier;
+        }
+
+        final QName schemaType = xmlObject.getSchemaType();
+        if ((schemaType != null && registry.getBuilderFactory().getBuilder(schemaType) != null)
+                || registry.getBuilderFactory().getBuilder(xmlObject.getElementQName()) != null) {
+            return null;
+        }
+        return registry.getCopierFactory().getCopier(registry.getDefaultProviderQName());
+    }
+
     /**
      * Obtain the XMLObject provider registry.
      * 
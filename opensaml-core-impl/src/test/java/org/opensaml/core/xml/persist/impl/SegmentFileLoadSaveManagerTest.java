@@ -0,0 +1,230 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.core.xml.persist.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.opensaml.core.testing.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.persist.SegmentFileLoadSaveManager;
+import org.opensaml.core.xml.util.XMLObjectSource;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.shared.collection.Pair;
+
+@SuppressWarnings("javadoc")
+public class SegmentFileLoadSaveManagerTest extends XMLObjectBaseTestCase {
+    
+    private File segmentFile;
+    
+    private SegmentFileLoadSaveManager<SimpleXMLObject> manager;
+    
+    @BeforeMethod
+    public void setUp() throws IOException {
+        segmentFile = File.createTempFile("segment-load-save-manager-test", ".seg");
+        Assert.assertTrue(segmentFile.delete());
+        manager = buildManager();
+    }
+    
+    @AfterMethod
+    public void tearDown() throws IOException {
+        manager.close();
+        segmentFile.delete();
+        new File(segmentFile.getAbsolutePath() + ".compact").delete();
+    }
+    
+    @Test
+    public void emptyFile() throws IOException {
+        Assert.assertTrue(manager.listKeys().isEmpty());
+        Assert.assertFalse(manager.listAll().iterator().hasNext());
+        Assert.assertFalse(manager.exists("foo"));
+        Assert.assertNull(manager.load("foo"));
+        Assert.assertFalse(manager.remove("foo"));
+        Assert.assertFalse(manager.updateKey("foo", "bar"));
+        Assert.assertTrue(segmentFile.exists());
+    }
+    
+    @Test
+    public void saveLoadUpdateRemove() throws IOException {
+        manager.save("foo", buildObject("id-foo", "foo"));
+        manager.save("bar", buildObject("id-bar", "bar"));
+        testState(Set.of("foo", "bar"));
+        
+        final SimpleXMLObject loaded = manager.load("foo");
+        assert loaded != null;
+        Assert.assertEquals(loaded.getValue(), "foo");
+        Assert.assertEquals(loaded.getObjectMetadata().get(XMLObjectSource.class).size(), 1);
+        
+        try {
+            manager.save("foo", buildObject("id-foo", "other"));
+            Assert.fail("Save without overwrite should have failed");
+        } catch (final IOException e) {
+            // expected
+        }
+        manager.save("foo", buildObject("id-foo", "other"), true);
+        final SimpleXMLObject overwritten = manager.load("foo");
+        assert overwritten != null;
+        Assert.assertEquals(overwritten.getValue(), "other");
+        
+        Assert.assertTrue(manager.updateKey("foo", "baz"));
+        testState(Set.of("bar", "baz"));
+        try {
+            manager.updateKey("bar", "baz");
+            Assert.fail("Update to an existing key should have failed");
+        } catch (final IOException e) {
+            // expected
+        }
+        
+        Assert.assertTrue(manager.remove("bar"));
+        Assert.assertFalse(manager.remove("bar"));
+        testState(Set.of("baz"));
+        
+        Assert.assertEquals(manager.listKeysByName().get("baz"), "id-foo");
+    }
+    
+    @Test
+    public void reopen() throws IOException {
+        manager.save("foo", buildObject("id-foo", "foo"));
+        manager.save("bar", buildObject("id-bar", "bar"));
+        manager.save("baz", buildObject(null, "baz"));
+        manager.remove("bar");
+        manager.close();
+        
+        manager = buildManager();
+        testState(Set.of("foo", "baz"));
+        Assert.assertEquals(manager.listKeysByName().get("foo"), "id-foo");
+        Assert.assertTrue(manager.listKeysByName().containsKey("baz"));
+        Assert.assertNull(manager.listKeysByName().get("baz"));
+    }
+    
+    @Test
+    public void expiration() throws IOException {
+        manager.close();
+        manager = new SegmentFileLoadSaveManager<>(segmentFile, parserPool, SimpleXMLObject::getId,
+                o -> "expired".equals(o.getValue()) ? Instant.now().minusSeconds(1) : null);
+        
+        manager.save("foo", buildObject("id-foo", "foo"));
+        manager.save("bar", buildObject("id-bar", "expired"));
+        testState(Set.of("foo"));
+        Assert.assertFalse(manager.listKeysByName().containsKey("bar"));
+        
+        // Expired data may be replaced without overwrite.
+        manager.save("bar", buildObject("id-bar", "bar"));
+        testState(Set.of("foo", "bar"));
+    }
+    
+    @Test
+    public void truncatedRecord() throws IOException {
+        manager.save("foo", buildObject("id-foo", "foo"));
+        manager.save("bar", buildObject("id-bar", "bar"));
+        manager.close();
+        
+        final long length = segmentFile.length();
+        try (final RandomAccessFile file = new RandomAccessFile(segmentFile, "rw")) {
+            file.setLength(length - 10);
+        }
+        
+        manager = buildManager();
+        testState(Set.of("foo"));
+        
+        // The incomplete record has been discarded so appending works.
+        manager.save("baz", buildObject("id-baz", "baz"));
+        manager.close();
+        manager = buildManager();
+        testState(Set.of("foo", "baz"));
+    }
+    
+    @Test(expectedExceptions=IOException.class)
+    public void notASegmentFile() throws IOException {
+        manager.close();
+        try (final RandomAccessFile file = new RandomAccessFile(segmentFile, "rw")) {
+            file.writeUTF("<foo/>");
+        }
+        manager = buildManager();
+        manager.listKeys();
+    }
+    
+    @Test
+    public void compact() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            manager.save("foo", buildObject("id-foo", "foo" + i), true);
+        }
+        manager.save("bar", buildObject("id-bar", "bar"));
+        final long length = segmentFile.length();
+        
+        manager.compact();
+        Assert.assertTrue(segmentFile.length() < length);
+        testState(Set.of("foo", "bar"));
+        final SimpleXMLObject loaded = manager.load("foo");
+        assert loaded != null;
+        Assert.assertEquals(loaded.getValue(), "foo9");
+        
+        manager.save("baz", buildObject("id-baz", "baz"));
+        manager.close();
+        manager = buildManager();
+        testState(Set.of("foo", "bar", "baz"));
+    }
+    
+    @Test
+    public void compactOnOpen() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            manager.save("foo", buildObject("id-foo", "foo" + i), true);
+        }
+        manager.close();
+        final long length = segmentFile.length();
+        
+        manager = buildManager();
+        testState(Set.of("foo"));
+        Assert.assertTrue(segmentFile.length() < length);
+    }
+    
+    private SegmentFileLoadSaveManager<SimpleXMLObject> buildManager() {
+        return new SegmentFileLoadSaveManager<>(segmentFile, parserPool, SimpleXMLObject::getId, null);
+    }
+    
+    private SimpleXMLObject buildObject(final String id, final String value) {
+        final SimpleXMLObject sxo = buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        sxo.setId(id);
+        sxo.setValue(value);
+        return sxo;
+    }
+    
+    private void testState(final Set<String> expectedKeys) throws IOException {
+        Assert.assertEquals(manager.listKeys(), expectedKeys);
+        Assert.assertEquals(manager.listKeysByName().keySet(), expectedKeys);
+        
+        for (final String expectedKey : expectedKeys) {
+            Assert.assertTrue(manager.exists(expectedKey));
+            Assert.assertNotNull(manager.load(expectedKey));
+        }
+        
+        final Set<String> seen = new HashSet<>();
+        for (final Pair<String,SimpleXMLObject> entry : manager.listAll()) {
+            seen.add(entry.getFirst());
+            Assert.assertNotNull(entry.getSecond());
+        }
+        Assert.assertEquals(seen, expectedKeys);
+    }
+    
+}
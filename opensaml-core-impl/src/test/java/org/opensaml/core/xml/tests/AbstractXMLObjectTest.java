@@ -21,6 +21,7 @@ import javax.xml.namespace.QName;
 
 import org.opensaml.core.testing.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.AbstractXMLObject;
+import org.opensaml.core.xml.Namespace;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.mock.SimpleXMLObject;
 import org.opensaml.core.xml.util.XMLObjectSource;
@@ -28,6 +29,8 @@ import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import net.shibboleth.shared.collection.CollectionSupport;
+
 /**
  * Tests for {@link AbstractXMLObject}.
  */
@@ -113,4 +116,47 @@ public class AbstractXMLObjectTest extends XMLObjectBaseTestCase {
         Assert.assertNull(sxo.getDOM());
     }
 
+    /**
+     * Tests that namespaces are correct when the namespace manager is only allocated after changes to the object.
+     */
+    @Test
+    public void testDeferredNamespaceManager() {
+        final SimpleXMLObject sxo = buildXMLObject(simpleXMLObjectQName);
+        sxo.setElementNamespacePrefix("other");
+
+        Assert.assertEquals(sxo.getNamespaces(),
+                CollectionSupport.singleton(new Namespace(SimpleXMLObject.NAMESPACE, "other")));
+
+        sxo.getNamespaceManager().registerNamespaceDeclaration(new Namespace("urn:test:ns", "ns"));
+        sxo.setElementNamespacePrefix("another");
+        Assert.assertEquals(sxo.getNamespaces(), CollectionSupport.setOf(
+                new Namespace(SimpleXMLObject.NAMESPACE, "another"), new Namespace("urn:test:ns", "ns")));
+    }
+
+    /**
+     * Tests that ID mappings propagate when the ID index is only allocated after the object is in a tree.
+     */
+    @Test
+    public void testDeferredIDIndex() {
+        final SimpleXMLObject parent = buildXMLObject(simpleXMLObjectQName);
+        final SimpleXMLObject child = buildXMLObject(simpleXMLObjectQName);
+        final SimpleXMLObject grandchild = buildXMLObject(simpleXMLObjectQName);
+        Assert.assertFalse(parent.hasIDMappings());
+        Assert.assertNull(parent.resolveID("foo"));
+
+        parent.getSimpleXMLObjects().add(child);
+        child.getSimpleXMLObjects().add(grandchild);
+        Assert.assertFalse(parent.hasIDMappings());
+
+        grandchild.setId("foo");
+        Assert.assertTrue(parent.hasIDMappings());
+        Assert.assertSame(parent.resolveID("foo"), grandchild);
+        Assert.assertSame(child.resolveIDFromRoot("foo"), grandchild);
+
+        parent.getSimpleXMLObjects().remove(child);
+        Assert.assertFalse(parent.hasIDMappings());
+        Assert.assertNull(parent.resolveID("foo"));
+        Assert.assertSame(child.resolveID("foo"), grandchild);
+    }
+
 }
@@ -198,6 +198,34 @@ public class IDAttributeTest extends XMLObjectBaseTestCase {
         Assert.assertNull(sxObject.resolveID("IDLevel3C"), "Lookup of non-existent ID didn't return null");
         Assert.assertNull(sxObject.resolveID("IDLevel4A"), "Lookup of non-existent ID didn't return null");
     }
+
+    /**
+     * Test that attaching and detaching a subtree without IDs in a tree with IDs allocates no ID index for the
+     * subtree's objects.
+     */
+    @Test
+    public void testIDlessSubtreeAllocatesNoIndex() {
+        final SimpleXMLObject sxObject =  
+            (SimpleXMLObject) unmarshallElement("/org/opensaml/core/xml/IDAttributeWithChildrenList.xml");
+        assert sxObject != null;
+        
+        final SimpleXMLObject subtree = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        final SimpleXMLObject leaf = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        subtree.getSimpleXMLObjects().add(leaf);
+        
+        final SimpleXMLObject parent = sxObject.getSimpleXMLObjects().get(3);
+        parent.getSimpleXMLObjects().add(subtree);
+        Assert.assertNull(subtree.getExistingIDIndex(), "Attaching allocated an ID index");
+        Assert.assertNull(leaf.getExistingIDIndex(), "Attaching allocated an ID index");
+        Assert.assertFalse(subtree.hasIDMappings());
+        Assert.assertNull(subtree.resolveID("IDLevel3B"), "Lookup outside the subtree didn't return null");
+        Assert.assertNotNull(sxObject.resolveID("IDLevel3B"), "ID lookup failed");
+        
+        parent.getSimpleXMLObjects().remove(subtree);
+        Assert.assertNull(subtree.getExistingIDIndex(), "Detaching allocated an ID index");
+        Assert.assertNull(leaf.getExistingIDIndex(), "Detaching allocated an ID index");
+        Assert.assertNotNull(sxObject.resolveID("IDLevel3B"), "ID lookup failed");
+    }
     
     /**
      * Tests registering ID-to-XMLObject mapping when unmarshalling unknown content,
@@ -0,0 +1,39 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.tests;
+
+import org.opensaml.core.config.ConfigurationService;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistry;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+
+/**
+ * Runs the {@link IDAttributeTest} tests with root ID indexing enabled on the {@link XMLObjectProviderRegistry}.
+ */
+public class RootIndexingIDAttributeTest extends IDAttributeTest {
+
+    /** Enable root indexing. */
+    @BeforeClass
+    public void enableRootIndexing() {
+        ConfigurationService.ensure(XMLObjectProviderRegistry.class).setRootIDIndexing(true);
+    }
+
+    /** Restore the default indexing mode. */
+    @AfterClass(alwaysRun = true)
+    public void disableRootIndexing() {
+        ConfigurationService.ensure(XMLObjectProviderRegistry.class).setRootIDIndexing(false);
+    }
+
+}
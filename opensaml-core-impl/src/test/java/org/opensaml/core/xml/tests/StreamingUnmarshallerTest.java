@@ -0,0 +1,157 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.testing.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.StreamingUnmarshaller;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.schema.XSAny;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.w3c.dom.Element;
+
+/**
+ * Tests for {@link StreamingUnmarshaller}.
+ */
+public class StreamingUnmarshallerTest extends XMLObjectBaseTestCase {
+
+    /**
+     * Tests that streamed objects match those unmarshalled from a DOM.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testEquivalence() throws Exception {
+        for (final String name : List.of("SimpleXMLObjectWithAttribute.xml", "SimpleXMLObjectWithChildren.xml",
+                "SimpleXMLObjectWithContent.xml", "SimpleXMLObjectSchemaLocation.xml", "SimpleXMLObjectNil.xml",
+                "IDAttributeWithChildrenList.xml", "UnknownContent.xml")) {
+            final XMLObject streamed = unmarshallStreaming(name, new StreamingUnmarshaller(parserPool,
+                    unmarshallerFactory));
+            Assert.assertNull(streamed.getDOM(), name);
+
+            final XMLObject expected = unmarshallFromDOM(name);
+            expected.releaseDOM();
+            expected.releaseChildrenDOM(true);
+            final Element expectedDOM = XMLObjectSupport.marshall(expected);
+            assertXMLEquals("Streamed " + name + " did not match", expectedDOM.getOwnerDocument(), streamed);
+        }
+    }
+
+    /**
+     * Tests ID resolution in a streamed tree.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testIDs() throws Exception {
+        final SimpleXMLObject sxObject = (SimpleXMLObject) unmarshallStreaming("IDAttributeWithChildrenList.xml",
+                new StreamingUnmarshaller(parserPool, unmarshallerFactory));
+
+        Assert.assertSame(sxObject.resolveID("IDLevel1"), sxObject);
+        Assert.assertSame(sxObject.resolveID("IDLevel4A"),
+                sxObject.getSimpleXMLObjects().get(0).getSimpleXMLObjects().get(0).getSimpleXMLObjects().get(0));
+        Assert.assertSame(sxObject.getSimpleXMLObjects().get(3).resolveIDFromRoot("IDLevel2B"),
+                sxObject.getSimpleXMLObjects().get(1));
+    }
+
+    /**
+     * Tests that objects meeting the retention condition are unmarshalled from a DOM of their own.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testDOMRetention() throws Exception {
+        final XSAny products = (XSAny) unmarshallStreaming("UnknownContent.xml",
+                new StreamingUnmarshaller(parserPool, unmarshallerFactory,
+                        o -> "description".equals(o.getElementQName().getLocalPart())));
+        Assert.assertNull(products.getDOM());
+
+        final XSAny product = (XSAny) products.getUnknownXMLObjects().get(1);
+        Assert.assertNull(product.getDOM());
+
+        final XSAny description = (XSAny) product.getUnknownXMLObjects().get(1);
+        final Element dom = description.getDOM();
+        Assert.assertNotNull(dom);
+        assert dom != null;
+        Assert.assertSame(dom.getOwnerDocument().getDocumentElement(), dom);
+        Assert.assertEquals(dom.lookupNamespaceURI("p"), "http://example.com/product-info");
+        Assert.assertEquals(((XSAny) description.getUnknownXMLObjects().get(1)).getTextContent(), "blue");
+    }
+
+    /**
+     * Tests that a document with a DTD is rejected.
+     */
+    @Test(expectedExceptions = UnmarshallingException.class)
+    public void testDTD() throws UnmarshallingException {
+        new StreamingUnmarshaller(parserPool, unmarshallerFactory).unmarshall(new ByteArrayInputStream(
+                "<!DOCTYPE foo [<!ENTITY x \"y\">]><foo>&x;</foo>".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Unmarshall a test resource from a stream.
+     * 
+     * @param name resource name
+     * @param unmarshaller the unmarshaller
+     * 
+     * @return the unmarshalled object
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Nonnull private XMLObject unmarshallStreaming(@Nonnull final String name,
+            @Nonnull final StreamingUnmarshaller unmarshaller) throws Exception {
+        try (final InputStream input = getResource(name)) {
+            return unmarshaller.unmarshall(input);
+        }
+    }
+
+    /**
+     * Unmarshall a test resource from a DOM.
+     * 
+     * @param name resource name
+     * 
+     * @return the unmarshalled object
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Nonnull private XMLObject unmarshallFromDOM(@Nonnull final String name) throws Exception {
+        try (final InputStream input = getResource(name)) {
+            return XMLObjectSupport.unmarshallFromInputStream(parserPool, input);
+        }
+    }
+
+    /**
+     * Open a test resource.
+     * 
+     * @param name resource name
+     * 
+     * @return the resource
+     */
+    @Nonnull private InputStream getResource(@Nonnull final String name) {
+        final InputStream input = StreamingUnmarshallerTest.class.getResourceAsStream("/org/opensaml/core/xml/" + name);
+        assert input != null;
+        return input;
+    }
+
+}
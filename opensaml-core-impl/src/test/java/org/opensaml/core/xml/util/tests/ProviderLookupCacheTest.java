@@ -0,0 +1,86 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util.tests;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+
+import org.opensaml.core.testing.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.io.UnmarshallerFactory;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.util.ProviderLookupCache;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Tests for {@link ProviderLookupCache}, by way of the {@link UnmarshallerFactory} that uses it.
+ */
+public class ProviderLookupCacheTest extends XMLObjectBaseTestCase {
+
+    /** Type name used for xsi:type lookups. */
+    private final QName typeName = new QName(SimpleXMLObject.NAMESPACE, "SimpleType", "test");
+
+    /** Tests that cached element lookups follow registration changes. */
+    @Test
+    public void testElementLookup() {
+        final UnmarshallerFactory factory = new UnmarshallerFactory();
+        final Unmarshaller simpleUnmarshaller = unmarshallerFactory.ensureUnmarshaller(simpleXMLObjectQName);
+        final Unmarshaller defaultUnmarshaller =
+                unmarshallerFactory.ensureUnmarshaller(XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+
+        final Document document = parserPool.newDocument();
+        final Element element = document.createElementNS(SimpleXMLObject.NAMESPACE, "test:SimpleElement");
+
+        Assert.assertNull(factory.getUnmarshaller(element));
+
+        factory.registerUnmarshaller(simpleXMLObjectQName, simpleUnmarshaller);
+        Assert.assertSame(factory.getUnmarshaller(element), simpleUnmarshaller);
+        Assert.assertSame(factory.getUnmarshaller(element), simpleUnmarshaller);
+
+        factory.registerUnmarshaller(simpleXMLObjectQName, defaultUnmarshaller);
+        Assert.assertSame(factory.getUnmarshaller(element), defaultUnmarshaller);
+
+        factory.deregisterUnmarshaller(simpleXMLObjectQName);
+        Assert.assertNull(factory.getUnmarshaller(element));
+    }
+
+    /** Tests that a registered schema type takes precedence over the element name. */
+    @Test
+    public void testSchemaTypeLookup() {
+        final UnmarshallerFactory factory = new UnmarshallerFactory();
+        final Unmarshaller simpleUnmarshaller = unmarshallerFactory.ensureUnmarshaller(simpleXMLObjectQName);
+        final Unmarshaller defaultUnmarshaller =
+                unmarshallerFactory.ensureUnmarshaller(XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+        factory.registerUnmarshaller(simpleXMLObjectQName, simpleUnmarshaller);
+
+        final Document document = parserPool.newDocument();
+        final Element element = document.createElementNS(SimpleXMLObject.NAMESPACE, "test:SimpleElement");
+        element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:test", SimpleXMLObject.NAMESPACE);
+        element.setAttributeNS(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "xsi:type", "test:SimpleType");
+
+        Assert.assertSame(factory.getUnmarshaller(element), simpleUnmarshaller);
+
+        factory.registerUnmarshaller(typeName, defaultUnmarshaller);
+        Assert.assertSame(factory.getUnmarshaller(element), defaultUnmarshaller);
+
+        factory.deregisterUnmarshaller(typeName);
+        Assert.assertSame(factory.getUnmarshaller(element), simpleUnmarshaller);
+    }
+
+}
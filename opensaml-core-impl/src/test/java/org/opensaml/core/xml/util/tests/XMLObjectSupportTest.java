@@ -19,9 +19,11 @@ import javax.xml.namespace.QName;
 import org.opensaml.core.testing.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.XMLObjectBuilder;
 import org.opensaml.core.xml.XMLRuntimeException;
+import org.opensaml.core.xml.io.CopyingException;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.schema.XSAny;
 import org.opensaml.core.xml.schema.XSString;
 import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.core.xml.util.XMLObjectSupport.CloneOutputOption;
@@ -188,6 +190,45 @@ public class XMLObjectSupportTest extends XMLObjectBaseTestCase {
             Assert.assertTrue(preCloneDocument.isSameNode(preCloneElement.getOwnerDocument()));
     }
     
+    @Test
+    public void testXMLObjectCopy() throws CopyingException, MarshallingException, UnmarshallingException {
+        final QName attribName = new QName("urn:test:ns", "foo", "test");
+
+        final XSAny origParentObj = (XSAny) XMLObjectSupport.buildXMLObject(
+                new QName("urn:test:ns", "Parent", "test"), XSAny.TYPE_NAME);
+        origParentObj.getUnknownAttributes().put(attribName, "bar");
+        final XSString origChildObj = (XSString) XMLObjectSupport.buildXMLObject(
+                new QName("urn:test:ns", "Child", "test"), XSString.TYPE_NAME);
+        origChildObj.setValue("FooBarBaz");
+        origParentObj.getUnknownXMLObjects().add(origChildObj);
+
+        final XSAny copiedParentObj = XMLObjectSupport.copyXMLObject(origParentObj);
+        Assert.assertNotSame(copiedParentObj, origParentObj);
+        Assert.assertEquals(copiedParentObj.getElementQName(), origParentObj.getElementQName());
+        Assert.assertEquals(copiedParentObj.getUnknownAttributes().get(attribName), "bar");
+        Assert.assertEquals(copiedParentObj.getUnknownXMLObjects().size(), 1);
+
+        final XSString copiedChildObj = (XSString) copiedParentObj.getUnknownXMLObjects().get(0);
+        Assert.assertNotSame(copiedChildObj, origChildObj);
+        Assert.assertSame(copiedChildObj.getParent(), copiedParentObj);
+        Assert.assertEquals(copiedChildObj.getValue(), "FooBarBaz");
+
+        copiedParentObj.getUnknownAttributes().put(attribName, "baz");
+        Assert.assertEquals(origParentObj.getUnknownAttributes().get(attribName), "bar");
+
+        final XSAny clonedParentObj = XMLObjectSupport.cloneXMLObject(origParentObj);
+        Assert.assertNull(origParentObj.getDOM(), "Object was marshalled rather than copied directly");
+        Assert.assertEquals(clonedParentObj.getUnknownXMLObjects().size(), 1);
+    }
+
+    @Test(expectedExceptions = CopyingException.class)
+    public void testXMLObjectCopyNoCopier() throws CopyingException {
+        final XMLObjectBuilder<SimpleXMLObject> sxoBuilder =
+                (XMLObjectBuilder<SimpleXMLObject>) builderFactory.<SimpleXMLObject>ensureBuilder(simpleXMLObjectQName);
+
+        XMLObjectSupport.copyXMLObject(sxoBuilder.buildObject(SimpleXMLObject.ELEMENT_NAME));
+    }
+
     @Test
     public void testBuildXMLObject() {
         try {
@@ -15,10 +15,17 @@
 package org.opensaml.saml.metadata.resolver;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -26,6 +33,7 @@ import java.util.stream.StreamSupport;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.profile.context.ProfileRequestContext;
 import org.opensaml.profile.criterion.ProfileRequestContextCriterion;
 import org.opensaml.saml.metadata.criteria.entity.DetectDuplicateEntityIDsCriterion;
@@ -33,11 +41,18 @@ import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.slf4j.Logger;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+
+import net.shibboleth.shared.annotation.constraint.NonNegative;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 import net.shibboleth.shared.annotation.constraint.NotLive;
 import net.shibboleth.shared.annotation.constraint.Unmodifiable;
 import net.shibboleth.shared.collection.CollectionSupport;
 import net.shibboleth.shared.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.primitive.LoggerFactory;
 import net.shibboleth.shared.primitive.StringSupport;
 import net.shibboleth.shared.resolver.CriteriaSet;
@@ -48,10 +63,20 @@ import net.shibboleth.shared.resolver.ResolverException;
  * 
  * The Iterable of entity descriptors returned is the first non-null and non-empty Iterable found while iterating over
  * the registered resolvers in resolver list order.
+ * 
+ * <p>
+ * If an {@link Executor} is supplied, the leading resolvers in the list (all of them, by default) are queried
+ * concurrently rather than in turn. The result is the same, but the time taken is that of the slowest resolver
+ * that has to be consulted rather than the sum of them. Lookups still outstanding once a resolver earlier in the
+ * list has answered are cancelled.
+ * </p>
  */
 public class ChainingMetadataResolver extends AbstractIdentifiableInitializableComponent implements MetadataResolver,
         RefreshableMetadataResolver, ClearableMetadataResolver {
 
+    /** Metric name for the timer for resolution by each registered resolver, qualified by the resolver's ID. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_RESOLVE = "timer.resolve";
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(ChainingMetadataResolver.class);
 
@@ -67,10 +92,23 @@ public class ChainingMetadataResolver extends AbstractIdentifiableInitializableC
     /** Activation condition. */
     @Nullable private Predicate<ProfileRequestContext> activationCondition;
     
+    /** Executor for concurrent resolution. */
+    @Nullable private Executor executor;
+    
+    /** Number of leading resolvers to query concurrently, or 0 for all of them. */
+    @NonNegative private int parallelResolverCount;
+    
+    /** Base name for metrics. */
+    @Nullable @NotEmpty private String metricsBaseName;
+    
+    /** Resolution timers for each registered resolver. */
+    @Nonnull private Map<MetadataResolver,Timer> resolverTimers;
+    
     /** Constructor. */
     public ChainingMetadataResolver() {
         resolvers = CollectionSupport.emptyList();
         detectDuplicateEntityIDs = DetectDuplicateEntityIDs.Off;
+        resolverTimers = CollectionSupport.emptyMap();
     }    
 
     /** {@inheritDoc} */
@@ -176,6 +214,105 @@ public class ChainingMetadataResolver extends AbstractIdentifiableInitializableC
         activationCondition = condition;
     }
     
+    /**
+     * Get the executor used to query resolvers concurrently.
+     * 
+     * @return the executor, or null if resolvers are queried in turn
+     * 
+     * @since 5.1.0
+     */
+    @Nullable public Executor getExecutor() {
+        return executor;
+    }
+    
+    /**
+     * Set the executor used to query resolvers concurrently.
+     * 
+     * <p>
+     * If null, the default, resolvers are queried in turn. Lookups the executor rejects, or has not yet started
+     * when their result is needed, are run by the calling thread.
+     * </p>
+     * 
+     * @param exec the executor, or null
+     * 
+     * @since 5.1.0
+     */
+    public void setExecutor(@Nullable final Executor exec) {
+        checkSetterPreconditions();
+        executor = exec;
+    }
+    
+    /**
+     * Get the number of leading resolvers to query concurrently when an executor is set.
+     * 
+     * @return the number of resolvers, or 0 for all of them
+     * 
+     * @since 5.1.0
+     */
+    @NonNegative public int getParallelResolverCount() {
+        return parallelResolverCount;
+    }
+    
+    /**
+     * Set the number of leading resolvers to query concurrently when an executor is set. Any further resolvers
+     * are queried in turn if none of those answer.
+     * 
+     * <p>Defaults to 0, meaning all resolvers.</p>
+     * 
+     * @param count the number of resolvers, or 0 for all of them
+     * 
+     * @since 5.1.0
+     */
+    public void setParallelResolverCount(@NonNegative final int count) {
+        checkSetterPreconditions();
+        parallelResolverCount = Constraint.isGreaterThanOrEqual(0, count, "Parallel resolver count cannot be negative");
+    }
+    
+    /**
+     * Get the base name for metrics.
+     * 
+     * @return the base name for metrics
+     * 
+     * @since 5.1.0
+     */
+    @Nullable @NotEmpty public String getMetricsBaseName() {
+        return metricsBaseName;
+    }
+    
+    /**
+     * Set the base name for metrics.
+     * 
+     * <p>Defaults to the class name qualified by the component ID.</p>
+     * 
+     * @param baseName the base name for metrics
+     * 
+     * @since 5.1.0
+     */
+    public void setMetricsBaseName(@Nullable final String baseName) {
+        checkSetterPreconditions();
+        metricsBaseName = StringSupport.trimOrNull(baseName);
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        
+        if (metricsBaseName == null) {
+            metricsBaseName = MetricRegistry.name(getClass().getName(), getId());
+        }
+        
+        final MetricRegistry metricRegistry = MetricsSupport.getMetricRegistry();
+        if (metricRegistry != null) {
+            final Map<MetadataResolver,Timer> timers = new IdentityHashMap<>();
+            for (final MetadataResolver resolver : resolvers) {
+                timers.put(resolver, metricRegistry.timer(
+                        MetricRegistry.name(metricsBaseName, resolver.getId(), METRIC_TIMER_RESOLVE)));
+            }
+            resolverTimers = timers;
+        }
+    }
+    
     /** {@inheritDoc} */
     @Nullable public EntityDescriptor resolveSingle(@Nullable final CriteriaSet criteria) throws ResolverException {
         checkComponentActive();
@@ -212,55 +349,101 @@ public class ChainingMetadataResolver extends AbstractIdentifiableInitializableC
         }
         log.trace("Effective DetectDuplicateEntityIDs value is: {}", detectDuplicates);
 
-        Iterable<EntityDescriptor> result = null;
-        Set<String> resultEntityIDs = null;
-        for (final MetadataResolver resolver : resolvers) {
-            try {
-                if (result != null) {
-                    assert resolver != null;
-                    detectDuplicateEntityIDs(resolver, criteria, resultEntityIDs, detectDuplicates);
-                    continue;
-                }
-                
-                final Iterable<EntityDescriptor> descriptors = resolver.resolve(criteria);
-                if (descriptors != null && descriptors.iterator().hasNext()) {
-                    if (detectDuplicates == DetectDuplicateEntityIDs.Off) {
-                        log.trace("Resolved EntityDescriptor(s) from '{}', duplicate detection disabled, returning",
-                                resolver.getId());
-                        return descriptors;
+        final List<ResolverLookup> lookups = startLookups(criteria);
+        try {
+            Iterable<EntityDescriptor> result = null;
+            Set<String> resultEntityIDs = null;
+            for (final ResolverLookup lookup : lookups) {
+                final MetadataResolver resolver = lookup.getResolver();
+                try {
+                    if (result != null) {
+                        detectDuplicateEntityIDs(lookup, resultEntityIDs, detectDuplicates);
+                        continue;
                     }
                     
-                    log.trace("Resolved EntityDescriptor(s) from '{}', duplicate detection enabled, continuing",
-                            resolver.getId());
-                    result = descriptors;
-                    resultEntityIDs = collectEntityIDs(result);
+                    final Iterable<EntityDescriptor> descriptors = lookup.get();
+                    if (descriptors != null && descriptors.iterator().hasNext()) {
+                        if (detectDuplicates == DetectDuplicateEntityIDs.Off) {
+                            log.trace("Resolved EntityDescriptor(s) from '{}', duplicate detection disabled, returning",
+                                    resolver.getId());
+                            return descriptors;
+                        }
+                        
+                        log.trace("Resolved EntityDescriptor(s) from '{}', duplicate detection enabled, continuing",
+                                resolver.getId());
+                        result = descriptors;
+                        resultEntityIDs = collectEntityIDs(result);
+                    }
+                } catch (final ResolverException e) {
+                    log.warn("Error retrieving metadata from resolver of type {}, proceeding to next resolver",
+                            resolver.getClass().getName(), e);
+                    continue;
                 }
-            } catch (final ResolverException e) {
-                log.warn("Error retrieving metadata from resolver of type {}, proceeding to next resolver",
-                        resolver.getClass().getName(), e);
-                continue;
+            }
+    
+            if (result != null) {
+                return result;
+            }
+            return CollectionSupport.emptyList();
+        } finally {
+            // Lookups made redundant by an earlier answer are abandoned.
+            for (final ResolverLookup lookup : lookups) {
+                lookup.cancel();
             }
         }
+    }
+// Checkstyle: CyclomaticComplexity ON
+    
+    /**
+     * Begin the lookups against each registered resolver, starting those to be run concurrently.
+     * 
+     * @param criteria the current criteria set
+     * 
+     * @return the lookups, in resolver list order
+     */
+    @Nonnull private List<ResolverLookup> startLookups(@Nullable final CriteriaSet criteria) {
+        final List<ResolverLookup> lookups = new ArrayList<>(resolvers.size());
+        final int parallel = parallelResolverCount > 0 ? parallelResolverCount : resolvers.size();
+        for (final MetadataResolver resolver : resolvers) {
+            assert resolver != null;
+            final boolean concurrent = executor != null && resolvers.size() > 1 && lookups.size() < parallel;
+            lookups.add(new ResolverLookup(resolver, criteria, concurrent ? executor : null));
+        }
+        return lookups;
+    }
 
-        if (result != null) {
-            return result;
+    /**
+     * Resolve against a registered resolver, timing the operation.
+     * 
+     * @param resolver the resolver
+     * @param criteria the current criteria set
+     * 
+     * @return the resolved descriptors
+     * 
+     * @throws ResolverException if thrown by the resolver
+     */
+    @Nullable private Iterable<EntityDescriptor> resolveAndTime(@Nonnull final MetadataResolver resolver,
+            @Nullable final CriteriaSet criteria) throws ResolverException {
+        final Context context = MetricsSupport.startTimer(resolverTimers.get(resolver));
+        try {
+            return resolver.resolve(criteria);
+        } finally {
+            MetricsSupport.stopTimer(context);
         }
-        return CollectionSupport.emptyList();
     }
-// Checkstyle: CyclomaticComplexity ON
     
     /**
      * Perform duplicate entityID detection.
      * 
-     * @param resolver the metadata resolver over which to perform duplicate detection
-     * @param criteria the current criteria set
+     * @param lookup the lookup against the metadata resolver over which to perform duplicate detection
      * @param resultEntityIDs the set of entityIDs contained in the effective results to be returned
      * @param detectDuplicates the effective strategy for duplicate detection
      */
 // Checkstyle: CyclomaticComplexity OFF
-    private void detectDuplicateEntityIDs(@Nonnull final MetadataResolver resolver,
-            @Nullable final CriteriaSet criteria, @Nullable final Set<String> resultEntityIDs,
-            @Nonnull final DetectDuplicateEntityIDs detectDuplicates) {
+    private void detectDuplicateEntityIDs(@Nonnull final ResolverLookup lookup,
+            @Nullable final Set<String> resultEntityIDs, @Nonnull final DetectDuplicateEntityIDs detectDuplicates) {
+        
+        final MetadataResolver resolver = lookup.getResolver();
         
         if (resultEntityIDs == null || resultEntityIDs.isEmpty()) {
             return;
@@ -290,7 +473,7 @@ public class ChainingMetadataResolver extends AbstractIdentifiableInitializableC
                 resolver.getId(), resolver.getClass().getName());
         
         try {
-            final Iterable<EntityDescriptor> descriptors = resolver.resolve(criteria);
+            final Iterable<EntityDescriptor> descriptors = lookup.get();
             if (descriptors != null && descriptors.iterator().hasNext()) {
                 final Set<String> descriptorsEnitityIDs = collectEntityIDs(descriptors);
 
@@ -439,4 +622,89 @@ public class ChainingMetadataResolver extends AbstractIdentifiableInitializableC
         return null;
     }
 
-}
\ No newline at end of file
+    /** A lookup against one of the registered resolvers, which may be running concurrently. */
+    private final class ResolverLookup {
+        
+        /** The resolver. */
+        @Nonnull private final MetadataResolver resolver;
+        
+        /** The criteria. */
+        @Nullable private final CriteriaSet criteria;
+        
+        /** Task running the lookup concurrently, or null if it is run when needed. */
+        @Nullable private final FutureTask<Iterable<EntityDescriptor>> task;
+        
+        /**
+         * Constructor.
+         *
+         * @param res the resolver
+         * @param crit the criteria
+         * @param exec executor to start the lookup with, or null to run it when needed
+         */
+        ResolverLookup(@Nonnull final MetadataResolver res, @Nullable final CriteriaSet crit,
+                @Nullable final Executor exec) {
+            resolver = res;
+            criteria = crit;
+            if (exec != null) {
+                task = new FutureTask<>(() -> resolveAndTime(resolver, criteria));
+                try {
+                    exec.execute(task);
+                } catch (final RejectedExecutionException e) {
+                    log.debug("Executor rejected lookup against resolver '{}', will run it when needed",
+                            resolver.getId());
+                }
+            } else {
+                task = null;
+            }
+        }
+        
+        /**
+         * Get the resolver.
+         * 
+         * @return the resolver
+         */
+        @Nonnull MetadataResolver getResolver() {
+            return resolver;
+        }
+        
+        /**
+         * Get the result of the lookup, waiting for it if necessary.
+         * 
+         * @return the resolved descriptors
+         * 
+         * @throws ResolverException if thrown by the resolver, or if interrupted
+         */
+        @Nullable Iterable<EntityDescriptor> get() throws ResolverException {
+            if (task == null) {
+                return resolveAndTime(resolver, criteria);
+            }
+            
+            // Runs the lookup here if it hasn't been started yet, otherwise does nothing.
+            task.run();
+            try {
+                return task.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResolverException("Interrupted while waiting for resolver '" + resolver.getId() + "'", e);
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof ResolverException re) {
+                    throw re;
+                } else if (cause instanceof RuntimeException re) {
+                    throw re;
+                } else if (cause instanceof Error err) {
+                    throw err;
+                }
+                throw new ResolverException(cause);
+            }
+        }
+        
+        /** Cancel the lookup if it is still outstanding. */
+        void cancel() {
+            if (task != null) {
+                task.cancel(true);
+            }
+        }
+    }
+
+}
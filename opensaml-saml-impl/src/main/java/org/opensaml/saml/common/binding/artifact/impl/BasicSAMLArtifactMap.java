@@ -29,6 +29,7 @@ import javax.annotation.Nullable;
 import org.opensaml.saml.common.SAMLObject;
 import org.opensaml.saml.common.binding.artifact.ExpiringSAMLArtifactMapEntry;
 import org.opensaml.saml.common.binding.artifact.SAMLArtifactMap;
+import org.opensaml.storage.expiration.ExpirationIndex;
 import org.slf4j.Logger;
 
 import net.shibboleth.shared.annotation.constraint.NonnullAfterInit;
@@ -39,7 +40,12 @@ import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.primitive.LoggerFactory;
 import net.shibboleth.shared.primitive.TimerSupport;
 
-/** Basic artifact map implementation. */
+/**
+ * Basic artifact map implementation.
+ * 
+ * <p>By default the cleanup task scans every entry. If an {@link ExpirationIndex} is set, it visits only
+ * the entries due to expire.</p>
+ */
 public class BasicSAMLArtifactMap extends AbstractInitializableComponent implements
         SAMLArtifactMap {
 
@@ -64,6 +70,9 @@ public class BasicSAMLArtifactMap extends AbstractInitializableComponent impleme
     /** Task that cleans up expired records. */
     @Nullable private TimerTask cleanupTask;
 
+    /** Optional index of entry expirations. */
+    @Nullable private ExpirationIndex<String> expirationIndex;
+
     /** Constructor. */
     public BasicSAMLArtifactMap() {
         artifactLifetime = Duration.ofMinutes(1);
@@ -139,6 +148,19 @@ public class BasicSAMLArtifactMap extends AbstractInitializableComponent impleme
         cleanupInterval = interval;
     }
     
+    /**
+     * Set an index of entry expirations to use in place of scanning during cleanup.
+     * 
+     * @param index the expiration index, or null
+     * 
+     * @since 5.1.0
+     */
+    public void setExpirationIndex(@Nullable final ExpirationIndex<String> index) {
+        checkSetterPreconditions();
+        
+        expirationIndex = index;
+    }
+
     /**
      * Set the map entry factory.
      * 
@@ -181,7 +203,8 @@ public class BasicSAMLArtifactMap extends AbstractInitializableComponent impleme
 
         final ExpiringSAMLArtifactMapEntry artifactEntry =
                 (ExpiringSAMLArtifactMapEntry) entryFactory.newEntry(artifact, issuerId, relyingPartyId, samlMessage);
-        artifactEntry.setExpiration(Instant.now().plus(getArtifactLifetime()));
+        final Instant expiration = Instant.now().plus(getArtifactLifetime());
+        artifactEntry.setExpiration(expiration);
 
         if (log.isDebugEnabled()) {
             log.debug("Storing new artifact entry '{}' for relying party '{}', expiring at '{}'", new Object[] {
@@ -189,6 +212,9 @@ public class BasicSAMLArtifactMap extends AbstractInitializableComponent impleme
         }
 
         artifactStore.put(artifact, artifactEntry);
+        if (expirationIndex != null) {
+            expirationIndex.schedule(artifact, expiration.toEpochMilli());
+        }
     }
 
     /** {@inheritDoc} */
@@ -199,7 +225,8 @@ public class BasicSAMLArtifactMap extends AbstractInitializableComponent impleme
     }
 
     /**
-     * A cleanup task that relies on the weakly consistent iterator support in the map implementation.
+     * A cleanup task that relies on the weakly consistent iterator support in the map implementation,
+     * or on the expiration index if one is set.
      */
     protected class Cleanup extends TimerTask {
 
@@ -209,6 +236,22 @@ public class BasicSAMLArtifactMap extends AbstractInitializableComponent impleme
 
             final Instant now = Instant.now();
 
+            if (expirationIndex != null) {
+                final int released = expirationIndex.expire(now.toEpochMilli(), artifact -> {
+                    final ExpiringSAMLArtifactMapEntry entry = artifactStore.get(artifact);
+                    if (entry == null) {
+                        return null;
+                    } else if (!entry.isValid(now)) {
+                        artifactStore.remove(artifact, entry);
+                        return null;
+                    }
+                    final Instant expiration = entry.getExpiration();
+                    return expiration != null ? expiration.toEpochMilli() : null;
+                });
+                log.debug("Expiration index released {} artifact entries", released);
+                return;
+            }
+
             final Iterator<Map.Entry<String, ExpiringSAMLArtifactMapEntry>> i = artifactStore.entrySet().iterator();
             while (i.hasNext()) {
                 final Map.Entry<String, ExpiringSAMLArtifactMapEntry> entry = i.next();
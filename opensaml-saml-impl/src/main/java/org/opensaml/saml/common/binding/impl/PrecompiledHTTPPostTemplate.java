@@ -0,0 +1,379 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.common.binding.impl;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.slf4j.Logger;
+import org.w3c.dom.Node;
+
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.collection.CollectionSupport;
+import net.shibboleth.shared.logic.Constraint;
+import net.shibboleth.shared.primitive.LoggerFactory;
+import net.shibboleth.shared.primitive.StringSupport;
+import net.shibboleth.shared.xml.SerializeSupport;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Renders an HTTP POST binding form from a precompiled form of a Velocity template.
+ *
+ * <p>For each combination of fields supplied, the template is merged once with placeholder field values, and
+ * the result split into literal UTF-8 content around the points at which the fields are substituted. Responses
+ * are then rendered by writing those literals and the field values directly to the servlet output stream, which
+ * avoids merging the template per response, and allows a message to be serialized and Base64 encoded straight
+ * into the response.</p>
+ *
+ * <p>Field values must be either strings, which are written as-is and so must already be suitably escaped, or
+ * DOM nodes, which are written in serialized and Base64 encoded form. Calls made by the template to
+ * {@link HttpServletResponse#addHeader(String, String)} and {@link HttpServletResponse#setHeader(String, String)}
+ * via the "response" property are recorded and replayed.</p>
+ *
+ * <p>A template whose output depends on anything but the presence of each field, such as field content or
+ * per-response values, or which otherwise uses the response, can't be precompiled. This is detected by merging
+ * the template twice with different placeholders, and such combinations of fields are not rendered, leaving
+ * the caller to merge the template with Velocity instead.</p>
+ *
+ * @since 5.1.0
+ */
+@ThreadSafe
+public final class PrecompiledHTTPPostTemplate {
+
+    /** Name of the Velocity context property holding the servlet response. */
+    @Nonnull @NotEmpty private static final String RESPONSE_PROPERTY = "response";
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(PrecompiledHTTPPostTemplate.class);
+
+    /** Velocity engine used to evaluate the template. */
+    @Nonnull private final VelocityEngine velocityEngine;
+
+    /** ID of the Velocity template. */
+    @Nonnull @NotEmpty private final String velocityTemplateId;
+
+    /** Context properties that are the same for every response. */
+    @Nonnull private final Map<String,Object> properties;
+
+    /** Compiled forms of the template, by the set of fields supplied. */
+    @Nonnull private final Map<Set<String>,Optional<CompiledForm>> compiledForms;
+
+    /**
+     * Constructor.
+     *
+     * @param engine Velocity engine used to evaluate the template
+     * @param templateId ID of the Velocity template
+     * @param constantProperties context properties that are the same for every response
+     */
+    public PrecompiledHTTPPostTemplate(@Nonnull final VelocityEngine engine,
+            @Nonnull @NotEmpty final String templateId, @Nonnull final Map<String,Object> constantProperties) {
+        velocityEngine = Constraint.isNotNull(engine, "VelocityEngine cannot be null");
+        velocityTemplateId = Constraint.isNotNull(StringSupport.trimOrNull(templateId),
+                "Velocity template ID cannot be null or empty");
+        properties = CollectionSupport.copyToMap(
+                Constraint.isNotNull(constantProperties, "Properties cannot be null"));
+        compiledForms = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Render the template to a response, if the fields supplied allow it.
+     *
+     * <p>Nothing is written to the response if false is returned.</p>
+     *
+     * @param response response to render to
+     * @param fields field values, which must be non-empty strings or DOM nodes
+     *
+     * @return true iff the template was rendered
+     *
+     * @throws IOException if an error occurs writing to the response
+     */
+    public boolean render(@Nonnull final HttpServletResponse response, @Nonnull final Map<String,Object> fields)
+            throws IOException {
+        for (final Object value : fields.values()) {
+            // Velocity treats empty strings as false.
+            if (!(value instanceof Node) && !(value instanceof String && !((String) value).isEmpty())) {
+                return false;
+            }
+        }
+
+        final CompiledForm form = compiledForms.computeIfAbsent(Set.copyOf(fields.keySet()), this::compile)
+                .orElse(null);
+        if (form == null) {
+            return false;
+        }
+        form.render(response, fields);
+        return true;
+    }
+
+    /**
+     * Compile the template for a set of fields.
+     *
+     * @param fieldNames names of the fields supplied
+     *
+     * @return the compiled form, or empty if the template cannot be precompiled
+     */
+    @Nonnull private Optional<CompiledForm> compile(@Nonnull final Set<String> fieldNames) {
+        try {
+            final CompiledForm form = compile(fieldNames, UUID.randomUUID().toString().replace("-", ""));
+            if (form != null && form.equals(compile(fieldNames, UUID.randomUUID().toString().replace("-", "")))) {
+                log.debug("Precompiled Velocity template '{}' for fields {}", velocityTemplateId, fieldNames);
+                return Optional.of(form);
+            }
+            log.debug("Output of Velocity template '{}' varies by more than field presence, it will not be "
+                    + "precompiled for fields {}", velocityTemplateId, fieldNames);
+        } catch (final Exception e) {
+            log.debug("Unable to precompile Velocity template '{}': {}", velocityTemplateId, e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Merge the template with placeholder field values and split the result around them.
+     *
+     * @param fieldNames names of the fields supplied
+     * @param nonce value making the placeholders unique
+     *
+     * @return the compiled form, or null if the template cannot be precompiled
+     */
+    @Nullable private CompiledForm compile(@Nonnull final Set<String> fieldNames, @Nonnull final String nonce) {
+        final VelocityContext context = new VelocityContext(new HashMap<>(properties));
+        final Map<String,String> placeholders = new HashMap<>();
+        int index = 0;
+        for (final String field : fieldNames) {
+            final String placeholder = "OpenSAMLField" + nonce + "_" + index++ + "_";
+            placeholders.put(placeholder, field);
+            context.put(field, placeholder);
+        }
+
+        final HeaderRecorder recorder = new HeaderRecorder();
+        context.put(RESPONSE_PROPERTY, Proxy.newProxyInstance(HttpServletResponse.class.getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class}, recorder));
+
+        final StringWriter out = new StringWriter();
+        velocityEngine.mergeTemplate(velocityTemplateId, "UTF-8", context, out);
+        if (recorder.unsupported) {
+            log.debug("Velocity template '{}' uses the response for more than setting headers", velocityTemplateId);
+            return null;
+        }
+        for (final List<String> header : recorder.headers) {
+            for (final String placeholder : placeholders.keySet()) {
+                if (header.contains(placeholder)) {
+                    log.debug("Velocity template '{}' uses field {} in a header", velocityTemplateId,
+                            placeholders.get(placeholder));
+                    return null;
+                }
+            }
+        }
+
+        final String output = out.toString();
+        final List<String> literals = new ArrayList<>();
+        final List<String> fieldOrder = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int next = -1;
+            String placeholder = null;
+            for (final String candidate : placeholders.keySet()) {
+                final int found = output.indexOf(candidate, pos);
+                if (found >= 0 && (next < 0 || found < next)) {
+                    next = found;
+                    placeholder = candidate;
+                }
+            }
+            if (placeholder == null) {
+                literals.add(output.substring(pos));
+                break;
+            }
+            literals.add(output.substring(pos, next));
+            fieldOrder.add(placeholders.get(placeholder));
+            pos = next + placeholder.length();
+        }
+
+        return new CompiledForm(literals, fieldOrder, recorder.headers);
+    }
+
+    /** The template split into literals and field references, for a particular set of fields. */
+    private static final class CompiledForm {
+
+        /** Literal content as strings, used for comparison. */
+        @Nonnull private final List<String> literals;
+
+        /** Literal content encoded as UTF-8, before, between and after the fields. */
+        @Nonnull private final byte[][] encodedLiterals;
+
+        /** Names of the fields, in output order. */
+        @Nonnull private final List<String> fields;
+
+        /** Headers set by the template, as method name, header name, and value. */
+        @Nonnull private final List<List<String>> headers;
+
+        /**
+         * Constructor.
+         *
+         * @param literalContent literal content before, between and after the fields
+         * @param fieldNames names of the fields, in output order
+         * @param headerCalls headers set by the template
+         */
+        CompiledForm(@Nonnull final List<String> literalContent, @Nonnull final List<String> fieldNames,
+                @Nonnull final List<List<String>> headerCalls) {
+            literals = literalContent;
+            fields = fieldNames;
+            headers = headerCalls;
+            encodedLiterals = new byte[literals.size()][];
+            for (int i = 0; i < encodedLiterals.length; i++) {
+                encodedLiterals[i] = literals.get(i).getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        /**
+         * Render to a response.
+         *
+         * @param response response to render to
+         * @param values field values
+         *
+         * @throws IOException if an error occurs writing to the response
+         */
+        void render(@Nonnull final HttpServletResponse response, @Nonnull final Map<String,Object> values)
+                throws IOException {
+            for (final List<String> header : headers) {
+                if ("addHeader".equals(header.get(0))) {
+                    response.addHeader(header.get(1), header.get(2));
+                } else {
+                    response.setHeader(header.get(1), header.get(2));
+                }
+            }
+
+            try (final OutputStream out = response.getOutputStream()) {
+                for (int i = 0; i < fields.size(); i++) {
+                    out.write(encodedLiterals[i]);
+                    final Object value = values.get(fields.get(i));
+                    if (value instanceof Node) {
+                        final OutputStream base64Out = Base64.getEncoder().wrap(new NonClosingOutputStream(out));
+                        SerializeSupport.writeNode((Node) value, base64Out);
+                        // Completes the final Base64 quantum.
+                        base64Out.close();
+                    } else {
+                        out.write(((String) value).getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                out.write(encodedLiterals[fields.size()]);
+                out.flush();
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof CompiledForm) {
+                final CompiledForm other = (CompiledForm) obj;
+                return literals.equals(other.literals) && fields.equals(other.fields)
+                        && headers.equals(other.headers);
+            }
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return literals.hashCode();
+        }
+    }
+
+    /** Stands in for the servlet response while compiling, recording the headers the template sets. */
+    private static final class HeaderRecorder implements InvocationHandler {
+
+        /** Headers set, as method name, header name, and value. */
+        @Nonnull private final List<List<String>> headers = new ArrayList<>();
+
+        /** Whether any other use was made of the response. */
+        private boolean unsupported;
+
+        /** {@inheritDoc} */
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            final String name = method.getName();
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(name)) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                }
+                return HeaderRecorder.class.getSimpleName();
+            }
+
+            if (("addHeader".equals(name) || "setHeader".equals(name)) && args != null && args.length == 2
+                    && args[0] instanceof String && (args[1] == null || args[1] instanceof String)) {
+                headers.add(Arrays.asList(name, (String) args[0], (String) args[1]));
+                return null;
+            }
+
+            unsupported = true;
+            final Class<?> type = method.getReturnType();
+            return type.isPrimitive() && type != void.class ? Array.get(Array.newInstance(type, 1), 0) : null;
+        }
+    }
+
+    /** Passes writes through to a stream, but leaves it open when closed. */
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+
+        /**
+         * Constructor.
+         *
+         * @param out underlying stream
+         */
+        NonClosingOutputStream(@Nonnull final OutputStream out) {
+            super(out);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+
+}
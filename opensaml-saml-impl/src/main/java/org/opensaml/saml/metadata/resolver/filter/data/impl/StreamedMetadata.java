@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.filter.data.impl;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilterContext;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilterContext.Data;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+
+/**
+ * Data object for {@link MetadataFilterContext} indicating that the metadata currently being processed was
+ * read incrementally from an <code>EntitiesDescriptor</code> document rather than from a complete DOM.
+ * 
+ * <p>
+ * Streamed metadata is filtered in two stages. In the fragment stage each <code>EntityDescriptor</code> is
+ * filtered on its own, as it is read, while still attached to its (partially read) parent groups. In the group
+ * stage the root <code>EntitiesDescriptor</code>, now containing only the entities retained by the fragment
+ * stage, is filtered as a whole; filters should not process the entities again at that stage, but may still
+ * operate on the groups themselves.
+ * </p>
+ * 
+ * <p>
+ * The DOM of a signed group is not available in full, so the digest of its enveloped signature's reference is
+ * computed over the stream and made available by the group stage instance.
+ * </p>
+ * 
+ * @since 5.1.0
+ */
+public class StreamedMetadata implements Data {
+
+    /** Whether the metadata being filtered is an individual entity in the fragment stage. */
+    private final boolean fragment;
+
+    /** Reference digests of signed groups. */
+    @Nonnull private final Map<EntitiesDescriptor,byte[]> referenceDigests;
+
+    /**
+     * Constructor.
+     *
+     * @param isFragment whether this instance is for the fragment stage
+     */
+    public StreamedMetadata(final boolean isFragment) {
+        fragment = isFragment;
+        referenceDigests = new IdentityHashMap<>();
+    }
+
+    /**
+     * Get whether the metadata being filtered is an individual <code>EntityDescriptor</code> in the fragment
+     * stage, rather than the root of the document in the group stage.
+     * 
+     * @return true for the fragment stage, false for the group stage
+     */
+    public boolean isFragment() {
+        return fragment;
+    }
+
+    /**
+     * Get the digest computed over the stream for the single reference of the enveloped signature of a group.
+     * 
+     * <p>
+     * No digest is available if the signature's reference or transforms were not of a form that can be
+     * processed incrementally, or if the reference could not be unambiguously resolved to the group, in which
+     * case the signature must be treated as invalid.
+     * </p>
+     * 
+     * @param group the signed group
+     * 
+     * @return the digest of the group's content, or null
+     */
+    @Nullable public byte[] getReferenceDigest(@Nonnull final EntitiesDescriptor group) {
+        return referenceDigests.get(group);
+    }
+
+    /**
+     * Set the digest computed over the stream for the single reference of the enveloped signature of a group.
+     * 
+     * @param group the signed group
+     * @param digest the digest of the group's content, or null to clear
+     */
+    public void setReferenceDigest(@Nonnull final EntitiesDescriptor group, @Nullable final byte[] digest) {
+        if (digest != null) {
+            referenceDigests.put(group, digest);
+        } else {
+            referenceDigests.remove(group);
+        }
+    }
+
+}
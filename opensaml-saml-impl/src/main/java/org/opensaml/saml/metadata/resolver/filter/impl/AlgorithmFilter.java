@@ -36,6 +36,7 @@ import org.opensaml.saml.ext.saml2alg.SigningMethod;
 import org.opensaml.saml.metadata.resolver.filter.AbstractMetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilterContext;
+import org.opensaml.saml.metadata.resolver.filter.data.impl.StreamedMetadata;
 import org.opensaml.saml.saml2.metadata.EncryptionMethod;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
@@ -138,7 +139,10 @@ public class AlgorithmFilter extends AbstractMetadataFilter {
         }
 
         if (metadata instanceof EntitiesDescriptor) {
-            filterEntitiesDescriptor((EntitiesDescriptor) metadata);
+            // Members of streamed metadata have already been filtered individually.
+            if (context.get(StreamedMetadata.class) == null) {
+                filterEntitiesDescriptor((EntitiesDescriptor) metadata);
+            }
         } else {
             filterEntityDescriptor((EntityDescriptor) metadata);
         }
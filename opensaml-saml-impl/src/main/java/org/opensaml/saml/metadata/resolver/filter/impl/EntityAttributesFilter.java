@@ -35,6 +35,7 @@ import org.opensaml.saml.ext.saml2mdattr.EntityAttributes;
 import org.opensaml.saml.metadata.resolver.filter.AbstractMetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilterContext;
+import org.opensaml.saml.metadata.resolver.filter.data.impl.StreamedMetadata;
 import org.opensaml.saml.saml2.core.Attribute;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
@@ -126,7 +127,10 @@ public class EntityAttributesFilter extends AbstractMetadataFilter {
         }
 
         if (metadata instanceof EntitiesDescriptor) {
-            filterEntitiesDescriptor((EntitiesDescriptor) metadata);
+            // Members of streamed metadata have already been filtered individually.
+            if (context.get(StreamedMetadata.class) == null) {
+                filterEntitiesDescriptor((EntitiesDescriptor) metadata);
+            }
         } else {
             filterEntityDescriptor((EntityDescriptor) metadata);
         }
@@ -27,6 +27,7 @@ import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.metadata.resolver.filter.AbstractMetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilterContext;
+import org.opensaml.saml.metadata.resolver.filter.data.impl.StreamedMetadata;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml.saml2.metadata.RoleDescriptor;
@@ -145,10 +146,21 @@ public class EntityRoleFilter extends AbstractMetadataFilter {
             return null;
         }
 
+        final StreamedMetadata streamedMetadata = context.get(StreamedMetadata.class);
         if (metadata instanceof EntitiesDescriptor) {
-            filterEntitiesDescriptor((EntitiesDescriptor) metadata);
+            // Members of streamed metadata have already been filtered individually.
+            filterEntitiesDescriptor((EntitiesDescriptor) metadata, streamedMetadata == null);
         } else {
-            filterEntityDescriptor((EntityDescriptor) metadata);
+            final EntityDescriptor entityDescriptor = (EntityDescriptor) metadata;
+            filterEntityDescriptor(entityDescriptor);
+            // A streamed entity is really a group member, so is subject to removal in the same way.
+            if (streamedMetadata != null && streamedMetadata.isFragment() && getRemoveRolelessEntityDescriptors()
+                    && entityDescriptor.getAffiliationDescriptor() == null
+                    && entityDescriptor.getRoleDescriptors().isEmpty()) {
+                log.trace("Filtering out empty entity descriptor {} from streamed entity group",
+                        entityDescriptor.getEntityID());
+                return null;
+            }
         }
         
         return metadata;
@@ -163,9 +175,22 @@ public class EntityRoleFilter extends AbstractMetadataFilter {
      * @throws FilterException thrown if an effective role name can not be determined
      */
     protected void filterEntitiesDescriptor(@Nonnull final EntitiesDescriptor descriptor) throws FilterException {
+        filterEntitiesDescriptor(descriptor, true);
+    }
+
+    /**
+     * Filters {@link EntitiesDescriptor}, optionally leaving contained entities as they are.
+     * 
+     * @param descriptor entities descriptor to filter
+     * @param filterEntities whether to filter contained entities, as well as empty groups
+     * 
+     * @throws FilterException thrown if an effective role name can not be determined
+     */
+    private void filterEntitiesDescriptor(@Nonnull final EntitiesDescriptor descriptor,
+            final boolean filterEntities) throws FilterException {
         // First we filter out any contained EntityDescriptors
         final List<EntityDescriptor> entityDescriptors = descriptor.getEntityDescriptors();
-        if (entityDescriptors != null && !entityDescriptors.isEmpty()) {
+        if (filterEntities && entityDescriptors != null && !entityDescriptors.isEmpty()) {
             final List<EntityDescriptor> emptyEntityDescriptors = new ArrayList<>();
             final Iterator<EntityDescriptor> entityDescriptorsItr = entityDescriptors.iterator();
             EntityDescriptor entityDescriptor;
@@ -195,7 +220,7 @@ public class EntityRoleFilter extends AbstractMetadataFilter {
             while (entitiesDescriptorsItr.hasNext()) {
                 entitiesDescriptor = entitiesDescriptorsItr.next();
                 assert entitiesDescriptor != null;
-                filterEntitiesDescriptor(entitiesDescriptor);
+                filterEntitiesDescriptor(entitiesDescriptor, filterEntities);
                 if (getRemoveEmptyEntitiesDescriptors()) {
                     // Remove the EntitiesDescriptor if does not contain any EntitiesDescriptors or EntityDescriptors
                     if ((entitiesDescriptor.getEntityDescriptors() == null || entitiesDescriptor.getEntityDescriptors()
@@ -26,6 +26,8 @@ import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilterContext;
 import org.opensaml.saml.metadata.resolver.filter.MetadataNodeProcessor;
+import org.opensaml.saml.metadata.resolver.filter.data.impl.StreamedMetadata;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 
 import net.shibboleth.shared.annotation.constraint.Live;
 import net.shibboleth.shared.logic.Constraint;
@@ -75,7 +77,12 @@ public class NodeProcessingMetadataFilter extends AbstractMetadataFilter {
             return null;
         }
 
-        processNode(metadata);
+        final StreamedMetadata streamedMetadata = context.get(StreamedMetadata.class);
+        if (streamedMetadata != null && !streamedMetadata.isFragment()) {
+            processGroupNode(metadata);
+        } else {
+            processNode(metadata);
+        }
 
         return metadata;
     }
@@ -102,4 +109,30 @@ public class NodeProcessingMetadataFilter extends AbstractMetadataFilter {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Process a node of streamed metadata, skipping {@link EntityDescriptor} subtrees, which have already been
+     * processed individually.
+     * 
+     * @param node the metadata node to process.
+     * 
+     * @throws FilterException if a fatal error is encountered while processing a node
+     */
+    private void processGroupNode(@Nonnull final XMLObject node) throws FilterException {
+        if (node instanceof EntityDescriptor) {
+            return;
+        }
+
+        for (final MetadataNodeProcessor processor : getNodeProcessors()) {
+            processor.process(node);
+        }
+
+        final List<XMLObject> children = node.getOrderedChildren();
+        if (children != null) {
+            for (final XMLObject child : children) {
+                assert child != null;
+                processGroupNode(child);
+            }
+        }
+    }
+
+}
@@ -26,6 +26,7 @@ import org.opensaml.core.xml.XMLObject;
 import org.opensaml.saml.metadata.resolver.filter.AbstractMetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilterContext;
+import org.opensaml.saml.metadata.resolver.filter.data.impl.StreamedMetadata;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.slf4j.Logger;
@@ -128,7 +129,8 @@ public class PredicateFilter extends AbstractMetadataFilter {
             return null;
         }
         if (metadata instanceof EntitiesDescriptor) {
-            filterEntitiesDescriptor((EntitiesDescriptor) metadata);
+            // Members of streamed metadata have already been filtered individually.
+            filterEntitiesDescriptor((EntitiesDescriptor) metadata, context.get(StreamedMetadata.class) == null);
             return metadata;
         } else if (metadata instanceof EntityDescriptor) {
             final EntityDescriptor entity = (EntityDescriptor) metadata;
@@ -150,10 +152,21 @@ public class PredicateFilter extends AbstractMetadataFilter {
      * @param descriptor entities descriptor to filter
      */
     protected void filterEntitiesDescriptor(@Nonnull final EntitiesDescriptor descriptor) {
+        filterEntitiesDescriptor(descriptor, true);
+    }
+
+    /**
+     * Filters entities descriptor, optionally leaving contained entities as they are.
+     * 
+     * @param descriptor entities descriptor to filter
+     * @param filterEntities whether to filter contained entities, as well as empty groups
+     */
+    private void filterEntitiesDescriptor(@Nonnull final EntitiesDescriptor descriptor,
+            final boolean filterEntities) {
         
         // First we check any contained EntityDescriptors.
         final List<EntityDescriptor> entityDescriptors = descriptor.getEntityDescriptors();
-        if (!entityDescriptors.isEmpty()) {
+        if (filterEntities && !entityDescriptors.isEmpty()) {
             final List<EntityDescriptor> emptyEntityDescriptors = new ArrayList<>();
             final Iterator<EntityDescriptor> entityDescriptorsItr = entityDescriptors.iterator();
             while (entityDescriptorsItr.hasNext()) {
@@ -175,7 +188,7 @@ public class PredicateFilter extends AbstractMetadataFilter {
             while (entitiesDescriptorsItr.hasNext()) {
                 final EntitiesDescriptor entitiesDescriptor = entitiesDescriptorsItr.next();
                 assert entitiesDescriptor != null;
-                filterEntitiesDescriptor(entitiesDescriptor);
+                filterEntitiesDescriptor(entitiesDescriptor, filterEntities);
                 if (getRemoveEmptyEntitiesDescriptors()) {
                     // Remove the EntitiesDescriptor if empty.
                     if (entitiesDescriptor.getEntityDescriptors().isEmpty()
@@ -24,6 +24,7 @@ import org.opensaml.core.xml.XMLObject;
 import org.opensaml.saml.metadata.resolver.filter.AbstractMetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilterContext;
+import org.opensaml.saml.metadata.resolver.filter.data.impl.StreamedMetadata;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.slf4j.Logger;
@@ -86,6 +87,12 @@ public class RequiredValidUntilFilter extends AbstractMetadataFilter {
             return null;
         }
         
+        final StreamedMetadata streamedMetadata = context.get(StreamedMetadata.class);
+        if (streamedMetadata != null && streamedMetadata.isFragment()) {
+            // The requirement applies to the document root, which is filtered once it has been read.
+            return metadata;
+        }
+        
         final Instant validUntil = getValidUntil(metadata);
 
         if (validUntil == null) {
@@ -24,6 +24,7 @@ import org.opensaml.saml.common.xml.SAMLSchemaBuilder;
 import org.opensaml.saml.metadata.resolver.filter.AbstractMetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilterContext;
+import org.opensaml.saml.metadata.resolver.filter.data.impl.StreamedMetadata;
 import org.slf4j.Logger;
 import org.xml.sax.SAXException;
 
@@ -60,6 +61,13 @@ public class SchemaValidationFilter extends AbstractMetadataFilter {
             return null;
         }
         
+        final StreamedMetadata streamedMetadata = context.get(StreamedMetadata.class);
+        if (streamedMetadata != null && !streamedMetadata.isFragment()) {
+            // Only the shell of the root remains, its members having been validated individually.
+            log.debug("Skipping schema validation of streamed metadata root");
+            return metadata;
+        }
+        
         final Validator schemaValidator;
         try {
             schemaValidator = samlSchemaBuilder.getSAMLSchema().newValidator();
@@ -14,33 +14,54 @@
 
 package org.opensaml.saml.metadata.resolver.filter.impl;
 
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Function;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.apache.xml.security.algorithms.implementations.ECDSAUtils;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.signature.SignedInfo;
+import org.apache.xml.security.signature.XMLSignature;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.saml.metadata.resolver.filter.AbstractMetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilterContext;
 import org.opensaml.saml.metadata.resolver.filter.data.impl.MetadataSource;
+import org.opensaml.saml.metadata.resolver.filter.data.impl.StreamedMetadata;
 import org.opensaml.saml.saml2.metadata.AffiliationDescriptor;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml.saml2.metadata.RoleDescriptor;
 import org.opensaml.saml.security.impl.SAMLSignatureProfileValidator;
 import org.opensaml.security.SecurityException;
+import org.opensaml.security.credential.Credential;
 import org.opensaml.security.credential.UsageType;
+import org.opensaml.security.crypto.JCAConstants;
 import org.opensaml.security.criteria.UsageCriterion;
 import org.opensaml.security.x509.TrustedNamesCriterion;
+import org.opensaml.xmlsec.algorithm.AlgorithmSupport;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCriterion;
 import org.opensaml.xmlsec.signature.SignableXMLObject;
 import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.impl.SignatureImpl;
 import org.opensaml.xmlsec.signature.support.SignatureException;
 import org.opensaml.xmlsec.signature.support.SignaturePrevalidator;
 import org.opensaml.xmlsec.signature.support.SignatureTrustEngine;
+import org.opensaml.xmlsec.signature.support.SignatureValidationParametersCriterion;
+import org.opensaml.xmlsec.signature.support.impl.SignatureAlgorithmValidator;
 import org.slf4j.Logger;
 
 import net.shibboleth.shared.annotation.ParameterName;
@@ -48,6 +69,7 @@ import net.shibboleth.shared.annotation.constraint.NotEmpty;
 import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.primitive.LoggerFactory;
 import net.shibboleth.shared.resolver.CriteriaSet;
+import net.shibboleth.shared.resolver.ResolverException;
 
 /**
  * A metadata filter that validates XML signatures.
@@ -75,6 +97,9 @@ public class SignatureValidationFilter extends AbstractMetadataFilter {
     /** Strategy function for extracting dynamic trusted names from signed metadata elements. */
     @Nullable private Function<XMLObject, Set<String>> dynamicTrustedNamesStrategy;
 
+    /** Optional executor used to verify the signatures of group members in parallel. */
+    @Nullable private Executor executor;
+
     /**
      * Constructor.
      * 
@@ -214,6 +239,39 @@ public class SignatureValidationFilter extends AbstractMetadataFilter {
         defaultCriteria = newCriteria;
     }
 
+    /**
+     * Get the executor used to verify the signatures of the EntityDescriptor members of a group in parallel.
+     * 
+     * @return the executor, or null if signatures are verified sequentially
+     * 
+     * @since 5.1.0
+     */
+    @Nullable public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set the executor used to verify the signatures of the EntityDescriptor members of a group in parallel.
+     * 
+     * <p>By default, signatures are verified sequentially on the calling thread. When an executor is set,
+     * each signed member of an EntitiesDescriptor is processed by a separate task, and
+     * {@link #processEntityDescriptor(EntityDescriptor, MetadataFilterContext, boolean)} and the methods it
+     * calls may run concurrently for different members. The trust engine, prevalidator and trusted names
+     * strategy must therefore be safe for concurrent use.</p>
+     * 
+     * <p>The executor should be bounded, for example a fixed-size pool with a bounded queue. Tasks that it
+     * rejects are run on the calling thread. Failed members are removed, and their failures logged, in
+     * document order once all members of the group have been processed, exactly as when run sequentially.</p>
+     * 
+     * @param exec the executor, or null to verify signatures sequentially
+     * 
+     * @since 5.1.0
+     */
+    public void setExecutor(@Nullable final Executor exec) {
+        checkSetterPreconditions();
+        executor = exec;
+    }
+
     /** {@inheritDoc} */
     @Nullable public XMLObject filter(@Nullable final XMLObject metadata, @Nonnull final MetadataFilterContext context)
             throws FilterException {
@@ -229,6 +287,11 @@ public class SignatureValidationFilter extends AbstractMetadataFilter {
         }
         final SignableXMLObject signableMetadata = (SignableXMLObject) metadata;
 
+        final StreamedMetadata streamedMetadata = context.get(StreamedMetadata.class);
+        if (streamedMetadata != null && streamedMetadata.isFragment()) {
+            return filterStreamedEntity(signableMetadata, context);
+        }
+
         if (!signableMetadata.isSigned()){
             if (getRequireSignedRoot()) {
                 throw new FilterException("Metadata root element was unsigned and signatures are required.");
@@ -245,6 +308,39 @@ public class SignatureValidationFilter extends AbstractMetadataFilter {
         
         return metadata;
     }
+
+    /**
+     * Process an <code>EntityDescriptor</code> read by streaming from a group, as a member of that group.
+     * 
+     * @param metadata the entity
+     * @param context the current filter context
+     * 
+     * @return the entity, or null if signature verification failed
+     */
+    @Nullable private XMLObject filterStreamedEntity(@Nonnull final SignableXMLObject metadata,
+            @Nonnull final MetadataFilterContext context) {
+        if (!(metadata instanceof EntityDescriptor entity)) {
+            log.error("Internal error, streamed metadata object was of an unsupported type: {}",
+                    metadata.getClass().getName());
+            return metadata;
+        }
+
+        if (!entity.isSigned()) {
+            log.trace("EntityDescriptor member '{}' was not signed, skipping signature processing...",
+                    entity.getEntityID());
+            return entity;
+        }
+        log.trace("Processing signed EntityDescriptor member: {}", entity.getEntityID());
+
+        try {
+            processEntityDescriptor(entity, context, false);
+        } catch (final FilterException e) {
+            log.error("EntityDescriptor '{}' failed signature verification, removing from metadata provider",
+                    entity.getEntityID());
+            return null;
+        }
+        return entity;
+    }
     
     /**
      * Process the signatures on the specified EntityDescriptor and any signed children.
@@ -259,9 +355,30 @@ public class SignatureValidationFilter extends AbstractMetadataFilter {
      */
     protected void processEntityDescriptor(@Nonnull final EntityDescriptor entityDescriptor,
             @Nonnull final MetadataFilterContext context, final boolean isRoot) throws FilterException {
+        removeFailedChildren(entityDescriptor, verifyEntityDescriptor(entityDescriptor, context, isRoot));
+    }
+
+    /**
+     * Verify the signatures on the specified EntityDescriptor and any signed children, without modifying it.
+     * 
+     * <p>This may be called concurrently for different members of a group, since unlike removing children it
+     * does not touch the DOM or ID index of the group.</p>
+     * 
+     * @param entityDescriptor the EntityDescriptor to be processed
+     * @param context the current filter context
+     * @param isRoot true if the element being processed is the XML document root, false if not
+     * 
+     * @return the signed children which failed signature verification, in document order
+     * 
+     * @throws FilterException thrown if an error occurs during the signature verification process
+     *                          on the EntityDescriptor itself
+     */
+    @Nonnull private List<XMLObject> verifyEntityDescriptor(@Nonnull final EntityDescriptor entityDescriptor,
+            @Nonnull final MetadataFilterContext context, final boolean isRoot) throws FilterException {
 
         final String entityID = entityDescriptor.getEntityID();
         log.trace("Processing EntityDescriptor: {}", entityID);
+        final List<XMLObject> failed = new ArrayList<>();
         
         if (entityDescriptor.isSigned()) {
             if (isRoot && isSkipRootSignature(context)) {
@@ -272,9 +389,7 @@ public class SignatureValidationFilter extends AbstractMetadataFilter {
             }
         }
         
-        final Iterator<RoleDescriptor> roleIter = entityDescriptor.getRoleDescriptors().iterator();
-        while (roleIter.hasNext()) {
-           final RoleDescriptor roleChild = roleIter.next(); 
+        for (final RoleDescriptor roleChild : entityDescriptor.getRoleDescriptors()) {
             if (!roleChild.isSigned()) {
                 log.trace("RoleDescriptor member '{}' was not signed, skipping signature processing...",
                         roleChild.getElementQName());
@@ -286,12 +401,7 @@ public class SignatureValidationFilter extends AbstractMetadataFilter {
                 final String roleID = getRoleIDToken(entityID, roleChild);
                 verifySignature(roleChild, roleID, false);
             } catch (final FilterException e) {
-                log.error("RoleDescriptor '{}' subordinate to entity '{}' failed signature verification, " 
-                       + "removing from metadata provider", 
-                       roleChild.getElementQName(), entityID); 
-                // Note that this is ok since we're iterating over an IndexedXMLObjectChildrenList directly,
-                // rather than a sublist like in processEntityGroup, and iterator remove() is supported there.
-                roleIter.remove();
+                failed.add(roleChild);
             }
         }
         
@@ -306,13 +416,37 @@ public class SignatureValidationFilter extends AbstractMetadataFilter {
                 try {
                     verifySignature(affiliationDescriptor, affiliationDescriptor.getOwnerID(), false);
                 } catch (final FilterException e) {
-                    log.error("AffiliationDescriptor with owner ID '{}' subordinate to entity '{}' " + 
-                            "failed signature verification, removing from metadata provider", 
-                            affiliationDescriptor.getOwnerID(), entityID); 
-                    entityDescriptor.setAffiliationDescriptor(null);
+                    failed.add(affiliationDescriptor);
                 }
             }
         }
+        
+        return failed;
+    }
+
+    /**
+     * Remove the signed children of an EntityDescriptor which failed signature verification.
+     * 
+     * @param entityDescriptor the EntityDescriptor which was processed
+     * @param failed the children which failed signature verification
+     */
+    private void removeFailedChildren(@Nonnull final EntityDescriptor entityDescriptor,
+            @Nonnull final List<XMLObject> failed) {
+        
+        final String entityID = entityDescriptor.getEntityID();
+        for (final XMLObject child : failed) {
+            if (child instanceof AffiliationDescriptor affiliationDescriptor) {
+                log.error("AffiliationDescriptor with owner ID '{}' subordinate to entity '{}' " + 
+                        "failed signature verification, removing from metadata provider", 
+                        affiliationDescriptor.getOwnerID(), entityID); 
+                entityDescriptor.setAffiliationDescriptor(null);
+            } else {
+                log.error("RoleDescriptor '{}' subordinate to entity '{}' failed signature verification, " 
+                        + "removing from metadata provider", 
+                        child.getElementQName(), entityID); 
+                entityDescriptor.getRoleDescriptors().remove(child);
+            }
+        }
     }
  
     
@@ -334,9 +468,15 @@ public class SignatureValidationFilter extends AbstractMetadataFilter {
         final String name = getGroupName(entitiesDescriptor);
         log.trace("Processing EntitiesDescriptor group: {}", name);
         
+        // Members of streamed metadata have already been processed individually.
+        final StreamedMetadata streamedMetadata = context.get(StreamedMetadata.class);
+        
         if (entitiesDescriptor.isSigned()) {
             if (isRoot && isSkipRootSignature(context)) {
                 log.trace("Skipping root signature validation of EntitiesDescriptor based on filter context data");
+            } else if (streamedMetadata != null) {
+                log.trace("Proceeding with streamed signature validation of EntitiesDescriptor");
+                verifyStreamedSignature(entitiesDescriptor, name, streamedMetadata);
             } else {
                 log.trace("Proceeding with signature validation of EntitiesDescriptor");
                 verifySignature(entitiesDescriptor, name, true);
@@ -347,22 +487,29 @@ public class SignatureValidationFilter extends AbstractMetadataFilter {
         // so just note them in a set and then remove after iteration has completed.
         final HashSet<XMLObject> toRemove = new HashSet<>();
         
-        final Iterator<EntityDescriptor> entityIter = entitiesDescriptor.getEntityDescriptors().iterator();
-        while (entityIter.hasNext()) {
-            final EntityDescriptor entityChild = entityIter.next();
-            if (!entityChild.isSigned()) {
-                log.trace("EntityDescriptor member '{}' was not signed, skipping signature processing...",
-                        entityChild.getEntityID());
-                continue;
-            }
-            log.trace("Processing signed EntityDescriptor member: {}", entityChild.getEntityID());
-            
-            try {
-                processEntityDescriptor(entityChild, context, false);
-            } catch (final FilterException e) {
-               log.error("EntityDescriptor '{}' failed signature verification, removing from metadata provider", 
-                       entityChild.getEntityID()); 
-               toRemove.add(entityChild);
+        final Executor exec = getExecutor();
+        if (streamedMetadata != null) {
+            log.trace("Skipping EntityDescriptor members of streamed EntitiesDescriptor group: {}", name);
+        } else if (exec != null) {
+            processEntityMembersInParallel(entitiesDescriptor, context, exec, toRemove);
+        } else {
+            final Iterator<EntityDescriptor> entityIter = entitiesDescriptor.getEntityDescriptors().iterator();
+            while (entityIter.hasNext()) {
+                final EntityDescriptor entityChild = entityIter.next();
+                if (!entityChild.isSigned()) {
+                    log.trace("EntityDescriptor member '{}' was not signed, skipping signature processing...",
+                            entityChild.getEntityID());
+                    continue;
+                }
+                log.trace("Processing signed EntityDescriptor member: {}", entityChild.getEntityID());
+                
+                try {
+                    processEntityDescriptor(entityChild, context, false);
+                } catch (final FilterException e) {
+                   log.error("EntityDescriptor '{}' failed signature verification, removing from metadata provider",
+                           entityChild.getEntityID()); 
+                   toRemove.add(entityChild);
+                }
             }
         }
 
@@ -392,6 +539,75 @@ public class SignatureValidationFilter extends AbstractMetadataFilter {
     }
     // Checkstyle: CyclomaticComplexity ON
     
+    /**
+     * Process the signed EntityDescriptor members of a group in parallel.
+     * 
+     * <p>Only the signature checks run on the executor. All members are checked before any failure is
+     * reported, and failures are then logged and removed on the calling thread in document order, since
+     * removal releases the DOM and updates the ID index of the group shared by all members.</p>
+     * 
+     * @param entitiesDescriptor the EntitiesDescriptor whose members are to be processed
+     * @param context the current filter context
+     * @param exec the executor on which to process members
+     * @param toRemove the set to which to add members that fail signature verification
+     */
+    private void processEntityMembersInParallel(@Nonnull final EntitiesDescriptor entitiesDescriptor,
+            @Nonnull final MetadataFilterContext context, @Nonnull final Executor exec,
+            @Nonnull final Set<XMLObject> toRemove) {
+        
+        final List<EntityDescriptor> signedChildren = new ArrayList<>();
+        final List<CompletableFuture<List<XMLObject>>> results = new ArrayList<>();
+        
+        for (final EntityDescriptor entityChild : entitiesDescriptor.getEntityDescriptors()) {
+            if (!entityChild.isSigned()) {
+                log.trace("EntityDescriptor member '{}' was not signed, skipping signature processing...",
+                        entityChild.getEntityID());
+                continue;
+            }
+            log.trace("Processing signed EntityDescriptor member: {}", entityChild.getEntityID());
+            
+            final CompletableFuture<List<XMLObject>> result = new CompletableFuture<>();
+            final Runnable task = () -> {
+                try {
+                    result.complete(verifyEntityDescriptor(entityChild, context, false));
+                } catch (final Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            };
+            
+            signedChildren.add(entityChild);
+            results.add(result);
+            try {
+                exec.execute(task);
+            } catch (final RejectedExecutionException e) {
+                task.run();
+            }
+        }
+        
+        RuntimeException failure = null;
+        for (int i = 0; i < results.size(); i++) {
+            final EntityDescriptor entityChild = signedChildren.get(i);
+            try {
+                removeFailedChildren(entityChild, results.get(i).join());
+            } catch (final CompletionException e) {
+                if (e.getCause() instanceof FilterException) {
+                    log.error("EntityDescriptor '{}' failed signature verification, removing from metadata provider",
+                            entityChild.getEntityID());
+                    toRemove.add(entityChild);
+                    continue;
+                }
+                // Propagate the first unexpected error, but only after all tasks have finished with the group.
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+            }
+        }
+        
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
     /**
      * Evaluate the signature on the signed metadata instance.
      * 
@@ -438,6 +654,140 @@ public class SignatureValidationFilter extends AbstractMetadataFilter {
         }
     }
 
+    /**
+     * Evaluate the signature of an <code>EntitiesDescriptor</code> read by streaming, whose content is no longer
+     * available.
+     * 
+     * <p>
+     * The digest of the content computed over the stream is compared with that of the signature's reference,
+     * and the signature over the <code>SignedInfo</code> then evaluated by the trust engine as raw content.
+     * The same pre-validation, criteria and algorithm restrictions apply as for {@link #verifySignature}.
+     * </p>
+     * 
+     * @param group the signed group
+     * @param metadataEntryName the EntitiesDescriptor Name, used for logging
+     * @param streamedMetadata the streamed metadata filter data, supplying the digest
+     * 
+     * @throws FilterException thrown if the group's signature can not be established as trusted,
+     *                         or if an error occurs during the signature verification process
+     * 
+     * @since 5.1.0
+     */
+    protected void verifyStreamedSignature(@Nonnull final EntitiesDescriptor group,
+            @Nullable @NotEmpty final String metadataEntryName, @Nonnull final StreamedMetadata streamedMetadata)
+                    throws FilterException {
+        
+        log.debug("Verifying streamed signature on metadata entry: {}", metadataEntryName);
+        
+        final Signature signature = group.getSignature();
+        if (signature == null) {
+            log.warn("Signature was null, skipping processing on metadata entry: {}", metadataEntryName);
+            return;
+        }
+        
+        performPreValidation(signature, metadataEntryName);
+        
+        final XMLSignature xmlSignature = signature instanceof SignatureImpl impl ? impl.getXMLSignature() : null;
+        if (xmlSignature == null) {
+            log.error("Signature on metadata entry '{}' had no native XMLSignature", metadataEntryName);
+            throw new FilterException("Metadata instance signature had no native XMLSignature");
+        }
+        
+        final CriteriaSet criteriaSet = buildCriteriaSet(group, true);
+        
+        try {
+            final SignatureValidationParametersCriterion validationCriterion =
+                    criteriaSet.get(SignatureValidationParametersCriterion.class);
+            if (validationCriterion != null) {
+                new SignatureAlgorithmValidator(validationCriterion.getSignatureValidationParameters())
+                    .validate(signature);
+            }
+            
+            final SignedInfo signedInfo = xmlSignature.getSignedInfo();
+            final byte[] digest = streamedMetadata.getReferenceDigest(group);
+            if (digest == null || signedInfo.getLength() != 1
+                    || !MessageDigest.isEqual(digest, signedInfo.item(0).getDigestValue())) {
+                log.error("Signature reference validation failed for metadata entry {}", metadataEntryName);
+                throw new FilterException("Signature reference validation failed for metadata entry");
+            }
+            
+            final String algorithmURI = signedInfo.getSignatureMethodURI();
+            byte[] signatureValue = xmlSignature.getSignatureValue();
+            if (JCAConstants.KEY_ALGO_EC.equals(AlgorithmSupport.getKeyAlgorithm(algorithmURI))) {
+                signatureValue = ECDSAUtils.convertXMLDSIGtoASN1(signatureValue);
+            }
+            
+            if (validateRaw(signature, signatureValue, canonicalize(signedInfo), algorithmURI, criteriaSet)) {
+                log.trace("Signature trust establishment succeeded for metadata entry {}", metadataEntryName);
+            } else {
+                log.error("Signature trust establishment failed for metadata entry {}", metadataEntryName);
+                throw new FilterException("Signature trust establishment failed for metadata entry");
+            }
+        } catch (final SignatureException e) {
+            log.error("Signature trust establishment failed for metadata entry {}: {}", metadataEntryName,
+                    e.getMessage());
+            throw new FilterException("Signature trust establishment failed for metadata entry", e);
+        } catch (final SecurityException | XMLSecurityException | IOException e) {
+            // Treat evaluation errors as fatal
+            log.error("Error processing signature verification for metadata entry '{}': {} ",
+                    metadataEntryName, e.getMessage());
+            throw new FilterException("Error processing signature verification for metadata entry", e);
+        }
+    }
+
+    /**
+     * Evaluate a raw signature with the trust engine, using each credential resolved from the signature's
+     * <code>KeyInfo</code> as a candidate in turn.
+     * 
+     * @param signature the signature
+     * @param signatureValue the signature value
+     * @param content the signed content
+     * @param algorithmURI the signature algorithm
+     * @param criteriaSet the criteria for the trust engine
+     * 
+     * @return true iff the signature was verified and trusted
+     * 
+     * @throws SecurityException if an error occurs
+     */
+    private boolean validateRaw(@Nonnull final Signature signature, @Nonnull final byte[] signatureValue,
+            @Nonnull final byte[] content, @Nonnull final String algorithmURI, @Nonnull final CriteriaSet criteriaSet)
+                    throws SecurityException {
+        final SignatureTrustEngine engine = getSignatureTrustEngine();
+        final KeyInfoCredentialResolver kiResolver = engine.getKeyInfoResolver();
+        boolean sawCandidate = false;
+        if (kiResolver != null && signature.getKeyInfo() != null) {
+            final CriteriaSet kiCriteria = new CriteriaSet(new KeyInfoCriterion(signature.getKeyInfo()));
+            try {
+                for (final Credential candidate : kiResolver.resolve(kiCriteria)) {
+                    sawCandidate = true;
+                    if (engine.validate(signatureValue, content, algorithmURI, criteriaSet, candidate)) {
+                        return true;
+                    }
+                }
+            } catch (final ResolverException e) {
+                throw new SecurityException("Error resolving KeyInfo from KeyInfoResolver", e);
+            }
+        }
+        
+        // Without a candidate, an engine may still verify against its trusted credentials directly.
+        return !sawCandidate && engine.validate(signatureValue, content, algorithmURI, criteriaSet, null);
+    }
+
+    /**
+     * Canonicalize a <code>SignedInfo</code> element.
+     * 
+     * @param signedInfo the element
+     * 
+     * @return the canonical form
+     * 
+     * @throws XMLSecurityException if the element cannot be canonicalized
+     * @throws IOException if the element cannot be canonicalized
+     */
+    @Nonnull private byte[] canonicalize(@Nonnull final SignedInfo signedInfo)
+            throws XMLSecurityException, IOException {
+        return signedInfo.getCanonicalizedOctetStream();
+    }
+
     /**
      * Perform pre-validation on the Signature token.
      * 
@@ -14,8 +14,21 @@
 
 package org.opensaml.saml.metadata.resolver.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 
@@ -24,9 +37,14 @@ import javax.annotation.Nullable;
 
 import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.common.CacheableSAMLObject;
 import org.opensaml.saml.metadata.IterableMetadataSource;
 import org.opensaml.saml.metadata.resolver.BatchMetadataResolver;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilterContext;
 import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
 import org.opensaml.saml.metadata.resolver.index.impl.MetadataIndexManager;
 import org.opensaml.saml.saml2.common.TimeBoundSAMLObject;
@@ -35,14 +53,20 @@ import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.slf4j.Logger;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
 import net.shibboleth.shared.annotation.constraint.NotLive;
+import net.shibboleth.shared.annotation.constraint.Positive;
 import net.shibboleth.shared.annotation.constraint.Unmodifiable;
 import net.shibboleth.shared.collection.CollectionSupport;
 import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.primitive.LoggerFactory;
+import net.shibboleth.shared.primitive.StringSupport;
 import net.shibboleth.shared.resolver.CriteriaSet;
 import net.shibboleth.shared.resolver.ResolverException;
+import net.shibboleth.shared.xml.XMLParserException;
 
 /**
  * Abstract subclass for metadata resolvers that process and resolve metadata at a given point 
@@ -64,9 +88,16 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
      * entire metadata collection. Defaults to false. */
     private boolean resolveViaPredicatesOnly;
     
+    /** Flag indicating whether entities are held in serialized form until first resolved. */
+    private boolean lazyEntityMaterialization;
+    
+    /** Maximum number of entities held in unmarshalled form when materializing lazily. */
+    @Positive private int maxMaterializedEntities;
+    
     /** Constructor. */
     public AbstractBatchMetadataResolver() {
         indexes = CollectionSupport.emptySet();
+        maxMaterializedEntities = 1000;
         
         setCacheSourceMetadata(true);
     }
@@ -74,7 +105,15 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
     /** {@inheritDoc} */
     @Override public Iterator<EntityDescriptor> iterator() {
         checkComponentActive();
-        return CollectionSupport.copyToList(ensureBackingStore().getOrderedDescriptors()).iterator();
+        final BatchEntityBackingStore backingStore = ensureBackingStore();
+        final Iterator<EntityDescriptor> descriptors =
+                CollectionSupport.copyToList(backingStore.getOrderedDescriptors()).iterator();
+        if (backingStore.deferredDescriptors.isEmpty()) {
+            return descriptors;
+        }
+        return Iterators.concat(descriptors, Iterators.filter(
+                Iterators.transform(backingStore.deferredDescriptors.iterator(), backingStore::materialize),
+                Objects::nonNull));
     }
 
     /**
@@ -140,6 +179,69 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
         resolveViaPredicatesOnly = flag;
     }
 
+    /**
+     * Get whether entities are held in serialized form until first resolved.
+     * 
+     * @return whether entities are materialized lazily
+     * 
+     * @since 5.1.0
+     */
+    public boolean isLazyEntityMaterialization() {
+        return lazyEntityMaterialization;
+    }
+
+    /**
+     * Set whether entities are held in serialized form until first resolved.
+     * 
+     * <p>
+     * When enabled, each entity within an <code>EntitiesDescriptor</code> is serialized once it has been
+     * filtered and indexed, and removed from the metadata tree. It is unmarshalled again when it is first
+     * resolved or iterated over, and a bounded number of the most recently used entities are kept in that form.
+     * Large aggregates of which only a small part is used at any time then occupy a fraction of the heap.
+     * </p>
+     * 
+     * <p>
+     * An entity retains its enclosing groups and any object metadata attached to the entity itself, but not
+     * object metadata attached to its descendants. An entity evicted and unmarshalled again is a different
+     * object from the one previously returned. No entities are carried over by incremental refresh.
+     * </p>
+     * 
+     * <p>Defaults to false.</p>
+     * 
+     * @param flag flag to set
+     * 
+     * @since 5.1.0
+     */
+    public void setLazyEntityMaterialization(final boolean flag) {
+        checkSetterPreconditions();
+        lazyEntityMaterialization = flag;
+    }
+
+    /**
+     * Get the maximum number of entities held in unmarshalled form when materializing lazily.
+     * 
+     * @return the maximum number of entities
+     * 
+     * @since 5.1.0
+     */
+    @Positive public int getMaxMaterializedEntities() {
+        return maxMaterializedEntities;
+    }
+
+    /**
+     * Set the maximum number of entities held in unmarshalled form when materializing lazily.
+     * 
+     * <p>Defaults to 1000.</p>
+     * 
+     * @param max the maximum number of entities
+     * 
+     * @since 5.1.0
+     */
+    public void setMaxMaterializedEntities(@Positive final int max) {
+        checkSetterPreconditions();
+        maxMaterializedEntities = Constraint.isGreaterThan(0, max, "Maximum number of entities must be positive");
+    }
+
     /** {@inheritDoc} */
     @Nullable public Instant getRootValidUntil() {
         final XMLObject cached = ensureBackingStore().getCachedOriginalMetadata();
@@ -210,21 +312,107 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
      *          and the wrapped set contains the indexed data, which may be empty.
      */
     @Nonnull protected Optional<Set<EntityDescriptor>> lookupByIndexes(@Nullable final CriteriaSet criteria) {
-        return ensureBackingStore().getSecondaryIndexManager().lookupIndexedItems(criteria);
+        final BatchEntityBackingStore backingStore = ensureBackingStore();
+        if (backingStore.deferredDescriptors.isEmpty()) {
+            return backingStore.getSecondaryIndexManager().lookupIndexedItems(criteria);
+        }
+        
+        final Optional<Set<String>> entityIDs =
+                backingStore.deferredSecondaryIndexManager.lookupIndexedItems(criteria);
+        if (entityIDs.isEmpty()) {
+            return Optional.empty();
+        }
+        final Set<EntityDescriptor> descriptors = new LinkedHashSet<>();
+        for (final String entityID : entityIDs.get()) {
+            assert entityID != null;
+            descriptors.addAll(backingStore.materialize(entityID));
+        }
+        return Optional.of(descriptors);
+    }
+    
+    /** {@inheritDoc} */
+    @Override @Nonnull protected List<EntityDescriptor> lookupIndexedEntityID(
+            @Nonnull @NotEmpty final String entityID) {
+        final BatchEntityBackingStore backingStore = ensureBackingStore();
+        if (backingStore.deferredIndexedDescriptors.containsKey(entityID)) {
+            return backingStore.materialize(entityID);
+        }
+        return super.lookupIndexedEntityID(entityID);
     }
     
+    /** {@inheritDoc} */
+    @Override protected void preProcessEntityDescriptor(@Nonnull final EntityDescriptor entityDescriptor,
+            @Nonnull final EntityBackingStore backingStore) {
+        // An entity standing in for one carried over is replaced in the store by the entity it stands in for.
+        final EntityDescriptor carriedOver =
+                ((BatchEntityBackingStore) backingStore).getCarriedOverEntity(entityDescriptor);
+        super.preProcessEntityDescriptor(carriedOver != null ? carriedOver : entityDescriptor, backingStore);
+    }
+
     /** {@inheritDoc} */
     @Override protected void indexEntityDescriptor(@Nonnull final EntityDescriptor entityDescriptor, 
             @Nonnull final EntityBackingStore backingStore) {
         super.indexEntityDescriptor(entityDescriptor, backingStore);
         
-        ((BatchEntityBackingStore)backingStore).getSecondaryIndexManager().indexEntityDescriptor(entityDescriptor);
+        final BatchEntityBackingStore batchBackingStore = (BatchEntityBackingStore) backingStore;
+        if (!batchBackingStore.isCarriedOver(entityDescriptor)) {
+            batchBackingStore.getSecondaryIndexManager().indexEntityDescriptor(entityDescriptor);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override protected void preProcessEntitiesDescriptor(@Nonnull final EntitiesDescriptor entitiesDescriptor,
+            @Nonnull final EntityBackingStore backingStore) {
+        if (!isLazyEntityMaterialization()) {
+            super.preProcessEntitiesDescriptor(entitiesDescriptor, backingStore);
+            return;
+        }
+        
+        final BatchEntityBackingStore batchBackingStore = (BatchEntityBackingStore) backingStore;
+        final Set<EntityDescriptor> deferred = Collections.newSetFromMap(new IdentityHashMap<>());
+        final List<XMLObject> children = entitiesDescriptor.getOrderedChildren();
+        if (children != null) {
+            for (final XMLObject child : children) {
+                if (child instanceof EntityDescriptor entity) {
+                    if (batchBackingStore.getCarriedOverEntity(entity) == null
+                            && batchBackingStore.defer(entity, entitiesDescriptor)) {
+                        deferred.add(entity);
+                    } else {
+                        preProcessEntityDescriptor(entity, backingStore);
+                    }
+                } else if (child instanceof EntitiesDescriptor group) {
+                    preProcessEntitiesDescriptor(group, backingStore);
+                }
+            }
+        }
+        
+        // Only the serialized form of the deferred entities is retained.
+        if (!deferred.isEmpty()) {
+            entitiesDescriptor.getEntityDescriptors().removeAll(deferred);
+        }
     }
 
     /** {@inheritDoc} */
     @Override @Nonnull protected BatchEntityBackingStore createNewBackingStore() {
         return new BatchEntityBackingStore(getIndexes());
     }
+
+    /**
+     * Create a new backing store instance which starts from the secondary index data of an existing one,
+     * for those of its entities which are carried over unchanged.
+     * 
+     * @param previous the existing backing store
+     * @param carriedOver the entities of the existing store which are carried over, keyed by the entities of the
+     *          new metadata standing in for them
+     * 
+     * @return the new backing store instance
+     * 
+     * @since 5.1.0
+     */
+    @Nonnull protected BatchEntityBackingStore createNewBackingStore(@Nonnull final BatchEntityBackingStore previous,
+            @Nonnull final Map<EntityDescriptor,EntityDescriptor> carriedOver) {
+        return new BatchEntityBackingStore(previous, carriedOver);
+    }
     
     /** {@inheritDoc} */
     @Override @Nonnull protected BatchEntityBackingStore ensureBackingStore() {
@@ -280,10 +468,45 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
      */
     @Nonnull protected BatchEntityBackingStore preProcessNewMetadata(@Nonnull final XMLObject root) 
             throws FilterException {
+        return preProcessNewMetadata(root, newFilterContext());
+    }
+
+    /**
+     * Process the specified new metadata document, including metadata filtering with the supplied
+     * filter context, and return its data in a new entity backing store instance.
+     * 
+     * @param root the root of the new metadata document being processed
+     * @param context the context to use when filtering the metadata
+     * 
+     * @return the new backing store instance
+     * 
+     * @throws FilterException if there is a problem filtering the metadata
+     * 
+     * @since 5.1.0
+     */
+    @Nonnull protected BatchEntityBackingStore preProcessNewMetadata(@Nonnull final XMLObject root,
+            @Nonnull final MetadataFilterContext context) throws FilterException {
         
-        final BatchEntityBackingStore newBackingStore = createNewBackingStore();
+        final XMLObject filteredMetadata = filterMetadata(root, context);
         
-        final XMLObject filteredMetadata = filterMetadata(root);
+        // Entities carried over from the current data set as they are keep their secondary index entries.
+        final BatchEntityBackingStore currentBackingStore = (BatchEntityBackingStore) getBackingStore();
+        final Map<EntityDescriptor,EntityDescriptor> carriedOver = new IdentityHashMap<>();
+        if (filteredMetadata != null && currentBackingStore != null
+                && !currentBackingStore.getOrderedDescriptors().isEmpty()) {
+            final Set<EntityDescriptor> current = Collections.newSetFromMap(new IdentityHashMap<>());
+            current.addAll(currentBackingStore.getOrderedDescriptors());
+            collectCarriedOverEntities(filteredMetadata, current, carriedOver);
+        }
+        
+        final BatchEntityBackingStore newBackingStore;
+        if (currentBackingStore == null || carriedOver.isEmpty()) {
+            newBackingStore = createNewBackingStore();
+        } else {
+            log.debug("{} Carrying over {} unchanged entities from the current metadata", getLogPrefix(),
+                    carriedOver.size());
+            newBackingStore = createNewBackingStore(currentBackingStore, carriedOver);
+        }
         
         if (isCacheSourceMetadata()) {
             newBackingStore.setCachedOriginalMetadata(root);
@@ -308,6 +531,54 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
         return newBackingStore;
     }
 
+    /**
+     * Get the entity of the current data set which an entity of new metadata carries over unchanged, if any.
+     * 
+     * <p>
+     * The entity carried over is added to the new backing store in place of the one given, and keeps its
+     * secondary index entries rather than being indexed again. The entity given remains in the new metadata
+     * tree, so it is up to the subclass to replace it there once the new data has taken effect.
+     * </p>
+     * 
+     * <p>The default implementation carries over an entity which is itself part of the current data set.</p>
+     * 
+     * @param entity an entity of the new metadata
+     * 
+     * @return the entity carried over, or null
+     * 
+     * @since 5.1.0
+     */
+    @Nullable protected EntityDescriptor getCarriedOverEntity(@Nonnull final EntityDescriptor entity) {
+        return entity;
+    }
+
+    /**
+     * Collect the entities of the current data set carried over by a metadata tree.
+     * 
+     * @param metadata the metadata tree
+     * @param current the entities in the current data set
+     * @param carriedOver the map to add the entities to, keyed by the entities of the tree standing in for them
+     */
+    private void collectCarriedOverEntities(@Nonnull final XMLObject metadata,
+            @Nonnull final Set<EntityDescriptor> current,
+            @Nonnull final Map<EntityDescriptor,EntityDescriptor> carriedOver) {
+        if (metadata instanceof EntityDescriptor) {
+            final EntityDescriptor entity = getCarriedOverEntity((EntityDescriptor) metadata);
+            if (entity != null && current.contains(entity)) {
+                carriedOver.put((EntityDescriptor) metadata, entity);
+            }
+        } else if (metadata instanceof EntitiesDescriptor) {
+            for (final EntitiesDescriptor group : ((EntitiesDescriptor) metadata).getEntitiesDescriptors()) {
+                assert group != null;
+                collectCarriedOverEntities(group, current, carriedOver);
+            }
+            for (final EntityDescriptor entity : ((EntitiesDescriptor) metadata).getEntityDescriptors()) {
+                assert entity != null;
+                collectCarriedOverEntities(entity, current, carriedOver);
+            }
+        }
+    }
+
     /**
      * Specialized entity backing store implementation for batch metadata resolvers.
      * 
@@ -330,6 +601,30 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
         /** Manager for secondary indexes. */
         @Nonnull private final MetadataIndexManager<EntityDescriptor> secondaryIndexManager;
         
+        /** Entities already present in the secondary indexes. */
+        @Nonnull private final Set<EntityDescriptor> carriedOverDescriptors;
+        
+        /** Entities carried over, keyed by the entities of the new metadata standing in for them. */
+        @Nonnull private final Map<EntityDescriptor,EntityDescriptor> carriedOverEntities;
+        
+        /** Entities held in serialized form, in document order. */
+        @Nonnull private final List<DeferredEntity> deferredDescriptors;
+        
+        /** Entities held in serialized form, indexed by entityID. */
+        @Nonnull private final Map<String,List<DeferredEntity>> deferredIndexedDescriptors;
+        
+        /** Manager for secondary indexes of the entities held in serialized form, by entityID. */
+        @Nonnull private final MetadataIndexManager<String> deferredSecondaryIndexManager;
+        
+        /** The most recently used entities held in serialized form, in unmarshalled form. */
+        @Nonnull private final Map<DeferredEntity,EntityDescriptor> materializedDescriptors;
+        
+        /** Earliest validUntil of the entities held in serialized form. */
+        @Nullable private Instant deferredValidUntil;
+        
+        /** Shortest cacheDuration of the entities held in serialized form. */
+        @Nullable private Duration deferredCacheDuration;
+        
         /**
          * Constructor.
          *
@@ -338,6 +633,46 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
         protected BatchEntityBackingStore(@Nullable final Set<MetadataIndex> initIndexes) {
             secondaryIndexManager =
                     new MetadataIndexManager<>(initIndexes, new MetadataIndexManager.IdentityExtractionFunction());
+            carriedOverDescriptors = CollectionSupport.emptySet();
+            carriedOverEntities = CollectionSupport.emptyMap();
+            deferredDescriptors = new ArrayList<>();
+            deferredIndexedDescriptors = new HashMap<>();
+            deferredSecondaryIndexManager =
+                    new MetadataIndexManager<>(initIndexes, new MetadataIndexManager.EntityIDExtractionFunction());
+            materializedDescriptors = newMaterializedDescriptors();
+        }
+        
+        /**
+         * Constructor.
+         * 
+         * <p>
+         * The secondary indexes start as a copy of those of the previous store, less the entities which are
+         * not carried over. The entities carried over are not indexed again when added to this store.
+         * </p>
+         *
+         * @param previous the store whose secondary index data is copied
+         * @param carriedOver the entities of the previous store to retain in the secondary indexes, keyed by the
+         *          entities of the new metadata standing in for them
+         * 
+         * @since 5.1.0
+         */
+        protected BatchEntityBackingStore(@Nonnull final BatchEntityBackingStore previous,
+                @Nonnull final Map<EntityDescriptor,EntityDescriptor> carriedOver) {
+            secondaryIndexManager = new MetadataIndexManager<>(previous.getSecondaryIndexManager());
+            carriedOverDescriptors = Collections.newSetFromMap(new IdentityHashMap<>());
+            carriedOverDescriptors.addAll(carriedOver.values());
+            carriedOverEntities = new IdentityHashMap<>(carriedOver);
+            deferredDescriptors = new ArrayList<>();
+            deferredIndexedDescriptors = new HashMap<>();
+            deferredSecondaryIndexManager = new MetadataIndexManager<>(getIndexes(),
+                    new MetadataIndexManager.EntityIDExtractionFunction());
+            materializedDescriptors = newMaterializedDescriptors();
+            for (final EntityDescriptor descriptor : previous.getOrderedDescriptors()) {
+                assert descriptor != null;
+                if (!carriedOverDescriptors.contains(descriptor)) {
+                    secondaryIndexManager.deindexEntityDescriptor(descriptor);
+                }
+            }
         }
 
         /**
@@ -398,6 +733,246 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
         @Nonnull public MetadataIndexManager<EntityDescriptor> getSecondaryIndexManager() {
             return secondaryIndexManager;
         }
+        
+        /**
+         * Get whether an entity was carried over from a previous store, and so is already present in the
+         * secondary indexes.
+         * 
+         * @param descriptor the entity
+         * 
+         * @return whether the entity was carried over
+         * 
+         * @since 5.1.0
+         */
+        public boolean isCarriedOver(@Nonnull final EntityDescriptor descriptor) {
+            return carriedOverDescriptors.contains(descriptor);
+        }
+        
+        /**
+         * Get the entity carried over from a previous store which an entity of the new metadata stands in for.
+         * 
+         * @param descriptor the entity of the new metadata
+         * 
+         * @return the entity carried over, or null
+         * 
+         * @since 5.1.0
+         */
+        @Nullable public EntityDescriptor getCarriedOverEntity(@Nonnull final EntityDescriptor descriptor) {
+            return carriedOverEntities.get(descriptor);
+        }
+        
+        /**
+         * Get the earliest expiration of the metadata, taking into account the entities held in serialized form,
+         * which are no longer part of the cached metadata.
+         * 
+         * @param candidateTime the earliest expiration of the cached metadata
+         * @param now the current time
+         * 
+         * @return the earliest expiration, null only if the candidate is null and there are no time limits
+         * 
+         * @since 5.1.0
+         */
+        @Nullable public Instant getEarliestExpiration(@Nullable final Instant candidateTime,
+                @Nonnull final Instant now) {
+            Instant earliest = candidateTime;
+            if (deferredValidUntil != null && (earliest == null || deferredValidUntil.isBefore(earliest))) {
+                earliest = deferredValidUntil;
+            }
+            if (deferredCacheDuration != null) {
+                final Instant expiration = now.plus(deferredCacheDuration);
+                if (earliest == null || expiration.isBefore(earliest)) {
+                    earliest = expiration;
+                }
+            }
+            return earliest;
+        }
+        
+        /**
+         * Index an entity and retain it in serialized form.
+         * 
+         * @param entity the entity
+         * @param parent the group containing the entity
+         * 
+         * @return false if the entity could not be serialized and should be retained as it is
+         */
+        private boolean defer(@Nonnull final EntityDescriptor entity, @Nonnull final EntitiesDescriptor parent) {
+            final String entityID = StringSupport.trimOrNull(entity.getEntityID());
+            if (entityID == null) {
+                return false;
+            }
+            
+            final byte[] serialized;
+            try (final ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+                XMLObjectSupport.marshallToOutputStream(entity, out);
+                serialized = out.toByteArray();
+            } catch (final MarshallingException | IOException e) {
+                log.debug("{} Unable to serialize entity '{}', retaining it unmarshalled", getLogPrefix(),
+                        entityID, e);
+                return false;
+            }
+            
+            final List<Object> objectMetadata = entity.getObjectMetadata().isEmpty() ? null
+                    : new ArrayList<>(entity.getObjectMetadata().values());
+            final DeferredEntity deferred = new DeferredEntity(entityID, serialized, parent, objectMetadata);
+            deferredDescriptors.add(deferred);
+            final List<DeferredEntity> entities =
+                    deferredIndexedDescriptors.computeIfAbsent(entityID, k -> new ArrayList<>(1));
+            if (!entities.isEmpty()) {
+                log.warn("{} Detected duplicate EntityDescriptor for entityID: {}", getLogPrefix(), entityID);
+            }
+            entities.add(deferred);
+            deferredSecondaryIndexManager.indexEntityDescriptor(entity);
+            recordExpiration(entity);
+            return true;
+        }
+        
+        /**
+         * Record the time limits within an entity held in serialized form.
+         * 
+         * @param xmlObject the entity or one of its descendants
+         */
+        private void recordExpiration(@Nonnull final XMLObject xmlObject) {
+            if (xmlObject instanceof TimeBoundSAMLObject timeBound) {
+                final Instant validUntil = timeBound.getValidUntil();
+                if (validUntil != null && (deferredValidUntil == null || validUntil.isBefore(deferredValidUntil))) {
+                    deferredValidUntil = validUntil;
+                }
+            }
+            if (xmlObject instanceof CacheableSAMLObject cacheable) {
+                final Duration duration = cacheable.getCacheDuration();
+                if (duration != null && !duration.isNegative()
+                        && (deferredCacheDuration == null || duration.compareTo(deferredCacheDuration) < 0)) {
+                    deferredCacheDuration = duration;
+                }
+            }
+            final List<XMLObject> children = xmlObject.getOrderedChildren();
+            if (children != null) {
+                for (final XMLObject child : children) {
+                    if (child != null) {
+                        recordExpiration(child);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Get the entities held in serialized form with an entityID, in unmarshalled form.
+         * 
+         * @param entityID the entityID
+         * 
+         * @return the entities, which may be empty
+         */
+        @Nonnull private List<EntityDescriptor> materialize(@Nonnull final String entityID) {
+            final List<DeferredEntity> entities = deferredIndexedDescriptors.get(entityID);
+            if (entities == null) {
+                return new ArrayList<>();
+            }
+            final List<EntityDescriptor> descriptors = new ArrayList<>(entities.size());
+            for (final DeferredEntity deferred : entities) {
+                final EntityDescriptor descriptor = materialize(deferred);
+                if (descriptor != null) {
+                    descriptors.add(descriptor);
+                }
+            }
+            return descriptors;
+        }
+        
+        /**
+         * Get an entity held in serialized form in unmarshalled form.
+         * 
+         * @param deferred the entity
+         * 
+         * @return the unmarshalled entity, or null if it could not be unmarshalled
+         */
+        @Nullable private EntityDescriptor materialize(@Nonnull final DeferredEntity deferred) {
+            EntityDescriptor descriptor = materializedDescriptors.get(deferred);
+            if (descriptor != null) {
+                return descriptor;
+            }
+            
+            // Unmarshal each entity at most once at a time.
+            synchronized (deferred) {
+                descriptor = materializedDescriptors.get(deferred);
+                if (descriptor != null) {
+                    return descriptor;
+                }
+                
+                try (final ByteArrayInputStream in = new ByteArrayInputStream(deferred.serialized)) {
+                    final XMLObject xmlObject = XMLObjectSupport.unmarshallFromInputStream(getParserPool(), in);
+                    if (!(xmlObject instanceof EntityDescriptor)) {
+                        log.error("{} Serialized entity '{}' was not an EntityDescriptor", getLogPrefix(),
+                                deferred.entityID);
+                        return null;
+                    }
+                    descriptor = (EntityDescriptor) xmlObject;
+                } catch (final XMLParserException | UnmarshallingException | IOException e) {
+                    log.error("{} Unable to unmarshall serialized entity '{}'", getLogPrefix(), deferred.entityID,
+                            e);
+                    return null;
+                }
+                
+                releaseMetadataDOM(descriptor);
+                descriptor.setParent(deferred.parent);
+                if (deferred.objectMetadata != null) {
+                    for (final Object value : deferred.objectMetadata) {
+                        descriptor.getObjectMetadata().put(value);
+                    }
+                }
+                log.trace("{} Unmarshalled serialized entity '{}'", getLogPrefix(), deferred.entityID);
+                materializedDescriptors.put(deferred, descriptor);
+                return descriptor;
+            }
+        }
+        
+        /**
+         * Build the bounded map of the most recently used unmarshalled entities.
+         * 
+         * @return the map
+         */
+        @Nonnull private Map<DeferredEntity,EntityDescriptor> newMaterializedDescriptors() {
+            final int max = getMaxMaterializedEntities();
+            return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                /** {@inheritDoc} */
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<DeferredEntity,EntityDescriptor> eldest) {
+                    return size() > max;
+                }
+            });
+        }
+    }
+    
+    /** An entity held in serialized form. */
+    private static final class DeferredEntity {
+        
+        /** The entityID. */
+        @Nonnull private final String entityID;
+        
+        /** The serialized entity. */
+        @Nonnull private final byte[] serialized;
+        
+        /** The group which contained the entity. */
+        @Nonnull private final EntitiesDescriptor parent;
+        
+        /** The object metadata attached to the entity, or null if there was none. */
+        @Nullable private final List<Object> objectMetadata;
+        
+        /**
+         * Constructor.
+         *
+         * @param id the entityID
+         * @param bytes the serialized entity
+         * @param group the group which contained the entity
+         * @param metadata the object metadata attached to the entity, or null
+         */
+        DeferredEntity(@Nonnull final String id, @Nonnull final byte[] bytes, @Nonnull final EntitiesDescriptor group,
+                @Nullable final List<Object> metadata) {
+            entityID = id;
+            serialized = bytes;
+            parent = group;
+            objectMetadata = metadata;
+        }
     }
 
 }
\ No newline at end of file
@@ -20,6 +20,8 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -28,6 +30,8 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -42,6 +46,7 @@ import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.persist.SegmentFileLoadSaveManager;
 import org.opensaml.core.xml.persist.XMLObjectLoadSaveManager;
 import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.core.xml.util.XMLObjectSupport.CloneOutputOption;
@@ -56,6 +61,7 @@ import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.opensaml.security.crypto.JCAConstants;
 import org.slf4j.Logger;
 
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.RatioGauge;
@@ -103,6 +109,19 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     @Nonnull @NotEmpty
     public static final String METRIC_GAUGE_PERSISTENT_CACHE_INIT = "gauge.persistentCacheInitialization";
     
+    /** Metric name for the timer for the background cleanup task. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_CLEANUP_TASK = "timer.cleanupTask";
+    
+    /** Metric name for the timer for the delay in starting the background cleanup task once due. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_CLEANUP_TASK_DELAY = "timer.cleanupTaskDelay";
+    
+    /** Metric name for the counter of resolutions which shared the outcome of another thread's origin fetch. */
+    @Nonnull @NotEmpty public static final String METRIC_COUNTER_COALESCED_FETCHES = "counter.coalescedFetches";
+    
+    /** Metric name for the counter of resolutions answered by the negative lookup cache. */
+    @Nonnull @NotEmpty
+    public static final String METRIC_COUNTER_NEGATIVE_LOOKUP_CACHE_HITS = "counter.negativeLookupCacheHits";
+    
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractDynamicMetadataResolver.class);
         
@@ -121,12 +140,27 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** Metrics Gauge for the persistent cache initialization.*/
     @Nullable private Gauge<PersistentCacheInitializationMetrics> gaugePersistentCacheInit;
     
+    /** Metrics Timer for the background cleanup task. */
+    @Nullable private com.codahale.metrics.Timer timerCleanupTask;
+    
+    /** Metrics Timer for the delay in starting the background cleanup task. */
+    @Nullable private com.codahale.metrics.Timer timerCleanupTaskDelay;
+    
+    /** Metrics Counter for resolutions which shared the outcome of another thread's origin fetch. */
+    @Nullable private Counter counterCoalescedFetches;
+    
+    /** Metrics Counter for resolutions answered by the negative lookup cache. */
+    @Nullable private Counter counterNegativeLookupCacheHits;
+    
     /** Timer used to schedule background metadata update tasks. */
-    @NonnullAfterInit private Timer taskTimer;
+    @Nullable private Timer taskTimer;
     
-    /** Whether we created our own task timer during object construction. */
+    /** Whether we created our own task timer. */
     private boolean createdOwnTaskTimer;
     
+    /** Scheduler used in place of the timer for background metadata update tasks. */
+    @Nullable private ScheduledExecutorService taskScheduler;
+    
     /** Minimum cache duration. */
     @Nonnull private Duration minCacheDuration;
     
@@ -136,6 +170,15 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** Negative lookup cache duration. */
     @Nonnull private Duration negativeLookupCacheDuration;
     
+    /** Maximum negative lookup cache duration when backing off repeated failures. */
+    @Nonnull private Duration maxNegativeLookupCacheDuration;
+    
+    /** Fraction by which each negative lookup cache duration is randomly shortened. */
+    @Nonnull private Float negativeLookupCacheJitter;
+    
+    /** Maximum number of entityIDs for which to hold a negative lookup cache entry. */
+    @Positive private int maxNegativeLookupCacheSize;
+    
     /** Factor used to compute when the next refresh interval will occur. Default value: 0.75 */
     @Positive @Nonnull private Float refreshDelayFactor;
     
@@ -154,7 +197,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     @Nonnull private Duration cleanupTaskInterval;
     
     /** The backing store cleanup sweeper background task. */
-    private BackingStoreCleanupSweeper cleanupTask;
+    @Nullable private MetadataBackgroundTask cleanupTask;
     
     /** The manager for the persistent cache store for resolved metadata. */
     @Nullable private XMLObjectLoadSaveManager<EntityDescriptor> persistentCacheManager;
@@ -165,6 +208,12 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** Flag indicating whether should initialize from the persistent cache in the background. */
     private boolean initializeFromPersistentCacheInBackground;
     
+    /** Flag indicating whether entities in the persistent cache should only be loaded when first resolved. */
+    private boolean initializeFromPersistentCacheLazily;
+    
+    /** Persistent cache keys of the entities not yet loaded in lazy initialization, indexed by entityID. */
+    @Nonnull private final Map<String,String> lazyPersistentCacheKeys = new ConcurrentHashMap<>();
+    
     /** The delay after which to schedule the background initialization from the persistent cache. */
     @Nonnull private Duration backgroundInitializationFromCacheDelay;
     
@@ -184,17 +233,13 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /**
      * Constructor.
      *
-     * @param backgroundTaskTimer the {@link Timer} instance used to run resolver background management tasks
+     * @param backgroundTaskTimer the {@link Timer} instance used to run resolver background management tasks,
+     *          or null to create one when needed
      */
     public AbstractDynamicMetadataResolver(@Nullable final Timer backgroundTaskTimer) {
         indexes = CollectionSupport.emptySet();
         
-        if (backgroundTaskTimer == null) {
-            taskTimer = new Timer(TimerSupport.getTimerName(this), true);
-            createdOwnTaskTimer = true;
-        } else {
-            taskTimer = backgroundTaskTimer;
-        }
+        taskTimer = backgroundTaskTimer;
         
         expirationWarningThreshold = Duration.ZERO;
         
@@ -206,6 +251,12 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         
         negativeLookupCacheDuration = Duration.ofMinutes(10);
         
+        maxNegativeLookupCacheDuration = Duration.ZERO;
+        
+        negativeLookupCacheJitter = 0.1f;
+        
+        maxNegativeLookupCacheSize = 10000;
+        
         cleanupTaskInterval = Duration.ofMinutes(30);
         
         maxIdleEntityData = Duration.ofHours(8);
@@ -219,6 +270,36 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         backgroundInitializationFromCacheDelay = Duration.ofSeconds(2);
     }
     
+    /**
+     * Get the scheduler used in place of a {@link Timer} for background management tasks.
+     * 
+     * @return the scheduler, or null
+     * 
+     * @since 5.1.0
+     */
+    @Nullable public ScheduledExecutorService getTaskScheduler() {
+        return taskScheduler;
+    }
+    
+    /**
+     * Set the scheduler used in place of a {@link Timer} for background management tasks.
+     * 
+     * <p>
+     * A single bounded scheduler may be shared by any number of resolvers, rather than each having a thread of
+     * its own. The scheduler is not shut down by the resolver. If set, any timer supplied on construction is
+     * not used.
+     * </p>
+     * 
+     * @param scheduler the scheduler, or null
+     * 
+     * @since 5.1.0
+     */
+    public void setTaskScheduler(@Nullable final ScheduledExecutorService scheduler) {
+        checkSetterPreconditions();
+        
+        taskScheduler = scheduler;
+    }
+    
     /**
      * Get the flag indicating whether should initialize from the persistent cache in the background.
      * 
@@ -242,6 +323,42 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         initializeFromPersistentCacheInBackground = flag;
     }
 
+    /**
+     * Get the flag indicating whether entities in the persistent cache should only be loaded when first resolved.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true if should init from the cache lazily, false otherwise
+     * 
+     * @since 5.1.0
+     */
+    public boolean isInitializeFromPersistentCacheLazily() {
+        return initializeFromPersistentCacheLazily;
+    }
+
+    /**
+     * Set the flag indicating whether entities in the persistent cache should only be loaded when first resolved.
+     * 
+     * <p>
+     * This requires a persistent cache manager of type {@link SegmentFileLoadSaveManager} which stores the
+     * entityID as the name of each entry. Initialization then only reads the index of the cache, and each entity
+     * is parsed, filtered and validated the first time it is resolved by entityID, rather than being fetched
+     * from the origin source. Until then it is not visible to iteration or to resolution via secondary indexes.
+     * With any other manager, or one constructed without a name strategy, a warning is logged and initialization
+     * proceeds as if this flag were not set.
+     * </p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if should init from the cache lazily, false otherwise
+     * 
+     * @since 5.1.0
+     */
+    public void setInitializeFromPersistentCacheLazily(final boolean flag) {
+        checkSetterPreconditions();
+        initializeFromPersistentCacheLazily = flag;
+    }
+
     /**
      * Get the delay after which to schedule the background initialization from the persistent cache.
      * 
@@ -435,6 +552,110 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         negativeLookupCacheDuration = duration;
     }
     
+    /**
+     *  Get the maximum negative lookup cache duration for metadata.
+     *  
+     *  <p>Defaults to: 0, which disables backoff.</p>
+     *  
+     * @return the maximum negative lookup cache duration
+     * 
+     * @since 5.1.0
+     */
+    @Nonnull public Duration getMaxNegativeLookupCacheDuration() {
+        return maxNegativeLookupCacheDuration;
+    }
+
+    /**
+     *  Set the maximum negative lookup cache duration for metadata.
+     *  
+     *  <p>
+     *  If this exceeds the negative lookup cache duration, the duration for an entityID which repeatedly
+     *  fails to resolve is doubled on each consecutive failure, up to this maximum.
+     *  </p>
+     *  
+     *  <p>Defaults to: 0, which disables backoff.</p>
+     *  
+     * @param duration the maximum negative lookup cache duration
+     * 
+     * @since 5.1.0
+     */
+    public void setMaxNegativeLookupCacheDuration(@Nonnull final Duration duration) {
+        checkSetterPreconditions();
+
+        Constraint.isNotNull(duration, "Duration cannot be null");
+        Constraint.isFalse(duration.isNegative(), "Duration cannot be negative");
+        
+        maxNegativeLookupCacheDuration = duration;
+    }
+    
+    /**
+     * Get the fraction by which each negative lookup cache duration is randomly shortened.
+     * 
+     * <p>Defaults to: 0.1.</p>
+     * 
+     * @return the jitter fraction
+     * 
+     * @since 5.1.0
+     */
+    @Nonnull public Float getNegativeLookupCacheJitter() {
+        return negativeLookupCacheJitter;
+    }
+
+    /**
+     * Set the fraction by which each negative lookup cache duration is randomly shortened, so that lookups for
+     * entityIDs which failed together are not retried together. The fraction must be at least 0.0 and less
+     * than 1.0.
+     * 
+     * <p>Defaults to: 0.1.</p>
+     * 
+     * @param jitter the jitter fraction
+     * 
+     * @since 5.1.0
+     */
+    public void setNegativeLookupCacheJitter(@Nonnull final Float jitter) {
+        checkSetterPreconditions();
+
+        if (jitter < 0 || jitter >= 1) {
+            throw new IllegalArgumentException("Negative lookup cache jitter must be at least 0.0 and less than 1.0");
+        }
+
+        negativeLookupCacheJitter = jitter;
+    }
+    
+    /**
+     * Get the maximum number of entityIDs for which to hold a negative lookup cache entry.
+     * 
+     * <p>Defaults to: 10000.</p>
+     * 
+     * @return the maximum number of entries
+     * 
+     * @since 5.1.0
+     */
+    @Positive public int getMaxNegativeLookupCacheSize() {
+        return maxNegativeLookupCacheSize;
+    }
+
+    /**
+     * Set the maximum number of entityIDs for which to hold a negative lookup cache entry.
+     * 
+     * <p>
+     * Once exceeded, the oldest entries are dropped, along with any management data held for an entityID
+     * which has no metadata, so that lookups of many unknown entityIDs cannot grow the resolver's state
+     * without limit.
+     * </p>
+     * 
+     * <p>Defaults to: 10000.</p>
+     * 
+     * @param size the maximum number of entries
+     * 
+     * @since 5.1.0
+     */
+    public void setMaxNegativeLookupCacheSize(@Positive final int size) {
+        checkSetterPreconditions();
+        
+        maxNegativeLookupCacheSize = Constraint.isGreaterThan(0, size, "Negative lookup cache size must be positive");
+    }
+    
     /**
      * Gets the delay factor used to compute the next refresh time.
      * 
@@ -603,6 +824,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         final Set<String> entityIDs = new HashSet<>();
         entityIDs.addAll(backingStore.getIndexedDescriptors().keySet());
         entityIDs.addAll(backingStore.getManagementDataEntityIDs());
+        entityIDs.addAll(lazyPersistentCacheKeys.keySet());
         
         for (final String entityID : entityIDs) {
             assert entityID != null;
@@ -620,6 +842,16 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
 
             removeByEntityID(entityID, backingStore);
             backingStore.removeManagementData(entityID);
+            
+            final String lazyKey = lazyPersistentCacheKeys.remove(entityID);
+            if (lazyKey != null) {
+                try {
+                    ensurePersistentCacheManager().remove(lazyKey);
+                } catch (final IOException e) {
+                    log.warn("{} Error removing EntityDescriptor '{}' from cache store with key '{}'", 
+                            getLogPrefix(), entityID, lazyKey);
+                }
+            }
 
         } finally {
             writeLock.unlock();
@@ -651,6 +883,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                             log.debug("{} Did not find requested metadata in backing store, " 
                                     + "and negative lookup cache is active, returning empty result", 
                                     getLogPrefix());
+                            MetricsSupport.increment(counterNegativeLookupCacheHits);
                             return CollectionSupport.emptyList();
                         }
                         log.debug("{} Did not find requested metadata in backing store, " 
@@ -791,20 +1024,38 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     @Nonnull protected Iterable<EntityDescriptor> resolveFromOriginSourceWithEntityID(
             @Nullable final CriteriaSet criteria, @Nonnull final String entityID) throws ResolverException {
         
-        final EntityManagementData mgmtData = ensureBackingStore().getManagementData(entityID);
+        final DynamicEntityBackingStore backingStore = ensureBackingStore();
+        final EntityManagementData mgmtData = backingStore.getManagementData(entityID);
+        final long previousFetches = mgmtData.getOriginFetchCount();
         final Lock writeLock = mgmtData.getReadWriteLock().writeLock(); 
         
         try {
             writeLock.lock();
             
+            // Threads which queued on the write lock while another fetched from the origin source share the
+            // outcome of that fetch, whatever it was, rather than each repeating it.
+            final List<EntityDescriptor> descriptors = lookupEntityID(entityID);
+            if (mgmtData.getOriginFetchCount() != previousFetches) {
+                log.debug("{} Metadata was fetched by another thread while this thread was waiting on the write lock",
+                        getLogPrefix());
+                MetricsSupport.increment(counterCoalescedFetches);
+                return descriptors;
+            }
+            
             // It's possible that multiple threads fall into here and attempt to preemptively refresh. 
             // This check should ensure that only 1 actually successfully does it, b/c the refresh
             // trigger time will be updated as seen by the subsequent ones. 
-            final List<EntityDescriptor> descriptors = lookupEntityID(entityID);
             if (!descriptors.isEmpty() && !shouldAttemptRefresh(mgmtData)) {
                 log.debug("{} Metadata was resolved and stored by another thread " 
                         + "while this thread was waiting on the write lock", getLogPrefix());
                 return descriptors;
+            } else if (descriptors.isEmpty() && mgmtData.isNegativeLookupCacheActive()) {
+                log.debug("{} Negative lookup cache was activated by another thread " 
+                        + "while this thread was waiting on the write lock", getLogPrefix());
+                MetricsSupport.increment(counterNegativeLookupCacheHits);
+                return descriptors;
+            } else if (descriptors.isEmpty() && loadFromPersistentCacheLazily(entityID)) {
+                return lookupEntityID(entityID);
             }
             log.debug("{} Resolving metadata dynamically for entity ID: {}", getLogPrefix(), entityID);
             
@@ -814,10 +1065,16 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                 root = fetchFromOriginSource(criteria);
             } finally {
                 MetricsSupport.stopTimer(contextFetchFromOriginSource);
+                mgmtData.recordOriginFetch();
             }
             
             if (root == null) {
                 mgmtData.initNegativeLookupCache();
+                for (final String evicted : backingStore.recordNegativeLookup(entityID, 
+                        getMaxNegativeLookupCacheSize())) {
+                    assert evicted != null;
+                    backingStore.evictNegativeLookup(evicted);
+                }
                 log.debug("{} No metadata was fetched from the origin source", getLogPrefix());
 
                 if (!descriptors.isEmpty()) {
@@ -828,6 +1085,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                 }
             } else {
                 mgmtData.clearNegativeLookupCache();
+                backingStore.removeNegativeLookup(entityID);
                 try {
                     processNewMetadata(root, entityID);
                 } catch (final FilterException e) {
@@ -948,11 +1206,13 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         if (entityID == null) {
             throw new ResolverException("EntityDescriptor contained null entityID");
         }
-        final EntityManagementData mgmtData = ensureBackingStore().getManagementData(entityID);
+        final DynamicEntityBackingStore backingStore = ensureBackingStore();
+        final EntityManagementData mgmtData = backingStore.getManagementData(entityID);
         final Lock writeLock = mgmtData.getReadWriteLock().writeLock(); 
         try {
             writeLock.lock();            
             mgmtData.clearNegativeLookupCache();
+            backingStore.removeNegativeLookup(entityID);
             processNewMetadata(entity, entityID);
             return lookupEntityID(entityID);
         } catch (final FilterException e) {
@@ -1215,6 +1475,42 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         return nowDateTime.plusMillis(refreshDelay);
     }
     
+    /**
+     * Compute the duration for which a failed lookup of an entityID is cached.
+     * 
+     * <p>
+     * The negative lookup cache duration is doubled for each consecutive failure after the first, up to the
+     * maximum negative lookup cache duration, and then shortened at random by up to the jitter fraction.
+     * </p>
+     * 
+     * @param consecutiveFailures the number of consecutive failed lookups, including this one
+     * 
+     * @return the negative lookup cache duration
+     * 
+     * @since 5.1.0
+     */
+    @Nonnull protected Duration computeNegativeLookupCacheDuration(@Positive final int consecutiveFailures) {
+        Duration duration = getNegativeLookupCacheDuration();
+        if (getMaxNegativeLookupCacheDuration().compareTo(duration) > 0) {
+            final Duration max = getMaxNegativeLookupCacheDuration();
+            for (int i = 1; i < consecutiveFailures && duration.compareTo(max) < 0; i++) {
+                duration = duration.multipliedBy(2);
+            }
+            if (duration.compareTo(max) > 0) {
+                duration = max;
+            }
+        }
+        
+        final float jitter = getNegativeLookupCacheJitter();
+        if (jitter > 0 && !duration.isZero()) {
+            final double factor = ThreadLocalRandom.current().nextDouble(1 - jitter, 1);
+            duration = Duration.ofMillis((long) (duration.toMillis() * factor));
+        }
+        
+        assert duration != null;
+        return duration;
+    }
+    
     /**
      * Determine whether should attempt to refresh the metadata, based on stored refresh trigger time.
      * 
@@ -1265,32 +1561,53 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             }
             
             persistentCacheInitMetrics = new PersistentCacheInitializationMetrics();
+            lazyPersistentCacheKeys.clear();
             if (isPersistentCachingEnabled()) {
                 persistentCacheInitMetrics.enabled = true;
-                if (isInitializeFromPersistentCacheInBackground()) {
+                final SegmentFileLoadSaveManager<EntityDescriptor> segmentManager = getLazyPersistentCacheManager();
+                if (segmentManager != null) {
+                    log.debug("{} Initializing lazily from the persistent cache", getLogPrefix());
+                    initializeFromPersistentCacheLazily(segmentManager);
+                } else if (isInitializeFromPersistentCacheInBackground()) {
                     log.debug("{} Initializing from the persistent cache in the background in {} ms", 
                             getLogPrefix(), getBackgroundInitializationFromCacheDelay());
-                    final TimerTask initTask = new TimerTask() {
-                        public void run() {
-                            initializeFromPersistentCache();
-                        }
-                    };
-                    taskTimer.schedule(initTask, getBackgroundInitializationFromCacheDelay().toMillis());
+                    final MetadataBackgroundTask initTask =
+                            new MetadataBackgroundTask(this::initializeFromPersistentCache, null, null, null);
+                    initTask.schedule(getTaskScheduler(), getTaskTimer(), getBackgroundInitializationFromCacheDelay());
                 } else {
                     log.debug("{} Initializing from the persistent cache in the foreground", getLogPrefix());
                     initializeFromPersistentCache();
                 }
             }
             
-            cleanupTask = new BackingStoreCleanupSweeper();
-            // Start with a delay of 1 minute, run at the user-specified interval
-            taskTimer.schedule(cleanupTask, 1*60*1000, getCleanupTaskInterval().toMillis());
+            cleanupTask = new MetadataBackgroundTask(new BackingStoreCleanupSweeper(), getCleanupTaskInterval(),
+                    timerCleanupTask, timerCleanupTaskDelay);
+            // Start with a delay of 1 minute, plus a random part of the user-specified interval so that
+            // resolvers sharing a scheduler don't all sweep at once, then run at that interval
+            final long cleanupOffset = ThreadLocalRandom.current().nextLong(
+                    Math.max(1, getCleanupTaskInterval().toMillis()));
+            cleanupTask.schedule(getTaskScheduler(), getTaskTimer(), Duration.ofMinutes(1).plusMillis(cleanupOffset));
 
         } finally {
             initializing = false;
         }
     }
 
+    /**
+     * Get the timer used for background tasks when there is no scheduler, creating it if necessary.
+     * 
+     * @return the timer, or null if there is a scheduler
+     */
+    @Nullable private synchronized Timer getTaskTimer() {
+        if (getTaskScheduler() != null) {
+            return null;
+        } else if (taskTimer == null) {
+            taskTimer = new Timer(TimerSupport.getTimerName(this), true);
+            createdOwnTaskTimer = true;
+        }
+        return taskTimer;
+    }
+
     /**
      * Initialize the Metrics-based instrumentation.
      */
@@ -1338,6 +1655,15 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                             return persistentCacheInitMetrics;
                         }},
                     true);
+            
+            timerCleanupTask = metricRegistry.timer(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_TIMER_CLEANUP_TASK));
+            timerCleanupTaskDelay = metricRegistry.timer(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_TIMER_CLEANUP_TASK_DELAY));
+            counterCoalescedFetches = metricRegistry.counter(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_COUNTER_COALESCED_FETCHES));
+            counterNegativeLookupCacheHits = metricRegistry.counter(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_COUNTER_NEGATIVE_LOOKUP_CACHE_HITS));
         }
     }
     
@@ -1395,6 +1721,104 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         }
     }
 
+    /**
+     * Get the persistent cache manager from which to initialize lazily, if lazy initialization is enabled and the
+     * manager supports it.
+     * 
+     * @return the manager, or null if initialization should not be lazy
+     */
+    @Nullable private SegmentFileLoadSaveManager<EntityDescriptor> getLazyPersistentCacheManager() {
+        if (!isInitializeFromPersistentCacheLazily()) {
+            return null;
+        }
+        
+        if (getPersistentCacheManager() instanceof SegmentFileLoadSaveManager<EntityDescriptor> manager) {
+            if (manager.isStoringNames()) {
+                return manager;
+            }
+            log.warn("{} Lazy initialization requires a persistent cache manager which stores the entityID of "
+                    + "each entry, initializing from the persistent cache normally", getLogPrefix());
+        } else {
+            log.warn("{} Lazy initialization requires a SegmentFileLoadSaveManager persistent cache manager, "
+                    + "initializing from the persistent cache normally", getLogPrefix());
+        }
+        return null;
+    }
+
+    /**
+     * Initialize the resolver with the index of a segment file persistent cache, so that its entities are loaded
+     * on demand.
+     * 
+     * <p>Entries stored without an entityID cannot be found on demand, so are loaded immediately.</p>
+     * 
+     * @param manager the persistent cache manager
+     */
+    protected void initializeFromPersistentCacheLazily(
+            @Nonnull final SegmentFileLoadSaveManager<EntityDescriptor> manager) {
+        final long start = System.nanoTime();
+        try {
+            for (final Map.Entry<String,String> entry : manager.listKeysByName().entrySet()) {
+                persistentCacheInitMetrics.entriesTotal++;
+                final String currentKey = entry.getKey();
+                assert currentKey != null;
+                final String entityID = StringSupport.trimOrNull(entry.getValue());
+                if (entityID != null) {
+                    lazyPersistentCacheKeys.put(entityID, currentKey);
+                    continue;
+                }
+                
+                log.debug("{} Persistent cache entry with storage key '{}' has no stored entityID, loading it now",
+                        getLogPrefix(), currentKey);
+                final EntityDescriptor descriptor = manager.load(currentKey);
+                if (descriptor != null && StringSupport.trimOrNull(descriptor.getEntityID()) != null) {
+                    processPersistentCacheEntry(currentKey, descriptor);
+                }
+            }
+        } catch (final IOException e) {
+            log.warn("{} Error loading EntityDescriptors from cache", getLogPrefix(), e);
+        } finally {
+            persistentCacheInitMetrics.processingTime = System.nanoTime() - start; 
+            log.debug("{} Persistent cache initialization metrics: {}, {} entries deferred", getLogPrefix(),
+                    persistentCacheInitMetrics, lazyPersistentCacheKeys.size());
+        }
+    }
+    
+    /**
+     * Load an entity from the persistent cache which was deferred by lazy initialization.
+     * 
+     * <p>The caller must hold the write lock of the entity's management data.</p>
+     * 
+     * @param entityID the entityID to load
+     * 
+     * @return true iff the entity was loaded and is now live
+     */
+    private boolean loadFromPersistentCacheLazily(@Nonnull final String entityID) {
+        final String currentKey = lazyPersistentCacheKeys.remove(entityID);
+        if (currentKey == null) {
+            return false;
+        }
+        
+        try {
+            final EntityDescriptor descriptor = ensurePersistentCacheManager().load(currentKey);
+            if (descriptor == null) {
+                log.debug("{} Deferred persistent cache entry for entityID '{}' has been removed or has expired",
+                        getLogPrefix(), entityID);
+                return false;
+            } else if (!entityID.equals(StringSupport.trimOrNull(descriptor.getEntityID()))) {
+                log.warn("{} Deferred persistent cache entry with storage key '{}' does not contain entityID '{}'",
+                        getLogPrefix(), currentKey, entityID);
+                return false;
+            }
+            processPersistentCacheEntry(currentKey, descriptor);
+        } catch (final IOException e) {
+            log.warn("{} Error loading EntityDescriptor '{}' from cache with storage key '{}'", getLogPrefix(),
+                    entityID, currentKey, e);
+            return false;
+        }
+        
+        return !lookupIndexedEntityID(entityID).isEmpty();
+    }
+
     /**
      * Process an entry loaded from the persistent cache.
      * 
@@ -1494,11 +1918,14 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         if (cleanupTask != null) {
             cleanupTask.cancel();
         }
-        if (createdOwnTaskTimer) {
-            taskTimer.cancel();
+        synchronized (this) {
+            if (createdOwnTaskTimer && taskTimer != null) {
+                taskTimer.cancel();
+            }
+            taskTimer = null;
         }
         cleanupTask = null;
-        taskTimer = null;
+        lazyPersistentCacheKeys.clear();
         
         if (ratioGaugeFetchToResolve != null) {
             MetricsSupport.remove(MetricRegistry.name(getMetricsBaseName(), METRIC_RATIOGAUGE_FETCH_TO_RESOLVE), 
@@ -1517,6 +1944,10 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         gaugePersistentCacheInit = null;
         timerFetchFromOriginSource = null;
         timerResolve = null;
+        timerCleanupTask = null;
+        timerCleanupTaskDelay = null;
+        counterCoalescedFetches = null;
+        counterNegativeLookupCacheHits = null;
         
         super.doDestroy();
     }
@@ -1550,6 +1981,9 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         /** Manager for secondary indexes. */
         @Nonnull private LockableMetadataIndexManager<String> secondaryIndexManager;
         
+        /** EntityIDs with a negative lookup cache entry, oldest first. */
+        @Nonnull private Set<String> negativeLookupEntityIDs;
+        
         /** 
          * Constructor.
          * 
@@ -1557,6 +1991,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          */
         protected DynamicEntityBackingStore(@Nullable final Set<MetadataIndex> initIndexes) {
             mgmtDataMap = new ConcurrentHashMap<>();
+            negativeLookupEntityIDs = new LinkedHashSet<>();
             secondaryIndexManager = new LockableMetadataIndexManager<>(initIndexes, 
                     new LockableMetadataIndexManager.EntityIDExtractionFunction()); 
 
@@ -1618,6 +2053,85 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             // TODO use intern-ed String here for monitor target?
             synchronized (this) {
                 mgmtDataMap.remove(entityID);
+                negativeLookupEntityIDs.remove(entityID);
+            }
+        }
+        
+        /**
+         * Record a negative lookup cache entry for the specified entityID, making it the newest.
+         * 
+         * @param entityID the input entityID
+         * @param maxEntries the maximum number of entries to hold
+         * 
+         * @return the entityIDs whose entries were dropped to make room, which should be passed to
+         *          {@link #evictNegativeLookup(String)}
+         *          
+         * @since 5.1.0
+         */
+        @Nonnull @Unmodifiable @NotLive public List<String> recordNegativeLookup(@Nonnull final String entityID,
+                @Positive final int maxEntries) {
+            Constraint.isNotNull(entityID, "EntityID may not be null");
+            synchronized (this) {
+                negativeLookupEntityIDs.remove(entityID);
+                negativeLookupEntityIDs.add(entityID);
+                if (negativeLookupEntityIDs.size() <= maxEntries) {
+                    return CollectionSupport.emptyList();
+                }
+                
+                final List<String> evicted = new ArrayList<>();
+                final Iterator<String> iterator = negativeLookupEntityIDs.iterator();
+                while (negativeLookupEntityIDs.size() > maxEntries) {
+                    evicted.add(iterator.next());
+                    iterator.remove();
+                }
+                return CollectionSupport.copyToList(evicted);
+            }
+        }
+        
+        /**
+         * Remove any negative lookup cache entry for the specified entityID.
+         * 
+         * @param entityID the input entityID
+         * 
+         * @since 5.1.0
+         */
+        public void removeNegativeLookup(@Nonnull final String entityID) {
+            Constraint.isNotNull(entityID, "EntityID may not be null");
+            synchronized (this) {
+                negativeLookupEntityIDs.remove(entityID);
+            }
+        }
+        
+        /**
+         * Clear the negative lookup cache for an entityID dropped by {@link #recordNegativeLookup(String, int)},
+         * along with its management data if it has no metadata.
+         * 
+         * <p>
+         * The caller may hold the lock of another entity, so this never blocks on the entity's lock, and does
+         * nothing if it is held.
+         * </p>
+         * 
+         * @param entityID the dropped entityID
+         * 
+         * @since 5.1.0
+         */
+        public void evictNegativeLookup(@Nonnull final String entityID) {
+            final EntityManagementData mgmtData = mgmtDataMap.get(entityID);
+            if (mgmtData == null) {
+                return;
+            }
+            
+            final Lock writeLock = mgmtData.getReadWriteLock().writeLock();
+            if (!writeLock.tryLock()) {
+                return;
+            }
+            try {
+                mgmtData.clearNegativeLookupCache();
+                if (!getIndexedDescriptors().containsKey(entityID)) {
+                    removeManagementData(entityID);
+                }
+            } finally {
+                writeLock.unlock();
             }
         }
         
@@ -1646,6 +2160,12 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         /** The time at which the negative lookup cache flag expires, if set. */
         @Nullable private Instant negativeLookupCacheExpiration;
         
+        /** The number of consecutive failed lookups. */
+        private int negativeLookupCount;
+        
+        /** The number of fetches from the origin source made for the entity. */
+        private volatile long originFetchCount;
+        
         /** Read-write lock instance which governs access to the entity's backing store data. */
         @Nonnull private ReadWriteLock readWriteLock;
         
@@ -1756,7 +2276,10 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          * @return the time before which no further lookups for the entity will be performed
          */
         @Nonnull public Instant initNegativeLookupCache() {
-            negativeLookupCacheExpiration = Instant.now().plus(getNegativeLookupCacheDuration());
+            if (negativeLookupCount < Integer.MAX_VALUE) {
+                negativeLookupCount++;
+            }
+            negativeLookupCacheExpiration = Instant.now().plus(computeNegativeLookupCacheDuration(negativeLookupCount));
             assert negativeLookupCacheExpiration != null;
             return negativeLookupCacheExpiration;
         }
@@ -1766,6 +2289,29 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
          */
         public void clearNegativeLookupCache() {
             negativeLookupCacheExpiration = null;
+            negativeLookupCount = 0;
+        }
+        
+        /**
+         * Get the number of fetches from the origin source made for the entity.
+         * 
+         * <p>This may be read without holding the entity's lock.</p>
+         * 
+         * @return the number of fetches
+         * 
+         * @since 5.1.0
+         */
+        public long getOriginFetchCount() {
+            return originFetchCount;
+        }
+        
+        /**
+         * Record a fetch from the origin source for the entity, whatever its outcome.
+         * 
+         * @since 5.1.0
+         */
+        public void recordOriginFetch() {
+            originFetchCount++;
         }
 
         /**
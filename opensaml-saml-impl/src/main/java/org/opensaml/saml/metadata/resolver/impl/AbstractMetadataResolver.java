@@ -459,10 +459,27 @@ public abstract class AbstractMetadataResolver extends AbstractIdentifiableIniti
      * @throws FilterException thrown if there is an error filtering the metadata
      */
     @Nullable protected XMLObject filterMetadata(@Nullable final XMLObject metadata) throws FilterException {
+        return filterMetadata(metadata, newFilterContext());
+    }
+
+    /**
+     * Filters the given metadata using the supplied filter context.
+     * 
+     * @param metadata the metadata to be filtered
+     * @param context the filter context
+     * 
+     * @return the filtered metadata
+     * 
+     * @throws FilterException thrown if there is an error filtering the metadata
+     * 
+     * @since 5.1.0
+     */
+    @Nullable protected XMLObject filterMetadata(@Nullable final XMLObject metadata,
+            @Nonnull final MetadataFilterContext context) throws FilterException {
         final MetadataFilter filter = getMetadataFilter();
         if (filter != null) {
             log.debug("{} Applying metadata filter", getLogPrefix());
-            return filter.filter(metadata, newFilterContext());
+            return filter.filter(metadata, context);
         }
         return metadata;
     }
@@ -18,22 +18,42 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.saml.metadata.resolver.RefreshableMetadataResolver;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilterContext;
+import org.opensaml.saml.metadata.resolver.filter.data.impl.StreamedMetadata;
 import org.opensaml.saml.saml2.common.SAML2Support;
 import org.opensaml.saml.saml2.common.TimeBoundSAMLObject;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.security.crypto.JCAConstants;
 import org.slf4j.Logger;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -42,11 +62,13 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer.Context;
 
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.collection.CollectionSupport;
 import net.shibboleth.shared.component.ComponentInitializationException;
 import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.primitive.LoggerFactory;
 import net.shibboleth.shared.primitive.TimerSupport;
 import net.shibboleth.shared.resolver.ResolverException;
+import net.shibboleth.shared.xml.SerializeSupport;
 
 /**
  * Base class for metadata providers that cache and periodically refresh their metadata.
@@ -68,20 +90,32 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
     /** Metric name for the timer for {@link #refresh()}. */
     @Nonnull @NotEmpty public static final String METRIC_TIMER_REFRESH = "timer.refresh";
 
+    /** Metric name for the timer for the background refresh task. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_REFRESH_TASK = "timer.refreshTask";
+
+    /** Metric name for the timer for the delay in starting the background refresh task once due. */
+    @Nonnull @NotEmpty public static final String METRIC_TIMER_REFRESH_TASK_DELAY = "timer.refreshTaskDelay";
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractReloadingMetadataResolver.class);
 
     /** Timer used to schedule background metadata update tasks. */
-    @Nonnull private Timer taskTimer;
+    @Nullable private Timer taskTimer;
     
-    /** Whether we created our own task timer during object construction. */
+    /** Whether we created our own task timer. */
     private boolean createdOwnTaskTimer;
+    
+    /** Scheduler used in place of the timer for background metadata update tasks. */
+    @Nullable private ScheduledExecutorService taskScheduler;
         
     /** Current task to refresh metadata. */
-    @Nullable private RefreshMetadataTask refreshMetadataTask;
+    @Nullable private MetadataBackgroundTask refreshMetadataTask;
     
     /** Factor used to compute when the next refresh interval will occur. Default value: 0.75 */
     private float refreshDelayFactor = 0.75f;
+    
+    /** Fraction by which each refresh delay may be randomly shortened. Default value: 0 */
+    private float refreshJitter;
 
     /**
      * Refresh interval used when metadata does not contain any validUntil or cacheDuration information.
@@ -122,6 +156,24 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
     /** Metrics Timer for {@link #refresh()}. */
     @Nullable private com.codahale.metrics.Timer timerRefresh;
 
+    /** Metrics Timer for the background refresh task. */
+    @Nullable private com.codahale.metrics.Timer timerRefreshTask;
+
+    /** Metrics Timer for the delay in starting the background refresh task. */
+    @Nullable private com.codahale.metrics.Timer timerRefreshTaskDelay;
+
+    /** Whether to read <code>EntitiesDescriptor</code> documents one entity at a time. */
+    private boolean streamingIngestion;
+
+    /** Whether to carry over unchanged entities from one refresh to the next. */
+    private boolean incrementalRefresh;
+
+    /** Entities of the current data set by digest, for incremental refresh. */
+    @Nonnull private Map<String,EntityDescriptor> entityDigests;
+
+    /** State of the incremental refresh in progress, if any. */
+    @Nullable private IncrementalRefresh currentIncrementalRefresh;
+
     /** Constructor. */
     protected AbstractReloadingMetadataResolver() {
         this(null);
@@ -130,7 +182,8 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
     /**
      * Constructor.
      * 
-     * @param backgroundTaskTimer time used to schedule background refresh tasks
+     * @param backgroundTaskTimer time used to schedule background refresh tasks, or null to create one when
+     *          needed
      */
     protected AbstractReloadingMetadataResolver(@Nullable final Timer backgroundTaskTimer) {
         setCacheSourceMetadata(true);
@@ -140,12 +193,9 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         
         expirationWarningThreshold = Duration.ZERO;
         
-        if (backgroundTaskTimer == null) {
-            taskTimer = new Timer(TimerSupport.getTimerName(this), true);
-            createdOwnTaskTimer = true;
-        } else {
-            taskTimer = backgroundTaskTimer;
-        }
+        entityDigests = CollectionSupport.emptyMap();
+        
+        taskTimer = backgroundTaskTimer;
     }
     
     /** {@inheritDoc} */
@@ -275,6 +325,68 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         refreshDelayFactor = factor;
     }
 
+    /**
+     * Gets the fraction by which each refresh delay may be randomly shortened.
+     * 
+     * @return the jitter fraction
+     * 
+     * @since 5.1.0
+     */
+    public float getRefreshJitter() {
+        return refreshJitter;
+    }
+
+    /**
+     * Sets the fraction by which each refresh delay may be randomly shortened, so that resolvers started together
+     * do not continue to refresh together. The delay is never shortened below the minimum refresh delay. The
+     * fraction must be at least 0.0 and less than 1.0.
+     * 
+     * <p>Defaults to 0.</p>
+     * 
+     * @param jitter the jitter fraction
+     * 
+     * @since 5.1.0
+     */
+    public void setRefreshJitter(final float jitter) {
+        checkSetterPreconditions();
+
+        if (jitter < 0 || jitter >= 1) {
+            throw new IllegalArgumentException("Refresh jitter must be at least 0.0 and less than 1.0");
+        }
+
+        refreshJitter = jitter;
+    }
+
+    /**
+     * Gets the scheduler used in place of a {@link Timer} for background refresh tasks.
+     * 
+     * @return the scheduler, or null
+     * 
+     * @since 5.1.0
+     */
+    @Nullable public ScheduledExecutorService getTaskScheduler() {
+        return taskScheduler;
+    }
+
+    /**
+     * Sets the scheduler used in place of a {@link Timer} for background refresh tasks.
+     * 
+     * <p>
+     * A single bounded scheduler may be shared by any number of resolvers, rather than each having a thread of
+     * its own, and a slow refresh then only delays others once all of its threads are busy. The scheduler is
+     * not shut down by the resolver. If set, any timer supplied on construction is not used.
+     * </p>
+     * 
+     * @param scheduler the scheduler, or null
+     * 
+     * @since 5.1.0
+     */
+    public void setTaskScheduler(@Nullable final ScheduledExecutorService scheduler) {
+        checkSetterPreconditions();
+
+        taskScheduler = scheduler;
+    }
+
     /**
      * Gets the minimum amount of time between refreshes.
      * 
@@ -298,6 +410,94 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         minRefreshDelay = delay;
     }
 
+    /**
+     * Gets whether <code>EntitiesDescriptor</code> documents are read one entity at a time.
+     * 
+     * @return whether streaming ingestion is enabled
+     * 
+     * @since 5.1.0
+     */
+    public boolean isStreamingIngestion() {
+        return streamingIngestion;
+    }
+
+    /**
+     * Sets whether <code>EntitiesDescriptor</code> documents are read one entity at a time.
+     * 
+     * <p>
+     * When enabled, each <code>EntityDescriptor</code> is unmarshalled and run through the metadata filter as it
+     * is read, and only those retained by the filter are kept, so that the document as a whole is never held in
+     * memory. The filter is then applied again to the root, containing only the retained entities.
+     * See {@link StreamedMetadata} for the effect on filters, and {@link StreamingMetadataParser} for the
+     * restrictions on signed groups. Documents of any other form are processed as usual.
+     * </p>
+     * 
+     * <p>
+     * Note that each entity therefore runs through the full filter chain, including any filters that precede
+     * signature validation, before the signature on the root has been verified, since that can only happen once
+     * the whole document has been read. Nothing is published if the root is then rejected, but filters with side
+     * effects beyond the entity itself may see entities from a document that is ultimately discarded.
+     * </p>
+     * 
+     * <p>Defaults to false.</p>
+     * 
+     * @param flag flag to set
+     * 
+     * @since 5.1.0
+     */
+    public void setStreamingIngestion(final boolean flag) {
+        checkSetterPreconditions();
+
+        streamingIngestion = flag;
+    }
+
+    /**
+     * Gets whether unchanged entities are carried over from one refresh to the next.
+     * 
+     * @return whether incremental refresh is enabled
+     * 
+     * @since 5.1.0
+     */
+    public boolean isIncrementalRefresh() {
+        return incrementalRefresh;
+    }
+
+    /**
+     * Sets whether unchanged entities are carried over from one refresh to the next.
+     * 
+     * <p>
+     * When enabled, <code>EntitiesDescriptor</code> documents are read one entity at a time, as with
+     * {@link #setStreamingIngestion(boolean)}, and a digest is computed of each entity and the names of
+     * the groups containing it. An entity whose digest matches one retained by the previous refresh is
+     * replaced by the previously filtered object, which is neither filtered nor indexed again. The groups
+     * themselves, including their signatures, are always processed in full.
+     * </p>
+     * 
+     * <p>
+     * The previously filtered object is still in use by the current data set, so it is left untouched until the
+     * new data has taken effect; only then is it moved into the new metadata, in place of the newly read entity.
+     * Until that point the new metadata tree holds the newly read entity, although the new data set serves the
+     * previously filtered object.
+     * </p>
+     * 
+     * <p>
+     * This assumes that the result of filtering an entity depends only on its content and the names of
+     * its groups, so is not suitable for use with filters that depend on anything else, such as the
+     * current time or trust data that may change between refreshes.
+     * </p>
+     * 
+     * <p>Defaults to false.</p>
+     * 
+     * @param flag flag to set
+     * 
+     * @since 5.1.0
+     */
+    public void setIncrementalRefresh(final boolean flag) {
+        checkSetterPreconditions();
+
+        incrementalRefresh = flag;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doDestroy() {
@@ -305,11 +505,15 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
             refreshMetadataTask.cancel();
         }
         
-        if (createdOwnTaskTimer) {
-            taskTimer.cancel();
+        synchronized (this) {
+            if (createdOwnTaskTimer && taskTimer != null) {
+                taskTimer.cancel();
+            }
         }
         
         timerRefresh = null;
+        timerRefreshTask = null;
+        timerRefreshTaskDelay = null;
         expirationTime = null;
         lastRefresh = null;
         lastUpdate = null;
@@ -317,6 +521,7 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         wasLastRefreshSuccess = null;
         lastSuccessfulRefresh = null;
         lastFailureCause = null;
+        entityDigests = CollectionSupport.emptyMap();
         
         super.doDestroy();
     }
@@ -334,6 +539,10 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         if (metricRegistry != null) {
             timerRefresh = metricRegistry.timer(
                     MetricRegistry.name(getMetricsBaseName(), METRIC_TIMER_REFRESH));
+            timerRefreshTask = metricRegistry.timer(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_TIMER_REFRESH_TASK));
+            timerRefreshTaskDelay = metricRegistry.timer(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_TIMER_REFRESH_TASK_DELAY));
         }
         
         try {
@@ -417,12 +626,21 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
                 wasLastRefreshSuccess = false;
             }
             
-            refreshMetadataTask = new RefreshMetadataTask();
-            final Instant nextRefreshCopy = nextRefresh;
+            refreshMetadataTask = new MetadataBackgroundTask(new RefreshMetadataTask(), null, timerRefreshTask,
+                    timerRefreshTaskDelay);
+            Instant nextRefreshCopy = nextRefresh;
             // TODO: why is this actually non-null here? Needs review.
             assert nextRefreshCopy != null;
-            final long nextRefreshDelay = nextRefreshCopy.toEpochMilli() - System.currentTimeMillis();
-            taskTimer.schedule(refreshMetadataTask, nextRefreshDelay);
+            long nextRefreshDelay = nextRefreshCopy.toEpochMilli() - System.currentTimeMillis();
+            final long jitterRange = Math.min((long) (nextRefreshDelay * getRefreshJitter()),
+                    nextRefreshDelay - getMinRefreshDelay().toMillis());
+            if (jitterRange > 0) {
+                final long jitter = ThreadLocalRandom.current().nextLong(jitterRange);
+                nextRefreshDelay -= jitter;
+                nextRefreshCopy = nextRefreshCopy.minusMillis(jitter);
+                nextRefresh = nextRefreshCopy;
+            }
+            refreshMetadataTask.schedule(getTaskScheduler(), getTaskTimer(), Duration.ofMillis(nextRefreshDelay));
             log.info("{} Next refresh cycle for metadata provider '{}' will occur on '{}' ('{}' local time)",
                     new Object[] {getLogPrefix(), mdId, nextRefresh, nextRefreshCopy.atZone(ZoneId.systemDefault()),});
             lastRefresh = now;
@@ -430,6 +648,21 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
     }
 // Checkstyle: MethodLength ON
 
+    /**
+     * Get the timer used for background tasks when there is no scheduler, creating it if necessary.
+     * 
+     * @return the timer, or null if there is a scheduler
+     */
+    @Nullable private synchronized Timer getTaskTimer() {
+        if (getTaskScheduler() != null) {
+            return null;
+        } else if (taskTimer == null) {
+            taskTimer = new Timer(TimerSupport.getTimerName(this), true);
+            createdOwnTaskTimer = true;
+        }
+        return taskTimer;
+    }
+
     /**
      * Check cached metadata for expiration or pending expiration and log appropriately.
      *
@@ -506,9 +739,10 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
     protected void processCachedMetadata(@Nonnull final String metadataIdentifier, @Nonnull final Instant refreshStart)
             throws ResolverException {
         log.debug("{} Computing new expiration time for cached metadata from '{}'", getLogPrefix(), metadataIdentifier);
-        final Instant metadataExpirationTime = 
-                SAML2Support.getEarliestExpiration(ensureBackingStore().getCachedOriginalMetadata(),
-                refreshStart.plus(getMaxRefreshDelay()), refreshStart);
+        final BatchEntityBackingStore backingStore = ensureBackingStore();
+        final Instant metadataExpirationTime = backingStore.getEarliestExpiration(
+                SAML2Support.getEarliestExpiration(backingStore.getCachedOriginalMetadata(),
+                        refreshStart.plus(getMaxRefreshDelay()), refreshStart), refreshStart);
 
         trackRefreshSuccess = true;
         expirationTime = metadataExpirationTime;
@@ -528,15 +762,86 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
     protected void processNewMetadata(@Nonnull final String metadataIdentifier, @Nonnull final Instant refreshStart,
             @Nonnull final byte[] metadataBytes) throws ResolverException {
         log.debug("{} Unmarshalling metadata from '{}'", getLogPrefix(), metadataIdentifier);
-        final XMLObject metadata = unmarshallMetadata(metadataBytes);
+        final IncrementalRefresh incremental = isIncrementalRefresh() ? new IncrementalRefresh() : null;
+        final EntityBackingStore currentBackingStore = getBackingStore();
+        currentIncrementalRefresh = incremental;
+        try {
+            XMLObject metadata = null;
+            if (isStreamingIngestion() || incremental != null) {
+                metadata = streamMetadata(metadataIdentifier, metadataBytes, incremental);
+            }
+            if (metadata == null) {
+                metadata = unmarshallMetadata(metadataBytes);
+            }
 
-        if (!isValid(metadata)) {
-            processPreExpiredMetadata(metadataIdentifier, refreshStart, metadataBytes, metadata);
-        } else {
-            processNonExpiredMetadata(metadataIdentifier, refreshStart, metadataBytes, metadata);
+            if (!isValid(metadata)) {
+                processPreExpiredMetadata(metadataIdentifier, refreshStart, metadataBytes, metadata);
+            } else {
+                processNonExpiredMetadata(metadataIdentifier, refreshStart, metadataBytes, metadata);
+            }
+        } finally {
+            currentIncrementalRefresh = null;
+            // The new data only took effect if the backing store was replaced, otherwise there is nothing to undo.
+            if (incremental != null && getBackingStore() != currentBackingStore) {
+                incremental.commit();
+            }
+        }
+    }
+
+    /**
+     * Reads an <code>EntitiesDescriptor</code> document one entity at a time, filtering each entity as it is read.
+     * 
+     * @param metadataIdentifier identifier of the metadata source
+     * @param metadataBytes raw bytes of the new metadata document
+     * @param incremental state of an incremental refresh, or null
+     * 
+     * @return the root of the document, containing only the retained entities, or null if the document is not an
+     *          <code>EntitiesDescriptor</code>
+     * 
+     * @throws ResolverException thrown if there is a problem unmarshalling or filtering the new metadata
+     */
+    @Nullable private XMLObject streamMetadata(@Nonnull final String metadataIdentifier,
+            @Nonnull final byte[] metadataBytes, @Nullable final IncrementalRefresh incremental)
+                    throws ResolverException {
+        final MetadataFilter filter = getMetadataFilter();
+        final StreamingMetadataParser streamingParser =
+                new StreamingMetadataParser(getParserPool(), getUnmarshallerFactory());
+        try {
+            return streamingParser.parse(new ByteArrayInputStream(metadataBytes), entity -> {
+                final String digest = incremental != null ? incremental.digest(entity) : null;
+                if (digest != null && incremental.carryOver(digest, entity)) {
+                    log.trace("{} Entity '{}' is unchanged", getLogPrefix(), entity.getEntityID());
+                    return entity;
+                }
+                EntityDescriptor retained = entity;
+                if (filter != null) {
+                    final MetadataFilterContext context = newFilterContext();
+                    context.add(new StreamedMetadata(true));
+                    final XMLObject filtered = filter.filter(entity, context);
+                    retained = filtered instanceof EntityDescriptor ? (EntityDescriptor) filtered : null;
+                }
+                if (digest != null && retained != null) {
+                    incremental.retain(digest, retained);
+                }
+                return retained;
+            });
+        } catch (final UnmarshallingException e) {
+            final String errorMsg = "Unable to unmarshall metadata";
+            log.error("{} {}: {}", getLogPrefix(), errorMsg, e.getMessage());
+            throw new ResolverException(errorMsg, e);
+        } catch (final FilterException e) {
+            final String errMsg = "Error filtering metadata from " + metadataIdentifier;
+            log.error("{} {}: {}", getLogPrefix(), errMsg, e.getMessage());
+            throw new ResolverException(errMsg, e);
         }
     }
 
+    /** {@inheritDoc} */
+    @Override @Nullable protected EntityDescriptor getCarriedOverEntity(@Nonnull final EntityDescriptor entity) {
+        final IncrementalRefresh incremental = currentIncrementalRefresh;
+        return incremental != null ? incremental.getCarriedOver(entity) : super.getCarriedOverEntity(entity);
+    }
+
     /**
      * Processes metadata that has been determined to be invalid (usually because it's already expired) at the time it
      * was fetched. A metadata document is considered be invalid if its root element returns false when passed to the
@@ -578,10 +883,17 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         assert domElement != null;
         final Document metadataDom = domElement.getOwnerDocument();
 
+        final MetadataFilterContext filterContext = newFilterContext();
+        final List<StreamedMetadata> streamedMetadata = metadata.getObjectMetadata().get(StreamedMetadata.class);
+        if (!streamedMetadata.isEmpty()) {
+            filterContext.add(streamedMetadata.get(0));
+            metadata.getObjectMetadata().remove(StreamedMetadata.class);
+        }
+
         log.debug("{} Preprocessing metadata from '{}'", getLogPrefix(), metadataIdentifier);
         BatchEntityBackingStore newBackingStore = null;
         try {
-            newBackingStore = preProcessNewMetadata(metadata);
+            newBackingStore = preProcessNewMetadata(metadata, filterContext);
         } catch (final FilterException e) {
             final String errMsg = "Error filtering metadata from " + metadataIdentifier;
             log.error("{} {}: {}", getLogPrefix(), errMsg, e.getMessage());
@@ -599,8 +911,9 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         log.debug("{} Computing expiration time for metadata from '{}'", getLogPrefix(), metadataIdentifier);
         // Note: As noted in its Javadocs, technically this method can sometimes return null, but won't in this case
         // since the candidate time (2nd arg) is not null.
-        final Instant metadataExpirationTime = SAML2Support.getEarliestExpiration(
-                newBackingStore.getCachedOriginalMetadata(), refreshStart.plus(getMaxRefreshDelay()), refreshStart);
+        final Instant metadataExpirationTime = newBackingStore.getEarliestExpiration(
+                SAML2Support.getEarliestExpiration(newBackingStore.getCachedOriginalMetadata(),
+                        refreshStart.plus(getMaxRefreshDelay()), refreshStart), refreshStart);
         assert metadataExpirationTime != null;
         log.debug("{} Expiration of metadata from '{}' will occur at {}", getLogPrefix(), metadataIdentifier, 
                 metadataExpirationTime);
@@ -698,8 +1011,146 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         }
     }
 
+    /** State of an incremental refresh. */
+    private class IncrementalRefresh {
+
+        /** Digest used to identify entities. */
+        @Nonnull private final MessageDigest messageDigest;
+
+        /** Entities retained by this refresh by digest. */
+        @Nonnull private final Map<String,EntityDescriptor> retained;
+
+        /** Entities carried over from the current data set, keyed by the newly read entities standing in for them. */
+        @Nonnull private final Map<EntityDescriptor,EntityDescriptor> carriedOver;
+
+        /** Entities of the current data set already carried over. */
+        @Nonnull private final Set<EntityDescriptor> used;
+
+        /** Constructor. */
+        IncrementalRefresh() {
+            try {
+                messageDigest = MessageDigest.getInstance(JCAConstants.DIGEST_SHA256);
+            } catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 digest is not supported", e);
+            }
+            retained = new HashMap<>();
+            carriedOver = new IdentityHashMap<>();
+            used = Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+
+        /**
+         * Compute the digest of an entity which still has its DOM, and the names of its groups.
+         * 
+         * @param entity the entity
+         * 
+         * @return the digest
+         */
+        @Nonnull String digest(@Nonnull final EntityDescriptor entity) {
+            XMLObject parent = entity.getParent();
+            while (parent instanceof EntitiesDescriptor) {
+                final String name = ((EntitiesDescriptor) parent).getName();
+                if (name != null) {
+                    messageDigest.update(name.getBytes(StandardCharsets.UTF_8));
+                }
+                messageDigest.update((byte) 0);
+                parent = parent.getParent();
+            }
+
+            final Element element = entity.getDOM();
+            assert element != null;
+            SerializeSupport.writeNode(element, new DigestOutputStream(OutputStream.nullOutputStream(), messageDigest));
+
+            return Base64.getEncoder().encodeToString(messageDigest.digest());
+        }
+
+        /**
+         * Carry over the entity with a given digest from the current data set, if there is one.
+         * 
+         * <p>
+         * The newly read entity stands in for the one carried over, which is not modified until the new data has
+         * taken effect.
+         * </p>
+         * 
+         * @param digest the digest
+         * @param entity the newly read entity
+         * 
+         * @return whether an entity was carried over
+         */
+        boolean carryOver(@Nonnull final String digest, @Nonnull final EntityDescriptor entity) {
+            final EntityDescriptor previous = entityDigests.get(digest);
+            // The same content may appear more than once, but each object can only be used once.
+            if (previous == null || !used.add(previous)) {
+                return false;
+            }
+            carriedOver.put(entity, previous);
+            retained.put(digest, previous);
+            return true;
+        }
+
+        /**
+         * Get the entity carried over which a newly read entity stands in for.
+         * 
+         * @param entity the newly read entity
+         * 
+         * @return the entity carried over, or null
+         */
+        @Nullable EntityDescriptor getCarriedOver(@Nonnull final EntityDescriptor entity) {
+            return carriedOver.get(entity);
+        }
+
+        /**
+         * Record an entity retained by filtering.
+         * 
+         * @param digest the digest of the entity
+         * @param entity the filtered entity
+         */
+        void retain(@Nonnull final String digest, @Nonnull final EntityDescriptor entity) {
+            retained.putIfAbsent(digest, entity);
+        }
+
+        /**
+         * Move the entities carried over into the new metadata in place of those standing in for them, and make
+         * the entities retained by this refresh available to the next, once its data has taken effect.
+         */
+        void commit() {
+            final Set<EntityDescriptor> current = Collections.newSetFromMap(new IdentityHashMap<>());
+            current.addAll(ensureBackingStore().getOrderedDescriptors());
+
+            // Replace each group's members in a single pass, rather than searching the group for each one.
+            final Set<EntitiesDescriptor> groups = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (final EntityDescriptor entity : carriedOver.keySet()) {
+                // Entities removed by filtering of the groups have no parent.
+                if (entity.getParent() instanceof EntitiesDescriptor group) {
+                    groups.add(group);
+                }
+            }
+            final boolean rootIDIndexing = XMLObjectProviderRegistrySupport.isRootIDIndexing();
+            int count = 0;
+            for (final EntitiesDescriptor group : groups) {
+                final List<EntityDescriptor> members = group.getEntityDescriptors();
+                for (int i = 0; i < members.size(); i++) {
+                    final EntityDescriptor previous = carriedOver.get(members.get(i));
+                    if (previous != null && current.contains(previous)) {
+                        final XMLObject parent = previous.getParent();
+                        if (parent != null && rootIDIndexing && previous.hasIDMappings()) {
+                            // The entity's mappings are held by the old tree's root and must travel with it.
+                            parent.getIDIndex().deregisterIDMappings(previous.getIDIndex());
+                        }
+                        previous.setParent(null);
+                        members.set(i, previous);
+                        count++;
+                    }
+                }
+            }
+
+            retained.values().removeIf(entity -> !current.contains(entity));
+            entityDigests = retained;
+            log.debug("{} Carried over {} of {} entities", getLogPrefix(), count, current.size());
+        }
+    }
+
     /** Background task that refreshes metadata. */
-    private class RefreshMetadataTask extends TimerTask {
+    private class RefreshMetadataTask implements Runnable {
 
         /** {@inheritDoc} */
         //CheckStyle: ReturnCount OFF
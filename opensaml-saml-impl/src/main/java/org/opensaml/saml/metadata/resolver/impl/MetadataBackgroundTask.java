@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import java.time.Duration;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.metrics.MetricsSupport;
+import org.slf4j.Logger;
+
+import com.codahale.metrics.Timer.Context;
+
+import net.shibboleth.shared.primitive.LoggerFactory;
+
+/**
+ * A background task of a metadata resolver, run either by a {@link Timer} or by a
+ * {@link ScheduledExecutorService}, and optionally timed.
+ * 
+ * <p>
+ * When timed, both the time taken to run the task and the time by which it started later than it was due are
+ * recorded; the latter shows when a scheduler shared by many resolvers has too few threads.
+ * </p>
+ * 
+ * @since 5.1.0
+ */
+@ThreadSafe
+final class MetadataBackgroundTask {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(MetadataBackgroundTask.class);
+
+    /** The task. */
+    @Nonnull private final Runnable task;
+
+    /** Timer for running the task. */
+    @Nullable private final com.codahale.metrics.Timer runTimer;
+
+    /** Timer for the delay in starting the task. */
+    @Nullable private final com.codahale.metrics.Timer delayTimer;
+
+    /** Interval between the end of one run and the start of the next, in nanoseconds, or 0 if run once. */
+    private final long period;
+
+    /** Time at which the next run is due, from {@link System#nanoTime()}. */
+    private volatile long due;
+
+    /** Task scheduled on a {@link Timer}. */
+    @Nullable private TimerTask timerTask;
+
+    /** Task scheduled on a {@link ScheduledExecutorService}. */
+    @Nullable private ScheduledFuture<?> future;
+
+    /**
+     * Constructor.
+     *
+     * @param runnable the task
+     * @param interval interval between the end of one run and the start of the next, or null to run once
+     * @param runTime timer for running the task, or null
+     * @param startDelay timer for the delay in starting the task, or null
+     */
+    MetadataBackgroundTask(@Nonnull final Runnable runnable, @Nullable final Duration interval,
+            @Nullable final com.codahale.metrics.Timer runTime,
+            @Nullable final com.codahale.metrics.Timer startDelay) {
+        task = runnable;
+        period = interval != null ? interval.toNanos() : 0;
+        runTimer = runTime;
+        delayTimer = startDelay;
+    }
+
+    /**
+     * Schedule the task.
+     * 
+     * @param scheduler the scheduler to use, or null to use the timer
+     * @param timer the timer to use if there is no scheduler
+     * @param delay the delay before the first run, treated as zero if negative
+     */
+    synchronized void schedule(@Nullable final ScheduledExecutorService scheduler, @Nullable final Timer timer,
+            @Nonnull final Duration delay) {
+        final long delayMillis = Math.max(0, delay.toMillis());
+        due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        if (scheduler != null) {
+            future = period > 0
+                    ? scheduler.scheduleWithFixedDelay(this::run, delayMillis, TimeUnit.NANOSECONDS.toMillis(period),
+                            TimeUnit.MILLISECONDS)
+                    : scheduler.schedule(this::run, delayMillis, TimeUnit.MILLISECONDS);
+        } else if (timer != null) {
+            final TimerTask wrapper = new TimerTask() {
+                public void run() {
+                    MetadataBackgroundTask.this.run();
+                }
+            };
+            timerTask = wrapper;
+            if (period > 0) {
+                timer.schedule(wrapper, delayMillis, TimeUnit.NANOSECONDS.toMillis(period));
+            } else {
+                timer.schedule(wrapper, delayMillis);
+            }
+        } else {
+            throw new IllegalStateException("No scheduler or timer available for background task");
+        }
+    }
+
+    /** Cancel the task. A run already in progress is allowed to finish. */
+    synchronized void cancel() {
+        if (timerTask != null) {
+            timerTask.cancel();
+        }
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /** Run the task, recording the metrics. */
+    private void run() {
+        final long start = System.nanoTime();
+        if (delayTimer != null) {
+            delayTimer.update(Math.max(0, start - due), TimeUnit.NANOSECONDS);
+        }
+
+        final Context context = MetricsSupport.startTimer(runTimer);
+        try {
+            task.run();
+        } catch (final RuntimeException e) {
+            // Otherwise this would end a periodic task, or with a Timer, every other task sharing it.
+            log.error("Background task of type {} failed", task.getClass().getName(), e);
+        } finally {
+            MetricsSupport.stopTimer(context);
+            if (period > 0) {
+                due = System.nanoTime() + period;
+            }
+        }
+    }
+
+}
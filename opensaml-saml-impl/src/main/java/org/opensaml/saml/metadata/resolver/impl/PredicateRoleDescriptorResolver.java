@@ -15,16 +15,25 @@
 package org.opensaml.saml.metadata.resolver.impl;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
 
+import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.criterion.SatisfyAnyCriterion;
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.criterion.BindingCriterion;
 import org.opensaml.saml.criterion.EntityRoleCriterion;
 import org.opensaml.saml.criterion.ProtocolCriterion;
 import org.opensaml.saml.metadata.criteria.role.EvaluableRoleDescriptorCriterion;
@@ -34,6 +43,10 @@ import org.opensaml.saml.metadata.resolver.RoleDescriptorResolver;
 import org.opensaml.saml.saml2.common.IsTimeboundSAMLObjectValidPredicate;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml.saml2.metadata.RoleDescriptor;
+import org.opensaml.security.criteria.KeyAlgorithmCriterion;
+import org.opensaml.security.criteria.KeyNameCriterion;
+import org.opensaml.security.criteria.PeerEntityIDCriterion;
+import org.opensaml.security.criteria.UsageCriterion;
 import org.slf4j.Logger;
 
 import com.google.common.collect.Iterables;
@@ -41,12 +54,14 @@ import com.google.common.collect.Iterables;
 import net.shibboleth.shared.annotation.ParameterName;
 import net.shibboleth.shared.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.shared.collection.CollectionSupport;
+import net.shibboleth.shared.collection.LockableClassToInstanceMultiMap;
 import net.shibboleth.shared.component.AbstractIdentifiedInitializableComponent;
 import net.shibboleth.shared.component.ComponentInitializationException;
 import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.logic.PredicateSupport;
 import net.shibboleth.shared.primitive.LoggerFactory;
 import net.shibboleth.shared.resolver.CriteriaSet;
+import net.shibboleth.shared.resolver.Criterion;
 import net.shibboleth.shared.resolver.CriterionPredicateRegistry;
 import net.shibboleth.shared.resolver.ResolverException;
 import net.shibboleth.shared.resolver.ResolverSupport;
@@ -65,6 +80,14 @@ import net.shibboleth.shared.resolver.ResolverSupport;
  * directly as instances of {@link EvaluableRoleDescriptorCriterion} in the criteria, or resolved dynamically
  * from other criteria via an instance of {@link CriterionPredicateRegistry}.
  * </p>
+ * 
+ * <p>
+ * The role descriptors of each resolved EntityDescriptor are indexed by role and protocol the first time that
+ * EntityDescriptor instance is seen, and the index is cached in its object metadata. If enabled via
+ * {@link #setMemoizeResults(boolean)}, the role descriptors selected by each distinct criteria set are also
+ * cached there. Reloaded metadata consists of new EntityDescriptor instances, so a refresh invalidates both.
+ * Neither reflects changes made to an EntityDescriptor after it has first been resolved.
+ * </p>
  */
 public class PredicateRoleDescriptorResolver extends AbstractIdentifiedInitializableComponent 
         implements RoleDescriptorResolver {
@@ -72,6 +95,15 @@ public class PredicateRoleDescriptorResolver extends AbstractIdentifiedInitializ
     /** Predicate for evaluating whether a TimeboundSAMLObject is valid. */
     @Nonnull private static final Predicate<XMLObject> IS_VALID_PREDICATE = new IsTimeboundSAMLObjectValidPredicate();
     
+    /** Maximum number of results memoized per EntityDescriptor. */
+    private static final int MAX_MEMOIZED_RESULTS = 32;
+    
+    /** Types of criteria whose equality is that of their values, so may form part of the key of a memoized result. */
+    @Nonnull private static final Set<Class<? extends Criterion>> VALUE_CRITERIA = CollectionSupport.setOf(
+            EntityRoleCriterion.class, ProtocolCriterion.class, SatisfyAnyCriterion.class, EntityIdCriterion.class,
+            BindingCriterion.class, UsageCriterion.class, PeerEntityIDCriterion.class, KeyAlgorithmCriterion.class,
+            KeyNameCriterion.class);
+    
     /** Logger. */
     @Nonnull private Logger log = LoggerFactory.getLogger(PredicateRoleDescriptorResolver.class);
     
@@ -96,6 +128,9 @@ public class PredicateRoleDescriptorResolver extends AbstractIdentifiedInitializ
      * entire metadata collection. Defaults to false. */
     private boolean resolveViaPredicatesOnly;
     
+    /** Flag indicating whether the results of role based resolution are memoized. Defaults to false. */
+    private boolean memoizeResults;
+    
     /**
      * Constructor.
      *
@@ -213,6 +248,50 @@ public class PredicateRoleDescriptorResolver extends AbstractIdentifiedInitializ
         resolveViaPredicatesOnly = flag;
     }
     
+    /**
+     * Get the flag indicating whether the role descriptors selected for a given criteria set from a given
+     * EntityDescriptor are memoized.
+     * 
+     * <p>Defaults to false.</p>
+     * 
+     * @return true if results are memoized, false if not
+     * 
+     * @since 5.1.0
+     */
+    public boolean isMemoizeResults() {
+        return memoizeResults;
+    }
+
+    /**
+     * Set the flag indicating whether the role descriptors selected for a given criteria set from a given
+     * EntityDescriptor are memoized.
+     * 
+     * <p>
+     * Results are keyed by those criteria which may affect them, and only memoized if all of those are of types
+     * known to compare by value, such as {@link EntityRoleCriterion} and {@link ProtocolCriterion}. Criteria such
+     * as {@link EvaluableRoleDescriptorCriterion}, whose equality is typically that of object identity, would
+     * otherwise produce a new result for every request, so their presence disables memoization for that request.
+     * Criteria which neither carry predicates nor are mapped to predicates by the {@link CriterionPredicateRegistry}
+     * have no bearing on the result, and are ignored.
+     * </p>
+     * 
+     * <p>
+     * Memoization assumes that the predicates applied are functions only of the criteria and the role descriptor,
+     * which holds for those produced by a {@link CriterionPredicateRegistry} from such criteria. The validity of
+     * metadata is always evaluated afresh.
+     * </p>
+     * 
+     * <p>Defaults to false.</p>
+     * 
+     * @param flag true if results should be memoized, false if not
+     * 
+     * @since 5.1.0
+     */
+    public void setMemoizeResults(final boolean flag) {
+        checkSetterPreconditions();
+        memoizeResults = flag;
+    }
+    
     /**
      * Subclasses should override this method to perform any initialization logic necessary. Default implementation is a
      * no-op.
@@ -258,7 +337,10 @@ public class PredicateRoleDescriptorResolver extends AbstractIdentifiedInitializ
         final Predicate<? super RoleDescriptor> predicate = isRequireValidMetadata() ? IS_VALID_PREDICATE 
                 : PredicateSupport.alwaysTrue();
             
-        if (haveRoleCriteria(criteria)) {
+        final MemoKey key = haveRoleCriteria(criteria) && isMemoizeResults() ? buildMemoKey(criteria) : null;
+        if (key != null) {
+            return Iterables.filter(resolveMemoized(entityDescriptorsSource, criteria, key), predicate::test);
+        } else if (haveRoleCriteria(criteria)) {
             final Iterable<RoleDescriptor> candidates =
                     getCandidatesByRoleAndProtocol(entityDescriptorsSource, criteria);
             if (log.isDebugEnabled()) {
@@ -314,17 +396,114 @@ public class PredicateRoleDescriptorResolver extends AbstractIdentifiedInitializ
         assert criteria != null;
         final ProtocolCriterion protocolCriterion = criteria.get(ProtocolCriterion.class);
         
+        final RoleKey key = new RoleKey(roleCriterion.getRole(),
+                protocolCriterion != null ? protocolCriterion.getProtocol() : null);
+        
         final ArrayList<Iterable<RoleDescriptor>> aggregate = new ArrayList<>();
         for (final EntityDescriptor entityDescriptor : entityDescriptors) {
-            if (protocolCriterion != null) {
-                aggregate.add(entityDescriptor.getRoleDescriptors(roleCriterion.getRole(), 
-                        protocolCriterion.getProtocol()));
+            aggregate.add(getRoleIndex(entityDescriptor).getRoleDescriptors(key));
+        }
+        return Iterables.concat(aggregate);
+    }
+    
+    /**
+     * Obtain the role descriptors contained by the input entity descriptors which match the role and protocol
+     * criteria and any predicates resolved from the criteria, using memoized results where available.
+     * 
+     * <p>
+     * This method should only be called if {@link #haveRoleCriteria(CriteriaSet)} evaluates to true.
+     * </p>
+     * 
+     * @param entityDescriptors the entity descriptors on which to operate
+     * @param criteria the current criteria set
+     * @param key the key of the results for the criteria
+     * 
+     * @return the matching role descriptors
+     * 
+     * @throws ResolverException if there is a fatal error during resolution
+     */
+    @Nonnull private Iterable<RoleDescriptor> resolveMemoized(
+            @Nonnull final Iterable<EntityDescriptor> entityDescriptors, @Nullable final CriteriaSet criteria,
+            @Nonnull final MemoKey key) throws ResolverException {
+        final ArrayList<Iterable<RoleDescriptor>> aggregate = new ArrayList<>();
+        for (final EntityDescriptor entityDescriptor : entityDescriptors) {
+            final EntityRoleIndex index = getRoleIndex(entityDescriptor);
+            List<RoleDescriptor> result = index.getMemoizedResult(key);
+            if (result != null) {
+                log.trace("Using memoized RoleDescriptors for entity '{}'", entityDescriptor.getEntityID());
             } else {
-                aggregate.add(entityDescriptor.getRoleDescriptors(roleCriterion.getRole()));
+                result = CollectionSupport.copyToList(predicateFilterCandidates(
+                        getCandidatesByRoleAndProtocol(CollectionSupport.singletonList(entityDescriptor), criteria),
+                        criteria, false));
+                index.memoizeResult(key, result);
             }
+            aggregate.add(result);
         }
         return Iterables.concat(aggregate);
     }
+    
+    /**
+     * Build the key of memoized results from those criteria which may affect the role descriptors selected.
+     * 
+     * @param criteria the current criteria set
+     * 
+     * @return the key, or null if the results may depend on criteria which don't compare by value
+     */
+    @Nullable private MemoKey buildMemoKey(@Nonnull final CriteriaSet criteria) {
+        final CriterionPredicateRegistry<RoleDescriptor> registry = getCriterionPredicateRegistry();
+        // Copied, since the caller's criteria set may subsequently be modified.
+        final CriteriaSet keyCriteria = new CriteriaSet();
+        for (final Criterion criterion : criteria) {
+            if (VALUE_CRITERIA.contains(criterion.getClass())) {
+                keyCriteria.add(criterion);
+            } else if (criterion instanceof EvaluableRoleDescriptorCriterion
+                    || (registry != null && registry.getPredicate(criterion) != null)) {
+                log.trace("Criterion of type {} does not compare by value, results will not be memoized",
+                        criterion.getClass().getName());
+                return null;
+            }
+        }
+        return new MemoKey(this, keyCriteria);
+    }
+    
+    /**
+     * Get the role index of an EntityDescriptor, building and caching it in the descriptor's object metadata
+     * if necessary.
+     * 
+     * @param entityDescriptor the entity descriptor
+     * 
+     * @return the role index
+     */
+    @Nonnull private EntityRoleIndex getRoleIndex(@Nonnull final EntityDescriptor entityDescriptor) {
+        final LockableClassToInstanceMultiMap<Object> objectMetadata = entityDescriptor.getObjectMetadata();
+        final ReadWriteLock rwlock = objectMetadata.getReadWriteLock();
+        
+        try {
+            rwlock.readLock().lock();
+            final List<EntityRoleIndex> cached = objectMetadata.get(EntityRoleIndex.class);
+            if (!cached.isEmpty()) {
+                return cached.get(0);
+            }
+        } finally {
+            rwlock.readLock().unlock();
+        }
+        
+        try {
+            rwlock.writeLock().lock();
+            
+            // Need to check again in case another thread built the index while this one waited on the write lock.
+            final List<EntityRoleIndex> cached = objectMetadata.get(EntityRoleIndex.class);
+            if (!cached.isEmpty()) {
+                return cached.get(0);
+            }
+            
+            final EntityRoleIndex index = new EntityRoleIndex(entityDescriptor);
+            objectMetadata.put(index);
+            return index;
+        } finally {
+            rwlock.writeLock().unlock();
+        }
+    }
 
     /**
      * Obtain all role descriptors contained by the input entity descriptors.
@@ -392,5 +571,177 @@ public class PredicateRoleDescriptorResolver extends AbstractIdentifiedInitializ
         }
         return result;
     }
+    
+    /** Key identifying role descriptors by role type or element name, and optionally protocol. */
+    private static final class RoleKey {
+        
+        /** Role type or element name. */
+        @Nonnull private final QName role;
+        
+        /** Protocol. */
+        @Nullable private final String protocol;
+        
+        /** Precomputed hash code. */
+        private final int hash;
+        
+        /**
+         * Constructor.
+         *
+         * @param roleName role type or element name
+         * @param supportedProtocol protocol, or null to match any
+         */
+        RoleKey(@Nonnull final QName roleName, @Nullable final String supportedProtocol) {
+            role = roleName;
+            protocol = supportedProtocol;
+            hash = Objects.hash(role, protocol);
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            
+            if (obj instanceof RoleKey other) {
+                return role.equals(other.role) && Objects.equals(protocol, other.protocol);
+            }
+            
+            return false;
+        }
+    }
+    
+    /** Key identifying a memoized result by the resolver which produced it and the criteria. */
+    private static final class MemoKey {
+        
+        /** Resolver which produced the result. */
+        @Nonnull private final PredicateRoleDescriptorResolver owner;
+        
+        /** Criteria. */
+        @Nonnull private final CriteriaSet criteria;
+        
+        /**
+         * Constructor.
+         *
+         * @param resolver resolver which produced the result
+         * @param criteriaSet criteria, which must not subsequently be modified
+         */
+        MemoKey(@Nonnull final PredicateRoleDescriptorResolver resolver, @Nonnull final CriteriaSet criteriaSet) {
+            owner = resolver;
+            criteria = criteriaSet;
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(owner) + criteria.hashCode();
+        }
+        
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            
+            if (obj instanceof MemoKey other) {
+                return owner == other.owner && criteria.equals(other.criteria);
+            }
+            
+            return false;
+        }
+    }
+    
+    /** Index of the role descriptors of an EntityDescriptor, and memoized resolution results, by key. */
+    private static final class EntityRoleIndex {
+        
+        /** Role descriptors by role and protocol. */
+        @Nonnull private final Map<RoleKey, List<RoleDescriptor>> roleDescriptors;
+        
+        /** Memoized results. */
+        @Nonnull private final Map<MemoKey, List<RoleDescriptor>> memoizedResults;
+        
+        /**
+         * Constructor.
+         *
+         * @param entityDescriptor the entity descriptor to index
+         */
+        EntityRoleIndex(@Nonnull final EntityDescriptor entityDescriptor) {
+            final Map<RoleKey, List<RoleDescriptor>> index = new HashMap<>();
+            for (final RoleDescriptor roleDescriptor : entityDescriptor.getRoleDescriptors()) {
+                add(index, roleDescriptor.getElementQName(), roleDescriptor);
+                final QName type = roleDescriptor.getSchemaType();
+                if (type != null && !type.equals(roleDescriptor.getElementQName())) {
+                    add(index, type, roleDescriptor);
+                }
+            }
+            for (final Map.Entry<RoleKey, List<RoleDescriptor>> entry : index.entrySet()) {
+                entry.setValue(CollectionSupport.copyToList(entry.getValue()));
+            }
+            roleDescriptors = index;
+            memoizedResults = new ConcurrentHashMap<>();
+        }
+        
+        /**
+         * Get the role descriptors matching a key.
+         *
+         * @param key the key
+         * 
+         * @return the matching role descriptors
+         */
+        @Nonnull List<RoleDescriptor> getRoleDescriptors(@Nonnull final RoleKey key) {
+            final List<RoleDescriptor> result = roleDescriptors.get(key);
+            return result != null ? result : CollectionSupport.emptyList();
+        }
+        
+        /**
+         * Get a memoized result.
+         *
+         * @param key the key
+         * 
+         * @return the result, or null
+         */
+        @Nullable List<RoleDescriptor> getMemoizedResult(@Nonnull final MemoKey key) {
+            return memoizedResults.get(key);
+        }
+        
+        /**
+         * Memoize a result, discarding all those previously memoized if the limit has been reached.
+         *
+         * @param key the key
+         * @param result the result
+         */
+        void memoizeResult(@Nonnull final MemoKey key, @Nonnull final List<RoleDescriptor> result) {
+            if (memoizedResults.size() >= MAX_MEMOIZED_RESULTS) {
+                memoizedResults.clear();
+            }
+            memoizedResults.put(key, result);
+        }
+        
+        /**
+         * Index a role descriptor under a role name, alone and with each of its protocols.
+         *
+         * @param index the index
+         * @param role the role type or element name
+         * @param roleDescriptor the role descriptor
+         */
+        private static void add(@Nonnull final Map<RoleKey, List<RoleDescriptor>> index, @Nonnull final QName role,
+                @Nonnull final RoleDescriptor roleDescriptor) {
+            index.computeIfAbsent(new RoleKey(role, null), k -> new ArrayList<>()).add(roleDescriptor);
+            for (final String protocol : roleDescriptor.getSupportedProtocols()) {
+                final List<RoleDescriptor> list =
+                        index.computeIfAbsent(new RoleKey(role, protocol), k -> new ArrayList<>());
+                if (!list.contains(roleDescriptor)) {
+                    list.add(roleDescriptor);
+                }
+            }
+        }
+    }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,504 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import net.shibboleth.shared.xml.XMLConstants;
+
+/**
+ * Computes the digest of the exclusive canonical form (without comments) of an element from a stream of events.
+ * 
+ * <p>
+ * The element is assumed to be the subject of a same-document reference, so that comments are never part of
+ * the node-set, and nodes to be excluded (such as an enveloped signature) are excluded by not passing their
+ * events in the first place.
+ * </p>
+ * 
+ * @since 5.1.0
+ */
+@NotThreadSafe
+final class StreamingExclusiveCanonicalizer {
+
+    /** Order in which attributes are rendered. */
+    @Nonnull private static final Comparator<Attribute> ATTRIBUTE_ORDER =
+            Comparator.comparing(Attribute::getNamespaceURI).thenComparing(Attribute::getLocalName);
+
+    /** The digest being computed. */
+    @Nonnull private final MessageDigest digest;
+
+    /** Output, feeding the digest. */
+    @Nonnull private final Writer out;
+
+    /** Prefixes treated as by inclusive canonicalization, with the empty string for the default namespace. */
+    @Nonnull private final Set<String> inclusivePrefixes;
+
+    /** Namespace declarations rendered on each open element, innermost first. */
+    @Nonnull private final Deque<Map<String,String>> rendered;
+
+    /** Qualified names of open elements, innermost first. */
+    @Nonnull private final Deque<String> openElements;
+
+    /**
+     * Constructor.
+     *
+     * @param messageDigest the digest to compute
+     * @param prefixes the <code>InclusiveNamespaces</code> prefix list
+     */
+    StreamingExclusiveCanonicalizer(@Nonnull final MessageDigest messageDigest,
+            @Nonnull final Set<String> prefixes) {
+        digest = messageDigest;
+        inclusivePrefixes = prefixes;
+        out = new BufferedWriter(new OutputStreamWriter(
+                new DigestOutputStream(OutputStream.nullOutputStream(), messageDigest), StandardCharsets.UTF_8));
+        rendered = new ArrayDeque<>();
+        openElements = new ArrayDeque<>();
+    }
+
+    /**
+     * Process the start of an element.
+     *
+     * @param tag the start tag
+     *
+     * @throws IOException if an error occurs
+     */
+    void startElement(@Nonnull final StartTag tag) throws IOException {
+        final Map<String,String> namespaces = new TreeMap<>();
+        addIfRendered(tag, tag.getPrefix(), namespaces);
+        for (final Attribute attribute : tag.getAttributes()) {
+            if (!attribute.getPrefix().isEmpty()) {
+                addIfRendered(tag, attribute.getPrefix(), namespaces);
+            }
+        }
+        for (final String prefix : inclusivePrefixes) {
+            addIfRendered(tag, prefix, namespaces);
+        }
+
+        final String qname = tag.getQualifiedName();
+        out.write('<');
+        out.write(qname);
+        for (final Map.Entry<String,String> namespace : namespaces.entrySet()) {
+            out.write(namespace.getKey().isEmpty() ? " xmlns" : " xmlns:" + namespace.getKey());
+            writeAttributeValue(namespace.getValue());
+        }
+
+        final Attribute[] attributes = tag.getAttributes().clone();
+        Arrays.sort(attributes, ATTRIBUTE_ORDER);
+        for (final Attribute attribute : attributes) {
+            out.write(' ');
+            out.write(attribute.getQualifiedName());
+            writeAttributeValue(attribute.getValue());
+        }
+        out.write('>');
+
+        rendered.push(namespaces.isEmpty() ? Collections.<String,String>emptyMap() : namespaces);
+        openElements.push(qname);
+    }
+
+    /**
+     * Process the end of the most recently started element.
+     *
+     * @throws IOException if an error occurs
+     */
+    void endElement() throws IOException {
+        out.write("</");
+        out.write(openElements.pop());
+        out.write('>');
+        rendered.pop();
+    }
+
+    /**
+     * Process character data.
+     *
+     * @param text the characters
+     *
+     * @throws IOException if an error occurs
+     */
+    void characters(@Nonnull final String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    out.write("&amp;");
+                    break;
+                case '<':
+                    out.write("&lt;");
+                    break;
+                case '>':
+                    out.write("&gt;");
+                    break;
+                case '\r':
+                    out.write("&#xD;");
+                    break;
+                default:
+                    out.write(c);
+            }
+        }
+    }
+
+    /**
+     * Process a processing instruction.
+     *
+     * @param target the target
+     * @param data the data, if any
+     *
+     * @throws IOException if an error occurs
+     */
+    void processingInstruction(@Nonnull final String target, @Nullable final String data) throws IOException {
+        out.write("<?");
+        out.write(target);
+        if (data != null && !data.isEmpty()) {
+            out.write(' ');
+            out.write(data);
+        }
+        out.write("?>");
+    }
+
+    /**
+     * Complete the digest once the element has ended.
+     *
+     * @return the digest value
+     *
+     * @throws IOException if an error occurs
+     */
+    @Nonnull byte[] finish() throws IOException {
+        out.flush();
+        return digest.digest();
+    }
+
+    /**
+     * Add a prefix's namespace declaration to those to be rendered on an element, if it is in scope and differs
+     * from the declaration currently in effect in the output.
+     *
+     * @param tag the start tag
+     * @param prefix the prefix
+     * @param namespaces the declarations to render
+     */
+    private void addIfRendered(@Nonnull final StartTag tag, @Nonnull final String prefix,
+            @Nonnull final Map<String,String> namespaces) {
+        if ("xml".equals(prefix) || namespaces.containsKey(prefix)) {
+            return;
+        }
+        final String uri = tag.getScope().lookup(prefix);
+        if (uri != null && !uri.equals(lookupRendered(prefix))) {
+            namespaces.put(prefix, uri);
+        }
+    }
+
+    /**
+     * Get the namespace currently rendered in the output for a prefix.
+     *
+     * @param prefix the prefix
+     *
+     * @return the namespace, the empty string for the default namespace if not rendered, or null
+     */
+    @Nullable private String lookupRendered(@Nonnull final String prefix) {
+        for (final Map<String,String> namespaces : rendered) {
+            final String uri = namespaces.get(prefix);
+            if (uri != null) {
+                return uri;
+            }
+        }
+        return prefix.isEmpty() ? "" : null;
+    }
+
+    /**
+     * Write an attribute value, including the preceding equals sign and the quotes.
+     *
+     * @param value the value
+     *
+     * @throws IOException if an error occurs
+     */
+    private void writeAttributeValue(@Nonnull final String value) throws IOException {
+        out.write("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    out.write("&amp;");
+                    break;
+                case '<':
+                    out.write("&lt;");
+                    break;
+                case '"':
+                    out.write("&quot;");
+                    break;
+                case '\t':
+                    out.write("&#x9;");
+                    break;
+                case '\n':
+                    out.write("&#xA;");
+                    break;
+                case '\r':
+                    out.write("&#xD;");
+                    break;
+                default:
+                    out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    /** Namespace declarations in scope at an element. */
+    static final class NamespaceScope {
+
+        /** The scope of the parent element. */
+        @Nullable private final NamespaceScope parent;
+
+        /** The declarations on the element, keyed by prefix with the empty string for the default namespace. */
+        @Nonnull private final Map<String,String> declared;
+
+        /**
+         * Constructor.
+         *
+         * @param parentScope the scope of the parent element
+         * @param declarations the declarations on the element itself
+         */
+        NamespaceScope(@Nullable final NamespaceScope parentScope, @Nonnull final Map<String,String> declarations) {
+            parent = parentScope;
+            declared = declarations;
+        }
+
+        /**
+         * Get the scope of the parent element.
+         *
+         * @return the parent scope
+         */
+        @Nullable NamespaceScope getParent() {
+            return parent;
+        }
+
+        /**
+         * Get the declarations on the element itself.
+         *
+         * @return the declarations, keyed by prefix with the empty string for the default namespace
+         */
+        @Nonnull Map<String,String> getDeclared() {
+            return declared;
+        }
+
+        /**
+         * Get the namespace bound to a prefix.
+         *
+         * @param prefix the prefix, or the empty string for the default namespace
+         *
+         * @return the namespace, the empty string if there is no default namespace, or null if the prefix is
+         *          not bound
+         */
+        @Nullable String lookup(@Nonnull final String prefix) {
+            for (NamespaceScope scope = this; scope != null; scope = scope.parent) {
+                final String uri = scope.declared.get(prefix);
+                if (uri != null) {
+                    return uri;
+                }
+            }
+            if (prefix.isEmpty()) {
+                return "";
+            }
+            return "xml".equals(prefix) ? XMLConstants.XML_NS : null;
+        }
+
+        /**
+         * Get all the namespace declarations in scope, excluding any undeclared default namespace.
+         *
+         * @return the declarations in scope
+         */
+        @Nonnull Map<String,String> getInScope() {
+            final Map<String,String> namespaces = new HashMap<>();
+            for (NamespaceScope scope = this; scope != null; scope = scope.parent) {
+                for (final Map.Entry<String,String> entry : scope.declared.entrySet()) {
+                    namespaces.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+            }
+            if ("".equals(namespaces.get(""))) {
+                namespaces.remove("");
+            }
+            return namespaces;
+        }
+    }
+
+    /** A namespace-qualified name, with the prefix used in the document. */
+    abstract static class Name {
+
+        /** The prefix, or the empty string. */
+        @Nonnull private final String prefix;
+
+        /** The namespace, or the empty string. */
+        @Nonnull private final String namespaceURI;
+
+        /** The local name. */
+        @Nonnull private final String localName;
+
+        /**
+         * Constructor.
+         *
+         * @param pfx the prefix, or the empty string
+         * @param ns the namespace, or the empty string
+         * @param local the local name
+         */
+        Name(@Nonnull final String pfx, @Nonnull final String ns, @Nonnull final String local) {
+            prefix = pfx;
+            namespaceURI = ns;
+            localName = local;
+        }
+
+        /**
+         * Get the prefix.
+         *
+         * @return the prefix, or the empty string
+         */
+        @Nonnull String getPrefix() {
+            return prefix;
+        }
+
+        /**
+         * Get the namespace.
+         *
+         * @return the namespace, or the empty string
+         */
+        @Nonnull String getNamespaceURI() {
+            return namespaceURI;
+        }
+
+        /**
+         * Get the local name.
+         *
+         * @return the local name
+         */
+        @Nonnull String getLocalName() {
+            return localName;
+        }
+
+        /**
+         * Get the qualified name as it appears in the document.
+         *
+         * @return the qualified name
+         */
+        @Nonnull String getQualifiedName() {
+            return prefix.isEmpty() ? localName : prefix + ':' + localName;
+        }
+    }
+
+    /** An attribute of an element. */
+    static final class Attribute extends Name {
+
+        /** The normalized value. */
+        @Nonnull private final String value;
+
+        /**
+         * Constructor.
+         *
+         * @param pfx the prefix, or the empty string
+         * @param ns the namespace, or the empty string
+         * @param local the local name
+         * @param val the normalized value
+         */
+        Attribute(@Nonnull final String pfx, @Nonnull final String ns, @Nonnull final String local,
+                @Nonnull final String val) {
+            super(pfx, ns, local);
+            value = val;
+        }
+
+        /**
+         * Get the normalized value.
+         *
+         * @return the value
+         */
+        @Nonnull String getValue() {
+            return value;
+        }
+    }
+
+    /** The start tag of an element. */
+    static final class StartTag extends Name {
+
+        /** The attributes, excluding namespace declarations. */
+        @Nonnull private final Attribute[] attributes;
+
+        /** The namespace declarations in scope, including those on the element itself. */
+        @Nonnull private final NamespaceScope scope;
+
+        /**
+         * Constructor.
+         *
+         * @param pfx the prefix, or the empty string
+         * @param ns the namespace, or the empty string
+         * @param local the local name
+         * @param attrs the attributes, excluding namespace declarations
+         * @param namespaces the namespace declarations in scope
+         */
+        StartTag(@Nonnull final String pfx, @Nonnull final String ns, @Nonnull final String local,
+                @Nonnull final Attribute[] attrs, @Nonnull final NamespaceScope namespaces) {
+            super(pfx, ns, local);
+            attributes = attrs;
+            scope = namespaces;
+        }
+
+        /**
+         * Get the attributes, excluding namespace declarations.
+         *
+         * @return the attributes
+         */
+        @Nonnull Attribute[] getAttributes() {
+            return attributes;
+        }
+
+        /**
+         * Get the namespace declarations in scope, including those on the element itself.
+         *
+         * @return the scope
+         */
+        @Nonnull NamespaceScope getScope() {
+            return scope;
+        }
+
+        /**
+         * Get the value of an unqualified attribute.
+         *
+         * @param name the local name
+         *
+         * @return the value, or null
+         */
+        @Nullable String getAttribute(@Nonnull final String name) {
+            for (final Attribute attribute : attributes) {
+                if (attribute.getNamespaceURI().isEmpty() && name.equals(attribute.getLocalName())) {
+                    return attribute.getValue();
+                }
+            }
+            return null;
+        }
+    }
+
+}
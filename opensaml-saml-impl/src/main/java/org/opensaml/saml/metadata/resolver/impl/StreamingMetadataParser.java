@@ -0,0 +1,907 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.io.UnmarshallerFactory;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.metadata.resolver.filter.FilterException;
+import org.opensaml.saml.metadata.resolver.filter.data.impl.StreamedMetadata;
+import org.opensaml.saml.metadata.resolver.impl.StreamingExclusiveCanonicalizer.Attribute;
+import org.opensaml.saml.metadata.resolver.impl.StreamingExclusiveCanonicalizer.NamespaceScope;
+import org.opensaml.saml.metadata.resolver.impl.StreamingExclusiveCanonicalizer.StartTag;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.xmlsec.algorithm.AlgorithmRegistry;
+import org.opensaml.xmlsec.algorithm.AlgorithmSupport;
+import org.opensaml.xmlsec.algorithm.DigestAlgorithm;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.slf4j.Logger;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+import net.shibboleth.shared.logic.Constraint;
+import net.shibboleth.shared.primitive.LoggerFactory;
+import net.shibboleth.shared.primitive.StringSupport;
+import net.shibboleth.shared.xml.ElementSupport;
+import net.shibboleth.shared.xml.ParserPool;
+import net.shibboleth.shared.xml.XMLConstants;
+import net.shibboleth.shared.xml.XMLParserException;
+
+/**
+ * Reads an <code>EntitiesDescriptor</code> document incrementally, one <code>EntityDescriptor</code> at a time.
+ * 
+ * <p>
+ * Each <code>EntityDescriptor</code> is parsed into a DOM of its own, with all the namespace declarations in scope
+ * at that point, unmarshalled, attached to its (partially read) parent group, and passed to an
+ * {@link EntityHandler}. Only the entities the handler returns are retained, and those without their DOM, so the
+ * document as a whole is never held in memory. The groups themselves are unmarshalled from a "shell" DOM holding
+ * their attributes, <code>Signature</code> and <code>Extensions</code> only.
+ * </p>
+ * 
+ * <p>
+ * Since the content of a signed group is not retained, the digest of its enveloped signature's reference is
+ * computed over the stream, using exclusive canonicalization, and made available to the filters applied to the
+ * result via the {@link StreamedMetadata} attached to the root's object metadata. This is only supported for a
+ * single reference to the group by ID (or by an empty URI for the document root), with the enveloped signature
+ * and exclusive canonicalization transforms, as required by the SAML metadata signing profile; any other form of
+ * signature leaves no digest and so fails verification.
+ * </p>
+ * 
+ * <p>
+ * A document whose root is not an <code>EntitiesDescriptor</code> isn't processed.
+ * </p>
+ * 
+ * @since 5.1.0
+ */
+@ThreadSafe
+public final class StreamingMetadataParser {
+
+    /** Name of the exclusive canonicalization <code>InclusiveNamespaces</code> element. */
+    @Nonnull private static final QName INCLUSIVE_NAMESPACES =
+            new QName(SignatureConstants.TRANSFORM_C14N_EXCL_OMIT_COMMENTS, "InclusiveNamespaces");
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(StreamingMetadataParser.class);
+
+    /** Source of DOM documents for fragments. */
+    @Nonnull private final ParserPool parserPool;
+
+    /** Source of unmarshallers. */
+    @Nonnull private final UnmarshallerFactory unmarshallerFactory;
+
+    /** Factory for stream readers. */
+    @Nonnull private final XMLInputFactory inputFactory;
+
+    /**
+     * Constructor.
+     *
+     * @param pool the parser pool used to create DOM documents
+     * @param factory the unmarshaller factory
+     */
+    public StreamingMetadataParser(@Nonnull final ParserPool pool, @Nonnull final UnmarshallerFactory factory) {
+        parserPool = Constraint.isNotNull(pool, "ParserPool cannot be null");
+        unmarshallerFactory = Constraint.isNotNull(factory, "UnmarshallerFactory cannot be null");
+
+        inputFactory = XMLInputFactory.newFactory();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Read a metadata document.
+     * 
+     * <p>
+     * The result carries a {@link StreamedMetadata} instance for the group stage of filtering in its object
+     * metadata.
+     * </p>
+     *
+     * @param input the document
+     * @param handler the handler for each entity
+     *
+     * @return the root group, containing only the retained entities, or null if the document root is not an
+     *          <code>EntitiesDescriptor</code>
+     *
+     * @throws UnmarshallingException if the document cannot be parsed or unmarshalled
+     * @throws FilterException if thrown by the handler
+     */
+    @Nullable public EntitiesDescriptor parse(@Nonnull final InputStream input, @Nonnull final EntityHandler handler)
+            throws UnmarshallingException, FilterException {
+        Constraint.isNotNull(input, "Input cannot be null");
+        Constraint.isNotNull(handler, "EntityHandler cannot be null");
+
+        final XMLStreamReader reader;
+        try {
+            reader = inputFactory.createXMLStreamReader(input);
+        } catch (final XMLStreamException e) {
+            throw new UnmarshallingException("Unable to read metadata", e);
+        }
+
+        try {
+            return new Parse(reader, handler).run();
+        } catch (final XMLStreamException | XMLParserException | IOException | DOMException e) {
+            throw new UnmarshallingException("Unable to read metadata", e);
+        } finally {
+            try {
+                reader.close();
+            } catch (final XMLStreamException e) {
+                log.debug("Error closing stream reader", e);
+            }
+        }
+    }
+
+    /** Handler for each <code>EntityDescriptor</code> read. */
+    @FunctionalInterface
+    public interface EntityHandler {
+
+        /**
+         * Process an entity.
+         * 
+         * <p>
+         * The entity's parent is the group containing it, but the group contains only the entities retained so
+         * far. The entity still has its DOM, in a document of its own.
+         * </p>
+         * 
+         * <p>
+         * The handler may return a different entity to retain in its place, which must not have a parent.
+         * </p>
+         *
+         * @param entity the entity
+         *
+         * @return the entity to retain, or null to discard it
+         *
+         * @throws FilterException to abandon the document
+         */
+        @Nullable EntityDescriptor handle(@Nonnull final EntityDescriptor entity) throws FilterException;
+    }
+
+    /** State of an <code>EntitiesDescriptor</code> being read. */
+    private static final class Group {
+
+        /** Enclosing group. */
+        @Nullable private final Group parent;
+
+        /** The start tag. */
+        @Nonnull private final StartTag tag;
+
+        /** The shell DOM element. */
+        @Nonnull private final Element shell;
+
+        /** The unmarshalled group, once its first member has been reached. */
+        @Nullable private EntitiesDescriptor group;
+
+        /** Whether a child element has been reached. */
+        private boolean seenChild;
+
+        /** Whether the group's enveloped signature is being read. */
+        private boolean inSignature;
+
+        /** Character data preceding the first child, needed once the signature has been read. */
+        @Nullable private StringBuilder leadingText;
+
+        /** The canonicalizer for the content of a signed group. */
+        @Nullable private StreamingExclusiveCanonicalizer canonicalizer;
+
+        /** The ID the signature references, or the empty string for the document. */
+        @Nullable private String referenceID;
+
+        /**
+         * Constructor.
+         *
+         * @param parentGroup the enclosing group
+         * @param startTag the start tag
+         * @param shellElement the shell DOM element
+         */
+        Group(@Nullable final Group parentGroup, @Nonnull final StartTag startTag,
+                @Nonnull final Element shellElement) {
+            parent = parentGroup;
+            tag = startTag;
+            shell = shellElement;
+            leadingText = new StringBuilder();
+        }
+    }
+
+    /** The state of a single parse. */
+    private final class Parse {
+
+        /** The reader. */
+        @Nonnull private final XMLStreamReader reader;
+
+        /** The entity handler. */
+        @Nonnull private final EntityHandler handler;
+
+        /** The group stage filter data. */
+        @Nonnull private final StreamedMetadata streamedMetadata;
+
+        /** Every group read. */
+        @Nonnull private final List<Group> groups;
+
+        /** The groups enclosing the current position, innermost first. */
+        @Nonnull private final Deque<Group> openGroups;
+
+        /** Values of every unqualified <code>ID</code> attribute in the document. */
+        @Nonnull private final Set<String> ids;
+
+        /** Values of unqualified <code>ID</code> attributes that occur more than once. */
+        @Nonnull private final Set<String> duplicateIDs;
+
+        /** The shell DOM document. */
+        @Nullable private Document shellDocument;
+
+        /** Namespace declarations in scope at the current position. */
+        @Nullable private NamespaceScope scope;
+
+        /** The DOM node to which content is being added, if any. */
+        @Nullable private Node domParent;
+
+        /** Depth of the current position within the DOM node being built. */
+        private int domDepth;
+
+        /** Whether the DOM being built is that of an <code>EntityDescriptor</code>. */
+        private boolean inEntity;
+
+        /** Whether a processing instruction has been read outside the document element. */
+        private boolean topLevelInstruction;
+
+        /**
+         * Constructor.
+         *
+         * @param streamReader the reader
+         * @param entityHandler the entity handler
+         */
+        Parse(@Nonnull final XMLStreamReader streamReader, @Nonnull final EntityHandler entityHandler) {
+            reader = streamReader;
+            handler = entityHandler;
+            streamedMetadata = new StreamedMetadata(false);
+            groups = new ArrayList<>();
+            openGroups = new ArrayDeque<>();
+            ids = new HashSet<>();
+            duplicateIDs = new HashSet<>();
+        }
+
+        /**
+         * Read the document.
+         *
+         * @return the root group, or null
+         *
+         * @throws XMLStreamException if the document cannot be parsed
+         * @throws XMLParserException if a DOM document cannot be created
+         * @throws IOException if a digest cannot be computed
+         * @throws UnmarshallingException if an element cannot be unmarshalled
+         * @throws FilterException if thrown by the handler
+         */
+        @Nullable EntitiesDescriptor run() throws XMLStreamException, XMLParserException, IOException,
+                UnmarshallingException, FilterException {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        if (!startElement()) {
+                            log.debug("Document root was not an EntitiesDescriptor");
+                            return null;
+                        }
+                        break;
+
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement();
+                        break;
+
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        characters(reader.getText());
+                        break;
+
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        processingInstruction(reader.getPITarget(), reader.getPIData());
+                        break;
+
+                    case XMLStreamConstants.DTD:
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        throw new XMLStreamException("DOCTYPE declarations and entity references are not supported",
+                                reader.getLocation());
+
+                    default:
+                        break;
+                }
+            }
+
+            if (groups.isEmpty()) {
+                throw new XMLStreamException("Document contained no root element");
+            }
+
+            final Group root = groups.get(0);
+            for (final Group group : groups) {
+                final EntitiesDescriptor descriptor = group.group;
+                assert descriptor != null;
+                // Restore the DOM released by the addition of members, for the benefit of signature processing.
+                descriptor.setDOM(group.shell);
+                if (group.referenceID != null && streamedMetadata.getReferenceDigest(descriptor) != null) {
+                    if (duplicateIDs.contains(group.referenceID)) {
+                        log.warn("Signature reference ID '{}' was not unique within the document",
+                                group.referenceID);
+                        streamedMetadata.setReferenceDigest(descriptor, null);
+                    } else if (group.referenceID.isEmpty() && topLevelInstruction) {
+                        log.warn("Document-level signature reference included processing instructions");
+                        streamedMetadata.setReferenceDigest(descriptor, null);
+                    }
+                }
+            }
+
+            final EntitiesDescriptor result = root.group;
+            assert result != null;
+            result.getObjectMetadata().put(streamedMetadata);
+            return result;
+        }
+
+        /**
+         * Process the start of an element.
+         *
+         * @return false iff the element is the document root and is not a group
+         *
+         * @throws XMLParserException if a DOM document cannot be created
+         * @throws IOException if a digest cannot be computed
+         * @throws UnmarshallingException if an element cannot be unmarshalled
+         * @throws XMLStreamException if the element is not expected at this point
+         */
+        private boolean startElement() throws XMLParserException, IOException, UnmarshallingException,
+                XMLStreamException {
+            final StartTag tag = readStartTag();
+
+            for (final Group open : openGroups) {
+                if (open.canonicalizer != null) {
+                    open.canonicalizer.startElement(tag);
+                }
+            }
+
+            final Node parent = domParent;
+            if (parent != null) {
+                final Element element = createElement(parent.getOwnerDocument(), tag, false);
+                parent.appendChild(element);
+                domParent = element;
+                domDepth++;
+                return true;
+            }
+
+            final Group group = openGroups.peek();
+            if (group == null) {
+                if (!isNamed(tag, EntitiesDescriptor.DEFAULT_ELEMENT_NAME)) {
+                    return false;
+                }
+                final Document document = parserPool.newDocument();
+                final Element shell = createElement(document, tag, false);
+                document.appendChild(shell);
+                shellDocument = document;
+                startGroup(new Group(null, tag, shell));
+                return true;
+            }
+
+            if (!group.seenChild && isNamed(tag, Signature.DEFAULT_ELEMENT_NAME)) {
+                group.inSignature = true;
+            } else {
+                group.leadingText = null;
+            }
+            group.seenChild = true;
+
+            if (isNamed(tag, EntitiesDescriptor.DEFAULT_ELEMENT_NAME)) {
+                ensureUnmarshalled(group);
+                final Element shell = createElement(group.shell.getOwnerDocument(), tag, false);
+                group.shell.appendChild(shell);
+                startGroup(new Group(group, tag, shell));
+            } else if (isNamed(tag, EntityDescriptor.DEFAULT_ELEMENT_NAME)) {
+                ensureUnmarshalled(group);
+                final Document document = parserPool.newDocument();
+                final Element element = createElement(document, tag, true);
+                document.appendChild(element);
+                domParent = element;
+                domDepth = 1;
+                inEntity = true;
+            } else if (group.group == null) {
+                final Element element = createElement(group.shell.getOwnerDocument(), tag, false);
+                group.shell.appendChild(element);
+                domParent = element;
+                domDepth = 1;
+                inEntity = false;
+            } else {
+                throw new XMLStreamException("Unexpected element " + tag.getQualifiedName()
+                        + " following members of EntitiesDescriptor", reader.getLocation());
+            }
+            return true;
+        }
+
+        /**
+         * Process the end of an element.
+         *
+         * @throws IOException if a digest cannot be computed
+         * @throws UnmarshallingException if an element cannot be unmarshalled
+         * @throws FilterException if thrown by the handler
+         */
+        private void endElement() throws IOException, UnmarshallingException, FilterException {
+            final NamespaceScope current = scope;
+            assert current != null;
+            scope = current.getParent();
+
+            for (final Group open : openGroups) {
+                if (open.canonicalizer != null) {
+                    open.canonicalizer.endElement();
+                }
+            }
+
+            final Node parent = domParent;
+            if (parent == null) {
+                endGroup();
+            } else if (--domDepth > 0) {
+                domParent = parent.getParentNode();
+            } else {
+                domParent = null;
+                if (inEntity) {
+                    endEntity((Element) parent);
+                } else {
+                    endShellChild((Element) parent);
+                }
+            }
+        }
+
+        /**
+         * Process character data.
+         *
+         * @param text the characters
+         *
+         * @throws IOException if a digest cannot be computed
+         */
+        private void characters(@Nonnull final String text) throws IOException {
+            for (final Group open : openGroups) {
+                if (open.canonicalizer != null) {
+                    open.canonicalizer.characters(text);
+                }
+            }
+
+            final Node parent = domParent;
+            if (parent != null) {
+                final Node last = parent.getLastChild();
+                if (last instanceof Text lastText) {
+                    lastText.appendData(text);
+                } else {
+                    parent.appendChild(parent.getOwnerDocument().createTextNode(text));
+                }
+            } else {
+                final Group group = openGroups.peek();
+                if (group != null && group.leadingText != null) {
+                    group.leadingText.append(text);
+                }
+            }
+        }
+
+        /**
+         * Process a processing instruction.
+         *
+         * @param target the target
+         * @param data the data, if any
+         *
+         * @throws IOException if a digest cannot be computed
+         */
+        private void processingInstruction(@Nonnull final String target, @Nullable final String data)
+                throws IOException {
+            final Group group = openGroups.peek();
+            if (group == null) {
+                topLevelInstruction = true;
+                return;
+            }
+
+            for (final Group open : openGroups) {
+                if (open.canonicalizer != null) {
+                    open.canonicalizer.processingInstruction(target, data);
+                }
+            }
+
+            final Node parent = domParent;
+            if (parent != null) {
+                parent.appendChild(parent.getOwnerDocument().createProcessingInstruction(target,
+                        data != null ? data : ""));
+            } else if (group.leadingText != null) {
+                // Not worth replaying, so no digest.
+                group.leadingText = null;
+            }
+        }
+
+        /**
+         * Read the current start tag, and push its namespace declarations.
+         *
+         * @return the start tag
+         */
+        @Nonnull private StartTag readStartTag() {
+            final int namespaceCount = reader.getNamespaceCount();
+            final Map<String,String> declared;
+            if (namespaceCount == 0) {
+                declared = Collections.emptyMap();
+            } else {
+                declared = new HashMap<>(namespaceCount * 2);
+                for (int i = 0; i < namespaceCount; i++) {
+                    declared.put(emptyIfNull(reader.getNamespacePrefix(i)), emptyIfNull(reader.getNamespaceURI(i)));
+                }
+            }
+            final NamespaceScope current = new NamespaceScope(scope, declared);
+            scope = current;
+
+            final int attributeCount = reader.getAttributeCount();
+            final Attribute[] attributes = new Attribute[attributeCount];
+            for (int i = 0; i < attributeCount; i++) {
+                attributes[i] = new Attribute(emptyIfNull(reader.getAttributePrefix(i)),
+                        emptyIfNull(reader.getAttributeNamespace(i)), reader.getAttributeLocalName(i),
+                        reader.getAttributeValue(i));
+            }
+
+            final StartTag tag = new StartTag(emptyIfNull(reader.getPrefix()), emptyIfNull(reader.getNamespaceURI()),
+                    reader.getLocalName(), attributes, current);
+
+            final String id = tag.getAttribute("ID");
+            if (id != null && !ids.add(id)) {
+                duplicateIDs.add(id);
+            }
+
+            return tag;
+        }
+
+        /**
+         * Start reading a group.
+         *
+         * @param group the group
+         */
+        private void startGroup(@Nonnull final Group group) {
+            groups.add(group);
+            openGroups.push(group);
+        }
+
+        /**
+         * Complete a group.
+         *
+         * @throws IOException if a digest cannot be computed
+         * @throws UnmarshallingException if the group cannot be unmarshalled
+         */
+        private void endGroup() throws IOException, UnmarshallingException {
+            final Group group = openGroups.pop();
+            final EntitiesDescriptor descriptor = ensureUnmarshalled(group);
+            if (group.canonicalizer != null) {
+                streamedMetadata.setReferenceDigest(descriptor, group.canonicalizer.finish());
+                group.canonicalizer = null;
+            }
+        }
+
+        /**
+         * Unmarshall a group from its shell, once its content other than its members has been read.
+         *
+         * @param group the group
+         *
+         * @return the unmarshalled group
+         *
+         * @throws UnmarshallingException if the group cannot be unmarshalled
+         */
+        @Nonnull private EntitiesDescriptor ensureUnmarshalled(@Nonnull final Group group)
+                throws UnmarshallingException {
+            EntitiesDescriptor descriptor = group.group;
+            if (descriptor == null) {
+                descriptor = (EntitiesDescriptor) unmarshall(group.shell);
+                group.group = descriptor;
+                if (group.parent != null) {
+                    ensureUnmarshalled(group.parent).getEntitiesDescriptors().add(descriptor);
+                }
+            }
+            return descriptor;
+        }
+
+        /**
+         * Complete an entity and pass it to the handler.
+         *
+         * @param element the entity's DOM
+         *
+         * @throws UnmarshallingException if the entity cannot be unmarshalled
+         * @throws FilterException if thrown by the handler
+         */
+        private void endEntity(@Nonnull final Element element) throws UnmarshallingException, FilterException {
+            final Group group = openGroups.peek();
+            assert group != null;
+            final EntitiesDescriptor descriptor = ensureUnmarshalled(group);
+
+            final EntityDescriptor entity = (EntityDescriptor) unmarshall(element);
+            entity.setParent(descriptor);
+
+            final EntityDescriptor retained = handler.handle(entity);
+            if (retained != entity) {
+                entity.setParent(null);
+            }
+            if (retained != null) {
+                retained.releaseDOM();
+                retained.releaseChildrenDOM(true);
+                descriptor.getEntityDescriptors().add(retained);
+            } else {
+                log.trace("Entity '{}' was not retained", entity.getEntityID());
+            }
+        }
+
+        /**
+         * Complete a child of a group other than a member, and begin computing the digest of the group's content
+         * if that child was the group's signature.
+         *
+         * @param element the child's DOM
+         *
+         * @throws IOException if a digest cannot be computed
+         */
+        private void endShellChild(@Nonnull final Element element) throws IOException {
+            final Group group = openGroups.peek();
+            assert group != null;
+            if (!group.inSignature) {
+                return;
+            }
+            group.inSignature = false;
+
+            final StringBuilder leadingText = group.leadingText;
+            group.leadingText = null;
+            if (leadingText == null) {
+                return;
+            }
+
+            final StreamingExclusiveCanonicalizer canonicalizer = newCanonicalizer(group, element);
+            if (canonicalizer != null) {
+                canonicalizer.startElement(group.tag);
+                canonicalizer.characters(leadingText.toString());
+                group.canonicalizer = canonicalizer;
+            }
+        }
+
+        /**
+         * Create a canonicalizer for a group's content, if its signature is of a supported form.
+         *
+         * @param group the group
+         * @param signature the DOM of the group's signature
+         *
+         * @return the canonicalizer, or null
+         */
+        @Nullable private StreamingExclusiveCanonicalizer newCanonicalizer(@Nonnull final Group group,
+                @Nonnull final Element signature) {
+            final String groupID = group.tag.getAttribute("ID");
+            final Element signedInfo = getChild(signature, SignatureConstants.XMLSIG_NS, "SignedInfo");
+            final List<Element> references = signedInfo != null
+                    ? ElementSupport.getChildElementsByTagNameNS(signedInfo, SignatureConstants.XMLSIG_NS, "Reference")
+                    : Collections.emptyList();
+            if (references.size() != 1) {
+                log.debug("Group signature did not contain a single reference, digest cannot be streamed");
+                return null;
+            }
+            final Element reference = references.get(0);
+
+            final String uri = reference.hasAttributeNS(null, "URI") ? reference.getAttributeNS(null, "URI") : null;
+            if (uri != null && uri.isEmpty() && group.parent == null) {
+                group.referenceID = "";
+            } else if (uri != null && groupID != null && uri.equals("#" + groupID)) {
+                group.referenceID = groupID;
+            } else {
+                log.debug("Group signature reference URI '{}' did not identify the group, digest cannot be streamed",
+                        uri);
+                return null;
+            }
+
+            final Set<String> inclusivePrefixes = getInclusivePrefixes(reference);
+            if (inclusivePrefixes == null) {
+                return null;
+            }
+
+            final MessageDigest digest = getMessageDigest(reference);
+            if (digest == null) {
+                return null;
+            }
+
+            return new StreamingExclusiveCanonicalizer(digest, inclusivePrefixes);
+        }
+
+        /**
+         * Check the transforms of a reference are those of the signing profile, and get the inclusive namespace
+         * prefixes of its canonicalization transform.
+         *
+         * @param reference the reference
+         *
+         * @return the inclusive prefixes, or null if the transforms are not supported
+         */
+        @Nullable private Set<String> getInclusivePrefixes(@Nonnull final Element reference) {
+            final Element transforms = getChild(reference, SignatureConstants.XMLSIG_NS, "Transforms");
+            final Element enveloped = transforms != null ? ElementSupport.getFirstChildElement(transforms) : null;
+            final Element c14n = enveloped != null ? ElementSupport.getNextSiblingElement(enveloped) : null;
+            if (c14n == null || ElementSupport.getNextSiblingElement(c14n) != null
+                    || !SignatureConstants.TRANSFORM_ENVELOPED_SIGNATURE.equals(
+                            enveloped.getAttributeNS(null, "Algorithm"))) {
+                log.debug("Group signature transforms were not supported, digest cannot be streamed");
+                return null;
+            }
+
+            final String c14nAlgorithm = c14n.getAttributeNS(null, "Algorithm");
+            // Comments are excluded by dereferencing a same-document reference, in either case.
+            if (!SignatureConstants.TRANSFORM_C14N_EXCL_OMIT_COMMENTS.equals(c14nAlgorithm)
+                    && !SignatureConstants.TRANSFORM_C14N_EXCL_WITH_COMMENTS.equals(c14nAlgorithm)) {
+                log.debug("Group signature canonicalization transform '{}' was not supported, "
+                        + "digest cannot be streamed", c14nAlgorithm);
+                return null;
+            }
+
+            final Set<String> prefixes = new HashSet<>();
+            final Element inclusive = getChild(c14n, INCLUSIVE_NAMESPACES.getNamespaceURI(),
+                    INCLUSIVE_NAMESPACES.getLocalPart());
+            if (inclusive != null) {
+                for (final String prefix : StringSupport.stringToList(inclusive.getAttributeNS(null, "PrefixList"),
+                        XMLConstants.LIST_DELIMITERS)) {
+                    prefixes.add("#default".equals(prefix) ? "" : prefix);
+                }
+            }
+            return prefixes;
+        }
+
+        /**
+         * Get a message digest for the digest method of a reference.
+         *
+         * @param reference the reference
+         *
+         * @return the message digest, or null if the method is not supported
+         */
+        @Nullable private MessageDigest getMessageDigest(@Nonnull final Element reference) {
+            final Element digestMethod = getChild(reference, SignatureConstants.XMLSIG_NS, "DigestMethod");
+            final String algorithmURI = digestMethod != null ? digestMethod.getAttributeNS(null, "Algorithm") : null;
+            final AlgorithmRegistry registry = AlgorithmSupport.getGlobalAlgorithmRegistry();
+            final DigestAlgorithm algorithm = algorithmURI != null && registry != null
+                    ? registry.getDigestAlgorithm(algorithmURI) : null;
+            if (algorithm == null) {
+                log.debug("Group signature digest method '{}' was not supported, digest cannot be streamed",
+                        algorithmURI);
+                return null;
+            }
+
+            try {
+                return MessageDigest.getInstance(algorithm.getJCAAlgorithmID());
+            } catch (final NoSuchAlgorithmException e) {
+                log.debug("Group signature digest method '{}' was not available, digest cannot be streamed",
+                        algorithmURI);
+                return null;
+            }
+        }
+
+        /**
+         * Create a DOM element for a start tag.
+         *
+         * @param document the owning document
+         * @param tag the start tag
+         * @param declareInScope whether to declare all namespaces in scope, rather than just those declared on
+         *          the element
+         *
+         * @return the element
+         */
+        @Nonnull private Element createElement(@Nonnull final Document document, @Nonnull final StartTag tag,
+                final boolean declareInScope) {
+            final Element element = document.createElementNS(nullIfEmpty(tag.getNamespaceURI()),
+                    tag.getQualifiedName());
+
+            final Map<String,String> namespaces =
+                    declareInScope ? tag.getScope().getInScope() : tag.getScope().getDeclared();
+            for (final Map.Entry<String,String> namespace : namespaces.entrySet()) {
+                final String prefix = namespace.getKey();
+                element.setAttributeNS(XMLConstants.XMLNS_NS,
+                        prefix.isEmpty() ? XMLConstants.XMLNS_PREFIX : XMLConstants.XMLNS_PREFIX + ':' + prefix,
+                        namespace.getValue());
+            }
+
+            for (final Attribute attribute : tag.getAttributes()) {
+                element.setAttributeNS(nullIfEmpty(attribute.getNamespaceURI()), attribute.getQualifiedName(),
+                        attribute.getValue());
+            }
+
+            return element;
+        }
+
+        /**
+         * Unmarshall an element.
+         *
+         * @param element the element
+         *
+         * @return the unmarshalled object
+         *
+         * @throws UnmarshallingException if the element cannot be unmarshalled
+         */
+        @Nonnull private XMLObject unmarshall(@Nonnull final Element element) throws UnmarshallingException {
+            final Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(element);
+            if (unmarshaller == null) {
+                throw new UnmarshallingException("No unmarshaller registered for " + element.getTagName());
+            }
+            return unmarshaller.unmarshall(element);
+        }
+    }
+
+    /**
+     * Check whether a start tag has a given name.
+     *
+     * @param tag the start tag
+     * @param name the name
+     *
+     * @return true iff the names match
+     */
+    private static boolean isNamed(@Nonnull final StartTag tag, @Nonnull final QName name) {
+        return name.getLocalPart().equals(tag.getLocalName()) && name.getNamespaceURI().equals(tag.getNamespaceURI());
+    }
+
+    /**
+     * Get the first child element with a given name.
+     *
+     * @param parent the parent
+     * @param namespaceURI the namespace of the child
+     * @param localName the local name of the child
+     *
+     * @return the child, or null
+     */
+    @Nullable private static Element getChild(@Nonnull final Element parent, @Nonnull final String namespaceURI,
+            @Nonnull final String localName) {
+        Element child = ElementSupport.getFirstChildElement(parent);
+        while (child != null && !ElementSupport.isElementNamed(child, namespaceURI, localName)) {
+            child = ElementSupport.getNextSiblingElement(child);
+        }
+        return child;
+    }
+
+    /**
+     * Convert a null string to the empty string.
+     *
+     * @param s the string
+     *
+     * @return the string, or the empty string
+     */
+    @Nonnull private static String emptyIfNull(@Nullable final String s) {
+        return s != null ? s : "";
+    }
+
+    /**
+     * Convert the empty string to null.
+     *
+     * @param s the string
+     *
+     * @return the string, or null
+     */
+    @Nullable private static String nullIfEmpty(@Nonnull final String s) {
+        return s.isEmpty() ? null : s;
+    }
+
+}
@@ -304,6 +304,9 @@ public class EndpointMetadataIndex implements MetadataIndex {
         /** Flag indicating whether canonicalized location is the simple lower case fallback strategy. */
         private boolean isCanonicalizedLowerCase;
         
+        /** Precomputed hash code. */
+        private final int hash;
+        
         /**
          * Constructor.
          * 
@@ -330,6 +333,7 @@ public class EndpointMetadataIndex implements MetadataIndex {
                 canonicalizedLocation = location.toLowerCase();
                 isCanonicalizedLowerCase = true;
             }
+            hash = Objects.hash(role, endpoint, canonicalizedLocation, response);
         }
 
         /**
@@ -394,7 +398,7 @@ public class EndpointMetadataIndex implements MetadataIndex {
         /** {@inheritDoc} */
         @Override
         public int hashCode() {
-            return Objects.hash(getRoleType(), getEndpointType(), getCanonicalizedLocation(), isResponse());
+            return hash;
         }
 
         /** {@inheritDoc} */
@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.saml.metadata.resolver.index.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Table assigning compact integer ordinals to the data items held by one or more {@link MetadataIndexStore}
+ * instances, so that the stores can record their contents as arrays of ordinals.
+ * 
+ * <p>
+ * Each ordinal is reference counted by the stores using it, and is recycled once no longer referenced so that
+ * the table does not retain items which have been removed from every store.
+ * </p>
+ * 
+ * @param <T> the type of data being indexed
+ */
+@NotThreadSafe
+final class MetadataIndexItemTable<T> {
+    
+    /** Initial capacity of the arrays. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Ordinals of the items held. */
+    @Nonnull private final Map<T, Integer> ordinals;
+    
+    /** Items held, by ordinal. */
+    @Nonnull private Object[] items;
+    
+    /** Reference counts, by ordinal. */
+    @Nonnull private int[] references;
+    
+    /** Ordinals available for reuse. */
+    @Nonnull private int[] free;
+    
+    /** Number of ordinals available for reuse. */
+    private int freeCount;
+    
+    /** Lowest ordinal never yet assigned. */
+    private int next;
+
+    /** Constructor. */
+    MetadataIndexItemTable() {
+        ordinals = new HashMap<>();
+        items = new Object[INITIAL_CAPACITY];
+        references = new int[INITIAL_CAPACITY];
+        free = new int[INITIAL_CAPACITY];
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param source table whose contents, including ordinals and reference counts, are copied into this one
+     */
+    MetadataIndexItemTable(@Nonnull final MetadataIndexItemTable<T> source) {
+        ordinals = new HashMap<>(source.ordinals);
+        items = source.items.clone();
+        references = source.references.clone();
+        free = source.free.clone();
+        freeCount = source.freeCount;
+        next = source.next;
+    }
+    
+    /**
+     * Get the ordinal of an item, assigning one if necessary, and add a reference to it.
+     * 
+     * @param item the item
+     * 
+     * @return the item's ordinal
+     */
+    int acquire(@Nonnull final T item) {
+        final Integer existing = ordinals.get(item);
+        final int ordinal;
+        if (existing != null) {
+            ordinal = existing;
+        } else {
+            if (freeCount > 0) {
+                ordinal = free[--freeCount];
+            } else {
+                if (next == items.length) {
+                    final int capacity = next + (next >> 1);
+                    items = Arrays.copyOf(items, capacity);
+                    references = Arrays.copyOf(references, capacity);
+                }
+                ordinal = next++;
+            }
+            items[ordinal] = item;
+            ordinals.put(item, ordinal);
+        }
+        references[ordinal]++;
+        return ordinal;
+    }
+    
+    /**
+     * Remove a reference to an ordinal, recycling it if no references remain.
+     * 
+     * @param ordinal the ordinal
+     */
+    void release(final int ordinal) {
+        if (--references[ordinal] == 0) {
+            ordinals.remove(items[ordinal]);
+            items[ordinal] = null;
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount + (freeCount >> 1));
+            }
+            free[freeCount++] = ordinal;
+        }
+    }
+    
+    /**
+     * Get the ordinal of an item.
+     * 
+     * @param item the item
+     * 
+     * @return the item's ordinal, or -1 if it is not held
+     */
+    int getOrdinal(@Nonnull final T item) {
+        final Integer ordinal = ordinals.get(item);
+        return ordinal != null ? ordinal : -1;
+    }
+    
+    /**
+     * Get the item with an ordinal.
+     * 
+     * @param ordinal the ordinal
+     * 
+     * @return the item, or null if the ordinal is not in use
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable T getItem(final int ordinal) {
+        return (T) items[ordinal];
+    }
+    
+    /**
+     * Get the number of items held.
+     * 
+     * @return the number of items
+     */
+    int size() {
+        return ordinals.size();
+    }
+
+}
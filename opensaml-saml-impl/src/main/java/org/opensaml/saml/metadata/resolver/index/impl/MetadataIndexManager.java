@@ -14,7 +14,9 @@
 
 package org.opensaml.saml.metadata.resolver.index.impl;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -32,7 +34,6 @@ import org.slf4j.Logger;
 import net.shibboleth.shared.annotation.constraint.NotLive;
 import net.shibboleth.shared.annotation.constraint.Unmodifiable;
 import net.shibboleth.shared.collection.CollectionSupport;
-import net.shibboleth.shared.collection.LazySet;
 import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.primitive.LoggerFactory;
 import net.shibboleth.shared.primitive.StringSupport;
@@ -43,6 +44,11 @@ import net.shibboleth.shared.resolver.CriteriaSet;
  * for example {@link org.opensaml.saml.saml2.metadata.EntityDescriptor},
  * based on a set of {@link MetadataIndex} instances currently held.
  * 
+ * <p>
+ * The stores for each index share a single table of item ordinals, so a lookup involving several indexes
+ * enumerates only the smallest of the index results and probes the others by ordinal.
+ * </p>
+ * 
  * @param <T> the type of data being indexed
  */
 public class MetadataIndexManager<T> {
@@ -53,6 +59,9 @@ public class MetadataIndexManager<T> {
     /** Storage for secondary indexes. */
     @Nonnull private final Map<MetadataIndex, MetadataIndexStore<T>> indexes;
     
+    /** Table of ordinals shared by the index stores. */
+    @Nonnull private final MetadataIndexItemTable<T> itemTable;
+    
     /** Function to extract the data item to be indexed from an EntityDescriptor. */
     @Nonnull private final Function<EntityDescriptor,T> entityDescriptorFunction;
     
@@ -69,14 +78,39 @@ public class MetadataIndexManager<T> {
                 "EntityDescriptor extraction function was null");
         
         indexes = new ConcurrentHashMap<>();
+        itemTable = new MetadataIndexItemTable<>();
         if (initIndexes != null) {
             for (final MetadataIndex index : initIndexes) {
                 log.trace("Initializing manager for index: {}", index);
-                indexes.put(index, new MetadataIndexStore<T>());
+                indexes.put(index, new MetadataIndexStore<>(itemTable));
             }
         }
     }
     
+    /**
+     * Constructor.
+     * 
+     * <p>
+     * The new instance starts with a copy of the data held by the source, so that items which are unchanged
+     * need not be indexed again.
+     * </p>
+     *
+     * @param source manager whose indexes and data are copied into this one
+     * 
+     * @since 5.1.0
+     */
+    public MetadataIndexManager(@Nonnull final MetadataIndexManager<T> source) {
+        Constraint.isNotNull(source, "Source MetadataIndexManager was null");
+        entityDescriptorFunction = source.entityDescriptorFunction;
+        
+        indexes = new ConcurrentHashMap<>();
+        itemTable = new MetadataIndexItemTable<>(source.itemTable);
+        for (final Map.Entry<MetadataIndex, MetadataIndexStore<T>> entry : source.indexes.entrySet()) {
+            log.trace("Copying manager data for index: {}", entry.getKey());
+            indexes.put(entry.getKey(), new MetadataIndexStore<>(entry.getValue(), itemTable));
+        }
+    }
+    
     /**
      * Get the set of all {@link MetadataIndex} instances currently initialized.
      * 
@@ -111,34 +145,45 @@ public class MetadataIndexManager<T> {
      *          and the wrapped set contains the indexed data, which may be empty.
      */
     @Nonnull public Optional<Set<T>> lookupIndexedItems(@Nullable final CriteriaSet criteria) {
-        final Set<T> items = new HashSet<>();
+        // The postings matching each applicable index, and the index whose results are smallest.
+        final List<List<MetadataIndexStore.Posting>> results = new ArrayList<>(indexes.size());
+        List<MetadataIndexStore.Posting> smallest = null;
+        int smallestSize = Integer.MAX_VALUE;
         for (final MetadataIndex index : indexes.keySet()) {
             final Set<MetadataIndexKey> keys = index.generateKeys(criteria);
             if (keys != null && !keys.isEmpty()) {
-                final LazySet<T> indexResult = new LazySet<>();
+                final List<MetadataIndexStore.Posting> indexResult = new ArrayList<>(keys.size());
+                int indexResultSize = 0;
                 final MetadataIndexStore<T> indexStore = getStore(index);
                 if (indexStore != null) {
+                    if (indexStore.getItemTable() != itemTable) {
+                        return lookupIndexedItemsBySet(criteria);
+                    }
                     for (final MetadataIndexKey key : keys) {
-                        indexResult.addAll(indexStore.lookup(key));
+                        final MetadataIndexStore.Posting posting = indexStore.getPosting(key);
+                        if (posting != null && posting.size() > 0) {
+                            indexResult.add(posting);
+                            indexResultSize += posting.size();
+                        }
                     }
                 }
-                log.trace("MetadataIndex '{}' produced results: {}", index, indexResult);
-                if (items.isEmpty()) {
-                    items.addAll(indexResult);
-                } else {
-                    items.retainAll(indexResult);
-                }
-                if (items.isEmpty()) {
-                    log.trace("Accumulator intersected with MetadataIndex '{}' result produced empty result, " 
+                log.trace("MetadataIndex '{}' produced {} results", index, indexResultSize);
+                if (indexResultSize == 0) {
+                    log.trace("MetadataIndex '{}' produced empty result, " 
                             + "terminating early and returning empty result set", index);
                     // Return present+empty here to indicate there were applicable indexes for the criteria,
                     // but no indexed data.
                     return Optional.of(CollectionSupport.emptySet());
                 }
+                results.add(indexResult);
+                if (indexResultSize < smallestSize) {
+                    smallest = indexResult;
+                    smallestSize = indexResultSize;
+                }
             }
         }
         
-        if (items.isEmpty()) {
+        if (smallest == null) {
             // Because of the handling above, if we reach here it was because either:
             //   1) no indexes are configured
             //   2) no criteria was supplied applicable for any indexes 
@@ -147,9 +192,93 @@ public class MetadataIndexManager<T> {
             return Optional.empty();
         }
         
+        final Set<T> items = new HashSet<>();
+        for (final MetadataIndexStore.Posting posting : smallest) {
+            for (int i = 0; i < posting.size(); i++) {
+                final int ordinal = posting.get(i);
+                if (isInAllResults(ordinal, results, smallest)) {
+                    final T item = itemTable.getItem(ordinal);
+                    if (item != null) {
+                        items.add(item);
+                    }
+                }
+            }
+        }
+        
+        if (items.isEmpty()) {
+            log.trace("Intersection of MetadataIndex results produced empty result, returning empty result set");
+            return Optional.of(CollectionSupport.emptySet());
+        }
+        
         return Optional.of(items);
     }
     
+    /**
+     * Resolve the set of indexed data items by intersecting the sets of items resolved by each index.
+     * 
+     * <p>
+     * This is used in place of ordinal based resolution if {@link #getStore(MetadataIndex)} has been overridden
+     * to supply stores not created by this manager.
+     * </p>
+     * 
+     * @param criteria the criteria set to process
+     * 
+     * @return as for {@link #lookupIndexedItems(CriteriaSet)}
+     */
+    @Nonnull private Optional<Set<T>> lookupIndexedItemsBySet(@Nullable final CriteriaSet criteria) {
+        Set<T> items = null;
+        for (final MetadataIndex index : indexes.keySet()) {
+            final Set<MetadataIndexKey> keys = index.generateKeys(criteria);
+            if (keys != null && !keys.isEmpty()) {
+                final Set<T> indexResult = new HashSet<>();
+                final MetadataIndexStore<T> indexStore = getStore(index);
+                if (indexStore != null) {
+                    for (final MetadataIndexKey key : keys) {
+                        indexResult.addAll(indexStore.lookup(key));
+                    }
+                }
+                if (items == null) {
+                    items = indexResult;
+                } else {
+                    items.retainAll(indexResult);
+                }
+                if (items.isEmpty()) {
+                    return Optional.of(CollectionSupport.emptySet());
+                }
+            }
+        }
+        return items != null ? Optional.of(items) : Optional.empty();
+    }
+    
+    /**
+     * Get whether an ordinal is present in the results of every index.
+     * 
+     * @param ordinal the ordinal
+     * @param results the results of each index
+     * @param skip the result which is known to contain the ordinal
+     * 
+     * @return whether the ordinal is present in every result
+     */
+    private boolean isInAllResults(final int ordinal, @Nonnull final List<List<MetadataIndexStore.Posting>> results,
+            @Nonnull final List<MetadataIndexStore.Posting> skip) {
+        for (final List<MetadataIndexStore.Posting> result : results) {
+            if (result == skip) {
+                continue;
+            }
+            boolean found = false;
+            for (final MetadataIndexStore.Posting posting : result) {
+                if (posting.contains(ordinal)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     /**
      * Index the specified {@link EntityDescriptor} based on the indexes currently held.
      * 
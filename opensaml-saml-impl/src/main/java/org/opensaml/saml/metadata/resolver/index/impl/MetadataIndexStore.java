@@ -12,14 +12,18 @@
  * limitations under the License.
  */
 
+
 package org.opensaml.saml.metadata.resolver.index.impl;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.opensaml.saml.metadata.resolver.index.MetadataIndexKey;
 
@@ -33,18 +37,75 @@ import net.shibboleth.shared.logic.Constraint;
  * for example {@link org.opensaml.saml.saml2.metadata.EntityDescriptor},
  * under one or more instances of {@link MetadataIndexKey}.
  * 
+ * <p>
+ * Items are recorded under each key as a sorted array of integer ordinals assigned by a
+ * {@link MetadataIndexItemTable}, which a {@link MetadataIndexManager} shares between all of its stores. This
+ * is considerably smaller than a set of references per key, and allows the manager to intersect the results
+ * of several indexes without materializing them. Modification is not safe concurrently with any other access.
+ * </p>
+ * 
  * @param <T> the type of data being indexed
  */
 public class MetadataIndexStore<T> {
     
     /** The indexed storage of data. */
-    @Nonnull private final Map<MetadataIndexKey, Set<T>> index;
+    @Nonnull private final Map<MetadataIndexKey, Posting> index;
+    
+    /** The table of ordinals of the indexed data. */
+    @Nonnull private final MetadataIndexItemTable<T> itemTable;
     
     /**
      * Constructor.
      */
     public MetadataIndexStore() {
+        this(new MetadataIndexItemTable<>());
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param source store whose data is copied into this one
+     * 
+     * @since 5.1.0
+     */
+    public MetadataIndexStore(@Nonnull final MetadataIndexStore<T> source) {
+        Constraint.isNotNull(source, "Source MetadataIndexStore was null");
+        index = new ConcurrentHashMap<>(source.index.size());
+        itemTable = new MetadataIndexItemTable<>();
+        for (final Map.Entry<MetadataIndexKey, Posting> entry : source.index.entrySet()) {
+            final Posting sourcePosting = entry.getValue();
+            final Posting posting = new Posting(sourcePosting.size());
+            for (int i = 0; i < sourcePosting.size(); i++) {
+                final T item = source.itemTable.getItem(sourcePosting.get(i));
+                assert item != null;
+                posting.add(itemTable.acquire(item));
+            }
+            index.put(entry.getKey(), posting);
+        }
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param table the table of ordinals to use, which may be shared with other stores
+     */
+    MetadataIndexStore(@Nonnull final MetadataIndexItemTable<T> table) {
         index = new ConcurrentHashMap<>();
+        itemTable = table;
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param source store whose data is copied into this one
+     * @param table copy of the source's table of ordinals, which may be shared with other stores
+     */
+    MetadataIndexStore(@Nonnull final MetadataIndexStore<T> source, @Nonnull final MetadataIndexItemTable<T> table) {
+        index = new ConcurrentHashMap<>(source.index.size());
+        itemTable = table;
+        for (final Map.Entry<MetadataIndexKey, Posting> entry : source.index.entrySet()) {
+            index.put(entry.getKey(), new Posting(entry.getValue()));
+        }
     }
     
     /**
@@ -65,11 +126,15 @@ public class MetadataIndexStore<T> {
      */
     @Nonnull @Unmodifiable @NotLive public Set<T> lookup(@Nonnull final MetadataIndexKey key) {
         Constraint.isNotNull(key, "IndexKey was null");
-        final Set<T> items = index.get(key);
-        if (items == null) {
+        final Posting posting = index.get(key);
+        if (posting == null) {
             return CollectionSupport.emptySet();
         }
-        return CollectionSupport.copyToSet(items);
+        final Set<T> items = new HashSet<>(posting.size() * 4 / 3 + 1);
+        for (int i = 0; i < posting.size(); i++) {
+            items.add(itemTable.getItem(posting.get(i)));
+        }
+        return Collections.unmodifiableSet(items);
     }
     
     /**
@@ -81,12 +146,15 @@ public class MetadataIndexStore<T> {
     public void add(@Nonnull final MetadataIndexKey key, @Nonnull final T item) {
         Constraint.isNotNull(key, "IndexKey was null");
         Constraint.isNotNull(item, "The indexed data element was null");
-        Set<T> items = index.get(key);
-        if (items == null) {
-            items = new HashSet<>();
-            index.put(key, items);
+        Posting posting = index.get(key);
+        if (posting == null) {
+            posting = new Posting(1);
+            index.put(key, posting);
+        }
+        final int ordinal = itemTable.acquire(item);
+        if (!posting.add(ordinal)) {
+            itemTable.release(ordinal);
         }
-        items.add(item);
     }
     
     /**
@@ -98,11 +166,17 @@ public class MetadataIndexStore<T> {
     public void remove(@Nonnull final MetadataIndexKey key, @Nonnull final T item) {
         Constraint.isNotNull(key, "IndexKey was null");
         Constraint.isNotNull(item, "The indexed data element was null");
-        final Set<T> items = index.get(key);
-        if (items == null) {
+        final Posting posting = index.get(key);
+        if (posting == null) {
             return;
         }
-        items.remove(item);
+        final int ordinal = itemTable.getOrdinal(item);
+        if (ordinal >= 0 && posting.remove(ordinal)) {
+            itemTable.release(ordinal);
+            if (posting.size() == 0) {
+                index.remove(key);
+            }
+        }
     }
     
     /**
@@ -112,14 +186,151 @@ public class MetadataIndexStore<T> {
      */
     public void clear(@Nonnull final MetadataIndexKey key) {
         Constraint.isNotNull(key, "IndexKey was null");
-        index.remove(key);
+        final Posting posting = index.remove(key);
+        if (posting != null) {
+            release(posting);
+        }
     }
     
     /**
      * Clear all indexed data items from the store.
      */
     public void clear() {
+        for (final Posting posting : index.values()) {
+            release(posting);
+        }
         index.clear();
     }
+    
+    /**
+     * Get the table of ordinals used by this store.
+     * 
+     * @return the table
+     */
+    @Nonnull MetadataIndexItemTable<T> getItemTable() {
+        return itemTable;
+    }
+    
+    /**
+     * Get the ordinals of the data items indexed under the supplied {@link MetadataIndexKey}.
+     * 
+     * @param key the index key to lookup
+     * 
+     * @return the ordinals, or null if there are none
+     */
+    @Nullable Posting getPosting(@Nonnull final MetadataIndexKey key) {
+        return index.get(key);
+    }
+    
+    /**
+     * Release the references held by a set of ordinals.
+     * 
+     * @param posting the ordinals
+     */
+    private void release(@Nonnull final Posting posting) {
+        for (int i = 0; i < posting.size(); i++) {
+            itemTable.release(posting.get(i));
+        }
+    }
+    
+    /** Sorted set of the ordinals of data items indexed under a single key. */
+    static final class Posting {
+        
+        /** The ordinals, in ascending order. */
+        @Nonnull private int[] ordinals;
+        
+        /** Number of ordinals in use. */
+        private int size;
+        
+        /**
+         * Constructor.
+         * 
+         * @param capacity initial capacity
+         */
+        Posting(final int capacity) {
+            ordinals = new int[Math.max(1, capacity)];
+        }
+        
+        /**
+         * Constructor.
+         * 
+         * @param source ordinals to copy
+         */
+        Posting(@Nonnull final Posting source) {
+            ordinals = Arrays.copyOf(source.ordinals, Math.max(1, source.size));
+            size = source.size;
+        }
+        
+        /**
+         * Get the number of ordinals.
+         * 
+         * @return the number of ordinals
+         */
+        int size() {
+            return size;
+        }
+        
+        /**
+         * Get an ordinal by position.
+         * 
+         * @param position position, less than {@link #size()}
+         * 
+         * @return the ordinal
+         */
+        int get(final int position) {
+            return ordinals[position];
+        }
+        
+        /**
+         * Get whether an ordinal is present.
+         * 
+         * @param ordinal the ordinal
+         * 
+         * @return whether the ordinal is present
+         */
+        boolean contains(final int ordinal) {
+            return Arrays.binarySearch(ordinals, 0, size, ordinal) >= 0;
+        }
+        
+        /**
+         * Add an ordinal.
+         * 
+         * @param ordinal the ordinal
+         * 
+         * @return true iff the ordinal was not already present
+         */
+        boolean add(final int ordinal) {
+            int position = size > 0 && ordinals[size - 1] < ordinal ? -size - 1
+                    : Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size + Math.max(1, size >> 1));
+            }
+            System.arraycopy(ordinals, position, ordinals, position + 1, size - position);
+            ordinals[position] = ordinal;
+            size++;
+            return true;
+        }
+        
+        /**
+         * Remove an ordinal.
+         * 
+         * @param ordinal the ordinal
+         * 
+         * @return true iff the ordinal was present
+         */
+        boolean remove(final int ordinal) {
+            final int position = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ordinals, position + 1, ordinals, position, size - position - 1);
+            size--;
+            return true;
+        }
+    }
 
-}
\ No newline at end of file
+}
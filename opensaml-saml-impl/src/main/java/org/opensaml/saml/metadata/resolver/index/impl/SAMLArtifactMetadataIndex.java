@@ -287,6 +287,9 @@ public class SAMLArtifactMetadataIndex implements MetadataIndex {
         
         /** The SourceID value. */
         @Nonnull @NotEmpty private final byte[] sourceID;
+        
+        /** Precomputed hash code. */
+        private final int hash;
 
         /**
          * Constructor.
@@ -296,6 +299,7 @@ public class SAMLArtifactMetadataIndex implements MetadataIndex {
         public ArtifactSourceIDMetadataIndexKey(@Nonnull @NotEmpty final byte[] newSourceID) {
             sourceID = Constraint.isNotNull(newSourceID, "SourceID cannot be null");
             Constraint.isGreaterThan(0, sourceID.length, "SourceID length must be greater than zero");
+            hash = Arrays.hashCode(sourceID);
         }
 
         /**
@@ -318,7 +322,7 @@ public class SAMLArtifactMetadataIndex implements MetadataIndex {
         /** {@inheritDoc} */
         @Override
         public int hashCode() {
-            return Arrays.hashCode(sourceID);
+            return hash;
         }
 
         /** {@inheritDoc} */
@@ -14,9 +14,12 @@
 
 package org.opensaml.saml.saml1.binding.encoding.impl;
 
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -31,6 +34,7 @@ import org.opensaml.messaging.encoder.HTMLMessageEncoder;
 import org.opensaml.messaging.encoder.MessageEncodingException;
 import org.opensaml.saml.common.SAMLObject;
 import org.opensaml.saml.common.binding.SAMLBindingSupport;
+import org.opensaml.saml.common.binding.impl.PrecompiledHTTPPostTemplate;
 import org.opensaml.saml.common.xml.SAMLConstants;
 import org.slf4j.Logger;
 
@@ -70,6 +74,12 @@ public class HTTPPostEncoder extends BaseSAML1MessageEncoder implements HTMLMess
 
     /** Generator for CSP nonces. */
     @Nullable private IdentifierGenerationStrategy cspNonceGenerator;
+
+    /** Whether to render from a precompiled form of the template where possible. */
+    private boolean precompileTemplate;
+
+    /** Precompiled form of the template. */
+    @Nullable private PrecompiledHTTPPostTemplate precompiledTemplate;
     
     /** Constructor. */
     public HTTPPostEncoder() {
@@ -123,6 +133,34 @@ public class HTTPPostEncoder extends BaseSAML1MessageEncoder implements HTMLMess
         velocityTemplateId = newVelocityTemplateId;
     }
     
+    /**
+     * Get whether to render from a precompiled form of the template where possible.
+     * 
+     * @return whether to render from a precompiled form of the template
+     * 
+     * @since 5.1.0
+     */
+    public boolean isPrecompileTemplate() {
+        return precompileTemplate;
+    }
+
+    /**
+     * Set whether to render from a precompiled form of the template where possible.
+     * 
+     * <p>This avoids merging the template for each message. Messages are rendered via Velocity if a CSP nonce
+     * generator is set, or if the template's output depends on anything but which properties are present.</p>
+     * 
+     * <p>Defaults to false.</p>
+     * 
+     * @param flag flag to set
+     * 
+     * @since 5.1.0
+     */
+    public void setPrecompileTemplate(final boolean flag) {
+        checkSetterPreconditions();
+        precompileTemplate = flag;
+    }
+    
     /** {@inheritDoc} */
     public void setCSPDigester(@Nullable final StringDigester digester) {
         checkSetterPreconditions();
@@ -144,6 +182,19 @@ public class HTTPPostEncoder extends BaseSAML1MessageEncoder implements HTMLMess
         if (velocityTemplateId == null) {
             throw new ComponentInitializationException("Velocity template id must be supplied");
         }
+        
+        if (precompileTemplate) {
+            if (cspNonceGenerator != null) {
+                log.debug("CSP nonces are unique to each message, template will not be precompiled");
+            } else {
+                final Map<String,Object> properties = new HashMap<>();
+                properties.put("binding", getBindingURI());
+                if (cspDigester != null) {
+                    properties.put("cspDigester", cspDigester);
+                }
+                precompiledTemplate = new PrecompiledHTTPPostTemplate(velocityEngine, velocityTemplateId, properties);
+            }
+        }
     }
 
     /** {@inheritDoc} */
@@ -169,6 +220,18 @@ public class HTTPPostEncoder extends BaseSAML1MessageEncoder implements HTMLMess
      */
     protected void postEncode(@Nonnull final MessageContext messageContext, @Nonnull final String endpointURL) 
             throws MessageEncodingException {
+        final HttpServletResponse response = getHttpServletResponse();
+        assert response != null;
+
+        HttpServletSupport.addNoCacheHeaders(response);
+        HttpServletSupport.setUTF8Encoding(response);
+        HttpServletSupport.setContentType(response, "text/html");
+
+        if (precompiledTemplate != null && renderPrecompiledTemplate(response, messageContext, endpointURL)) {
+            log.debug("Rendered POST body from precompiled template");
+            return;
+        }
+
         log.debug("Invoking velocity template to create POST body");
 
         try {
@@ -202,13 +265,7 @@ public class HTTPPostEncoder extends BaseSAML1MessageEncoder implements HTMLMess
                 context.put("TARGET", encodedRelayState);
             }
             
-            final HttpServletResponse response = getHttpServletResponse();
-            assert response != null;
             context.put("response", response);
-            
-            HttpServletSupport.addNoCacheHeaders(response);
-            HttpServletSupport.setUTF8Encoding(response);
-            HttpServletSupport.setContentType(response, "text/html");
 
             try (final Writer out = new OutputStreamWriter(response.getOutputStream(), "UTF-8")) {
                 velocityEngine.mergeTemplate(velocityTemplateId, "UTF-8", context, out);
@@ -226,4 +283,40 @@ public class HTTPPostEncoder extends BaseSAML1MessageEncoder implements HTMLMess
         }
     }
 
+    /**
+     * Render the POST body from the precompiled template, if possible.
+     * 
+     * @param response response to render to
+     * @param messageContext current message context
+     * @param endpointURL endpoint URL to encode message to
+     * 
+     * @return true iff the template was rendered
+     * 
+     * @throws MessageEncodingException thrown if there is a problem encoding the message
+     */
+    private boolean renderPrecompiledTemplate(@Nonnull final HttpServletResponse response,
+            @Nonnull final MessageContext messageContext, @Nonnull final String endpointURL)
+                    throws MessageEncodingException {
+        assert precompiledTemplate != null;
+        
+        final XMLObject message = (XMLObject) messageContext.getMessage();
+        assert message != null;
+
+        final Map<String,Object> fields = new HashMap<>();
+        fields.put("action", HTMLEncoder.encodeForHTMLAttribute(endpointURL));
+        log.debug("Marshalling SAML message");
+        fields.put("SAMLResponse", marshallMessage(message));
+        final String relayState = SAMLBindingSupport.getRelayState(messageContext);
+        if (relayState != null) {
+            fields.put("TARGET", HTMLEncoder.encodeForHTMLAttribute(relayState));
+        }
+
+        try {
+            return precompiledTemplate.render(response, fields);
+        } catch (final IOException e) {
+            log.error("Error rendering precompiled template: {}", e.getMessage());
+            throw new MessageEncodingException("Error creating output document", e);
+        }
+    }
+
 }
\ No newline at end of file
@@ -14,11 +14,8 @@
 
 package org.opensaml.saml.saml2.binding.decoding.impl;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -32,13 +29,15 @@ import org.opensaml.saml.common.binding.decoding.SAMLMessageDecoder;
 import org.opensaml.saml.common.binding.impl.BaseSAMLHttpServletRequestDecoder;
 import org.opensaml.saml.common.messaging.context.SAMLBindingContext;
 import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.saml2.binding.impl.HTTPRedirectDeflateSupport;
 import org.slf4j.Logger;
 
 import com.google.common.base.Strings;
 
 import jakarta.servlet.http.HttpServletRequest;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
-import net.shibboleth.shared.codec.Base64Support;
+import net.shibboleth.shared.annotation.constraint.Positive;
+import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.primitive.LoggerFactory;
 import net.shibboleth.shared.primitive.StringSupport;
 
@@ -49,12 +48,23 @@ import net.shibboleth.shared.primitive.StringSupport;
  */
 public class HTTPRedirectDeflateDecoder extends BaseSAMLHttpServletRequestDecoder implements SAMLMessageDecoder {
 
+    /** Default maximum size of an inflated message: 1MB. */
+    public static final long DEFAULT_MAX_INFLATED_SIZE = 1024 * 1024;
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(HTTPRedirectDeflateDecoder.class);
 
     /** Optional {@link BindingDescriptor} to inject into {@link SAMLBindingContext} created. */
     @Nullable private BindingDescriptor bindingDescriptor;
     
+    /** Maximum size of an inflated message. */
+    @Positive private long maxInflatedSize;
+
+    /** Constructor. */
+    public HTTPRedirectDeflateDecoder() {
+        maxInflatedSize = DEFAULT_MAX_INFLATED_SIZE;
+    }
+
     /** {@inheritDoc} */
     @Nonnull @NotEmpty public String getBindingURI() {
         return SAMLConstants.SAML2_REDIRECT_BINDING_URI;
@@ -78,6 +88,32 @@ public class HTTPRedirectDeflateDecoder extends BaseSAMLHttpServletRequestDecode
         bindingDescriptor = descriptor;
     }
 
+    /**
+     * Get the maximum size, in bytes, to which a message may inflate.
+     * 
+     * @return maximum inflated size
+     * 
+     * @since 5.1.0
+     */
+    @Positive public long getMaxInflatedSize() {
+        return maxInflatedSize;
+    }
+
+    /**
+     * Set the maximum size, in bytes, to which a message may inflate.
+     * 
+     * <p>Defaults to {@link #DEFAULT_MAX_INFLATED_SIZE}.</p>
+     * 
+     * @param size maximum inflated size
+     * 
+     * @since 5.1.0
+     */
+    public void setMaxInflatedSize(@Positive final long size) {
+        checkSetterPreconditions();
+        
+        maxInflatedSize = Constraint.isGreaterThan(0, size, "Maximum inflated size must be greater than zero");
+    }
+
     /** {@inheritDoc} */
     protected void doDecode() throws MessageDecodingException {
         final MessageContext messageContext = new MessageContext();
@@ -120,6 +156,9 @@ public class HTTPRedirectDeflateDecoder extends BaseSAMLHttpServletRequestDecode
     /**
      * Base64 decodes the SAML message and then decompresses the message.
      * 
+     * <p>Decoding is performed as the returned stream is read, so malformed data, or data that inflates
+     * beyond {@link #getMaxInflatedSize()}, results in an {@link IOException} from the stream.</p>
+     * 
      * @param message Base64 encoded, DEFALTE compressed, SAML message
      * 
      * @return the SAML message
@@ -130,8 +169,7 @@ public class HTTPRedirectDeflateDecoder extends BaseSAMLHttpServletRequestDecode
         log.debug("Base64 decoding and inflating SAML message");
 
         try {
-            final byte[] decodedBytes = Base64Support.decode(message);
-            return new NoWrapAutoEndInflaterInputStream(new ByteArrayInputStream(decodedBytes));
+            return HTTPRedirectDeflateSupport.newInflatingStream(message, maxInflatedSize);
         } catch (final Exception e) {
             log.error("Unable to Base64 decode and inflate SAML message: {}", e.getMessage());
             throw new MessageDecodingException("Unable to Base64 decode and inflate SAML message", e);
@@ -152,28 +190,4 @@ public class HTTPRedirectDeflateDecoder extends BaseSAMLHttpServletRequestDecode
         bindingContext.setIntendedDestinationEndpointURIRequired(SAMLBindingSupport.isMessageSigned(messageContext));
     }
     
-    /** A subclass of {@link InflaterInputStream} which defaults in a no-wrap {@link Inflater} instance and
-     * closes it when the stream is closed.
-     */
-    private class NoWrapAutoEndInflaterInputStream extends InflaterInputStream {
-
-        /**
-         * Creates a new input stream with a default no-wrap decompressor and buffer size.
-         *
-         * @param is the input stream
-         */
-        public NoWrapAutoEndInflaterInputStream(@Nonnull final InputStream is) {
-            super(is, new Inflater(true));
-        }
-
-        /** {@inheritDoc} */
-        public void close() throws IOException {
-            if (inf != null) {
-                inf.end();
-            }
-            super.close();
-        }
-
-    }
-
 }
\ No newline at end of file
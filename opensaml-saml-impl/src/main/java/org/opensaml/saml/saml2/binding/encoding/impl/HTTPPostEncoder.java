@@ -14,9 +14,12 @@
 
 package org.opensaml.saml.saml2.binding.encoding.impl;
 
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -28,6 +31,7 @@ import org.opensaml.messaging.encoder.HTMLMessageEncoder;
 import org.opensaml.messaging.encoder.MessageEncodingException;
 import org.opensaml.saml.common.SAMLObject;
 import org.opensaml.saml.common.binding.SAMLBindingSupport;
+import org.opensaml.saml.common.binding.impl.PrecompiledHTTPPostTemplate;
 import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.saml2.core.RequestAbstractType;
 import org.opensaml.saml.saml2.core.StatusResponseType;
@@ -72,6 +76,12 @@ public class HTTPPostEncoder extends BaseSAML2MessageEncoder implements HTMLMess
 
     /** Generator for CSP nonces. */
     @Nullable private IdentifierGenerationStrategy cspNonceGenerator;
+
+    /** Whether to render from a precompiled form of the template where possible. */
+    private boolean precompileTemplate;
+
+    /** Precompiled form of the template. */
+    @Nullable private PrecompiledHTTPPostTemplate precompiledTemplate;
     
     /** Constructor. */
     public HTTPPostEncoder() {
@@ -126,6 +136,36 @@ public class HTTPPostEncoder extends BaseSAML2MessageEncoder implements HTMLMess
                 "Velocity template ID cannot be null or empty");
     }
     
+    /**
+     * Get whether to render from a precompiled form of the template where possible.
+     * 
+     * @return whether to render from a precompiled form of the template
+     * 
+     * @since 5.1.0
+     */
+    public boolean isPrecompileTemplate() {
+        return precompileTemplate;
+    }
+
+    /**
+     * Set whether to render from a precompiled form of the template where possible.
+     * 
+     * <p>This avoids merging the template for each message, but the template only has access to the properties
+     * populated by {@link #populateTemplateFields(Map, MessageContext, String)}, along with the binding URI and
+     * CSP digester. Messages are rendered via Velocity if a CSP nonce generator is set, or if the template's output
+     * depends on anything but which fields are present.</p>
+     * 
+     * <p>Defaults to false.</p>
+     * 
+     * @param flag flag to set
+     * 
+     * @since 5.1.0
+     */
+    public void setPrecompileTemplate(final boolean flag) {
+        checkSetterPreconditions();
+        precompileTemplate = flag;
+    }
+    
     /** {@inheritDoc} */
     public void setCSPDigester(@Nullable final StringDigester digester) {
         checkSetterPreconditions();
@@ -145,6 +185,19 @@ public class HTTPPostEncoder extends BaseSAML2MessageEncoder implements HTMLMess
         if (velocityEngine == null) {
             throw new ComponentInitializationException("VelocityEngine must be supplied");
         }
+        
+        if (precompileTemplate) {
+            if (cspNonceGenerator != null) {
+                log.debug("CSP nonces are unique to each message, template will not be precompiled");
+            } else {
+                final Map<String,Object> properties = new HashMap<>();
+                properties.put("binding", getBindingURI());
+                if (cspDigester != null) {
+                    properties.put("cspDigester", cspDigester);
+                }
+                precompiledTemplate = new PrecompiledHTTPPostTemplate(velocityEngine, velocityTemplateId, properties);
+            }
+        }
     }
 
     /** {@inheritDoc} */
@@ -172,20 +225,35 @@ public class HTTPPostEncoder extends BaseSAML2MessageEncoder implements HTMLMess
      */
     protected void postEncode(@Nonnull final MessageContext messageContext, @Nonnull final String endpointURL) 
             throws MessageEncodingException {
+        final HttpServletResponse response = getHttpServletResponse();
+        assert response != null;
+
+        HttpServletSupport.addNoCacheHeaders(response);
+        HttpServletSupport.setUTF8Encoding(response);
+        HttpServletSupport.setContentType(response, "text/html");
+
+        if (precompiledTemplate != null) {
+            final Map<String,Object> fields = new HashMap<>();
+            populateTemplateFields(fields, messageContext, endpointURL);
+            try {
+                if (precompiledTemplate.render(response, fields)) {
+                    log.debug("Rendered POST body from precompiled template");
+                    return;
+                }
+            } catch (final IOException e) {
+                log.error("Error rendering precompiled template: {}", e.getMessage());
+                throw new MessageEncodingException("Error creating output document", e);
+            }
+        }
+
         log.debug("Invoking Velocity template to create POST body");
         try {
             final VelocityContext context = new VelocityContext();
 
             populateVelocityContext(context, messageContext, endpointURL);
 
-            final HttpServletResponse response = getHttpServletResponse();
-            assert response != null;
             context.put("response", response);
             
-            HttpServletSupport.addNoCacheHeaders(response);
-            HttpServletSupport.setUTF8Encoding(response);
-            HttpServletSupport.setContentType(response, "text/html");
-            
             try (final Writer out = new OutputStreamWriter(response.getOutputStream(), "UTF-8")) {
                 velocityEngine.mergeTemplate(velocityTemplateId, "UTF-8", context, out);
                 out.flush();
@@ -196,6 +264,47 @@ public class HTTPPostEncoder extends BaseSAML2MessageEncoder implements HTMLMess
         }
     }
 
+    /**
+     * Populate the fields used to render the POST body from a precompiled template.
+     * 
+     * <p>Values are either strings, which must be suitably encoded for the template, or DOM nodes, which are
+     * rendered in serialized and Base64 encoded form. The SAML message is supplied as a DOM node, so it's
+     * serialized and encoded directly into the response.</p>
+     * 
+     * @param fields the fields to populate
+     * @param messageContext the SAML message context source of data
+     * @param endpointURL endpoint URL to which to encode message
+     * @throws MessageEncodingException thrown if there is a problem encoding the message
+     * 
+     * @since 5.1.0
+     */
+    protected void populateTemplateFields(@Nonnull final Map<String,Object> fields,
+            @Nonnull final MessageContext messageContext, @Nonnull final String endpointURL)
+                    throws MessageEncodingException {
+        
+        fields.put("action", HTMLEncoder.encodeForHTMLAttribute(endpointURL));
+
+        final SAMLObject outboundMessage = (SAMLObject) messageContext.getMessage();
+        // Checked above.
+        assert outboundMessage != null;
+        
+        log.debug("Marshalling SAML message");
+        final Element domMessage = marshallMessage(outboundMessage);
+        if (outboundMessage instanceof RequestAbstractType) {
+            fields.put("SAMLRequest", domMessage);
+        } else if (outboundMessage instanceof StatusResponseType) {
+            fields.put("SAMLResponse", domMessage);
+        } else {
+            throw new MessageEncodingException(
+                    "SAML message is neither a SAML RequestAbstractType or StatusResponseType");
+        }
+
+        final String relayState = SAMLBindingSupport.getRelayState(messageContext);
+        if (SAMLBindingSupport.checkRelayState(relayState)) {
+            fields.put("RelayState", HTMLEncoder.encodeForHTMLAttribute(relayState));
+        }
+    }
+
     /**
      * Populate the Velocity context instance which will be used to render the POST body.
      * 
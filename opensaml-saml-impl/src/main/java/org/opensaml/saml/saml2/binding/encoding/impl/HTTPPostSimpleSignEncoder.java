@@ -15,6 +15,8 @@
 package org.opensaml.saml.saml2.binding.encoding.impl;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -35,6 +37,7 @@ import org.opensaml.xmlsec.crypto.XMLSigningUtil;
 import org.opensaml.xmlsec.keyinfo.KeyInfoGenerator;
 import org.opensaml.xmlsec.signature.KeyInfo;
 import org.slf4j.Logger;
+import org.w3c.dom.Node;
 
 import com.google.common.base.Strings;
 
@@ -72,6 +75,47 @@ public class HTTPPostSimpleSignEncoder extends HTTPPostEncoder {
                     throws MessageEncodingException {
 
         super.populateVelocityContext(velocityContext, messageContext, endpointURL);
+        populateSignature(velocityContext, messageContext);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void populateTemplateFields(@Nonnull final Map<String,Object> fields,
+            @Nonnull final MessageContext messageContext, @Nonnull final String endpointURL)
+                    throws MessageEncodingException {
+
+        super.populateTemplateFields(fields, messageContext, endpointURL);
+
+        final SignatureSigningParameters signingParameters = 
+                SAMLMessageSecuritySupport.getContextSigningParameters(messageContext);
+        if (signingParameters == null || signingParameters.getSigningCredential() == null) {
+            log.debug("No signing credential was supplied, skipping HTTP-Post simple signing");
+            return;
+        }
+
+        // The signature covers the encoded message, so it can't be streamed.
+        final String field = fields.containsKey("SAMLRequest") ? "SAMLRequest" : "SAMLResponse";
+        try {
+            final String messageXML = SerializeSupport.nodeToString((Node) fields.get(field));
+            fields.put(field, Base64Support.encode(messageXML.getBytes(StandardCharsets.UTF_8),
+                    Base64Support.UNCHUNKED));
+        } catch (final EncodingException e) {
+            log.error("Unable to base64 encode SAML message: {}", e.getMessage());
+            throw new MessageEncodingException("Unable to base64 encode SAML message", e);
+        }
+
+        populateSignature(new VelocityContext(fields), messageContext);
+    }
+
+    /**
+     * Add the signature, and associated data, to a Velocity context containing the encoded message.
+     * 
+     * @param velocityContext the Velocity context instance to populate with data
+     * @param messageContext the SAML message context source of data
+     * @throws MessageEncodingException thrown if there is a problem signing the message
+     */
+    private void populateSignature(@Nonnull final VelocityContext velocityContext,
+            @Nonnull final MessageContext messageContext) throws MessageEncodingException {
 
         final SignatureSigningParameters signingParameters = 
                 SAMLMessageSecuritySupport.getContextSigningParameters(messageContext);
@@ -14,17 +14,13 @@
 
 package org.opensaml.saml.saml2.binding.encoding.impl;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 
 import javax.annotation.Nonnull;
 
@@ -35,6 +31,7 @@ import org.opensaml.saml.common.SignableSAMLObject;
 import org.opensaml.saml.common.binding.SAMLBindingSupport;
 import org.opensaml.saml.common.messaging.SAMLMessageSecuritySupport;
 import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.saml2.binding.impl.HTTPRedirectDeflateSupport;
 import org.opensaml.saml.saml2.core.RequestAbstractType;
 import org.opensaml.saml.saml2.core.StatusResponseType;
 import org.opensaml.security.SecurityException;
@@ -55,7 +52,6 @@ import net.shibboleth.shared.net.URLBuilder;
 import net.shibboleth.shared.primitive.LoggerFactory;
 import net.shibboleth.shared.primitive.StringSupport;
 import net.shibboleth.shared.servlet.HttpServletSupport;
-import net.shibboleth.shared.xml.SerializeSupport;
 
 /**
  * SAML 2.0 HTTP Redirect encoder using the DEFLATE encoding method.
@@ -133,18 +129,8 @@ public class HTTPRedirectDeflateEncoder extends BaseSAML2MessageEncoder {
             throws MessageEncodingException {
         log.debug("Deflating and Base64 encoding SAML message");
         try {
-            final String messageStr = SerializeSupport.nodeToString(marshallMessage(message));
-
-            try (final ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-                    final DeflaterOutputStream deflaterStream =
-                            new NoWrapAutoEndDeflaterOutputStream(bytesOut, Deflater.DEFLATED)) {
-
-                deflaterStream.write(messageStr.getBytes("UTF-8"));
-                deflaterStream.finish();
-
-                return Base64Support.encode(bytesOut.toByteArray(), Base64Support.UNCHUNKED);
-            }            
-        } catch (final IOException | EncodingException e) {
+            return HTTPRedirectDeflateSupport.deflateAndBase64Encode(marshallMessage(message));
+        } catch (final IOException e) {
             throw new MessageEncodingException("Unable to DEFLATE and Base64 encode SAML message", e);
         } 
     }
@@ -296,30 +282,4 @@ public class HTTPRedirectDeflateEncoder extends BaseSAML2MessageEncoder {
         }
     }
 
-    /** A subclass of {@link DeflaterOutputStream} which defaults in a no-wrap {@link Deflater} instance and
-     * closes it when the stream is closed.
-     */
-    private class NoWrapAutoEndDeflaterOutputStream extends DeflaterOutputStream {
-
-        /**
-         * Creates a new output stream with a default no-wrap compressor and buffer size,
-         * and the specified compression level.
-         *
-         * @param os the output stream
-         * @param level the compression level (0-9)
-         */
-        public NoWrapAutoEndDeflaterOutputStream(@Nonnull final OutputStream os, final int level) {
-            super(os, new Deflater(level, true));
-        }
-
-        /** {@inheritDoc} */
-        public void close() throws IOException {
-            if (def != null) {
-                def.end();
-            }
-            super.close();
-        }
-
-    }
-
 }
\ No newline at end of file
@@ -0,0 +1,356 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.binding.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.Nonnull;
+
+import org.w3c.dom.Node;
+
+import net.shibboleth.shared.annotation.constraint.Positive;
+import net.shibboleth.shared.logic.Constraint;
+import net.shibboleth.shared.xml.SerializeSupport;
+
+/**
+ * Support methods for the DEFLATE encoding of the SAML 2.0 HTTP Redirect binding.
+ *
+ * <p>The native compression state behind {@link Inflater} and {@link Deflater} is expensive to create and
+ * release, so a bounded number of instances are pooled and reused. Messages are also streamed between the
+ * Base64, compression and XML layers rather than being materialized in full at each step.</p>
+ *
+ * @since 5.1.0
+ */
+public final class HTTPRedirectDeflateSupport {
+
+    /** Compression level used when deflating, matching that historically used by the encoder. */
+    private static final int DEFLATE_LEVEL = Deflater.DEFLATED;
+
+    /** Buffer size for compression streams. */
+    private static final int BUFFER_SIZE = 2048;
+
+    /** Maximum number of idle instances of each codec to retain. */
+    private static final int POOL_SIZE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    /** Idle inflaters. */
+    @Nonnull private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /** Idle deflaters. */
+    @Nonnull private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /** Constructor. */
+    private HTTPRedirectDeflateSupport() { }
+
+    /**
+     * Get a stream that Base64 decodes and inflates an encoded message.
+     *
+     * <p>Decoding and inflation errors, and inflation beyond the supplied limit, are reported by
+     * the stream as {@link IOException}s. The stream must be closed to return its resources for reuse.</p>
+     *
+     * @param message Base64 encoded, DEFLATE compressed message
+     * @param maxInflatedSize maximum number of bytes to inflate
+     *
+     * @return stream over the inflated message
+     */
+    @Nonnull public static InputStream newInflatingStream(@Nonnull final String message,
+            @Positive final long maxInflatedSize) {
+        Constraint.isNotNull(message, "Message cannot be null");
+        Constraint.isGreaterThan(0, maxInflatedSize, "Maximum inflated size must be greater than zero");
+
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        return new PooledInflaterInputStream(new Base64DecodingInputStream(message), inflater, maxInflatedSize);
+    }
+
+    /**
+     * Serialize, DEFLATE compress, and Base64 encode a DOM node.
+     *
+     * @param node the node to encode
+     *
+     * @return the encoded node
+     *
+     * @throws IOException if an error occurs
+     */
+    @Nonnull public static String deflateAndBase64Encode(@Nonnull final Node node) throws IOException {
+        Constraint.isNotNull(node, "Node cannot be null");
+
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(DEFLATE_LEVEL, true);
+        }
+
+        try {
+            final ByteArrayOutputStream bytesOut = new ByteArrayOutputStream(BUFFER_SIZE);
+            final OutputStream base64Out = Base64.getEncoder().wrap(bytesOut);
+            final DeflaterOutputStream deflaterOut = new DeflaterOutputStream(base64Out, deflater, BUFFER_SIZE);
+
+            SerializeSupport.writeNode(node, deflaterOut);
+            deflaterOut.finish();
+            // Completes the final Base64 quantum.
+            base64Out.close();
+
+            return bytesOut.toString(StandardCharsets.US_ASCII);
+        } finally {
+            deflater.reset();
+            if (!DEFLATERS.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * {@link InflaterInputStream} that returns its {@link Inflater} to the pool when closed, and limits the
+     * amount of data inflated.
+     */
+    private static final class PooledInflaterInputStream extends InflaterInputStream {
+
+        /** Maximum number of bytes to inflate. */
+        private final long limit;
+
+        /** Number of bytes inflated. */
+        private long inflated;
+
+        /** Whether the stream has been closed. */
+        private boolean released;
+
+        /**
+         * Constructor.
+         *
+         * @param in underlying stream
+         * @param inflater inflater to use
+         * @param max maximum number of bytes to inflate
+         */
+        PooledInflaterInputStream(@Nonnull final InputStream in, @Nonnull final Inflater inflater, final long max) {
+            super(in, inflater, BUFFER_SIZE);
+            limit = max;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int count = super.read(b, off, len);
+            if (count > 0) {
+                inflated += count;
+                if (inflated > limit) {
+                    throw new IOException("Inflated message exceeds maximum size of " + limit + " bytes");
+                }
+            }
+            return count;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close() throws IOException {
+            if (released) {
+                return;
+            }
+            released = true;
+            try {
+                super.close();
+            } finally {
+                inf.reset();
+                if (!INFLATERS.offer(inf)) {
+                    inf.end();
+                }
+            }
+        }
+    }
+
+    /**
+     * Strict streaming Base64 decoder over a string.
+     *
+     * <p>Whitespace is skipped and any other character outside the Base64 alphabet, including those of the
+     * URL-safe alphabet, is rejected. Decoding stops at the first padding character, after which only padding
+     * and whitespace may follow, and unused trailing bits must be zero.</p>
+     */
+    private static final class Base64DecodingInputStream extends InputStream {
+
+        /** Values of the Base64 alphabet characters, or -1. */
+        @Nonnull private static final int[] DECODE_TABLE = new int[128];
+
+        static {
+            Arrays.fill(DECODE_TABLE, -1);
+            final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+            for (int i = 0; i < alphabet.length(); i++) {
+                DECODE_TABLE[alphabet.charAt(i)] = i;
+            }
+        }
+
+        /** Data to decode. */
+        @Nonnull private final String data;
+
+        /** Position in the data. */
+        private int pos;
+
+        /** Decoded bytes not yet returned. */
+        @Nonnull private final byte[] decoded;
+
+        /** Position in the decoded bytes. */
+        private int decodedPos;
+
+        /** Number of decoded bytes available. */
+        private int decodedLength;
+
+        /** Whether the end of the encoded data has been reached. */
+        private boolean complete;
+
+        /**
+         * Constructor.
+         *
+         * @param encoded data to decode
+         */
+        Base64DecodingInputStream(@Nonnull final String encoded) {
+            data = encoded;
+            decoded = new byte[3];
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int read() throws IOException {
+            if (decodedPos == decodedLength && !decodeQuantum()) {
+                return -1;
+            }
+            return decoded[decodedPos++] & 0xff;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            int count = 0;
+            while (count < len) {
+                if (decodedPos == decodedLength && !decodeQuantum()) {
+                    break;
+                }
+                final int chunk = Math.min(len - count, decodedLength - decodedPos);
+                System.arraycopy(decoded, decodedPos, b, off + count, chunk);
+                decodedPos += chunk;
+                count += chunk;
+            }
+            return count > 0 ? count : -1;
+        }
+
+        /**
+         * Decode the next group of up to four Base64 characters.
+         *
+         * @return false iff there is no more data
+         *
+         * @throws IOException if the data is not valid Base64
+         */
+        private boolean decodeQuantum() throws IOException {
+            if (complete) {
+                return false;
+            }
+
+            int bits = 0;
+            int chars = 0;
+            while (chars < 4 && pos < data.length()) {
+                final char c = data.charAt(pos++);
+                if (c == '=') {
+                    checkPadding();
+                    complete = true;
+                    break;
+                }
+                final int value = c < DECODE_TABLE.length ? DECODE_TABLE[c] : -1;
+                if (value >= 0) {
+                    bits = (bits << 6) | value;
+                    chars++;
+                } else if (!isWhitespace(c)) {
+                    throw new IOException("Base64 data contains invalid character 0x" + Integer.toHexString(c));
+                }
+            }
+            if (chars < 4) {
+                complete = true;
+            }
+
+            decodedPos = 0;
+            switch (chars) {
+                case 4:
+                    decoded[0] = (byte) (bits >> 16);
+                    decoded[1] = (byte) (bits >> 8);
+                    decoded[2] = (byte) bits;
+                    decodedLength = 3;
+                    return true;
+
+                case 3:
+                    if ((bits & 0x3) != 0) {
+                        throw new IOException("Base64 data has non-zero trailing bits");
+                    }
+                    decoded[0] = (byte) (bits >> 10);
+                    decoded[1] = (byte) (bits >> 2);
+                    decodedLength = 2;
+                    return true;
+
+                case 2:
+                    if ((bits & 0xf) != 0) {
+                        throw new IOException("Base64 data has non-zero trailing bits");
+                    }
+                    decoded[0] = (byte) (bits >> 4);
+                    decodedLength = 1;
+                    return true;
+
+                case 1:
+                    throw new IOException("Base64 data is truncated");
+
+                default:
+                    decodedLength = 0;
+                    return false;
+            }
+        }
+
+        /**
+         * Check that only padding and whitespace remain after the first padding character.
+         *
+         * @throws IOException if anything else follows
+         */
+        private void checkPadding() throws IOException {
+            for (int i = pos; i < data.length(); i++) {
+                final char c = data.charAt(i);
+                if (c != '=' && !isWhitespace(c)) {
+                    throw new IOException("Base64 data continues after padding");
+                }
+            }
+        }
+
+        /**
+         * Get whether a character is whitespace which may separate Base64 characters.
+         *
+         * @param c the character
+         *
+         * @return true iff the character is a space, tab, carriage return or line feed
+         */
+        private static boolean isWhitespace(final char c) {
+            return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.core.impl;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.AbstractXMLObjectCopier;
+import org.opensaml.core.xml.io.CopyingException;
+import org.opensaml.saml.saml2.core.Assertion;
+
+/**
+ * A thread-safe copier for {@link Assertion} objects.
+ * 
+ * <p>
+ * A signed assertion is not copied, since the copy would not carry the DOM the signature was computed over.
+ * </p>
+ * 
+ * @since 5.1.0
+ */
+public class AssertionCopier extends AbstractXMLObjectCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyAttributes(@Nonnull final XMLObject source, @Nonnull final XMLObject target)
+            throws CopyingException {
+        final Assertion original = (Assertion) source;
+        final Assertion copy = (Assertion) target;
+
+        copy.setVersion(original.getVersion());
+        copy.setIssueInstant(original.getIssueInstant());
+        copy.setID(original.getID());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyChildElements(@Nonnull final XMLObject source, @Nonnull final XMLObject target)
+            throws CopyingException {
+        final Assertion original = (Assertion) source;
+        final Assertion copy = (Assertion) target;
+
+        if (original.getSignature() != null) {
+            throw new CopyingException("Signed Assertion cannot be copied directly");
+        }
+
+        copy.setIssuer(copyChild(original.getIssuer()));
+        copy.setSubject(copyChild(original.getSubject()));
+        copy.setConditions(copyChild(original.getConditions()));
+        copy.setAdvice(copyChild(original.getAdvice()));
+        copyChildren(original.getStatements(), copy.getStatements());
+    }
+
+}
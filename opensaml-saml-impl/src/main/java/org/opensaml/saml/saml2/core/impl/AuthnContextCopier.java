@@ -0,0 +1,44 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.core.impl;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.AbstractXMLObjectCopier;
+import org.opensaml.core.xml.io.CopyingException;
+import org.opensaml.saml.saml2.core.AuthnContext;
+
+/**
+ * A thread-safe copier for {@link AuthnContext} objects.
+ * 
+ * @since 5.1.0
+ */
+public class AuthnContextCopier extends AbstractXMLObjectCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyChildElements(@Nonnull final XMLObject source, @Nonnull final XMLObject target)
+            throws CopyingException {
+        final AuthnContext original = (AuthnContext) source;
+        final AuthnContext copy = (AuthnContext) target;
+
+        copy.setAuthnContextClassRef(copyChild(original.getAuthnContextClassRef()));
+        copy.setAuthnContextDecl(copyChild(original.getAuthContextDecl()));
+        copy.setAuthnContextDeclRef(copyChild(original.getAuthnContextDeclRef()));
+        copyChildren(original.getAuthenticatingAuthorities(), copy.getAuthenticatingAuthorities());
+    }
+
+}
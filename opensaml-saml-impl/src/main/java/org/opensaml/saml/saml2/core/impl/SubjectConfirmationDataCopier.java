@@ -0,0 +1,45 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.core.impl;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.AbstractXMLObjectCopier;
+import org.opensaml.core.xml.io.CopyingException;
+import org.opensaml.saml.saml2.core.SubjectConfirmationData;
+
+/**
+ * A thread-safe copier for {@link SubjectConfirmationData} objects.
+ * 
+ * @since 5.1.0
+ */
+public class SubjectConfirmationDataCopier extends AbstractXMLObjectCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyAttributes(@Nonnull final XMLObject source, @Nonnull final XMLObject target)
+            throws CopyingException {
+        final SubjectConfirmationData original = (SubjectConfirmationData) source;
+        final SubjectConfirmationData copy = (SubjectConfirmationData) target;
+
+        copy.setNotBefore(original.getNotBefore());
+        copy.setNotOnOrAfter(original.getNotOnOrAfter());
+        copy.setRecipient(original.getRecipient());
+        copy.setInResponseTo(original.getInResponseTo());
+        copy.setAddress(original.getAddress());
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.core.impl;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.AbstractXMLObjectCopier;
+import org.opensaml.core.xml.io.CopyingException;
+import org.opensaml.saml.saml2.core.Subject;
+
+/**
+ * A thread-safe copier for {@link Subject} objects.
+ * 
+ * @since 5.1.0
+ */
+public class SubjectCopier extends AbstractXMLObjectCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyChildElements(@Nonnull final XMLObject source, @Nonnull final XMLObject target)
+            throws CopyingException {
+        final Subject original = (Subject) source;
+        final Subject copy = (Subject) target;
+
+        copy.setBaseID(copyChild(original.getBaseID()));
+        copy.setNameID(copyChild(original.getNameID()));
+        copy.setEncryptedID(copyChild(original.getEncryptedID()));
+        copyChildren(original.getSubjectConfirmations(), copy.getSubjectConfirmations());
+    }
+
+}
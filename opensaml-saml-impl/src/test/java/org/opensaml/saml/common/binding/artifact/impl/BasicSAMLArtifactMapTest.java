@@ -23,6 +23,7 @@ import org.opensaml.core.testing.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.saml.common.SAMLObject;
 import org.opensaml.saml.common.binding.artifact.SAMLArtifactMap.SAMLArtifactMapEntry;
+import org.opensaml.storage.expiration.BucketedExpirationIndex;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -117,4 +118,27 @@ public class BasicSAMLArtifactMapTest extends XMLObjectBaseTestCase {
         Assert.assertNull(entry, "Entry should have expired");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testIndexedCleanup() throws Exception {
+        final BucketedExpirationIndex<String> index = new BucketedExpirationIndex<>(Duration.ofMillis(1));
+        artifactMap = new BasicSAMLArtifactMap();
+        artifactMap.setArtifactLifetime(Duration.ofMillis(1));
+        artifactMap.setCleanupInterval(Duration.ZERO);
+        artifactMap.setExpirationIndex(index);
+        artifactMap.initialize();
+
+        artifactMap.put(artifact, rpId, issuerId, samlObject);
+        // Wait out the one millisecond lifetime, so the entry has expired but is still stored.
+        Thread.sleep(5);
+
+        Assert.assertTrue(artifactMap.contains(artifact));
+
+        artifactMap.new Cleanup().run();
+
+        Assert.assertFalse(artifactMap.contains(artifact));
+        Assert.assertEquals(index.getBucketCount(), 0);
+        
+        artifactMap.destroy();
+    }
+
+}
@@ -0,0 +1,337 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opensaml.saml.metadata.resolver.filter.impl;
+
+import java.io.StringReader;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.core.testing.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilterContext;
+import org.opensaml.saml.saml2.metadata.AffiliationDescriptor;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialSupport;
+import org.opensaml.security.credential.impl.StaticCredentialResolver;
+import org.opensaml.security.crypto.KeySupport;
+import org.opensaml.xmlsec.SignatureSigningParameters;
+import org.opensaml.xmlsec.config.impl.DefaultSecurityConfigurationBootstrap;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureSupport;
+import org.opensaml.xmlsec.signature.support.Signer;
+import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import net.shibboleth.shared.annotation.constraint.NonnullBeforeTest;
+import net.shibboleth.shared.xml.SerializeSupport;
+
+/** Tests for {@link SignatureValidationFilter} when verifying group members in parallel. */
+@SuppressWarnings("javadoc")
+public class SignatureValidationFilterParallelTest extends XMLObjectBaseTestCase {
+
+    private static final int ENTITIES = 40;
+
+    @NonnullBeforeTest private ExplicitKeySignatureTrustEngine trustEngine;
+
+    @NonnullBeforeTest private String aggregate;
+
+    @NonnullBeforeTest private String roleAggregate;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        final KeyPair keyPair = KeySupport.generateKeyPair("RSA", 2048, null);
+        final Credential signingCredential =
+                CredentialSupport.getSimpleCredential(keyPair.getPublic(), keyPair.getPrivate());
+        trustEngine = new ExplicitKeySignatureTrustEngine(
+                new StaticCredentialResolver(CredentialSupport.getSimpleCredential(keyPair.getPublic(), null)),
+                DefaultSecurityConfigurationBootstrap.buildBasicInlineKeyInfoCredentialResolver());
+        aggregate = buildAggregate(signingCredential);
+        roleAggregate = buildRoleAggregate(signingCredential);
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        final List<String> expected = filter(null);
+        Assert.assertEquals(expected.size(), ENTITIES - ENTITIES / 5);
+        for (final String entityID : expected) {
+            Assert.assertFalse(entityID.contains("tampered"));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Assert.assertEquals(filter(executor), expected);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelChildRemoval() throws Exception {
+        final EntitiesDescriptor sequential = filter(roleAggregate, null);
+        final List<String> expected = describeEntities(sequential);
+        Assert.assertEquals(expected.size(), ENTITIES);
+        for (int i = 0; i < ENTITIES; i++) {
+            Assert.assertEquals(expected.get(i), "https://sp" + i + ".example.org/shibboleth roles="
+                    + (i % 3 == 0 ? 0 : 1) + " affiliation=" + (i % 4 != 0));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 5; round++) {
+                final EntitiesDescriptor root = filter(roleAggregate, executor);
+                Assert.assertEquals(describeEntities(root), expected);
+                for (int i = 0; i < ENTITIES; i++) {
+                    Assert.assertEquals(root.resolveID("_sp" + i) != null, i % 3 != 0);
+                    Assert.assertEquals(root.resolveID("_affiliation" + i) != null, i % 4 != 0);
+                    Assert.assertNotNull(root.resolveID("_entity" + i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectedExecution() throws Exception {
+        final List<String> expected = filter(null);
+
+        // Most tasks will be rejected and run by the caller.
+        final ExecutorService executor =
+                new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        try {
+            Assert.assertEquals(filter(executor), expected);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Parse and filter the aggregate.
+     * 
+     * @param executor executor to use, or null
+     * 
+     * @return the entityIDs remaining after filtering, in document order
+     * 
+     * @throws Exception if an error occurs
+     */
+    @Nonnull private List<String> filter(@Nullable final ExecutorService executor) throws Exception {
+        final List<String> entityIDs = new ArrayList<>();
+        collectEntityIDs(filter(aggregate, executor), entityIDs);
+        return entityIDs;
+    }
+
+    /**
+     * Parse and filter an aggregate.
+     * 
+     * @param serialized the serialized aggregate
+     * @param executor executor to use, or null
+     * 
+     * @return the filtered aggregate
+     * 
+     * @throws Exception if an error occurs
+     */
+    @Nonnull private EntitiesDescriptor filter(@Nonnull final String serialized,
+            @Nullable final ExecutorService executor) throws Exception {
+        final Document document = parserPool.parse(new StringReader(serialized));
+        final EntitiesDescriptor root = (EntitiesDescriptor) XMLObjectSupport.getUnmarshaller(
+                document.getDocumentElement()).unmarshall(document.getDocumentElement());
+
+        final SignatureValidationFilter filter = new SignatureValidationFilter(trustEngine);
+        filter.setRequireSignedRoot(false);
+        filter.setExecutor(executor);
+        filter.initialize();
+        filter.filter(root, new MetadataFilterContext());
+        return root;
+    }
+
+    /**
+     * Describe the signed children remaining on each member of a flat aggregate.
+     * 
+     * @param root the aggregate
+     * 
+     * @return a description of each member, in document order
+     */
+    @Nonnull private List<String> describeEntities(@Nonnull final EntitiesDescriptor root) {
+        final List<String> descriptions = new ArrayList<>();
+        for (final EntityDescriptor entity : root.getEntityDescriptors()) {
+            descriptions.add(entity.getEntityID() + " roles=" + entity.getRoleDescriptors().size()
+                    + " affiliation=" + (entity.getAffiliationDescriptor() != null));
+        }
+        return descriptions;
+    }
+
+    private void collectEntityIDs(@Nonnull final EntitiesDescriptor group, @Nonnull final List<String> entityIDs) {
+        for (final EntityDescriptor entity : group.getEntityDescriptors()) {
+            entityIDs.add(entity.getEntityID());
+        }
+        for (final EntitiesDescriptor child : group.getEntitiesDescriptors()) {
+            collectEntityIDs(child, entityIDs);
+        }
+    }
+
+    /**
+     * Build an unsigned aggregate, including a nested group, of individually signed entities, every fifth
+     * of which has been altered after signing.
+     * 
+     * @param signingCredential credential to sign with
+     * 
+     * @return the serialized aggregate
+     * 
+     * @throws Exception if an error occurs
+     */
+    @Nonnull private String buildAggregate(@Nonnull final Credential signingCredential) throws Exception {
+        final SignatureSigningParameters params = new SignatureSigningParameters();
+        params.setSigningCredential(signingCredential);
+        params.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        params.setSignatureCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        params.setSignatureReferenceDigestMethod(SignatureConstants.ALGO_ID_DIGEST_SHA256);
+
+        final EntitiesDescriptor root = buildXMLObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        root.setName("urn:test:aggregate");
+        final EntitiesDescriptor nested = buildXMLObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        nested.setName("urn:test:nested");
+        root.getEntitiesDescriptors().add(nested);
+
+        final List<EntityDescriptor> entities = new ArrayList<>();
+        final List<Signature> signatures = new ArrayList<>();
+        for (int i = 0; i < ENTITIES; i++) {
+            final EntityDescriptor entity = buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+            entity.setEntityID("https://sp" + i + ".example.org/shibboleth");
+            entity.setID("_entity" + i);
+            final Signature signature = buildXMLObject(Signature.DEFAULT_ELEMENT_NAME);
+            SignatureSupport.prepareSignatureParams(signature, params);
+            entity.setSignature(signature);
+            entities.add(entity);
+            signatures.add(signature);
+            if (i % 2 == 0) {
+                root.getEntityDescriptors().add(entity);
+            } else {
+                nested.getEntityDescriptors().add(entity);
+            }
+        }
+
+        final Element element = XMLObjectSupport.marshall(root);
+        Signer.signObjects(signatures);
+
+        for (int i = 0; i < ENTITIES; i += 5) {
+            final Element entityElement = entities.get(i).getDOM();
+            assert entityElement != null;
+            entityElement.setAttributeNS(null, EntityDescriptor.ENTITY_ID_ATTRIB_NAME,
+                    "https://tampered" + i + ".example.org/shibboleth");
+        }
+
+        return SerializeSupport.nodeToString(element);
+    }
+
+    /**
+     * Build an unsigned aggregate of signed entities, each with a signed SPSSODescriptor and a signed
+     * AffiliationDescriptor. Every third SPSSODescriptor and every fourth AffiliationDescriptor is altered after
+     * it has been signed but before its entity is signed, so only the child's signature fails.
+     * 
+     * @param signingCredential credential to sign with
+     * 
+     * @return the serialized aggregate
+     * 
+     * @throws Exception if an error occurs
+     */
+    @Nonnull private String buildRoleAggregate(@Nonnull final Credential signingCredential) throws Exception {
+        final SignatureSigningParameters params = new SignatureSigningParameters();
+        params.setSigningCredential(signingCredential);
+        params.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        params.setSignatureCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        params.setSignatureReferenceDigestMethod(SignatureConstants.ALGO_ID_DIGEST_SHA256);
+
+        final EntitiesDescriptor root = buildXMLObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        root.setName("urn:test:roles");
+
+        final List<SPSSODescriptor> roles = new ArrayList<>();
+        final List<AffiliationDescriptor> affiliations = new ArrayList<>();
+        final List<Signature> childSignatures = new ArrayList<>();
+        final List<Signature> entitySignatures = new ArrayList<>();
+        for (int i = 0; i < ENTITIES; i++) {
+            final EntityDescriptor entity = buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+            entity.setEntityID("https://sp" + i + ".example.org/shibboleth");
+            entity.setID("_entity" + i);
+
+            final SPSSODescriptor role = buildXMLObject(SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+            role.setID("_sp" + i);
+            role.addSupportedProtocol(SAMLConstants.SAML20P_NS);
+            final Signature roleSignature = buildXMLObject(Signature.DEFAULT_ELEMENT_NAME);
+            SignatureSupport.prepareSignatureParams(roleSignature, params);
+            role.setSignature(roleSignature);
+            entity.getRoleDescriptors().add(role);
+            roles.add(role);
+            childSignatures.add(roleSignature);
+
+            final AffiliationDescriptor affiliation = buildXMLObject(AffiliationDescriptor.DEFAULT_ELEMENT_NAME);
+            affiliation.setID("_affiliation" + i);
+            affiliation.setOwnerID("https://sp" + i + ".example.org/shibboleth");
+            final Signature affiliationSignature = buildXMLObject(Signature.DEFAULT_ELEMENT_NAME);
+            SignatureSupport.prepareSignatureParams(affiliationSignature, params);
+            affiliation.setSignature(affiliationSignature);
+            entity.setAffiliationDescriptor(affiliation);
+            affiliations.add(affiliation);
+            childSignatures.add(affiliationSignature);
+
+            final Signature signature = buildXMLObject(Signature.DEFAULT_ELEMENT_NAME);
+            SignatureSupport.prepareSignatureParams(signature, params);
+            entity.setSignature(signature);
+            entitySignatures.add(signature);
+            root.getEntityDescriptors().add(entity);
+        }
+
+        final Element element = XMLObjectSupport.marshall(root);
+        Signer.signObjects(childSignatures);
+
+        for (int i = 0; i < ENTITIES; i++) {
+            if (i % 3 == 0) {
+                final Element roleElement = roles.get(i).getDOM();
+                assert roleElement != null;
+                roleElement.setAttributeNS(null, SPSSODescriptor.ERROR_URL_ATTRIB_NAME,
+                        "https://tampered" + i + ".example.org/error");
+            }
+            if (i % 4 == 0) {
+                final Element affiliationElement = affiliations.get(i).getDOM();
+                assert affiliationElement != null;
+                affiliationElement.setAttributeNS(null, AffiliationDescriptor.OWNER_ID_ATTRIB_NAME,
+                        "https://tampered" + i + ".example.org/shibboleth");
+            }
+        }
+
+        Signer.signObjects(entitySignatures);
+
+        return SerializeSupport.nodeToString(element);
+    }
+
+}
@@ -15,9 +15,11 @@
 package org.opensaml.saml.metadata.resolver.impl;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.security.KeyPair;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -26,6 +28,10 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.Timer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -37,6 +43,7 @@ import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.persist.MapLoadSaveManager;
+import org.opensaml.core.xml.persist.SegmentFileLoadSaveManager;
 import org.opensaml.core.xml.persist.XMLObjectLoadSaveManager;
 import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.criterion.EntityRoleCriterion;
@@ -307,6 +314,81 @@ public class AbstractDynamicMetadataResolverTest extends XMLObjectBaseTestCase {
         Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id1));
     }
     
+    @Test
+    public void testNegativeLookupCacheBackoff() throws ComponentInitializationException {
+        resolver.setNegativeLookupCacheDuration(Duration.ofSeconds(1));
+        resolver.setMaxNegativeLookupCacheDuration(Duration.ofSeconds(5));
+        resolver.setNegativeLookupCacheJitter(0f);
+        
+        resolver.initialize();
+        
+        Assert.assertEquals(resolver.computeNegativeLookupCacheDuration(1), Duration.ofSeconds(1));
+        Assert.assertEquals(resolver.computeNegativeLookupCacheDuration(2), Duration.ofSeconds(2));
+        Assert.assertEquals(resolver.computeNegativeLookupCacheDuration(3), Duration.ofSeconds(4));
+        Assert.assertEquals(resolver.computeNegativeLookupCacheDuration(4), Duration.ofSeconds(5));
+        Assert.assertEquals(resolver.computeNegativeLookupCacheDuration(Integer.MAX_VALUE), Duration.ofSeconds(5));
+    }
+    
+    @Test
+    public void testNegativeLookupCacheJitter() throws ComponentInitializationException {
+        resolver.setNegativeLookupCacheDuration(Duration.ofSeconds(10));
+        resolver.setNegativeLookupCacheJitter(0.5f);
+        
+        resolver.initialize();
+        
+        for (int i = 0; i < 100; i++) {
+            final Duration duration = resolver.computeNegativeLookupCacheDuration(3);
+            Assert.assertTrue(duration.compareTo(Duration.ofSeconds(5)) >= 0);
+            Assert.assertTrue(duration.compareTo(Duration.ofSeconds(10)) <= 0);
+        }
+    }
+    
+    @Test
+    public void testNegativeLookupCacheSize() throws ComponentInitializationException, ResolverException {
+        resolver.setMaxNegativeLookupCacheSize(2);
+        
+        resolver.initialize();
+        
+        final DynamicEntityBackingStore backingStore = resolver.ensureBackingStore();
+        
+        Assert.assertNull(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))));
+        Assert.assertNull(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id2))));
+        Assert.assertTrue(backingStore.getManagementDataEntityIDs().contains(id1));
+        
+        Assert.assertNull(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id3))));
+        Assert.assertFalse(backingStore.getManagementDataEntityIDs().contains(id1));
+        Assert.assertTrue(backingStore.getManagementDataEntityIDs().contains(id2));
+        Assert.assertTrue(backingStore.getManagementDataEntityIDs().contains(id3));
+        
+        // The evicted entityID is no longer negatively cached.
+        sourceMap.put(id1, ed1);
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        Assert.assertEquals(resolver.getFetchCount(), 4);
+    }
+    
+    @Test
+    public void testCoalescedFetches() throws Exception {
+        resolver.setFetchDelay(500);
+        
+        resolver.initialize();
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<EntityDescriptor>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(
+                        () -> resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1)))));
+            }
+            for (final Future<EntityDescriptor> result : results) {
+                Assert.assertNull(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        Assert.assertEquals(resolver.getFetchCount(), 1);
+    }
+    
     @Test
     public void testGlobalClearWithNegativeLookupCache() throws ComponentInitializationException, ResolverException, InterruptedException {
         resolver.initialize();
@@ -509,6 +591,82 @@ public class AbstractDynamicMetadataResolverTest extends XMLObjectBaseTestCase {
         }
     }
     
+    @Test
+    public void testInitFromPersistentCacheLazily()
+            throws ComponentInitializationException, ResolverException, IOException {
+        final File segmentFile = File.createTempFile("dynamic-resolver-cache", ".seg");
+        final SegmentFileLoadSaveManager<EntityDescriptor> segmentManager =
+                new SegmentFileLoadSaveManager<>(segmentFile, null, EntityDescriptor::getEntityID, null);
+        try {
+            persistentCacheKeyGenerator = new AbstractDynamicMetadataResolver.DefaultCacheKeyGenerator();
+            segmentManager.save(persistentCacheKeyGenerator.apply(ed1), ed1);
+            segmentManager.save(persistentCacheKeyGenerator.apply(ed2), ed2);
+            
+            resolver.setPersistentCacheManager(segmentManager);
+            resolver.setPersistentCacheKeyGenerator(persistentCacheKeyGenerator);
+            resolver.setInitializeFromPersistentCacheLazily(true);
+            
+            resolver.initialize();
+            
+            final DynamicEntityBackingStore backingStore = resolver.ensureBackingStore();
+            
+            // Nothing is loaded until it is resolved
+            Assert.assertTrue(backingStore.getIndexedDescriptors().isEmpty());
+            
+            EntityDescriptor ed = resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1)));
+            assert ed != null;
+            Assert.assertEquals(ed.getEntityID(), id1);
+            Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id1));
+            Assert.assertFalse(backingStore.getIndexedDescriptors().containsKey(id2));
+            Assert.assertEquals(resolver.getFetchCount(), 0);
+            
+            // Not in the cache, so fetched from the origin
+            sourceMap.put(id3, ed3);
+            Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id3))), ed3);
+            Assert.assertEquals(resolver.getFetchCount(), 1);
+            
+            // Clearing removes entities which have not yet been loaded from the cache
+            resolver.clear(id2);
+            Assert.assertFalse(segmentManager.exists(persistentCacheKeyGenerator.apply(ed2)));
+            Assert.assertNull(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id2))));
+            Assert.assertEquals(resolver.getFetchCount(), 2);
+        } finally {
+            segmentManager.close();
+            segmentFile.delete();
+        }
+    }
+    
+    @Test
+    public void testInitFromPersistentCacheLazilyWithoutNames()
+            throws ComponentInitializationException, ResolverException, IOException {
+        final File segmentFile = File.createTempFile("dynamic-resolver-cache", ".seg");
+        final SegmentFileLoadSaveManager<EntityDescriptor> segmentManager =
+                new SegmentFileLoadSaveManager<>(segmentFile);
+        try {
+            Assert.assertFalse(segmentManager.isStoringNames());
+            persistentCacheKeyGenerator = new AbstractDynamicMetadataResolver.DefaultCacheKeyGenerator();
+            segmentManager.save(persistentCacheKeyGenerator.apply(ed1), ed1);
+            segmentManager.save(persistentCacheKeyGenerator.apply(ed2), ed2);
+            
+            resolver.setPersistentCacheManager(segmentManager);
+            resolver.setPersistentCacheKeyGenerator(persistentCacheKeyGenerator);
+            resolver.setInitializeFromPersistentCacheLazily(true);
+            resolver.setInitializeFromPersistentCacheInBackground(false);
+            
+            resolver.initialize();
+            
+            // Entries can't be found by entityID on demand, so initialization was not lazy
+            final DynamicEntityBackingStore backingStore = resolver.ensureBackingStore();
+            Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id1));
+            Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id2));
+            Assert.assertNotNull(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))));
+            Assert.assertEquals(resolver.getFetchCount(), 0);
+        } finally {
+            segmentManager.close();
+            segmentFile.delete();
+        }
+    }
+    
     @Test
     public void testInitFromPersistentCacheWithPredicate() throws ComponentInitializationException, ResolverException, IOException {
         persistentCacheKeyGenerator = new AbstractDynamicMetadataResolver.DefaultCacheKeyGenerator();
@@ -695,6 +853,10 @@ public class AbstractDynamicMetadataResolverTest extends XMLObjectBaseTestCase {
         private Map<String,EntityDescriptor> originSourceMap;
         
         private boolean secondaryLookup;
+        
+        private final AtomicInteger fetchCount = new AtomicInteger();
+        
+        private long fetchDelay;
 
         public MockDynamicResolver(Map<String, EntityDescriptor> map) {
             this(map, null);
@@ -704,12 +866,28 @@ public class AbstractDynamicMetadataResolverTest extends XMLObjectBaseTestCase {
             secondaryLookup = flag;
         }
         
+        public void setFetchDelay(long delay) {
+            fetchDelay = delay;
+        }
+        
+        public int getFetchCount() {
+            return fetchCount.get();
+        }
+        
         public MockDynamicResolver(Map<String, EntityDescriptor> map, Timer backgroundTaskTimer) {
             super(backgroundTaskTimer);
             originSourceMap = map;
         }
 
         protected XMLObject fetchFromOriginSource(@Nullable CriteriaSet criteria) throws IOException {
+            fetchCount.incrementAndGet();
+            if (fetchDelay > 0) {
+                try {
+                    Thread.sleep(fetchDelay);
+                } catch (final InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
             
             final EntityIdCriterion c1 = criteria != null ? criteria.get(EntityIdCriterion.class) : null;
             if (c1 != null) {
@@ -17,6 +17,14 @@ package org.opensaml.saml.metadata.resolver.impl;
 import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.testing.XMLObjectBaseTestCase;
@@ -33,6 +41,7 @@ import org.testng.annotations.Test;
 import net.shibboleth.shared.component.ComponentInitializationException;
 import net.shibboleth.shared.logic.PredicateSupport;
 import net.shibboleth.shared.resolver.CriteriaSet;
+import net.shibboleth.shared.resolver.ResolverException;
 
 @SuppressWarnings("javadoc")
 public class ChainingMetadataResolverTest extends XMLObjectBaseTestCase {
@@ -111,4 +120,135 @@ public class ChainingMetadataResolverTest extends XMLObjectBaseTestCase {
         }
     }
 
-}
\ No newline at end of file
+    @Test()
+    public void testConcurrentGetEntityDescriptor() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            metadataProvider.setExecutor(executor);
+            metadataProvider.initialize();
+            
+            EntityDescriptor descriptor =
+                    metadataProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID)));
+            assert descriptor != null;
+            Assert.assertEquals(descriptor.getEntityID(), entityID, "Entity's ID does not match requested ID");
+    
+            EntityDescriptor descriptor2 =
+                    metadataProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID2)));
+            assert descriptor2 != null;
+            Assert.assertEquals(descriptor2.getEntityID(), entityID2, "Entity's ID does not match requested ID");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test()
+    public void testConcurrentPriority() throws Exception {
+        final DelayedResolver slow = buildDelayedResolver("slow", 500);
+        final DelayedResolver fast = buildDelayedResolver("fast", 0);
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            metadataProvider = new ChainingMetadataResolver();
+            metadataProvider.setId("test");
+            metadataProvider.setResolvers(List.of(slow, fast));
+            metadataProvider.setExecutor(executor);
+            metadataProvider.initialize();
+            
+            final CriteriaSet criteria = new CriteriaSet(new EntityIdCriterion(entityID));
+            final EntityDescriptor descriptor = metadataProvider.resolveSingle(criteria);
+            Assert.assertNotNull(descriptor);
+            Assert.assertSame(descriptor, slow.resolveSingle(criteria),
+                    "Result should come from the earlier resolver");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test()
+    public void testConcurrentCancellation() throws Exception {
+        final DelayedResolver fast = buildDelayedResolver("fast", 0);
+        final DelayedResolver slow = buildDelayedResolver("slow", 60000);
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            metadataProvider = new ChainingMetadataResolver();
+            metadataProvider.setId("test");
+            metadataProvider.setResolvers(List.of(fast, slow));
+            metadataProvider.setExecutor(executor);
+            metadataProvider.initialize();
+            
+            final CriteriaSet criteria = new CriteriaSet(new EntityIdCriterion(entityID));
+            final EntityDescriptor descriptor = metadataProvider.resolveSingle(criteria);
+            Assert.assertSame(descriptor, fast.resolveSingle(criteria));
+            Assert.assertTrue(slow.interrupted.await(10, TimeUnit.SECONDS),
+                    "Outstanding lookup should have been cancelled");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test()
+    public void testConcurrentResolverCount() throws Exception {
+        final DelayedResolver first = buildDelayedResolver("first", 0);
+        final DelayedResolver second = buildDelayedResolver("second", 0);
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            metadataProvider = new ChainingMetadataResolver();
+            metadataProvider.setId("test");
+            metadataProvider.setResolvers(List.of(first, second));
+            metadataProvider.setExecutor(executor);
+            metadataProvider.setParallelResolverCount(1);
+            metadataProvider.initialize();
+            
+            Assert.assertNotNull(metadataProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID))));
+            Assert.assertEquals(first.called.getCount(), 0L);
+            Assert.assertEquals(second.called.getCount(), 1L, "Later resolver should not have been queried");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Nonnull private DelayedResolver buildDelayedResolver(@Nonnull final String id, final long delay)
+            throws Exception {
+        final URL mdURL = ChainingMetadataResolverTest.class
+                .getResource("/org/opensaml/saml/saml2/metadata/InCommon-metadata.xml");
+        final DelayedResolver resolver = new DelayedResolver(new File(mdURL.toURI()), delay);
+        resolver.setParserPool(parserPool);
+        resolver.setId(id);
+        resolver.initialize();
+        return resolver;
+    }
+
+    /** Resolver that delays its first lookup, and records whether it was interrupted while doing so. */
+    private static class DelayedResolver extends FilesystemMetadataResolver {
+
+        @Nonnull private final CountDownLatch interrupted = new CountDownLatch(1);
+
+        @Nonnull private final CountDownLatch called = new CountDownLatch(1);
+
+        private final long delay;
+
+        DelayedResolver(@Nonnull final File metadata, final long delayMillis) throws ResolverException {
+            super(metadata);
+            delay = delayMillis;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        @Nonnull public Iterable<EntityDescriptor> resolve(@Nullable final CriteriaSet criteria)
+                throws ResolverException {
+            if (called.getCount() > 0) {
+                called.countDown();
+                try {
+                    Thread.sleep(delay);
+                } catch (final InterruptedException e) {
+                    interrupted.countDown();
+                    throw new ResolverException(e);
+                }
+            }
+            return super.resolve(criteria);
+        }
+    }
+
+}
@@ -18,7 +18,17 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.shared.collection.CollectionSupport;
 import net.shibboleth.shared.component.ComponentInitializationException;
 import net.shibboleth.shared.logic.PredicateSupport;
 import net.shibboleth.shared.resolver.CriteriaSet;
@@ -26,7 +36,13 @@ import net.shibboleth.shared.resolver.ResolverException;
 
 import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.testing.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.metadata.resolver.index.impl.RoleMetadataIndex;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -224,6 +240,231 @@ public class FilesystemMetadataResolverTest extends XMLObjectBaseTestCase {
         }
     }
     
+    /**
+     * Tests that an incremental refresh carries over unchanged entities, and their index entries.
+     * 
+     * @throws Exception ...
+     */
+    @Test
+    public void testIncrementalRefresh() throws Exception {
+        final File targetFile = File.createTempFile("filesystem-md-provider-incremental", ".xml");
+        try {
+            Files.asCharSink(targetFile, StandardCharsets.UTF_8).write(buildAggregate(
+                    buildEntity("https://sp1.example.org", false, "https://sp1.example.org/acs"),
+                    buildEntity("https://sp2.example.org", false, "https://sp2.example.org/acs"),
+                    buildEntity("https://idp.example.org", true, "https://idp.example.org/sso")));
+            
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setIndexes(CollectionSupport.singleton(new RoleMetadataIndex()));
+            metadataProvider.setIncrementalRefresh(true);
+            metadataProvider.initialize();
+            
+            final EntityDescriptor sp1 = resolveEntity("https://sp1.example.org");
+            final EntityDescriptor sp2 = resolveEntity("https://sp2.example.org");
+            Assert.assertNotNull(sp1);
+            Assert.assertNotNull(sp2);
+            Assert.assertNotNull(resolveEntity("https://idp.example.org"));
+            Assert.assertEquals(resolveRole(SPSSODescriptor.DEFAULT_ELEMENT_NAME).size(), 2);
+            final XMLObject root = sp1.getParent();
+            Assert.assertNotNull(root);
+            
+            Files.asCharSink(targetFile, StandardCharsets.UTF_8).write(buildAggregate(
+                    buildEntity("https://sp1.example.org", false, "https://sp1.example.org/acs"),
+                    buildEntity("https://sp2.example.org", false, "https://sp2.example.org/changed"),
+                    buildEntity("https://sp3.example.org", false, "https://sp3.example.org/acs")));
+            Assert.assertTrue(targetFile.setLastModified(System.currentTimeMillis() + 60000));
+            metadataProvider.refresh();
+            
+            Assert.assertSame(resolveEntity("https://sp1.example.org"), sp1);
+            final XMLObject newRoot = sp1.getParent();
+            Assert.assertTrue(newRoot instanceof EntitiesDescriptor);
+            Assert.assertNotSame(newRoot, root);
+            Assert.assertTrue(((EntitiesDescriptor) newRoot).getEntityDescriptors().contains(sp1));
+            final EntityDescriptor newSP2 = resolveEntity("https://sp2.example.org");
+            Assert.assertNotNull(newSP2);
+            Assert.assertNotSame(newSP2, sp2);
+            Assert.assertNotNull(resolveEntity("https://sp3.example.org"));
+            Assert.assertNull(resolveEntity("https://idp.example.org"));
+            
+            final List<EntityDescriptor> sps = resolveRole(SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+            Assert.assertEquals(sps.size(), 3);
+            Assert.assertFalse(sps.contains(sp2));
+            Assert.assertTrue(resolveRole(IDPSSODescriptor.DEFAULT_ELEMENT_NAME).isEmpty());
+        } finally {
+            if (metadataProvider != null) {
+                metadataProvider.destroy();
+            }
+            targetFile.delete();
+        }
+    }
+
+    /**
+     * Tests that entities are unmarshalled on demand when materializing lazily.
+     * 
+     * @throws Exception ...
+     */
+    @Test
+    public void testLazyEntityMaterialization() throws Exception {
+        final File targetFile = File.createTempFile("filesystem-md-provider-lazy", ".xml");
+        try {
+            Files.asCharSink(targetFile, StandardCharsets.UTF_8).write(buildAggregate(
+                    buildEntity("https://sp1.example.org", false, "https://sp1.example.org/acs"),
+                    buildEntity("https://sp2.example.org", false, "https://sp2.example.org/acs"),
+                    buildEntity("https://idp.example.org", true, "https://idp.example.org/sso")));
+            
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setIndexes(CollectionSupport.singleton(new RoleMetadataIndex()));
+            metadataProvider.setLazyEntityMaterialization(true);
+            metadataProvider.setMaxMaterializedEntities(1);
+            metadataProvider.initialize();
+            
+            // Only the serialized entities are retained.
+            final EntitiesDescriptor filtered = (EntitiesDescriptor) metadataProvider.getCachedFilteredMetadata();
+            assert filtered != null;
+            Assert.assertTrue(filtered.getEntityDescriptors().isEmpty());
+            
+            final EntityDescriptor sp1 = resolveEntity("https://sp1.example.org");
+            assert sp1 != null;
+            Assert.assertEquals(sp1.getEntityID(), "https://sp1.example.org");
+            Assert.assertSame(sp1.getParent(), filtered);
+            Assert.assertNull(sp1.getDOM());
+            Assert.assertSame(resolveEntity("https://sp1.example.org"), sp1);
+            
+            // Only one entity is kept unmarshalled.
+            Assert.assertNotNull(resolveEntity("https://sp2.example.org"));
+            final EntityDescriptor newSP1 = resolveEntity("https://sp1.example.org");
+            Assert.assertNotNull(newSP1);
+            Assert.assertNotSame(newSP1, sp1);
+            Assert.assertNull(resolveEntity("https://sp3.example.org"));
+            
+            Assert.assertEquals(resolveRole(SPSSODescriptor.DEFAULT_ELEMENT_NAME).size(), 2);
+            Assert.assertEquals(resolveRole(IDPSSODescriptor.DEFAULT_ELEMENT_NAME).size(), 1);
+            
+            final List<String> entityIDs = new ArrayList<>();
+            metadataProvider.forEach(e -> entityIDs.add(e.getEntityID()));
+            Assert.assertEquals(entityIDs,
+                    List.of("https://sp1.example.org", "https://sp2.example.org", "https://idp.example.org"));
+        } finally {
+            if (metadataProvider != null) {
+                metadataProvider.destroy();
+            }
+            targetFile.delete();
+        }
+    }
+
+    /**
+     * Tests that entities are left untouched by an incremental refresh which doesn't take effect.
+     * 
+     * @throws Exception ...
+     */
+    @Test
+    public void testIncrementalRefreshNotTakingEffect() throws Exception {
+        final File targetFile = File.createTempFile("filesystem-md-provider-incremental", ".xml");
+        try {
+            final String sp1Entity = buildEntity("https://sp1.example.org", false, "https://sp1.example.org/acs");
+            Files.asCharSink(targetFile, StandardCharsets.UTF_8).write(buildAggregate(sp1Entity));
+            
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setIncrementalRefresh(true);
+            metadataProvider.initialize();
+            
+            final EntityDescriptor sp1 = resolveEntity("https://sp1.example.org");
+            Assert.assertNotNull(sp1);
+            final XMLObject root = sp1.getParent();
+            Assert.assertNotNull(root);
+            
+            // The entity is carried over by digest, but the expired document is rejected.
+            Files.asCharSink(targetFile, StandardCharsets.UTF_8).write(buildAggregate(sp1Entity,
+                    buildEntity("https://sp2.example.org", false, "https://sp2.example.org/acs"))
+                    .replace(" Name=", " validUntil=\"2000-01-01T00:00:00Z\" Name="));
+            Assert.assertTrue(targetFile.setLastModified(System.currentTimeMillis() + 60000));
+            metadataProvider.refresh();
+            
+            Assert.assertSame(resolveEntity("https://sp1.example.org"), sp1);
+            Assert.assertNull(resolveEntity("https://sp2.example.org"));
+            Assert.assertSame(sp1.getParent(), root);
+            Assert.assertTrue(((EntitiesDescriptor) root).getEntityDescriptors().contains(sp1));
+            
+            // Once a document is accepted, the entity is carried over into it.
+            Files.asCharSink(targetFile, StandardCharsets.UTF_8).write(buildAggregate(sp1Entity));
+            Assert.assertTrue(targetFile.setLastModified(System.currentTimeMillis() + 120000));
+            metadataProvider.refresh();
+            
+            Assert.assertSame(resolveEntity("https://sp1.example.org"), sp1);
+            Assert.assertNotSame(sp1.getParent(), root);
+        } finally {
+            if (metadataProvider != null) {
+                metadataProvider.destroy();
+            }
+            targetFile.delete();
+        }
+    }
+
+    @Nullable private EntityDescriptor resolveEntity(@Nonnull final String id) throws ResolverException {
+        return metadataProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion(id)));
+    }
+
+    @Nonnull private List<EntityDescriptor> resolveRole(@Nonnull final QName role) throws ResolverException {
+        final List<EntityDescriptor> entities = new ArrayList<>();
+        metadataProvider.resolve(new CriteriaSet(new EntityRoleCriterion(role))).forEach(entities::add);
+        return entities;
+    }
+
+    @Nonnull private String buildAggregate(@Nonnull final String... entities) {
+        return "<EntitiesDescriptor xmlns=\"urn:oasis:names:tc:SAML:2.0:metadata\" Name=\"urn:test:aggregate\">"
+                + String.join("", entities) + "</EntitiesDescriptor>";
+    }
+
+    @Nonnull private String buildEntity(@Nonnull final String id, final boolean idp, @Nonnull final String location) {
+        final String role = idp ? "IDPSSODescriptor" : "SPSSODescriptor";
+        final String endpoint = idp ? "SingleSignOnService" : "AssertionConsumerService index=\"1\"";
+        return "<EntityDescriptor entityID=\"" + id + "\"><" + role
+                + " protocolSupportEnumeration=\"urn:oasis:names:tc:SAML:2.0:protocol\"><" + endpoint
+                + " Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST\" Location=\"" + location + "\"/></"
+                + role + "></EntityDescriptor>";
+    }
+    
+    /**
+     * Tests refresh scheduling on a supplied task scheduler, with jitter.
+     * 
+     * @throws Exception ...
+     */
+    @Test
+    public void testTaskScheduler() throws Exception {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        try {
+            metadataProvider = new FilesystemMetadataResolver(mdFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.setTaskScheduler(scheduler);
+            metadataProvider.setRefreshJitter(0.5f);
+            metadataProvider.initialize();
+            
+            Assert.assertEquals(scheduler.getQueue().size(), 1);
+            final Instant lastRefresh = metadataProvider.getLastRefresh();
+            final Instant nextRefresh = metadataProvider.getNextRefresh();
+            assert lastRefresh != null && nextRefresh != null;
+            Assert.assertFalse(nextRefresh.isBefore(lastRefresh.plus(metadataProvider.getMinRefreshDelay())));
+            Assert.assertFalse(nextRefresh.isAfter(Instant.now().plus(metadataProvider.getMaxRefreshDelay())));
+            
+            // A manual refresh replaces the scheduled task.
+            metadataProvider.refresh();
+            Assert.assertEquals(scheduler.getQueue().size(), 1);
+            
+            metadataProvider.destroy();
+            Assert.assertTrue(scheduler.getQueue().isEmpty());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+    
     /**
      * Tests failfast init of false, with graceful recovery when file later appears.
      * 
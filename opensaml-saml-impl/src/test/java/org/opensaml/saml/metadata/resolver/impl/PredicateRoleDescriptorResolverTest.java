@@ -19,6 +19,7 @@ import java.util.List;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.testing.XMLObjectBaseTestCase;
 import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.criterion.EntityRoleCriterion;
@@ -34,8 +35,12 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.testng.collections.Lists;
 
+import com.google.common.collect.Iterables;
+
 import net.shibboleth.shared.component.ComponentInitializationException;
 import net.shibboleth.shared.resolver.CriteriaSet;
+import net.shibboleth.shared.resolver.Criterion;
+import net.shibboleth.shared.resolver.CriterionPredicateRegistry;
 import net.shibboleth.shared.resolver.ResolverException;
 
 @SuppressWarnings("javadoc")
@@ -365,6 +370,76 @@ public class PredicateRoleDescriptorResolverTest extends XMLObjectBaseTestCase {
         Assert.assertEquals(6, count, "Resolved unexpected number of RoleDescriptors");
     }
 
+    @Test
+    public void testMemoizedResults() throws ResolverException, ComponentInitializationException {
+        final List<EntityDescriptor> descriptors = Lists.newArrayList(buildTestDescriptor());
+        final CountingPredicateCriterion predicate = new CountingPredicateCriterion();
+        final CriterionPredicateRegistry<RoleDescriptor> registry = new CriterionPredicateRegistry<>();
+        registry.register(EntityIdCriterion.class, criterion -> predicate);
+        
+        PredicateRoleDescriptorResolver roleResolver = 
+                new PredicateRoleDescriptorResolver(new StaticMetadataResolver(descriptors));
+        roleResolver.setCriterionPredicateRegistry(registry);
+        roleResolver.setMemoizeResults(true);
+        roleResolver.initialize();
+        
+        // Equal criteria, and others with no bearing on the result
+        Assert.assertEquals(Iterables.size(roleResolver.resolve(new CriteriaSet(
+                new EntityRoleCriterion(SPSSODescriptor.DEFAULT_ELEMENT_NAME),
+                new ProtocolCriterion(SAMLConstants.SAML20P_NS), new EntityIdCriterion("urn:test:foo"),
+                new IdentityCriterion()))), 1);
+        Assert.assertEquals(predicate.count, 1);
+        Assert.assertEquals(Iterables.size(roleResolver.resolve(new CriteriaSet(
+                new EntityRoleCriterion(SPSSODescriptor.DEFAULT_ELEMENT_NAME),
+                new ProtocolCriterion(SAMLConstants.SAML20P_NS), new EntityIdCriterion("urn:test:foo"),
+                new IdentityCriterion()))), 1);
+        Assert.assertEquals(predicate.count, 1);
+        
+        // Different criteria
+        final CriteriaSet criteria = new CriteriaSet(new EntityRoleCriterion(SPSSODescriptor.DEFAULT_ELEMENT_NAME),
+                new EntityIdCriterion("urn:test:foo"));
+        Assert.assertEquals(Iterables.size(roleResolver.resolve(criteria)), 2);
+        Assert.assertEquals(predicate.count, 3);
+        
+        // Criteria carrying predicates, which don't compare by value
+        final CountingPredicateCriterion evaluable = new CountingPredicateCriterion();
+        criteria.add(evaluable);
+        Assert.assertEquals(Iterables.size(roleResolver.resolve(criteria)), 2);
+        Assert.assertEquals(Iterables.size(roleResolver.resolve(criteria)), 2);
+        Assert.assertEquals(evaluable.count, 4);
+        criteria.remove(evaluable);
+        
+        // Refreshed metadata
+        descriptors.set(0, buildTestDescriptor());
+        Assert.assertEquals(Iterables.size(roleResolver.resolve(criteria)), 2);
+        Assert.assertEquals(predicate.count, 9);
+        
+        // Not memoized by default
+        roleResolver = new PredicateRoleDescriptorResolver(new StaticMetadataResolver(descriptors));
+        roleResolver.setCriterionPredicateRegistry(registry);
+        roleResolver.initialize();
+        Assert.assertFalse(roleResolver.isMemoizeResults());
+        Assert.assertEquals(Iterables.size(roleResolver.resolve(criteria)), 2);
+        Assert.assertEquals(Iterables.size(roleResolver.resolve(criteria)), 2);
+        Assert.assertEquals(predicate.count, 13);
+    }
+    
+    @Test
+    public void testRoleType() throws ResolverException, ComponentInitializationException {
+        PredicateRoleDescriptorResolver roleResolver = 
+                new PredicateRoleDescriptorResolver(new StaticMetadataResolver(Lists.newArrayList(buildTestDescriptor())));
+        roleResolver.initialize();
+        
+        RoleDescriptor roleDescriptor = roleResolver.resolveSingle(new CriteriaSet(
+                new EntityRoleCriterion(AttributeQueryDescriptorType.TYPE_NAME),
+                new ProtocolCriterion(SAMLConstants.SAML20P_NS)));
+        Assert.assertTrue(roleDescriptor instanceof AttributeQueryDescriptorType);
+        
+        roleDescriptor = roleResolver.resolveSingle(new CriteriaSet(
+                new EntityRoleCriterion(AttributeQueryDescriptorType.TYPE_NAME),
+                new ProtocolCriterion(SAMLConstants.SAML11P_NS)));
+        Assert.assertNull(roleDescriptor);
+    }
     
     // Helper methods
     
@@ -424,6 +499,22 @@ public class PredicateRoleDescriptorResolverTest extends XMLObjectBaseTestCase {
         }
     }
     
+    public static class IdentityCriterion implements Criterion {
+        
+    }
+    
+    public static class CountingPredicateCriterion implements EvaluableRoleDescriptorCriterion {
+        
+        private int count;
+        
+        /** {@inheritDoc} */
+        public boolean test(RoleDescriptor input) {
+            count++;
+            return true;
+        }
+        
+    }
+    
     public static class BooleanPredicateCriterion implements EvaluableRoleDescriptorCriterion {
         
         private boolean result;
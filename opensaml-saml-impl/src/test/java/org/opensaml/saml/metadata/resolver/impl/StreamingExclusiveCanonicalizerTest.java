@@ -0,0 +1,219 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.opensaml.core.testing.XMLObjectBaseTestCase;
+import org.opensaml.saml.metadata.resolver.impl.StreamingExclusiveCanonicalizer.Attribute;
+import org.opensaml.saml.metadata.resolver.impl.StreamingExclusiveCanonicalizer.NamespaceScope;
+import org.opensaml.saml.metadata.resolver.impl.StreamingExclusiveCanonicalizer.StartTag;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Tests for {@link StreamingExclusiveCanonicalizer}, comparing its digests with those of Santuario's exclusive
+ * canonicalization of the same document element.
+ */
+@SuppressWarnings("javadoc")
+public class StreamingExclusiveCanonicalizerTest extends XMLObjectBaseTestCase {
+
+    @Test
+    public void testDefaultNamespace() throws Exception {
+        assertSameDigest("<root xmlns='urn:test:a' xmlns:p='urn:test:p'><child xmlns=''><p:leaf/><leaf/></child>"
+                + "<child><leaf xmlns='urn:test:b'/></child></root>", null);
+    }
+
+    @Test
+    public void testUnrenderedDefaultNamespaceUndeclaration() throws Exception {
+        assertSameDigest("<p:root xmlns:p='urn:test:p' xmlns='urn:test:a'><p:child><leaf xmlns=''/></p:child>"
+                + "<leaf/></p:root>", null);
+    }
+
+    @Test
+    public void testInclusivePrefixes() throws Exception {
+        final String xml = "<p:root xmlns:p='urn:test:p' xmlns='urn:test:a' xmlns:q='urn:test:q' "
+                + "xmlns:r='urn:test:r'><p:child><q:leaf/></p:child><child xmlns=''/></p:root>";
+        assertSameDigest(xml, "#default q");
+        assertSameDigest(xml, "#default");
+        assertSameDigest(xml, "r unbound");
+    }
+
+    @Test
+    public void testAttributeOrder() throws Exception {
+        assertSameDigest("<root xmlns:b='urn:test:a' xmlns:a='urn:test:b' a:z='1' z='2' b:y='3' a='4' a:a='5' "
+                + "xml:lang='en'><child b:b='6' b='7' a:b='8'/></root>", null);
+    }
+
+    @Test
+    public void testEscaping() throws Exception {
+        assertSameDigest("<root value='a&amp;b&lt;c&quot;d&#x9;e&#xA;f&#xD;g>h&apos;i\tj'>"
+                + "text &amp; more &lt; less > greater &#xD;\r\n\t\"quoted\" 'single'"
+                + "<![CDATA[<cdata> & ]]><child value=\"&#x9;&#xD;&#xA;\">&#xD;&#xA;</child></root>", null);
+    }
+
+    @Test
+    public void testProcessingInstructions() throws Exception {
+        assertSameDigest("<?outside before?><root><?pi data?><?empty?><child><?pi  spaced  data ?></child>"
+                + "<!-- comment --><?pi &amp; <?></root><?outside after?>", null);
+    }
+
+    /**
+     * Assert that the streamed digest of a document element matches Santuario's.
+     *
+     * @param xml the document
+     * @param prefixList the <code>InclusiveNamespaces</code> prefix list, or null
+     *
+     * @throws Exception if an error occurs
+     */
+    private void assertSameDigest(@Nonnull final String xml, @Nullable final String prefixList) throws Exception {
+        final Document document = parserPool.parse(new StringReader(xml));
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_EXCL_OMIT_COMMENTS).canonicalizeSubtree(
+                document.getDocumentElement(), prefixList, expected);
+
+        Assert.assertEquals(streamDigest(xml, prefixList),
+                MessageDigest.getInstance("SHA-256").digest(expected.toByteArray()), expected.toString());
+    }
+
+    /**
+     * Compute the digest of a document element as {@link StreamingMetadataParser} does.
+     *
+     * @param xml the document
+     * @param prefixList the <code>InclusiveNamespaces</code> prefix list, or null
+     *
+     * @return the digest
+     *
+     * @throws Exception if an error occurs
+     */
+    @Nonnull private byte[] streamDigest(@Nonnull final String xml, @Nullable final String prefixList)
+            throws Exception {
+        final Set<String> prefixes = new HashSet<>();
+        if (prefixList != null) {
+            for (final String prefix : prefixList.split(" ")) {
+                prefixes.add("#default".equals(prefix) ? "" : prefix);
+            }
+        }
+        final StreamingExclusiveCanonicalizer canonicalizer =
+                new StreamingExclusiveCanonicalizer(MessageDigest.getInstance("SHA-256"), prefixes);
+
+        final XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        final XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(xml));
+
+        final Deque<NamespaceScope> scopes = new ArrayDeque<>();
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    scopes.push(new NamespaceScope(scopes.peek(), getDeclared(reader)));
+                    canonicalizer.startElement(readStartTag(reader, scopes.element()));
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    canonicalizer.endElement();
+                    scopes.pop();
+                    break;
+
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (!scopes.isEmpty()) {
+                        canonicalizer.characters(reader.getText());
+                    }
+                    break;
+
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    if (!scopes.isEmpty()) {
+                        canonicalizer.processingInstruction(reader.getPITarget(), reader.getPIData());
+                    }
+                    break;
+
+                default:
+            }
+        }
+        reader.close();
+
+        return canonicalizer.finish();
+    }
+
+    /**
+     * Get the namespace declarations on the current element.
+     *
+     * @param reader the reader
+     *
+     * @return the declarations
+     */
+    @Nonnull private Map<String,String> getDeclared(@Nonnull final XMLStreamReader reader) {
+        if (reader.getNamespaceCount() == 0) {
+            return Collections.emptyMap();
+        }
+        final Map<String,String> declared = new HashMap<>();
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            declared.put(emptyIfNull(reader.getNamespacePrefix(i)), emptyIfNull(reader.getNamespaceURI(i)));
+        }
+        return declared;
+    }
+
+    /**
+     * Read the current start tag.
+     *
+     * @param reader the reader
+     * @param scope the namespace declarations in scope
+     *
+     * @return the start tag
+     */
+    @Nonnull private StartTag readStartTag(@Nonnull final XMLStreamReader reader,
+            @Nonnull final NamespaceScope scope) {
+        final Attribute[] attributes = new Attribute[reader.getAttributeCount()];
+        for (int i = 0; i < attributes.length; i++) {
+            attributes[i] = new Attribute(emptyIfNull(reader.getAttributePrefix(i)),
+                    emptyIfNull(reader.getAttributeNamespace(i)), reader.getAttributeLocalName(i),
+                    reader.getAttributeValue(i));
+        }
+        return new StartTag(emptyIfNull(reader.getPrefix()), emptyIfNull(reader.getNamespaceURI()),
+                reader.getLocalName(), attributes, scope);
+    }
+
+    /**
+     * Map null to the empty string.
+     *
+     * @param value the value
+     *
+     * @return the value, or the empty string
+     */
+    @Nonnull private static String emptyIfNull(@Nullable final String value) {
+        return value != null ? value : "";
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.testing.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.metadata.resolver.filter.data.impl.StreamedMetadata;
+import org.opensaml.saml.metadata.resolver.filter.impl.SignatureValidationFilter;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialSupport;
+import org.opensaml.security.credential.impl.StaticCredentialResolver;
+import org.opensaml.security.crypto.KeySupport;
+import org.opensaml.xmlsec.SignatureSigningParameters;
+import org.opensaml.xmlsec.config.impl.DefaultSecurityConfigurationBootstrap;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureSupport;
+import org.opensaml.xmlsec.signature.support.Signer;
+import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.w3c.dom.Element;
+
+import net.shibboleth.shared.annotation.constraint.NonnullBeforeTest;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.xml.SerializeSupport;
+
+/** Tests for {@link StreamingMetadataParser} and streaming ingestion by {@link AbstractReloadingMetadataResolver}. */
+@SuppressWarnings("javadoc")
+public class StreamingMetadataParserTest extends XMLObjectBaseTestCase {
+
+    private static final int ENTITIES = 20;
+
+    @NonnullBeforeTest private Credential signingCredential;
+
+    @NonnullBeforeTest private ExplicitKeySignatureTrustEngine trustEngine;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        final KeyPair keyPair = KeySupport.generateKeyPair("RSA", 2048, null);
+        signingCredential = CredentialSupport.getSimpleCredential(keyPair.getPublic(), keyPair.getPrivate());
+        trustEngine = new ExplicitKeySignatureTrustEngine(
+                new StaticCredentialResolver(CredentialSupport.getSimpleCredential(keyPair.getPublic(), null)),
+                DefaultSecurityConfigurationBootstrap.buildBasicInlineKeyInfoCredentialResolver());
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        final String aggregate = buildAggregate(false, false);
+        final StreamingMetadataParser parser =
+                new StreamingMetadataParser(parserPool, XMLObjectProviderRegistrySupport.getUnmarshallerFactory());
+
+        final List<String> seen = new ArrayList<>();
+        final EntitiesDescriptor root = parser.parse(
+                new ByteArrayInputStream(aggregate.getBytes(StandardCharsets.UTF_8)), entity -> {
+                    Assert.assertNotNull(entity.getParent());
+                    seen.add(entity.getEntityID());
+                    return entity.getEntityID().contains("sp1") ? null : entity;
+                });
+        assert root != null;
+
+        Assert.assertEquals(seen.size(), ENTITIES);
+        Assert.assertEquals(root.getName(), "urn:test:aggregate");
+        Assert.assertEquals(root.getEntitiesDescriptors().size(), 1);
+        Assert.assertEquals(root.getEntitiesDescriptors().get(0).getName(), "urn:test:nested");
+        Assert.assertFalse(root.getObjectMetadata().get(StreamedMetadata.class).isEmpty());
+
+        final List<String> retained = new ArrayList<>();
+        collectEntityIDs(root, retained);
+        Assert.assertEquals(retained.size(), ENTITIES - 11);
+        for (final String entityID : retained) {
+            Assert.assertFalse(entityID.contains("sp1"));
+        }
+    }
+
+    @Test
+    public void testNotEntitiesDescriptor() throws Exception {
+        final EntityDescriptor entity = buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+        entity.setEntityID("https://sp.example.org/shibboleth");
+        final String document = SerializeSupport.nodeToString(XMLObjectSupport.marshall(entity));
+
+        final StreamingMetadataParser parser =
+                new StreamingMetadataParser(parserPool, XMLObjectProviderRegistrySupport.getUnmarshallerFactory());
+        Assert.assertNull(parser.parse(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)),
+                e -> e));
+    }
+
+    @Test
+    public void testSignedAggregate() throws Exception {
+        final File file = writeAggregate(buildAggregate(true, false));
+        try {
+            final List<String> expected = resolve(file, false);
+            Assert.assertEquals(expected.size(), ENTITIES - ENTITIES / 5);
+            for (final String entityID : expected) {
+                Assert.assertFalse(entityID.contains("tampered"));
+            }
+
+            Assert.assertEquals(resolve(file, true), expected);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testTamperedAggregate() throws Exception {
+        final File file = writeAggregate(buildAggregate(true, true));
+        try {
+            for (final boolean streaming : new boolean[] {false, true}) {
+                try {
+                    resolve(file, streaming);
+                    Assert.fail("Tampered aggregate should have been rejected");
+                } catch (final ComponentInitializationException e) {
+                    // expected
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Load an aggregate with a signature verifying resolver.
+     *
+     * @param file the aggregate
+     * @param streaming whether to use streaming ingestion
+     *
+     * @return the entityIDs loaded, in document order
+     *
+     * @throws Exception if an error occurs
+     */
+    @Nonnull private List<String> resolve(@Nonnull final File file, final boolean streaming) throws Exception {
+        final SignatureValidationFilter filter = new SignatureValidationFilter(trustEngine);
+        filter.initialize();
+
+        final FilesystemMetadataResolver resolver = new FilesystemMetadataResolver(file);
+        resolver.setId("test");
+        resolver.setParserPool(parserPool);
+        resolver.setMetadataFilter(filter);
+        resolver.setStreamingIngestion(streaming);
+        resolver.initialize();
+        try {
+            final List<String> entityIDs = new ArrayList<>();
+            for (final EntityDescriptor entity : resolver) {
+                entityIDs.add(entity.getEntityID());
+            }
+            return entityIDs;
+        } finally {
+            resolver.destroy();
+        }
+    }
+
+    private void collectEntityIDs(@Nonnull final EntitiesDescriptor group, @Nonnull final List<String> entityIDs) {
+        for (final EntityDescriptor entity : group.getEntityDescriptors()) {
+            entityIDs.add(entity.getEntityID());
+        }
+        for (final EntitiesDescriptor child : group.getEntitiesDescriptors()) {
+            collectEntityIDs(child, entityIDs);
+        }
+    }
+
+    @Nonnull private File writeAggregate(@Nonnull final String aggregate) throws Exception {
+        final File file = File.createTempFile("streaming-metadata", ".xml");
+        Files.writeString(file.toPath(), aggregate);
+        return file;
+    }
+
+    /**
+     * Build an aggregate, including a nested group, of entities every other one of which is individually signed,
+     * and every fifth of which has been altered after signing.
+     *
+     * @param signRoot whether to sign the aggregate
+     * @param tamperRoot whether to alter the aggregate after signing
+     *
+     * @return the serialized aggregate
+     *
+     * @throws Exception if an error occurs
+     */
+    @Nonnull private String buildAggregate(final boolean signRoot, final boolean tamperRoot) throws Exception {
+        final SignatureSigningParameters params = new SignatureSigningParameters();
+        params.setSigningCredential(signingCredential);
+        params.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        params.setSignatureCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        params.setSignatureReferenceDigestMethod(SignatureConstants.ALGO_ID_DIGEST_SHA256);
+
+        final EntitiesDescriptor root = buildXMLObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        root.setName("urn:test:aggregate");
+        root.setID("_aggregate");
+        final EntitiesDescriptor nested = buildXMLObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        nested.setName("urn:test:nested");
+        root.getEntitiesDescriptors().add(nested);
+
+        Signature rootSignature = null;
+        if (signRoot) {
+            rootSignature = buildXMLObject(Signature.DEFAULT_ELEMENT_NAME);
+            SignatureSupport.prepareSignatureParams(rootSignature, params);
+            root.setSignature(rootSignature);
+        }
+
+        final List<EntityDescriptor> entities = new ArrayList<>();
+        final List<Signature> signatures = new ArrayList<>();
+        for (int i = 0; i < ENTITIES; i++) {
+            final EntityDescriptor entity = buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+            entity.setEntityID("https://sp" + i + ".example.org/shibboleth");
+            entity.setID("_entity" + i);
+            if (i % 2 == 0 || i % 5 == 0) {
+                final Signature signature = buildXMLObject(Signature.DEFAULT_ELEMENT_NAME);
+                SignatureSupport.prepareSignatureParams(signature, params);
+                entity.setSignature(signature);
+                signatures.add(signature);
+            }
+            entities.add(entity);
+            if (i % 2 == 0) {
+                root.getEntityDescriptors().add(entity);
+            } else {
+                nested.getEntityDescriptors().add(entity);
+            }
+        }
+
+        final Element element = XMLObjectSupport.marshall(root);
+        Signer.signObjects(signatures);
+
+        for (int i = 0; i < ENTITIES; i += 5) {
+            setEntityID(entities.get(i), "https://tampered" + i + ".example.org/shibboleth");
+        }
+
+        if (rootSignature != null) {
+            Signer.signObject(rootSignature);
+            if (tamperRoot) {
+                setEntityID(entities.get(1), "https://tampered.example.org/shibboleth");
+            }
+        }
+
+        return SerializeSupport.nodeToString(element);
+    }
+
+    private void setEntityID(@Nonnull final XMLObject entity, @Nonnull final String entityID) {
+        final Element entityElement = entity.getDOM();
+        assert entityElement != null;
+        entityElement.setAttributeNS(null, EntityDescriptor.ENTITY_ID_ATTRIB_NAME, entityID);
+    }
+
+}
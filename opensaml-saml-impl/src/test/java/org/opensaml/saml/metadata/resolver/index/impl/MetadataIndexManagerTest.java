@@ -344,6 +344,41 @@ public class MetadataIndexManagerTest extends XMLObjectBaseTestCase {
         Assert.assertTrue(result.get().contains(c));
     }
     
+    @Test
+    public void testCopy() {
+        RoleMetadataIndex roleIndex = new RoleMetadataIndex();
+        
+        MetadataIndexManager<EntityDescriptor> manager =
+                new MetadataIndexManager<>(CollectionSupport.singleton(roleIndex), extractionFunction);
+        
+        manager.indexEntityDescriptor(a);
+        manager.indexEntityDescriptor(b);
+        
+        final MetadataIndexManager<EntityDescriptor> copy = new MetadataIndexManager<>(manager);
+        copy.deindexEntityDescriptor(a);
+        copy.indexEntityDescriptor(c);
+        
+        criteriaSet.clear();
+        criteriaSet.add(roleCritSP);
+        result = manager.lookupIndexedItems(criteriaSet);
+        Assert.assertTrue(result.isPresent());
+        Assert.assertEquals(result.get(), CollectionSupport.setOf(a, b));
+        
+        result = copy.lookupIndexedItems(criteriaSet);
+        Assert.assertTrue(result.isPresent());
+        Assert.assertEquals(result.get(), CollectionSupport.singleton(b));
+        
+        criteriaSet.clear();
+        criteriaSet.add(roleCritIDP);
+        result = manager.lookupIndexedItems(criteriaSet);
+        Assert.assertTrue(result.isPresent());
+        Assert.assertEquals(result.get(), CollectionSupport.singleton(b));
+        
+        result = copy.lookupIndexedItems(criteriaSet);
+        Assert.assertTrue(result.isPresent());
+        Assert.assertEquals(result.get(), CollectionSupport.setOf(b, c));
+    }
+    
     @Test
     public void testNoIndexes() {
         MetadataIndexManager<EntityDescriptor> manager =
@@ -155,5 +155,53 @@ public class MetadataIndexStoreTest extends OpenSAMLInitBaseTestCase {
         Assert.assertTrue(store.lookup(key1).isEmpty());
         Assert.assertTrue(store.lookup(key2).isEmpty());
     }
+    
+    @Test
+    public void testCopy() {
+        store.add(key1, a);
+        store.add(key1, b);
+        store.add(key2, c);
+        
+        final MetadataIndexStore<EntityDescriptor> copy = new MetadataIndexStore<>(store);
+        copy.remove(key1, a);
+        copy.add(key2, a);
+        
+        Assert.assertEquals(store.lookup(key1), Set.of(a, b));
+        Assert.assertEquals(store.lookup(key2), Set.of(c));
+        Assert.assertEquals(copy.lookup(key1), Set.of(b));
+        Assert.assertEquals(copy.lookup(key2), Set.of(a, c));
+    }
+    
+    @Test
+    public void testSharedItemTable() {
+        final MetadataIndexItemTable<EntityDescriptor> table = new MetadataIndexItemTable<>();
+        final MetadataIndexStore<EntityDescriptor> store1 = new MetadataIndexStore<>(table);
+        final MetadataIndexStore<EntityDescriptor> store2 = new MetadataIndexStore<>(table);
+        
+        store1.add(key1, a);
+        store1.add(key2, a);
+        store2.add(key1, a);
+        store2.add(key1, b);
+        Assert.assertEquals(table.size(), 2);
+        
+        store1.remove(key1, a);
+        store2.remove(key1, a);
+        Assert.assertEquals(table.size(), 2);
+        Assert.assertEquals(store1.lookup(key2), Set.of(a));
+        
+        store1.clear();
+        Assert.assertEquals(table.size(), 1);
+        Assert.assertTrue(store1.getKeys().isEmpty());
+        
+        // Recycled ordinal
+        store1.add(key1, c);
+        Assert.assertEquals(table.size(), 2);
+        Assert.assertEquals(store1.lookup(key1), Set.of(c));
+        Assert.assertEquals(store2.lookup(key1), Set.of(b));
+        
+        store1.clear();
+        store2.clear();
+        Assert.assertEquals(table.size(), 0);
+    }
 
 }
@@ -165,4 +165,65 @@ public class HTTPPostEncoderTest extends XMLObjectBaseTestCase {
         assert submit != null;
         Assert.assertEquals(submit.val(), "Continue");
     }
+
+    @Test
+    public void testPrecompiledTemplate() throws Exception {
+        final SAMLObjectBuilder<Response> requestBuilder =
+                (SAMLObjectBuilder<Response>) builderFactory.<Response>ensureBuilder(Response.DEFAULT_ELEMENT_NAME);
+        final Response samlMessage = requestBuilder.buildObject();
+        samlMessage.setID("foo");
+        samlMessage.setIssueInstant(Instant.ofEpochMilli(0));
+        samlMessage.setVersion(SAMLVersion.VERSION_11);
+
+        for (final String relayState : new String[] {null, "relay", "r\u00e9lay \"&<>\""}) {
+            final MockHttpServletResponse velocity = encode(samlMessage, relayState, false);
+            final MockHttpServletResponse precompiled = encode(samlMessage, relayState, true);
+            Assert.assertEquals(precompiled.getContentAsByteArray(), velocity.getContentAsByteArray());
+            Assert.assertEquals(precompiled.getHeaderNames(), velocity.getHeaderNames());
+            for (final String name : velocity.getHeaderNames()) {
+                Assert.assertEquals(precompiled.getHeaders(name), velocity.getHeaders(name));
+            }
+        }
+    }
+
+    /**
+     * Encode a message, using the Velocity template or its precompiled form.
+     * 
+     * @param message message to encode
+     * @param relayState relay state, or null
+     * @param precompile whether to use the precompiled template
+     * 
+     * @return the response the message was encoded to
+     * 
+     * @throws Exception if something goes wrong
+     */
+    private MockHttpServletResponse encode(final Response message, final String relayState, final boolean precompile)
+            throws Exception {
+        final SAMLObjectBuilder<Endpoint> endpointBuilder =
+                (SAMLObjectBuilder<Endpoint>) builderFactory.<Endpoint>ensureBuilder(AssertionConsumerService.DEFAULT_ELEMENT_NAME);
+        final Endpoint samlEndpoint = endpointBuilder.buildObject();
+        samlEndpoint.setLocation("http://example.org/post?a=1&b=2");
+
+        final MessageContext messageContext = new MessageContext();
+        messageContext.setMessage(message);
+        SAMLBindingSupport.setRelayState(messageContext, relayState);
+        messageContext.ensureSubcontext(SAMLPeerEntityContext.class)
+            .ensureSubcontext(SAMLEndpointContext.class).setEndpoint(samlEndpoint);
+
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        final HTTPPostEncoder encoder = new HTTPPostEncoder();
+        encoder.setMessageContext(messageContext);
+        encoder.setHttpServletResponseSupplier(new ConstantSupplier<>(response));
+        encoder.setVelocityEngine(velocityEngine);
+        encoder.setCSPDigester(new StringDigester("SHA-256", OutputFormat.HEX_LOWER));
+        encoder.setPrecompileTemplate(precompile);
+
+        encoder.initialize();
+        encoder.prepareContext();
+        encoder.encode();
+
+        return response;
+    }
+
 }
\ No newline at end of file
@@ -115,6 +115,73 @@ public class HTTPRedirectDeflateDecoderTest extends XMLObjectBaseTestCase {
         decoder.decode();    
     } 
 
+    /**
+     * Test decoding a request that inflates beyond the configured limit.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test(expectedExceptions = MessageDecodingException.class)
+    public void testInflatedSizeLimit() throws Exception {
+        final AuthnRequest samlRequest =
+                (AuthnRequest) unmarshallElement("/org/opensaml/saml/saml2/binding/AuthnRequest.xml");
+        assert samlRequest != null;
+        samlRequest.setDestination(null);
+
+        httpRequest.setParameter("SAMLRequest", encodeMessage(samlRequest));
+
+        decoder = new HTTPRedirectDeflateDecoder();
+        decoder.setParserPool(parserPool);
+        decoder.setHttpServletRequestSupplier(new ConstantSupplier<>(httpRequest));
+        decoder.setMaxInflatedSize(64);
+        decoder.initialize();
+        decoder.decode();
+    }
+
+    /**
+     * Test decoding a request with line breaks in the Base64 data.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testChunkedRequestDecoding() throws Exception {
+        final AuthnRequest samlRequest =
+                (AuthnRequest) unmarshallElement("/org/opensaml/saml/saml2/binding/AuthnRequest.xml");
+        assert samlRequest != null;
+        samlRequest.setDestination(null);
+
+        final String encoded = encodeMessage(samlRequest);
+        final StringBuilder chunked = new StringBuilder();
+        for (int i = 0; i < encoded.length(); i += 76) {
+            chunked.append(encoded, i, Math.min(encoded.length(), i + 76)).append("\r\n");
+        }
+        httpRequest.setParameter("SAMLRequest", chunked.toString());
+
+        decoder.decode();
+        final MessageContext messageContext = decoder.getMessageContext();
+        assert messageContext != null;
+
+        Assert.assertTrue(messageContext.getMessage() instanceof RequestAbstractType);
+    }
+
+    /**
+     * Test decoding a request encoded with the URL-safe Base64 alphabet, which is not valid for this binding.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test(expectedExceptions = MessageDecodingException.class)
+    public void testURLSafeRequestDecoding() throws Exception {
+        final AuthnRequest samlRequest =
+                (AuthnRequest) unmarshallElement("/org/opensaml/saml/saml2/binding/AuthnRequest.xml");
+        assert samlRequest != null;
+        samlRequest.setDestination(null);
+
+        final String encoded = encodeMessage(samlRequest);
+        Assert.assertTrue(encoded.indexOf('+') >= 0 || encoded.indexOf('/') >= 0);
+        httpRequest.setParameter("SAMLRequest", encoded.replace('+', '-').replace('/', '_'));
+
+        decoder.decode();
+    }
+
     @Test
     public void testExplicitDefaultSAMLEncoding() 
             throws MessageDecodingException, MessageEncodingException, MarshallingException, EncodingException {
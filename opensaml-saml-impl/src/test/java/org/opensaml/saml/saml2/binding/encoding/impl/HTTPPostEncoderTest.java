@@ -29,6 +29,7 @@ import org.opensaml.core.testing.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.saml.common.SAMLObject;
 import org.opensaml.saml.common.SAMLObjectBuilder;
 import org.opensaml.saml.common.SAMLVersion;
 import org.opensaml.saml.common.binding.SAMLBindingSupport;
@@ -284,4 +285,74 @@ public class HTTPPostEncoderTest extends XMLObjectBaseTestCase {
         Assert.assertEquals(submit.val(), "Continue");
         
     }
+
+    @Test
+    public void testPrecompiledTemplate() throws Exception {
+        SAMLObjectBuilder<AuthnRequest> requestBuilder =
+                (SAMLObjectBuilder<AuthnRequest>) builderFactory.<AuthnRequest>ensureBuilder(AuthnRequest.DEFAULT_ELEMENT_NAME);
+        AuthnRequest request = requestBuilder.buildObject();
+        request.setID("foo");
+        request.setVersion(SAMLVersion.VERSION_20);
+        request.setIssueInstant(Instant.ofEpochMilli(0));
+
+        SAMLObjectBuilder<Response> responseBuilder =
+                (SAMLObjectBuilder<Response>) builderFactory.<Response>ensureBuilder(Response.DEFAULT_ELEMENT_NAME);
+        Response response = responseBuilder.buildObject();
+        response.setID("bar");
+        response.setVersion(SAMLVersion.VERSION_20);
+        response.setIssueInstant(Instant.ofEpochMilli(0));
+
+        for (final SAMLObject message : List.of(request, response)) {
+            for (final String relayState : new String[] {null, "relay", "r\u00e9lay \"&<>\""}) {
+                final MockHttpServletResponse velocity = encode(message, relayState, false);
+                final MockHttpServletResponse precompiled = encode(message, relayState, true);
+                Assert.assertEquals(precompiled.getContentAsByteArray(), velocity.getContentAsByteArray());
+                Assert.assertEquals(precompiled.getHeaderNames(), velocity.getHeaderNames());
+                for (final String name : velocity.getHeaderNames()) {
+                    Assert.assertEquals(precompiled.getHeaders(name), velocity.getHeaders(name));
+                }
+            }
+        }
+    }
+
+    /**
+     * Encode a message, using the Velocity template or its precompiled form.
+     * 
+     * @param message message to encode
+     * @param relayState relay state, or null
+     * @param precompile whether to use the precompiled template
+     * 
+     * @return the response the message was encoded to
+     * 
+     * @throws Exception if something goes wrong
+     */
+    private MockHttpServletResponse encode(final SAMLObject message, final String relayState, final boolean precompile)
+            throws Exception {
+        SAMLObjectBuilder<AssertionConsumerService> endpointBuilder =
+                (SAMLObjectBuilder<AssertionConsumerService>) builderFactory.<AssertionConsumerService>ensureBuilder(
+                        AssertionConsumerService.DEFAULT_ELEMENT_NAME);
+        AssertionConsumerService samlEndpoint = endpointBuilder.buildObject();
+        samlEndpoint.setLocation("http://example.org/post?a=1&b=2");
+
+        MessageContext messageContext = new MessageContext();
+        messageContext.setMessage(message);
+        SAMLBindingSupport.setRelayState(messageContext, relayState);
+        messageContext.ensureSubcontext(SAMLPeerEntityContext.class)
+            .ensureSubcontext(SAMLEndpointContext.class).setEndpoint(samlEndpoint);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        HTTPPostEncoder encoder = new HTTPPostEncoder();
+        encoder.setMessageContext(messageContext);
+        encoder.setHttpServletResponseSupplier(new ConstantSupplier<>(response));
+        encoder.setVelocityEngine(velocityEngine);
+        encoder.setCSPDigester(new StringDigester("SHA-256", OutputFormat.HEX_LOWER));
+        encoder.setPrecompileTemplate(precompile);
+
+        encoder.initialize();
+        encoder.prepareContext();
+        encoder.encode();
+
+        return response;
+    }
 }
@@ -419,4 +419,75 @@ public class HTTPPostSimpleSignEncoderTest extends XMLObjectBaseTestCase {
         // Need to verify that we're signing over the right data in the right byte[] encoded form.
     }
     
+    @Test
+    public void testPrecompiledTemplateWithSimpleSign() throws Exception {
+        SAMLObjectBuilder<AuthnRequest> requestBuilder =
+                (SAMLObjectBuilder<AuthnRequest>) builderFactory.<AuthnRequest>ensureBuilder(AuthnRequest.DEFAULT_ELEMENT_NAME);
+        AuthnRequest samlMessage = requestBuilder.buildObject();
+        samlMessage.setID("foo");
+        samlMessage.setVersion(SAMLVersion.VERSION_20);
+        samlMessage.setIssueInstant(Instant.ofEpochMilli(0));
+
+        // RSA PKCS#1 v1.5 signatures are deterministic, so the outputs are comparable.
+        KeyPair kp = KeySupport.generateKeyPair("RSA", 1024, null);
+        SignatureSigningParameters signingParameters = new SignatureSigningParameters();
+        final Credential signingCredential = CredentialSupport.getSimpleCredential(kp.getPublic(), kp.getPrivate());
+        signingParameters.setSigningCredential(signingCredential);
+        signingParameters.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        NamedKeyInfoGeneratorManager kiManager = DefaultSecurityConfigurationBootstrap.buildBasicKeyInfoGeneratorManager();
+        signingParameters.setKeyInfoGenerator(KeyInfoSupport.getKeyInfoGenerator(signingCredential, kiManager, null));
+
+        for (final SignatureSigningParameters params : new SignatureSigningParameters[] {null, signingParameters}) {
+            final MockHttpServletResponse velocity = encode(samlMessage, params, false);
+            final MockHttpServletResponse precompiled = encode(samlMessage, params, true);
+            Assert.assertEquals(precompiled.getContentAsByteArray(), velocity.getContentAsByteArray());
+            Assert.assertEquals(precompiled.getHeader("Content-Security-Policy"),
+                    velocity.getHeader("Content-Security-Policy"));
+        }
+    }
+
+    /**
+     * Encode a message, using the Velocity template or its precompiled form.
+     * 
+     * @param message message to encode
+     * @param signingParameters signing parameters, or null
+     * @param precompile whether to use the precompiled template
+     * 
+     * @return the response the message was encoded to
+     * 
+     * @throws Exception if something goes wrong
+     */
+    private MockHttpServletResponse encode(final AuthnRequest message,
+            final SignatureSigningParameters signingParameters, final boolean precompile) throws Exception {
+        SAMLObjectBuilder<Endpoint> endpointBuilder =
+                (SAMLObjectBuilder<Endpoint>) builderFactory.<Endpoint>ensureBuilder(AssertionConsumerService.DEFAULT_ELEMENT_NAME);
+        Endpoint samlEndpoint = endpointBuilder.buildObject();
+        samlEndpoint.setLocation("http://example.org");
+
+        MessageContext messageContext = new MessageContext();
+        messageContext.setMessage(message);
+        SAMLBindingSupport.setRelayState(messageContext, "relay");
+        messageContext.ensureSubcontext(SAMLPeerEntityContext.class)
+            .ensureSubcontext(SAMLEndpointContext.class).setEndpoint(samlEndpoint);
+        if (signingParameters != null) {
+            messageContext.ensureSubcontext(SecurityParametersContext.class)
+                .setSignatureSigningParameters(signingParameters);
+        }
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        HTTPPostSimpleSignEncoder encoder = new HTTPPostSimpleSignEncoder();
+        encoder.setMessageContext(messageContext);
+        encoder.setHttpServletResponseSupplier(new ConstantSupplier<>(response));
+        encoder.setVelocityEngine(velocityEngine);
+        encoder.setCSPDigester(new StringDigester("SHA-256", OutputFormat.HEX_LOWER));
+        encoder.setPrecompileTemplate(precompile);
+
+        encoder.initialize();
+        encoder.prepareContext();
+        encoder.encode();
+
+        return response;
+    }
+
 }
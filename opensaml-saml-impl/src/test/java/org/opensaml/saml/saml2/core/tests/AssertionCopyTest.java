@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.core.tests;
+
+import org.opensaml.core.testing.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.io.CopyingException;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.core.xml.util.XMLObjectSupport.CloneOutputOption;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.xmlsec.signature.Signature;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.w3c.dom.Element;
+
+/**
+ * Tests copying assertions directly, without a round trip through the DOM.
+ */
+@SuppressWarnings("javadoc")
+public class AssertionCopyTest extends XMLObjectBaseTestCase {
+
+    /** Response containing the assertion to copy. */
+    private static final String ELEMENT_FILE = "/org/opensaml/saml/saml2/core/ResponseSuccessAuthnAttrib.xml";
+
+    @Test
+    public void testCopy() throws CopyingException, MarshallingException, UnmarshallingException {
+        final Response response = unmarshallElement(ELEMENT_FILE);
+        assert response != null;
+        final Assertion assertion = response.getAssertions().get(0);
+
+        final Assertion copy = XMLObjectSupport.copyXMLObject(assertion);
+        Assert.assertNotSame(copy, assertion);
+        Assert.assertNull(copy.getDOM());
+        Assert.assertNull(copy.getParent());
+        Assert.assertEquals(copy.getID(), assertion.getID());
+        Assert.assertSame(copy.resolveIDFromRoot("_a75adf55-01d7-40cc-929f-dbd8372ebdfc"), copy);
+
+        final Attribute attribute = copy.getAttributeStatements().get(0).getAttributes().get(0);
+        Assert.assertEquals(attribute.getAttributeValues().size(), 2);
+        Assert.assertTrue(attribute.getAttributeValues().get(0) instanceof XSString);
+        Assert.assertSame(attribute.getParent(), copy.getAttributeStatements().get(0));
+
+        final Element expected = XMLObjectSupport.cloneXMLObject(assertion,
+                CloneOutputOption.RootDOMInNewDocument).getDOM();
+        assert expected != null;
+        assertXMLEquals(expected.getOwnerDocument(), copy);
+    }
+
+    @Test
+    public void testCopyIsIndependent() throws CopyingException {
+        final Response response = unmarshallElement(ELEMENT_FILE);
+        assert response != null;
+        final Assertion assertion = response.getAssertions().get(0);
+
+        final Assertion copy = XMLObjectSupport.copyXMLObject(assertion);
+        copy.setID("_copy");
+        copy.getAttributeStatements().get(0).getAttributes().get(0).setName("urn:bar:attrib");
+
+        Assert.assertEquals(assertion.getID(), "_a75adf55-01d7-40cc-929f-dbd8372ebdfc");
+        Assert.assertEquals(assertion.getAttributeStatements().get(0).getAttributes().get(0).getName(),
+                "urn:foo:attrib");
+        Assert.assertNotNull(assertion.getDOM());
+    }
+
+    @Test(expectedExceptions = CopyingException.class)
+    public void testSignedAssertion() throws CopyingException {
+        final Assertion assertion = buildXMLObject(Assertion.DEFAULT_ELEMENT_NAME);
+        assertion.setID("_signed");
+        final Signature signature = buildXMLObject(Signature.DEFAULT_ELEMENT_NAME);
+        assertion.setSignature(signature);
+
+        XMLObjectSupport.copyXMLObject(assertion);
+    }
+
+}
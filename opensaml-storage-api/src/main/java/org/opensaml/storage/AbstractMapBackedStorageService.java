@@ -31,6 +31,7 @@ import net.shibboleth.shared.collection.CollectionSupport;
 import net.shibboleth.shared.collection.Pair;
 import net.shibboleth.shared.primitive.LoggerFactory;
 
+import org.opensaml.storage.expiration.ExpirationIndex;
 import org.slf4j.Logger;
 
 /**
@@ -39,6 +40,14 @@ import org.slf4j.Logger;
  * 
  * <p>Abstract methods supply the map of data to manipulate and the lock to use, which allows
  * optimizations in cases where locking isn't required or data isn't shared.</p> 
+ * 
+ * <p>By default a single lock guards all data. Subclasses may override {@link #getContextLock(String)},
+ * {@link #lockRecord(String, String, boolean)} and {@link #unlockRecord(String, String, boolean)} to lock
+ * contexts and records independently, in which case they must also supply thread-safe maps via
+ * {@link #getContextMap()} and {@link #newContextDataMap()}.</p>
+ * 
+ * <p>An optional {@link ExpirationIndex} may be supplied, in which case every record expiration that is set
+ * is scheduled with it, allowing subclasses to locate expired records without scanning every context.</p>
  */
 public abstract class AbstractMapBackedStorageService extends AbstractStorageService
         implements EnumeratableStorageService {
@@ -46,6 +55,9 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractMapBackedStorageService.class);
 
+    /** Optional index of record expirations. */
+    @Nullable private ExpirationIndex<Pair<String,String>> expirationIndex;
+
     /** Constructor. */
     public AbstractMapBackedStorageService() {
         setContextSize(Integer.MAX_VALUE);
@@ -53,14 +65,39 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
         setValueSize(Integer.MAX_VALUE);
     }
 
+    /**
+     * Get the index of record expirations, keyed by context and key.
+     * 
+     * @return the expiration index, or null
+     * 
+     * @since 5.1.0
+     */
+    @Nullable public ExpirationIndex<Pair<String,String>> getExpirationIndex() {
+        return expirationIndex;
+    }
+
+    /**
+     * Set an index of record expirations, keyed by context and key.
+     * 
+     * <p>The index is only populated by this class; whether and how it is used to evict records is up
+     * to subclasses.</p>
+     * 
+     * @param index the expiration index, or null
+     * 
+     * @since 5.1.0
+     */
+    public void setExpirationIndex(@Nullable final ExpirationIndex<Pair<String,String>> index) {
+        checkSetterPreconditions();
+        
+        expirationIndex = index;
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean create(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
             @Nonnull @NotEmpty final String value, @Nullable final Long expiration) throws IOException {
-        final Lock writeLock = getLock().writeLock();
-        
         try {
-            writeLock.lock();
+            lockRecord(context, key, true);
             
             final Map<String,Map<String,MutableStorageRecord<?>>> contextMap;
             try {
@@ -69,15 +106,9 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
                 throw new IOException(e);
             }
             
-            // Create new context if necessary.
-            Map<String, MutableStorageRecord<?>> dataMap = contextMap.get(context);
-            if (dataMap == null) {
-                dataMap = new HashMap<>();
-                contextMap.put(context, dataMap);
-            }
-            
             // Check for a duplicate.
-            final StorageRecord<?> record = dataMap.get(key);
+            final Map<String, MutableStorageRecord<?>> existing = contextMap.get(context);
+            final StorageRecord<?> record = existing != null ? existing.get(key) : null;
             if (record != null) {
                 // Not yet expired?
                 if (record.isValid(System.currentTimeMillis())) {
@@ -87,7 +118,14 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
                 // It's dead, so we can just remove it now and create the new record.
             }
             
-            dataMap.put(key, new MutableStorageRecord<>(value, expiration));
+            // Insert, creating the context if necessary, atomically with respect to the pruning of empty contexts.
+            final MutableStorageRecord<?> newRecord = new MutableStorageRecord<>(value, expiration);
+            contextMap.compute(context, (c, dataMap) -> {
+                final Map<String, MutableStorageRecord<?>> target = dataMap != null ? dataMap : newContextDataMap();
+                target.put(key, newRecord);
+                return target;
+            });
+            scheduleExpiration(context, key, expiration);
             log.trace("Inserted record '{}' in context '{}' with expiration '{}'",
                     new Object[] { key, context, expiration });
             
@@ -95,7 +133,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
             return true;
             
         } finally {
-            writeLock.unlock();
+            unlockRecord(context, key, true);
         }
     }
     
@@ -165,7 +203,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
     @Override
     public void updateContextExpiration(@Nonnull @NotEmpty final String context, @Nullable final Long expiration)
             throws IOException {
-        final Lock writeLock = getLock().writeLock();
+        final Lock writeLock = getContextLock(context).writeLock();
         
         try {
             writeLock.lock();
@@ -181,9 +219,12 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
             if (dataMap != null) {    
                 setDirty();
                 final long now = System.currentTimeMillis();
-                for (final MutableStorageRecord<?> record : dataMap.values()) {
-                    if (record.isValid(now)) {
-                        record.setExpiration(expiration);
+                for (final Map.Entry<String, MutableStorageRecord<?>> entry : dataMap.entrySet()) {
+                    if (entry.getValue().isValid(now)) {
+                        entry.getValue().setExpiration(expiration);
+                        final String key = entry.getKey();
+                        assert key != null;
+                        scheduleExpiration(context, key, expiration);
                     }
                 }
                 log.debug("Updated expiration of valid records in context '{}' to '{}'", context, expiration);
@@ -197,7 +238,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
     @Override
     public void deleteContext(@Nonnull @NotEmpty final String context) throws IOException {
         
-        final Lock writeLock = getLock().writeLock();
+        final Lock writeLock = getContextLock(context).writeLock();
         
         try {
             writeLock.lock();
@@ -218,7 +259,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
     @Override
     public void reap(@Nonnull @NotEmpty final String context) throws IOException {
 
-        final Lock writeLock = getLock().writeLock();
+        final Lock writeLock = getContextLock(context).writeLock();
         
         try {
             writeLock.lock();
@@ -249,7 +290,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
     /** {@inheritDoc} */
     @Nonnull public Iterable<String> getContextKeys(@Nonnull @NotEmpty final String context,
             @Nullable final String prefix) throws IOException {
-        final Lock readLock = getLock().readLock();
+        final Lock readLock = getContextLock(context).readLock();
         
         try {
             readLock.lock();
@@ -286,10 +327,84 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
      */
     @Nonnull protected abstract ReadWriteLock getLock();
 
+    /**
+     * Get the lock guarding operations that span an entire context.
+     * 
+     * <p>The write lock is held while a context is reaped, deleted, or has its expiration updated,
+     * and the read lock while its keys are enumerated.</p>
+     * 
+     * <p>The default implementation returns the shared lock from {@link #getLock()}.</p>
+     * 
+     * @param context a storage context label
+     * 
+     * @return lock for the context
+     * 
+     * @since 5.1.0
+     */
+    @Nonnull protected ReadWriteLock getContextLock(@Nonnull @NotEmpty final String context) {
+        return getLock();
+    }
+
+    /**
+     * Acquire the lock guarding operations on a single record.
+     * 
+     * <p>Implementations that lock records separately from their context must ensure that the
+     * lock also excludes the holder of the context's write lock.</p>
+     * 
+     * <p>The default implementation acquires the read or write half of the shared lock from
+     * {@link #getLock()}.</p>
+     * 
+     * @param context a storage context label
+     * @param key a key unique to context
+     * @param write true iff the record may be modified under cover of the lock
+     * 
+     * @since 5.1.0
+     */
+    protected void lockRecord(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            final boolean write) {
+        if (write) {
+            getLock().writeLock().lock();
+        } else {
+            getLock().readLock().lock();
+        }
+    }
+
+    /**
+     * Release a lock acquired by {@link #lockRecord(String, String, boolean)}.
+     * 
+     * @param context a storage context label
+     * @param key a key unique to context
+     * @param write true iff the lock was acquired for writing
+     * 
+     * @since 5.1.0
+     */
+    protected void unlockRecord(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            final boolean write) {
+        if (write) {
+            getLock().writeLock().unlock();
+        } else {
+            getLock().readLock().unlock();
+        }
+    }
+
+    /**
+     * Creates an empty map to hold the records of a new context.
+     * 
+     * <p>The default implementation returns a {@link HashMap}.</p>
+     * 
+     * @return new map of records
+     * 
+     * @since 5.1.0
+     */
+    @Nonnull protected Map<String, MutableStorageRecord<?>> newContextDataMap() {
+        return new HashMap<>();
+    }
+
     /**
      * Get the map of contexts to manipulate during operations.
      * 
-     * <p>This method is guaranteed to be called under cover the lock returned by {{@link #getLock()}.</p>
+     * <p>This method is guaranteed to be called under cover of a lock obtained from
+     * {@link #getContextLock(String)} or {@link #lockRecord(String, String, boolean)}.</p>
      * 
      * @return map of contexts to manipulate
      * 
@@ -301,7 +416,8 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
     /**
      * A callback to indicate that data has been modified.
      * 
-     * <p>This method is guaranteed to be called under cover the lock returned by {{@link #getLock()}.</p>
+     * <p>This method is guaranteed to be called under cover of a lock obtained from
+     * {@link #getContextLock(String)} or {@link #lockRecord(String, String, boolean)}.</p>
      * 
      * @throws IOException to signal an error
      */
@@ -324,9 +440,8 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
     @Nonnull protected <T> Pair<Long,StorageRecord<T>> readImpl(@Nonnull @NotEmpty final String context,
             @Nonnull @NotEmpty final String key, @Nullable final Long version) throws IOException {
 
-        final Lock readLock = getLock().readLock();
         try {
-            readLock.lock();
+            lockRecord(context, key, false);
             
             final Map<String,Map<String,MutableStorageRecord<?>>> contextMap;
             
@@ -361,7 +476,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
             return new Pair<>(record.getVersion(), (StorageRecord<T>) record);
             
         } finally {
-            readLock.unlock();
+            unlockRecord(context, key, false);
         }
     }
 
@@ -382,10 +497,8 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
             @Nonnull @NotEmpty final String key, @Nullable final String value, @Nullable final Long expiration)
                     throws IOException, VersionMismatchException {
 
-        final Lock writeLock = getLock().writeLock();
-        
         try {
-            writeLock.lock();
+            lockRecord(context, key, true);
             
             final Map<String,Map<String,MutableStorageRecord<?>>> contextMap;
             try {
@@ -424,6 +537,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
             }
     
             record.setExpiration(expiration);
+            scheduleExpiration(context, key, expiration);
     
             log.trace("Updated record '{}' in context '{}' with expiration '{}'",
                     new Object[] { key, context, expiration });
@@ -431,7 +545,7 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
             return record.getVersion();
             
         } finally {
-            writeLock.unlock();
+            unlockRecord(context, key, true);
         }
     }
     
@@ -449,10 +563,8 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
     protected boolean deleteImpl(@Nullable @Positive final Long version, @Nonnull @NotEmpty final String context,
             @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
 
-        final Lock writeLock = getLock().writeLock();
-        
         try {
-            writeLock.lock();
+            lockRecord(context, key, true);
 
             final Map<String,Map<String,MutableStorageRecord<?>>> contextMap;
             try {
@@ -477,16 +589,31 @@ public abstract class AbstractMapBackedStorageService extends AbstractStorageSer
                 setDirty();
                 dataMap.remove(key);
                 log.trace("Deleted record '{}' in context '{}'", key, context);
-                if (dataMap.isEmpty()) {
-                    contextMap.remove(context);
-                }
+                // Remove the context if now empty, atomically with respect to insertion by create.
+                contextMap.computeIfPresent(context, (c, m) -> m.isEmpty() ? null : m);
                 return true;
             }
         } finally {
-            writeLock.unlock();
+            unlockRecord(context, key, true);
         }
     }
     
+    /**
+     * Schedules a record's expiration with the expiration index, if any.
+     * 
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param expiration    expiration for record, or null
+     * 
+     * @since 5.1.0
+     */
+    protected void scheduleExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nullable final Long expiration) {
+        if (expirationIndex != null && expiration != null) {
+            expirationIndex.schedule(new Pair<>(context, key), expiration);
+        }
+    }
+
     /**
      * Locates and removes expired records from the input map.
      * 
@@ -0,0 +1,191 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage;
+
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.annotation.constraint.Positive;
+import net.shibboleth.shared.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.IdentifiedComponent;
+
+/**
+ * Non-blocking variant of the core {@link StorageService} operations.
+ * 
+ * <p>Each operation has the same semantics as its {@link StorageService} counterpart, but returns immediately
+ * with a future that completes with the result. Where the blocking operation would throw an exception,
+ * the future instead completes exceptionally with it, typically an {@link java.io.IOException} or a
+ * {@link VersionMismatchException}.</p>
+ * 
+ * <p>Futures may be completed on an I/O thread of the implementation, so dependent actions that do
+ * significant work should be run asynchronously on an executor of the caller's choosing.</p>
+ * 
+ * @since 5.1.0
+ */
+@ThreadSafeAfterInit
+public interface AsyncStorageService extends IdentifiedComponent {
+
+    /**
+     * Returns the capabilities of the underlying store.
+     *
+     * @return interface to access the service's capabilities
+     */
+    @Nonnull StorageCapabilities getCapabilities();
+
+    /**
+     * Creates a new record in the store with an expiration.
+     * 
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param value         value to store
+     * @param expiration    expiration for record, or null
+     * 
+     * @return  future completing with true iff record was inserted, false iff a duplicate was found
+     */
+    @Nonnull CompletableFuture<Boolean> create(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration);
+
+    /**
+     * Returns an existing record from the store, if one exists.
+     *
+     * @param <T>           type of record
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * 
+     * @return  future completing with the record read back, if present, or null
+     */
+    @Nonnull <T> CompletableFuture<StorageRecord<T>> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key);
+
+    /**
+     * Returns an existing record from the store, along with its version.
+     * 
+     * @param <T>           type of record
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param version       only return record if newer than supplied version
+     * 
+     * @return  future completing with a pair consisting of the version of the record read back, if any,
+     *          and the record itself, as for {@link StorageService#read(String, String, long)}
+     */
+    @Nonnull <T> CompletableFuture<Pair<Long,StorageRecord<T>>> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Positive final long version);
+
+    /**
+     * Updates an existing record in the store.
+     * 
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param value         updated value
+     * @param expiration    expiration for record, or null
+     * 
+     * @return  future completing with true if the update succeeded, false if the record does not exist
+     */
+    @Nonnull CompletableFuture<Boolean> update(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration);
+
+    /**
+     * Updates an existing record in the store, if a version matches.
+     * 
+     * <p>The future completes exceptionally with a {@link VersionMismatchException} if the record has
+     * already been updated to a newer version.</p>
+     * 
+     * @param version       only update if the current version matches this value
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param value         updated value
+     * @param expiration    expiration for record, or null
+     * 
+     * @return  future completing with the version of the record after update, null if no record exists
+     */
+    @Nonnull CompletableFuture<Long> updateWithVersion(@Positive final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration);
+
+    /**
+     * Updates expiration of an existing record in the store.
+     * 
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * @param expiration    expiration for record, or null
+     * 
+     * @return  future completing with true if the update succeeded, false if the record does not exist
+     */
+    @Nonnull CompletableFuture<Boolean> updateExpiration(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nullable @Positive final Long expiration);
+
+    /**
+     * Deletes an existing record from the store.
+     * 
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * 
+     * @return  future completing with true iff the record existed and was deleted
+     */
+    @Nonnull CompletableFuture<Boolean> delete(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key);
+
+    /**
+     * Deletes an existing record from the store if it currently has a specified version.
+     * 
+     * <p>The future completes exceptionally with a {@link VersionMismatchException} if the record has
+     * already been updated to a newer version.</p>
+     * 
+     * @param version       record version to delete
+     * @param context       a storage context label
+     * @param key           a key unique to context
+     * 
+     * @return  future completing with true iff the record existed and was deleted
+     */
+    @Nonnull CompletableFuture<Boolean> deleteWithVersion(@Positive final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key);
+
+    /**
+     * Manually trigger a cleanup of expired records.
+     * 
+     * @param context       a storage context label
+     * 
+     * @return  future completing when the cleanup has been triggered
+     */
+    @Nonnull CompletableFuture<Void> reap(@Nonnull @NotEmpty final String context);
+
+    /**
+     * Updates the expiration time of all records in the context.
+     * 
+     * @param context       a storage context label
+     * @param expiration    a new expiration timestamp, or null
+     * 
+     * @return  future completing when the update is complete
+     */
+    @Nonnull CompletableFuture<Void> updateContextExpiration(@Nonnull @NotEmpty final String context,
+            @Nullable final Long expiration);
+
+    /**
+     * Forcibly removes all records in a given context along with any
+     * associated resources devoted to maintaining the context.
+     * 
+     * @param context       a storage context label
+     * 
+     * @return  future completing when the context has been removed
+     */
+    @Nonnull CompletableFuture<Void> deleteContext(@Nonnull @NotEmpty final String context);
+
+}
@@ -15,6 +15,7 @@
 package org.opensaml.storage;
 
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
 
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
@@ -39,4 +40,23 @@ public interface ReplayCache {
     boolean check(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
             @Nonnull final Instant expires);
 
-}
\ No newline at end of file
+    /**
+     * Performs the same check as {@link #check(String, String, Instant)} but without necessarily
+     * blocking the caller.
+     * 
+     * <p>The default implementation performs the check synchronously.</p>
+     * 
+     * @param context   a context label to subdivide the cache
+     * @param key       key to check
+     * @param expires   time for disposal of value from cache
+     * 
+     * @return future completing with true iff the check value is not found in the cache
+     * 
+     * @since 5.1.0
+     */
+    @Nonnull default CompletableFuture<Boolean> checkAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull final Instant expires) {
+        return CompletableFuture.completedFuture(check(context, key, expires));
+    }
+
+}
@@ -58,4 +58,31 @@ public interface StorageCapabilities {
      */
     boolean isClustered();
 
-}
\ No newline at end of file
+    /**
+     * Returns true iff the implementation's create operations are atomic "insert if absent" primitives,
+     * such that concurrent attempts to create the same record are guaranteed to result in exactly one
+     * success.
+     * 
+     * <p>Callers may rely on this to avoid external synchronization around a read followed by a create.</p>
+     * 
+     * @return true iff record creation is atomic with respect to concurrent creation of the same record
+     * 
+     * @since 5.1.0
+     */
+    default boolean isCreateAtomic() {
+        return false;
+    }
+
+    /**
+     * Returns true iff the implementation performs the batch operations of {@link StorageService} natively,
+     * rather than as a sequence of single-record operations.
+     * 
+     * @return true iff batch operations are implemented natively
+     * 
+     * @since 5.1.0
+     */
+    default boolean isBatchNative() {
+        return false;
+    }
+
+}
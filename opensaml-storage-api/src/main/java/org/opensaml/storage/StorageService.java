@@ -15,6 +15,11 @@
 package org.opensaml.storage;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -22,6 +27,8 @@ import javax.annotation.Nullable;
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 import net.shibboleth.shared.annotation.constraint.Positive;
 import net.shibboleth.shared.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.shared.annotation.constraint.Unmodifiable;
+import net.shibboleth.shared.collection.CollectionSupport;
 import net.shibboleth.shared.collection.Pair;
 import net.shibboleth.shared.component.IdentifiedComponent;
 
@@ -44,6 +51,11 @@ import net.shibboleth.shared.component.IdentifiedComponent;
  * recovered. It is not sufficient to ensure that records expire; the actual
  * value is used in many cases as part of the data set being stored and cannot be
  * perturbed.</p>
+ * 
+ * <p>Batch variants of the create, read, and delete operations are provided for callers operating on
+ * several records in a context at once. The default implementations simply loop over the single-record
+ * operations; implementations able to do better advertise this via
+ * {@link StorageCapabilities#isBatchNative()}.</p>
  */
 @ThreadSafeAfterInit
 public interface StorageService extends IdentifiedComponent {
@@ -367,5 +379,82 @@ public interface StorageService extends IdentifiedComponent {
      * @throws IOException  if errors occur in the cleanup process
      */
     void deleteContext(@Nonnull @NotEmpty final String context) throws IOException;
-    
-}
\ No newline at end of file
+
+    /**
+     * Creates a set of new records in a context with a common expiration.
+     * 
+     * <p>Each record is created independently, as if by {@link #create(String, String, String, Long)},
+     * so the failure of one due to a duplicate does not affect the others.</p>
+     * 
+     * @param context       a storage context label
+     * @param values        map of keys unique to context to the values to store
+     * @param expiration    expiration for the records, or null
+     * 
+     * @return  the keys of the records that were inserted
+     * @throws IOException  if fatal errors occur in the insertion process
+     * 
+     * @since 5.1.0
+     */
+    @Nonnull @Unmodifiable default Set<String> createAll(@Nonnull @NotEmpty final String context,
+            @Nonnull final Map<String,String> values, @Nullable @Positive final Long expiration) throws IOException {
+        final Set<String> created = new LinkedHashSet<>(values.size());
+        for (final Map.Entry<String,String> entry : values.entrySet()) {
+            final String key = entry.getKey();
+            final String value = entry.getValue();
+            assert key != null && value != null;
+            if (create(context, key, value, expiration)) {
+                created.add(key);
+            }
+        }
+        return CollectionSupport.copyToSet(created);
+    }
+
+    /**
+     * Returns the existing records in a context matching a set of keys.
+     * 
+     * @param <T>           type of record
+     * @param context       a storage context label
+     * @param keys          keys unique to context
+     * 
+     * @return  map of keys to the records read back, omitting any that do not exist
+     * @throws IOException  if errors occur in the read process
+     * 
+     * @since 5.1.0
+     */
+    @Nonnull @Unmodifiable default <T> Map<String,StorageRecord<T>> readAll(@Nonnull @NotEmpty final String context,
+            @Nonnull final Collection<String> keys) throws IOException {
+        final Map<String,StorageRecord<T>> records = new LinkedHashMap<>(keys.size());
+        for (final String key : keys) {
+            assert key != null;
+            final StorageRecord<T> record = read(context, key);
+            if (record != null) {
+                records.put(key, record);
+            }
+        }
+        return CollectionSupport.copyToMap(records);
+    }
+
+    /**
+     * Deletes a set of existing records from a context.
+     * 
+     * @param context       a storage context label
+     * @param keys          keys unique to context
+     * 
+     * @return  the keys of the records that existed and were deleted
+     * @throws IOException  if errors occur in the deletion process
+     * 
+     * @since 5.1.0
+     */
+    @Nonnull @Unmodifiable default Set<String> deleteAll(@Nonnull @NotEmpty final String context,
+            @Nonnull final Collection<String> keys) throws IOException {
+        final Set<String> deleted = new LinkedHashSet<>(keys.size());
+        for (final String key : keys) {
+            assert key != null;
+            if (delete(context, key)) {
+                deleted.add(key);
+            }
+        }
+        return CollectionSupport.copyToSet(deleted);
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.expiration;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.shared.annotation.constraint.NonNegative;
+import net.shibboleth.shared.annotation.constraint.Positive;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * {@link ExpirationIndex} that groups keys into fixed-size time buckets, kept in order of expiration.
+ * 
+ * <p>This is in effect a timing wheel with an unbounded number of slots, only the occupied ones being
+ * materialized. Scheduling a key costs one ordered map operation per bucket and a hash insertion, and
+ * expiring keys costs work proportional to the number of keys in elapsed buckets, regardless of the
+ * number of keys still pending.</p>
+ * 
+ * <p>Only buckets that have fully elapsed are processed, so keys may be evicted up to one bucket width
+ * after their expiration.</p>
+ * 
+ * @param <K> type of key
+ * 
+ * @since 5.1.0
+ */
+@ThreadSafe
+public class BucketedExpirationIndex<K> implements ExpirationIndex<K> {
+
+    /** Default bucket width. */
+    @Nonnull public static final Duration DEFAULT_BUCKET_WIDTH = Duration.ofSeconds(1);
+
+    /** Buckets of keys indexed by tick. */
+    @Nonnull private final ConcurrentSkipListMap<Long,Set<K>> buckets;
+
+    /** Bucket width in milliseconds. */
+    @Positive private final long width;
+
+    /** Constructor. */
+    public BucketedExpirationIndex() {
+        this(DEFAULT_BUCKET_WIDTH);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param bucketWidth span of time covered by each bucket
+     */
+    public BucketedExpirationIndex(@Nonnull final Duration bucketWidth) {
+        Constraint.isNotNull(bucketWidth, "Bucket width cannot be null");
+        width = Constraint.isGreaterThan(0, bucketWidth.toMillis(), "Bucket width must be at least 1ms");
+        buckets = new ConcurrentSkipListMap<>();
+    }
+
+    /** {@inheritDoc} */
+    public void schedule(@Nonnull final K key, final long expiration) {
+        // compute() rather than computeIfAbsent() so that an insertion racing with the removal of the bucket
+        // fails its final CAS and is retried against a fresh bucket, instead of landing in a discarded set.
+        buckets.compute(Math.floorDiv(expiration, width), (tick, keys) -> {
+            final Set<K> result = keys != null ? keys : ConcurrentHashMap.newKeySet();
+            result.add(key);
+            return result;
+        });
+    }
+
+    /** {@inheritDoc} */
+    @NonNegative public int expire(final long now, @Nonnull final Function<K,Long> reaper) {
+        final long currentTick = Math.floorDiv(now, width);
+        int released = 0;
+        
+        Map.Entry<Long,Set<K>> bucket = buckets.firstEntry();
+        while (bucket != null && bucket.getKey() < currentTick) {
+            if (buckets.remove(bucket.getKey(), bucket.getValue())) {
+                for (final K key : bucket.getValue()) {
+                    final Long expiration = reaper.apply(key);
+                    if (expiration != null) {
+                        schedule(key, Math.max(expiration, now));
+                    } else {
+                        released++;
+                    }
+                }
+            }
+            bucket = buckets.firstEntry();
+        }
+        
+        return released;
+    }
+
+    /**
+     * Get the number of occupied buckets.
+     * 
+     * @return number of occupied buckets
+     */
+    @NonNegative public int getBucketCount() {
+        return buckets.size();
+    }
+
+}
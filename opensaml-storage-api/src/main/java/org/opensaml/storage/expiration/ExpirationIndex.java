@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.expiration;
+
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.shared.annotation.constraint.NonNegative;
+
+/**
+ * An index of keys ordered by expiration, allowing expired entries in some external store to be located
+ * without scanning the store.
+ * 
+ * <p>The index is advisory. Keys are scheduled whenever their expiration is set or changed, and are never
+ * unscheduled; instead, at expiration time the owner of the data is consulted to evict the key or report
+ * its current expiration. This keeps the index free of any coordination with updates and deletions in
+ * the underlying store.</p>
+ * 
+ * @param <K> type of key
+ * 
+ * @since 5.1.0
+ */
+@ThreadSafe
+public interface ExpirationIndex<K> {
+
+    /**
+     * Schedule a key for expiration.
+     * 
+     * <p>Scheduling a key more than once is harmless.</p>
+     * 
+     * @param key key to schedule
+     * @param expiration expiration of the key in milliseconds since the epoch
+     */
+    void schedule(@Nonnull final K key, final long expiration);
+
+    /**
+     * Process keys scheduled to expire up to a given time.
+     * 
+     * <p>The supplied function is called for each key and is expected to evict the key from the
+     * underlying store if it has expired. It returns null if the key no longer needs to be tracked
+     * (because it was evicted, no longer exists, or no longer expires), or the current expiration of
+     * the key, if it has been extended, in which case the key is rescheduled.</p>
+     * 
+     * <p>Implementations may defer keys whose scheduled expiration is close to the supplied time to a
+     * subsequent call.</p>
+     * 
+     * @param now time at which to evaluate expiration, in milliseconds since the epoch
+     * @param reaper function to evict a key and report its remaining expiration, if any
+     * 
+     * @return number of keys that are no longer tracked
+     */
+    @NonNegative int expire(final long now, @Nonnull final Function<K,Long> reaper);
+
+}
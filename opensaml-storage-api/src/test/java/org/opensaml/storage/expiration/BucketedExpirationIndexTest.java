@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.expiration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import net.shibboleth.shared.logic.ConstraintViolationException;
+
+/**
+ * Unit test for {@link BucketedExpirationIndex}.
+ */
+@Test
+public class BucketedExpirationIndexTest {
+
+    /**
+     * Test that only fully elapsed buckets are processed.
+     */
+    public void testBucketBoundaries() {
+        final BucketedExpirationIndex<String> index = new BucketedExpirationIndex<>(Duration.ofSeconds(1));
+        index.schedule("a", 1000);
+        index.schedule("b", 1999);
+        index.schedule("c", 2000);
+        Assert.assertEquals(index.getBucketCount(), 2);
+        
+        final List<String> reaped = new ArrayList<>();
+        Assert.assertEquals(index.expire(1999, key -> {
+            reaped.add(key);
+            return null;
+        }), 0);
+        Assert.assertTrue(reaped.isEmpty());
+        
+        Assert.assertEquals(index.expire(2000, key -> {
+            reaped.add(key);
+            return null;
+        }), 2);
+        Assert.assertEquals(reaped.size(), 2);
+        Assert.assertTrue(reaped.contains("a"));
+        Assert.assertTrue(reaped.contains("b"));
+        Assert.assertEquals(index.getBucketCount(), 1);
+        
+        reaped.clear();
+        Assert.assertEquals(index.expire(2999, key -> {
+            reaped.add(key);
+            return null;
+        }), 0);
+        Assert.assertEquals(index.expire(3000, key -> {
+            reaped.add(key);
+            return null;
+        }), 1);
+        Assert.assertEquals(reaped, List.of("c"));
+        Assert.assertEquals(index.getBucketCount(), 0);
+    }
+
+    /**
+     * Test that a key whose expiration has been extended is rescheduled rather than released.
+     */
+    public void testReExpiry() {
+        final BucketedExpirationIndex<String> index = new BucketedExpirationIndex<>(Duration.ofSeconds(1));
+        final Map<String,Long> store = new HashMap<>();
+        store.put("a", 5000L);
+        index.schedule("a", 1000);
+        
+        Assert.assertEquals(index.expire(2000, store::get), 0);
+        Assert.assertEquals(index.getBucketCount(), 1);
+        
+        Assert.assertEquals(index.expire(5999, store::get), 0);
+        Assert.assertEquals(index.getBucketCount(), 1);
+        
+        store.remove("a");
+        Assert.assertEquals(index.expire(6000, store::get), 1);
+        Assert.assertEquals(index.getBucketCount(), 0);
+    }
+
+    /**
+     * Test that a key reported as expiring in the past is deferred to a later call, not reprocessed at once.
+     */
+    public void testReExpiryInPast() {
+        final BucketedExpirationIndex<String> index = new BucketedExpirationIndex<>(Duration.ofSeconds(1));
+        index.schedule("a", 1000);
+        
+        final int[] calls = new int[1];
+        Assert.assertEquals(index.expire(2500, key -> {
+            calls[0]++;
+            return 500L;
+        }), 0);
+        Assert.assertEquals(calls[0], 1);
+        Assert.assertEquals(index.getBucketCount(), 1);
+        
+        Assert.assertEquals(index.expire(3000, key -> {
+            calls[0]++;
+            return null;
+        }), 1);
+        Assert.assertEquals(calls[0], 2);
+    }
+
+    /**
+     * Test that keys removed from the store, or scheduled more than once, are released cleanly.
+     */
+    public void testRemoval() {
+        final BucketedExpirationIndex<String> index = new BucketedExpirationIndex<>(Duration.ofSeconds(1));
+        index.schedule("a", 1000);
+        index.schedule("a", 1500);
+        index.schedule("a", 4000);
+        index.schedule("b", 1000);
+        Assert.assertEquals(index.getBucketCount(), 2);
+        
+        final List<String> reaped = new ArrayList<>();
+        Assert.assertEquals(index.expire(2000, key -> {
+            reaped.add(key);
+            return null;
+        }), 2);
+        Assert.assertEquals(reaped.size(), 2);
+        Assert.assertTrue(reaped.contains("a"));
+        Assert.assertTrue(reaped.contains("b"));
+        
+        // The later schedule of a removed key is still visited, and released.
+        reaped.clear();
+        Assert.assertEquals(index.expire(5000, key -> {
+            reaped.add(key);
+            return null;
+        }), 1);
+        Assert.assertEquals(reaped, List.of("a"));
+        Assert.assertEquals(index.getBucketCount(), 0);
+    }
+
+    /**
+     * Test that a bucket width under one millisecond is rejected.
+     */
+    @Test(expectedExceptions = ConstraintViolationException.class)
+    public void testInvalidWidth() {
+        new BucketedExpirationIndex<String>(Duration.ofNanos(1));
+    }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.storage.AsyncStorageService;
+import org.opensaml.storage.StorageCapabilities;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+
+import net.shibboleth.shared.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.annotation.constraint.Positive;
+import net.shibboleth.shared.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * {@link AsyncStorageService} that runs the operations of a blocking {@link StorageService} on an
+ * {@link Executor}.
+ * 
+ * <p>This does not reduce the number of threads blocked on storage I/O, but moves the blocking onto a
+ * dedicated pool so that callers can overlap storage operations with other work.</p>
+ * 
+ * @since 5.1.0
+ */
+@ThreadSafeAfterInit
+public class AsyncStorageServiceAdapter extends AbstractIdentifiableInitializableComponent
+        implements AsyncStorageService {
+
+    /** Underlying blocking storage. */
+    @NonnullAfterInit private StorageService storage;
+
+    /** Executor on which to run storage operations. */
+    @NonnullAfterInit private Executor executor;
+
+    /**
+     * Set the blocking storage service to adapt.
+     * 
+     * @param storageService storage service to adapt
+     */
+    public void setStorage(@Nonnull final StorageService storageService) {
+        checkSetterPreconditions();
+        
+        storage = Constraint.isNotNull(storageService, "StorageService cannot be null");
+    }
+
+    /**
+     * Set the executor on which to run storage operations.
+     * 
+     * @param exec executor on which to run storage operations
+     */
+    public void setExecutor(@Nonnull final Executor exec) {
+        checkSetterPreconditions();
+        
+        executor = Constraint.isNotNull(exec, "Executor cannot be null");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        
+        if (storage == null) {
+            throw new ComponentInitializationException("StorageService cannot be null");
+        } else if (executor == null) {
+            throw new ComponentInitializationException("Executor cannot be null");
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public StorageCapabilities getCapabilities() {
+        return storage.getCapabilities();
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Boolean> create(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration) {
+        return submit(() -> storage.create(context, key, value, expiration));
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public <T> CompletableFuture<StorageRecord<T>> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) {
+        return submit(() -> storage.<T>read(context, key));
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public <T> CompletableFuture<Pair<Long,StorageRecord<T>>> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Positive final long version) {
+        return submit(() -> storage.<T>read(context, key, version));
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Boolean> update(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration) {
+        return submit(() -> storage.update(context, key, value, expiration));
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Long> updateWithVersion(@Positive final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) {
+        return submit(() -> storage.updateWithVersion(version, context, key, value, expiration));
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Boolean> updateExpiration(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nullable @Positive final Long expiration) {
+        return submit(() -> storage.updateExpiration(context, key, expiration));
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Boolean> delete(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) {
+        return submit(() -> storage.delete(context, key));
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Boolean> deleteWithVersion(@Positive final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key) {
+        return submit(() -> storage.deleteWithVersion(version, context, key));
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Void> reap(@Nonnull @NotEmpty final String context) {
+        return submit(() -> {
+            storage.reap(context);
+            return null;
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Void> updateContextExpiration(@Nonnull @NotEmpty final String context,
+            @Nullable final Long expiration) {
+        return submit(() -> {
+            storage.updateContextExpiration(context, expiration);
+            return null;
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Void> deleteContext(@Nonnull @NotEmpty final String context) {
+        return submit(() -> {
+            storage.deleteContext(context);
+            return null;
+        });
+    }
+
+    /**
+     * Run a storage operation on the executor.
+     * 
+     * @param <T> type of result
+     * @param operation the operation to run
+     * 
+     * @return future completing with the result of the operation
+     */
+    @Nonnull private <T> CompletableFuture<T> submit(@Nonnull final StorageOperation<T> operation) {
+        checkComponentActive();
+        
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(operation.call());
+                } catch (final Exception e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * A blocking storage operation.
+     * 
+     * @param <T> type of result
+     */
+    @FunctionalInterface
+    private interface StorageOperation<T> {
+
+        /**
+         * Perform the operation.
+         * 
+         * @return the result
+         * 
+         * @throws Exception if the operation fails
+         */
+        @Nullable T call() throws Exception;
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.storage.AbstractStorageService;
+import org.opensaml.storage.AsyncStorageService;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.VersionMismatchException;
+
+import net.shibboleth.shared.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.annotation.constraint.Positive;
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+
+/**
+ * {@link StorageService} that performs the operations of an {@link AsyncStorageService} and waits for them
+ * to complete.
+ * 
+ * <p>Capabilities are those of the underlying service. Failures and timeouts are reported as
+ * {@link IOException}s, other than version mismatches, which are reported as such.</p>
+ * 
+ * @since 5.1.0
+ */
+public class BlockingStorageServiceAdapter extends AbstractStorageService {
+
+    /** Underlying asynchronous storage. */
+    @NonnullAfterInit private AsyncStorageService storage;
+
+    /** Maximum time to wait for an operation. */
+    @Nonnull private Duration timeout;
+
+    /** Constructor. */
+    public BlockingStorageServiceAdapter() {
+        timeout = Duration.ofSeconds(5);
+    }
+
+    /**
+     * Set the asynchronous storage service to adapt.
+     * 
+     * @param storageService storage service to adapt
+     */
+    public void setStorage(@Nonnull final AsyncStorageService storageService) {
+        checkSetterPreconditions();
+        
+        storage = Constraint.isNotNull(storageService, "AsyncStorageService cannot be null");
+    }
+
+    /**
+     * Set the maximum time to wait for an operation to complete.
+     * 
+     * <p>Defaults to 5 seconds.</p>
+     * 
+     * @param duration maximum time to wait
+     */
+    public void setTimeout(@Nonnull final Duration duration) {
+        checkSetterPreconditions();
+        
+        Constraint.isNotNull(duration, "Timeout cannot be null");
+        Constraint.isFalse(duration.isNegative() || duration.isZero(), "Timeout must be positive");
+        
+        timeout = duration;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        if (storage == null) {
+            throw new ComponentInitializationException("AsyncStorageService cannot be null");
+        }
+        
+        super.doInitialize();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getContextSize() {
+        return storage.getCapabilities().getContextSize();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getKeySize() {
+        return storage.getCapabilities().getKeySize();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getValueSize() {
+        return storage.getCapabilities().getValueSize();
+    }
+
+    /** {@inheritDoc} */
+    public boolean isServerSide() {
+        return storage.getCapabilities().isServerSide();
+    }
+
+    /** {@inheritDoc} */
+    public boolean isClustered() {
+        return storage.getCapabilities().isClustered();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isCreateAtomic() {
+        return storage.getCapabilities().isCreateAtomic();
+    }
+
+    /** {@inheritDoc} */
+    public boolean create(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) throws IOException {
+        return Boolean.TRUE.equals(await(storage.create(context, key, value, expiration)));
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public <T> StorageRecord<T> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException {
+        return await(storage.<T>read(context, key));
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public <T> Pair<Long,StorageRecord<T>> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Positive final long version) throws IOException {
+        final Pair<Long,StorageRecord<T>> result = await(storage.<T>read(context, key, version));
+        return result != null ? result : new Pair<>();
+    }
+
+    /** {@inheritDoc} */
+    public boolean update(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) throws IOException {
+        return Boolean.TRUE.equals(await(storage.update(context, key, value, expiration)));
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public Long updateWithVersion(@Positive final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration) throws IOException, VersionMismatchException {
+        return awaitVersioned(storage.updateWithVersion(version, context, key, value, expiration));
+    }
+
+    /** {@inheritDoc} */
+    public boolean updateExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nullable @Positive final Long expiration) throws IOException {
+        return Boolean.TRUE.equals(await(storage.updateExpiration(context, key, expiration)));
+    }
+
+    /** {@inheritDoc} */
+    public boolean delete(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key)
+            throws IOException {
+        return Boolean.TRUE.equals(await(storage.delete(context, key)));
+    }
+
+    /** {@inheritDoc} */
+    public boolean deleteWithVersion(@Positive final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
+        return Boolean.TRUE.equals(awaitVersioned(storage.deleteWithVersion(version, context, key)));
+    }
+
+    /** {@inheritDoc} */
+    public void reap(@Nonnull @NotEmpty final String context) throws IOException {
+        await(storage.reap(context));
+    }
+
+    /** {@inheritDoc} */
+    public void updateContextExpiration(@Nonnull @NotEmpty final String context, @Nullable final Long expiration)
+            throws IOException {
+        await(storage.updateContextExpiration(context, expiration));
+    }
+
+    /** {@inheritDoc} */
+    public void deleteContext(@Nonnull @NotEmpty final String context) throws IOException {
+        await(storage.deleteContext(context));
+    }
+
+    /**
+     * Wait for an operation that may fail due to a version mismatch.
+     * 
+     * @param <T> type of result
+     * @param future the pending operation
+     * 
+     * @return the result of the operation
+     * 
+     * @throws IOException if the operation fails or does not complete in time
+     * @throws VersionMismatchException if the operation fails due to a version mismatch
+     */
+    @Nullable private <T> T awaitVersioned(@Nonnull final CompletableFuture<T> future)
+            throws IOException, VersionMismatchException {
+        try {
+            return await(future);
+        } catch (final IOException e) {
+            if (e.getCause() instanceof VersionMismatchException) {
+                throw (VersionMismatchException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for an operation.
+     * 
+     * @param <T> type of result
+     * @param future the pending operation
+     * 
+     * @return the result of the operation
+     * 
+     * @throws IOException if the operation fails or does not complete in time
+     */
+    @Nullable private <T> T await(@Nonnull final CompletableFuture<T> future) throws IOException {
+        checkComponentActive();
+        
+        try {
+            return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Storage operation interrupted", e);
+        } catch (final TimeoutException e) {
+            future.cancel(false);
+            throw new IOException("Storage operation did not complete in time (" + timeout + ")", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Storage operation failed", e.getCause());
+        }
+    }
+
+}
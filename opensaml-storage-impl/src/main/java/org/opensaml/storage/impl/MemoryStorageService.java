@@ -14,11 +14,11 @@
 
 package org.opensaml.storage.impl;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -28,29 +28,74 @@ import javax.annotation.Nullable;
 
 import net.shibboleth.shared.annotation.constraint.Live;
 import net.shibboleth.shared.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.annotation.constraint.Positive;
+import net.shibboleth.shared.collection.Pair;
 import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
 import net.shibboleth.shared.primitive.LoggerFactory;
 
 import org.opensaml.storage.AbstractMapBackedStorageService;
 import org.opensaml.storage.MutableStorageRecord;
 import org.opensaml.storage.StorageCapabilities;
+import org.opensaml.storage.expiration.ExpirationIndex;
 import org.slf4j.Logger;
 
 /**
  * Implementation of {@link AbstractMapBackedStorageService} that stores data in-memory in a shared data structure 
  * with no persistence.
+ * 
+ * <p>Locking is striped: each context hashes to one of a fixed set of context locks, and each record to one
+ * of a fixed set of record locks. Record operations hold their context's lock in shared mode, so operations
+ * on unrelated records, including records in different contexts, do not block each other. Expired records
+ * are reaped one at a time, without exclusive access to the context.</p>
+ * 
+ * <p>If an {@link ExpirationIndex} is set, the cleanup task uses it to visit only those records due to expire
+ * rather than scanning every context.</p>
  */
 public class MemoryStorageService extends AbstractMapBackedStorageService implements StorageCapabilities {
 
+    /** Default number of lock stripes. */
+    @Positive public static final int DEFAULT_LOCK_STRIPES = 64;
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(MemoryStorageService.class);
 
     /** Map of contexts. */
     @NonnullAfterInit private Map<String, Map<String, MutableStorageRecord<?>>> contextMap;
     
-    /** A shared lock to synchronize access. */
+    /** A shared lock, not used for data access by this class. */
     @NonnullAfterInit private ReadWriteLock lock;
 
+    /** Number of lock stripes. */
+    @Positive private int lockStripes;
+
+    /** Locks guarding contexts. */
+    @NonnullAfterInit private ReadWriteLock[] contextLocks;
+
+    /** Locks guarding records. */
+    @NonnullAfterInit private ReadWriteLock[] recordLocks;
+
+    /** Constructor. */
+    public MemoryStorageService() {
+        lockStripes = DEFAULT_LOCK_STRIPES;
+    }
+
+    /**
+     * Set the number of lock stripes for contexts and for records.
+     * 
+     * <p>Defaults to {@link #DEFAULT_LOCK_STRIPES}.</p>
+     * 
+     * @param stripes number of lock stripes
+     * 
+     * @since 5.1.0
+     */
+    public void setLockStripes(@Positive final int stripes) {
+        checkSetterPreconditions();
+        
+        lockStripes = Constraint.isGreaterThan(0, stripes, "Lock stripes must be greater than zero");
+    }
+
     /** {@inheritDoc} */
     public boolean isServerSide() {
         return true;
@@ -60,13 +105,25 @@ public class MemoryStorageService extends AbstractMapBackedStorageService implem
     public boolean isClustered() {
         return false;
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isCreateAtomic() {
+        return true;
+    }
     
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
         super.doInitialize();
-        contextMap = new HashMap<>();
+        contextMap = new ConcurrentHashMap<>();
         lock = new ReentrantReadWriteLock(true);
+        contextLocks = new ReadWriteLock[lockStripes];
+        recordLocks = new ReadWriteLock[lockStripes];
+        for (int i = 0; i < lockStripes; i++) {
+            contextLocks[i] = new ReentrantReadWriteLock(true);
+            recordLocks[i] = new ReentrantReadWriteLock(true);
+        }
     }
 
     /** {@inheritDoc} */
@@ -74,9 +131,16 @@ public class MemoryStorageService extends AbstractMapBackedStorageService implem
     protected void doDestroy() {
         contextMap = null;
         lock = null;
+        contextLocks = null;
+        recordLocks = null;
         super.doDestroy();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void reap(@Nonnull @NotEmpty final String context) {
+        reapContext(context, System.currentTimeMillis());
+    }
 
     /** {@inheritDoc} */
     @Override
@@ -93,8 +157,193 @@ public class MemoryStorageService extends AbstractMapBackedStorageService implem
         assert lock != null;
         return lock;
     }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull protected ReadWriteLock getContextLock(@Nonnull @NotEmpty final String context) {
+        checkComponentActive();
+        assert contextLocks != null;
+        final ReadWriteLock contextLock = contextLocks[stripe(context.hashCode())];
+        assert contextLock != null;
+        return contextLock;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>This acquires the shared lock on the record's context, and then the record's own lock.</p>
+     */
+    @Override
+    protected void lockRecord(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            final boolean write) {
+        final Lock contextLock = getContextLock(context).readLock();
+        final Lock recordLock = getRecordLock(context, key, write);
+        contextLock.lock();
+        try {
+            recordLock.lock();
+        } catch (final RuntimeException e) {
+            contextLock.unlock();
+            throw e;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void unlockRecord(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            final boolean write) {
+        getRecordLock(context, key, write).unlock();
+        getContextLock(context).readLock().unlock();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull protected Map<String, MutableStorageRecord<?>> newContextDataMap() {
+        return new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Removes expired records from a context one at a time, and then the context itself if it is empty.
+     * 
+     * <p>Each record is removed while holding only its own lock, so other operations on the context
+     * proceed concurrently. Exclusive access to the context is taken only to remove it.</p>
+     * 
+     * @param context a storage context label
+     * @param now time at which to consider records expired
+     * 
+     * @return true iff anything was purged
+     */
+    private boolean reapContext(@Nonnull @NotEmpty final String context, final long now) {
+        
+        boolean purged = false;
+        
+        final Map<String, MutableStorageRecord<?>> dataMap = getContextMap().get(context);
+        if (dataMap == null) {
+            return false;
+        }
+        
+        for (final Map.Entry<String, MutableStorageRecord<?>> entry : dataMap.entrySet()) {
+            if (!entry.getValue().isExpired(now)) {
+                continue;
+            }
+            final String key = entry.getKey();
+            assert key != null;
+            try {
+                lockRecord(context, key, true);
+                final MutableStorageRecord<?> record = dataMap.get(key);
+                if (record != null && record.isExpired(now)) {
+                    dataMap.remove(key);
+                    purged = true;
+                }
+            } finally {
+                unlockRecord(context, key, true);
+            }
+        }
+
+        if (dataMap.isEmpty()) {
+            final Lock writeLock = getContextLock(context).writeLock();
+            try {
+                writeLock.lock();
+                if (dataMap.isEmpty()) {
+                    getContextMap().remove(context, dataMap);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        
+        return purged;
+    }
+
+    /**
+     * Removes expired records located via the expiration index, and then any contexts left empty.
+     * 
+     * @param index the expiration index
+     * @param now time at which to consider records expired
+     * 
+     * @return true iff anything was purged
+     */
+    private boolean reapIndexed(@Nonnull final ExpirationIndex<Pair<String,String>> index, final long now) {
+        
+        final Set<String> touched = new HashSet<>();
+        final Set<String> purged = new HashSet<>();
+        
+        final int released = index.expire(now, contextKey -> {
+            final String context = contextKey.getFirst();
+            final String key = contextKey.getSecond();
+            assert context != null && key != null;
+            try {
+                lockRecord(context, key, true);
+                final Map<String, MutableStorageRecord<?>> dataMap = getContextMap().get(context);
+                final MutableStorageRecord<?> record = dataMap != null ? dataMap.get(key) : null;
+                if (record == null) {
+                    if (dataMap != null) {
+                        touched.add(context);
+                    }
+                    return null;
+                } else if (record.isExpired(now)) {
+                    dataMap.remove(key);
+                    touched.add(context);
+                    purged.add(context);
+                    return null;
+                }
+                return record.getExpiration();
+            } finally {
+                unlockRecord(context, key, true);
+            }
+        });
+        
+        log.trace("Expiration index released {} record(s), purging from {} context(s)", released, purged.size());
+        
+        for (final String context : touched) {
+            assert context != null;
+            final Map<String, MutableStorageRecord<?>> dataMap = getContextMap().get(context);
+            if (dataMap != null && dataMap.isEmpty()) {
+                final Lock writeLock = getContextLock(context).writeLock();
+                try {
+                    writeLock.lock();
+                    if (dataMap.isEmpty()) {
+                        getContextMap().remove(context, dataMap);
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        }
+        
+        return !purged.isEmpty();
+    }
+
+    /**
+     * Map a hash code onto a lock stripe.
+     * 
+     * @param hash hash code
+     * 
+     * @return stripe index
+     */
+    private int stripe(final int hash) {
+        return Math.floorMod(hash ^ (hash >>> 16), lockStripes);
+    }
+
+    /**
+     * Get the read or write half of a record's lock stripe.
+     * 
+     * @param context a storage context label
+     * @param key a key unique to context
+     * @param write true for the write half
+     * 
+     * @return the record lock
+     */
+    @Nonnull private Lock getRecordLock(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            final boolean write) {
+        checkComponentActive();
+        assert recordLocks != null;
+        final ReadWriteLock recordLock = recordLocks[stripe(31 * context.hashCode() + key.hashCode())];
+        assert recordLock != null;
+        final Lock lockHalf = write ? recordLock.writeLock() : recordLock.readLock();
+        assert lockHalf != null;
+        return lockHalf;
+    }
     
-// Checkstyle: AnonInnerLength OFF
     /** {@inheritDoc} */
     @Override
     @Nullable protected TimerTask getCleanupTask() {
@@ -105,28 +354,19 @@ public class MemoryStorageService extends AbstractMapBackedStorageService implem
             public void run() {
                 log.debug("Running cleanup task");
                 
-                final Long now = System.currentTimeMillis();
-                final Lock writeLock = getLock().writeLock();
+                final long now = System.currentTimeMillis();
                 boolean purged = false;
                 
-                try {
-                    writeLock.lock();
-                    
-                    final Collection<Map<String, MutableStorageRecord<?>>> contexts = getContextMap().values();
-                    final Iterator<Map<String, MutableStorageRecord<?>>> i = contexts.iterator();
-                    while (i.hasNext()) {
-                        final Map<String, MutableStorageRecord<?>> context = i.next();
+                final ExpirationIndex<Pair<String,String>> index = getExpirationIndex();
+                if (index != null) {
+                    purged = reapIndexed(index, now);
+                } else {
+                    for (final String context : getContextMap().keySet()) {
                         assert context != null;
-                        if (reapWithLock(context, now)) {
+                        if (reapContext(context, now)) {
                             purged = true;
-                            if (context.isEmpty()) {
-                                i.remove();
-                            }
                         }
                     }
-                    
-                } finally {
-                    writeLock.unlock();
                 }
                 
                 if (purged) {
@@ -137,6 +377,5 @@ public class MemoryStorageService extends AbstractMapBackedStorageService implem
             }
         };
     }
-// Checkstyle: AnonInnerLength ON
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,870 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.core.metrics.MetricsSupport;
+import org.opensaml.storage.AbstractStorageService;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.VersionMismatchException;
+import org.slf4j.Logger;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+
+import net.shibboleth.shared.annotation.constraint.NonNegative;
+import net.shibboleth.shared.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.annotation.constraint.Positive;
+import net.shibboleth.shared.annotation.constraint.Unmodifiable;
+import net.shibboleth.shared.collection.CollectionSupport;
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.logic.Constraint;
+import net.shibboleth.shared.primitive.LoggerFactory;
+
+/**
+ * {@link StorageService} that decorates another, typically remote, service with a bounded local cache of
+ * the records read through it.
+ *
+ * <p>A cached record is served without consulting the underlying service for up to
+ * {@link #setRevalidationInterval(Duration)}. After that, it is revalidated by reading it again and comparing
+ * its value, expiration and version with the cached copy. Records are never served past their expiration, and
+ * any modification made through this service invalidates the affected records before returning. A version
+ * mismatch reported by the underlying service also invalidates the record, so a caller retrying after a
+ * concurrent write elsewhere sees the new version.</p>
+ *
+ * <p>Modifications made directly to the underlying service, or by other nodes sharing it, may go unnoticed
+ * for up to the revalidation interval, so this service should only be used for data that can tolerate
+ * that.</p>
+ *
+ * <p>If the underlying service never reuses a version number for a key, {@link #setVersionedRevalidation(boolean)}
+ * allows revalidation by a versioned read instead, so that an unchanged record is not transferred again.</p>
+ *
+ * <p>The cache is bounded both by number of records and by the total size of their values, and is evicted
+ * in least-recently-used order.</p>
+ *
+ * @since 5.1.0
+ */
+public class NearCacheStorageService extends AbstractStorageService {
+
+    /** Name of the gauge reporting the hit ratio. */
+    @Nonnull @NotEmpty public static final String METRIC_RATIOGAUGE_HITS = "ratioGauge.hits";
+
+    /** Name of the gauge reporting the number of cached records. */
+    @Nonnull @NotEmpty public static final String METRIC_GAUGE_SIZE = "gauge.size";
+
+    /** Number of stripes used to track invalidations. */
+    private static final int INVALIDATION_STRIPES = 64;
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(NearCacheStorageService.class);
+
+    /** Underlying storage. */
+    @NonnullAfterInit private StorageService storage;
+
+    /** Time a cached record may be served before revalidating it. */
+    @Nonnull private Duration revalidationInterval;
+
+    /** Whether to revalidate by versioned read. */
+    private boolean versionedRevalidation;
+
+    /** Maximum number of cached records. */
+    @Positive private int maxEntries;
+
+    /** Maximum total length of cached values. */
+    @Positive private long maxCacheSize;
+
+    /** Base name for metrics. */
+    @Nullable private String metricsBaseName;
+
+    /** Cached records in access order. */
+    @Nonnull private final LinkedHashMap<Pair<String,String>,CachedRecord> cache;
+
+    /** Guards {@link #cache} and {@link #cacheSize}. */
+    @Nonnull private final ReentrantLock cacheLock;
+
+    /** Total length of cached values. */
+    private long cacheSize;
+
+    /**
+     * Invalidation counters, by key stripe, used to prevent a read that overlaps a modification
+     * from caching the old record.
+     */
+    @Nonnull private final AtomicLongArray invalidations;
+
+    /** Reads served from the cache. */
+    @Nonnull private final LongAdder hits;
+
+    /** Reads satisfied by confirming that the cached record is current. */
+    @Nonnull private final LongAdder revalidations;
+
+    /** Reads requiring a full read from the underlying service. */
+    @Nonnull private final LongAdder misses;
+
+    /** Records evicted to remain within bounds. */
+    @Nonnull private final LongAdder evictions;
+
+    /** Gauge reporting the hit ratio. */
+    @Nullable private RatioGauge hitRatioGauge;
+
+    /** Gauge reporting the number of cached records. */
+    @Nullable private Gauge<Integer> sizeGauge;
+
+    /** Constructor. */
+    public NearCacheStorageService() {
+        revalidationInterval = Duration.ofSeconds(5);
+        maxEntries = 10000;
+        maxCacheSize = 8 * 1024 * 1024;
+        cache = new LinkedHashMap<>(16, 0.75f, true);
+        cacheLock = new ReentrantLock();
+        invalidations = new AtomicLongArray(INVALIDATION_STRIPES);
+        hits = new LongAdder();
+        revalidations = new LongAdder();
+        misses = new LongAdder();
+        evictions = new LongAdder();
+    }
+
+    /**
+     * Set the storage service to decorate.
+     *
+     * @param storageService storage service to decorate
+     */
+    public void setStorage(@Nonnull final StorageService storageService) {
+        checkSetterPreconditions();
+
+        storage = Constraint.isNotNull(storageService, "StorageService cannot be null");
+    }
+
+    /**
+     * Set the time a cached record may be served without consulting the underlying service.
+     *
+     * <p>Defaults to 5 seconds. Zero causes every read to be revalidated.</p>
+     *
+     * @param interval revalidation interval
+     */
+    public void setRevalidationInterval(@Nonnull final Duration interval) {
+        checkSetterPreconditions();
+
+        Constraint.isNotNull(interval, "Revalidation interval cannot be null");
+        Constraint.isFalse(interval.isNegative(), "Revalidation interval cannot be negative");
+
+        revalidationInterval = interval;
+    }
+
+    /**
+     * Set whether to revalidate cached records by means of a versioned read, which does not transfer an
+     * unchanged record.
+     *
+     * <p>Defaults to false. This is only safe if the underlying service never reuses a version number for a
+     * key. Services such as {@link MemoryStorageService} that number the versions of a recreated record from
+     * the start again do not qualify, since a record deleted and recreated elsewhere could match a cached
+     * copy's version. Nor are expiration changes that leave the version alone detected.</p>
+     *
+     * @param flag flag to set
+     */
+    public void setVersionedRevalidation(final boolean flag) {
+        checkSetterPreconditions();
+
+        versionedRevalidation = flag;
+    }
+
+    /**
+     * Set the maximum number of records to cache.
+     *
+     * <p>Defaults to 10000.</p>
+     *
+     * @param max maximum number of records
+     */
+    public void setMaxEntries(@Positive final int max) {
+        checkSetterPreconditions();
+
+        maxEntries = Constraint.isGreaterThan(0, max, "Maximum entries must be greater than zero");
+    }
+
+    /**
+     * Set the maximum total length, in characters, of the cached values.
+     *
+     * <p>Defaults to 8M. Records with values longer than this are never cached.</p>
+     *
+     * @param max maximum total length
+     */
+    public void setMaxCacheSize(@Positive final long max) {
+        checkSetterPreconditions();
+
+        maxCacheSize = Constraint.isGreaterThan(0, max, "Maximum cache size must be greater than zero");
+    }
+
+    /**
+     * Get the base name for the metrics this service registers.
+     *
+     * @return base name for metrics
+     */
+    @Nullable public String getMetricsBaseName() {
+        return metricsBaseName;
+    }
+
+    /**
+     * Set the base name for the metrics this service registers.
+     *
+     * <p>Defaults to the class name followed by the component ID.</p>
+     *
+     * @param baseName base name for metrics
+     */
+    public void setMetricsBaseName(@Nullable final String baseName) {
+        checkSetterPreconditions();
+
+        metricsBaseName = baseName;
+    }
+
+    /**
+     * Get the number of reads served from the cache.
+     *
+     * @return number of cache hits
+     */
+    @NonNegative public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of reads satisfied by confirming that a cached record is current.
+     *
+     * @return number of revalidations
+     */
+    @NonNegative public long getRevalidationCount() {
+        return revalidations.sum();
+    }
+
+    /**
+     * Get the number of reads requiring a full read from the underlying service.
+     *
+     * @return number of cache misses
+     */
+    @NonNegative public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of records evicted to keep the cache within bounds.
+     *
+     * @return number of evictions
+     */
+    @NonNegative public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the number of records currently cached.
+     *
+     * @return number of cached records
+     */
+    @NonNegative public int getCachedCount() {
+        cacheLock.lock();
+        try {
+            return cache.size();
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        if (storage == null) {
+            throw new ComponentInitializationException("StorageService cannot be null");
+        }
+
+        super.doInitialize();
+
+        if (metricsBaseName == null) {
+            metricsBaseName = MetricRegistry.name(getClass().getName(), getId());
+        }
+
+        if (MetricsSupport.getMetricRegistry() != null) {
+            // These must be stored off for later removal in destroy.
+            hitRatioGauge = MetricsSupport.register(MetricRegistry.name(metricsBaseName, METRIC_RATIOGAUGE_HITS),
+                    new RatioGauge() {
+                        protected Ratio getRatio() {
+                            final long served = getHitCount() + getRevalidationCount();
+                            return Ratio.of(served, served + getMissCount());
+                        }},
+                    true);
+            sizeGauge = MetricsSupport.register(MetricRegistry.name(metricsBaseName, METRIC_GAUGE_SIZE),
+                    new Gauge<Integer>() {
+                        public Integer getValue() {
+                            return getCachedCount();
+                        }},
+                    true);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (hitRatioGauge != null) {
+            MetricsSupport.remove(MetricRegistry.name(metricsBaseName, METRIC_RATIOGAUGE_HITS), hitRatioGauge);
+            hitRatioGauge = null;
+        }
+        if (sizeGauge != null) {
+            MetricsSupport.remove(MetricRegistry.name(metricsBaseName, METRIC_GAUGE_SIZE), sizeGauge);
+            sizeGauge = null;
+        }
+
+        cacheLock.lock();
+        try {
+            cache.clear();
+            cacheSize = 0;
+        } finally {
+            cacheLock.unlock();
+        }
+
+        super.doDestroy();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getContextSize() {
+        return storage.getCapabilities().getContextSize();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getKeySize() {
+        return storage.getCapabilities().getKeySize();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getValueSize() {
+        return storage.getCapabilities().getValueSize();
+    }
+
+    /** {@inheritDoc} */
+    public boolean isServerSide() {
+        return storage.getCapabilities().isServerSide();
+    }
+
+    /** {@inheritDoc} */
+    public boolean isClustered() {
+        return storage.getCapabilities().isClustered();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isCreateAtomic() {
+        return storage.getCapabilities().isCreateAtomic();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isBatchNative() {
+        return storage.getCapabilities().isBatchNative();
+    }
+
+    /** {@inheritDoc} */
+    public boolean create(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) throws IOException {
+        try {
+            return storage.create(context, key, value, expiration);
+        } finally {
+            invalidate(context, key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public <T> StorageRecord<T> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException {
+
+        final Pair<String,String> cacheKey = new Pair<>(context, key);
+        final long now = System.currentTimeMillis();
+        final CachedRecord cached = lookup(cacheKey, now);
+
+        if (cached != null) {
+            if (now - cached.validated < revalidationInterval.toMillis()) {
+                hits.increment();
+                return cached.toRecord();
+            }
+            return revalidate(cacheKey, cached, now);
+        }
+
+        misses.increment();
+        final long stamp = getInvalidationStamp(cacheKey);
+        final StorageRecord<T> record = storage.read(context, key);
+        if (record != null) {
+            populate(cacheKey, record, stamp, now);
+        }
+        return record;
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public <T> Pair<Long,StorageRecord<T>> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Positive final long version) throws IOException {
+
+        final StorageRecord<T> record = read(context, key);
+        if (record == null) {
+            return new Pair<>();
+        } else if (record.getVersion() == version) {
+            return new Pair<>(version, null);
+        }
+        return new Pair<>(record.getVersion(), record);
+    }
+
+    /** {@inheritDoc} */
+    public boolean update(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) throws IOException {
+        try {
+            return storage.update(context, key, value, expiration);
+        } finally {
+            invalidate(context, key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public Long updateWithVersion(@Positive final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration) throws IOException, VersionMismatchException {
+        try {
+            return storage.updateWithVersion(version, context, key, value, expiration);
+        } finally {
+            invalidate(context, key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean updateExpiration(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nullable @Positive final Long expiration) throws IOException {
+        try {
+            return storage.updateExpiration(context, key, expiration);
+        } finally {
+            invalidate(context, key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean delete(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key)
+            throws IOException {
+        try {
+            return storage.delete(context, key);
+        } finally {
+            invalidate(context, key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean deleteWithVersion(@Positive final long version, @Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) throws IOException, VersionMismatchException {
+        try {
+            return storage.deleteWithVersion(version, context, key);
+        } finally {
+            invalidate(context, key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void reap(@Nonnull @NotEmpty final String context) throws IOException {
+        storage.reap(context);
+
+        final long now = System.currentTimeMillis();
+        cacheLock.lock();
+        try {
+            final Iterator<Map.Entry<Pair<String,String>,CachedRecord>> entries = cache.entrySet().iterator();
+            while (entries.hasNext()) {
+                final Map.Entry<Pair<String,String>,CachedRecord> entry = entries.next();
+                if (context.equals(entry.getKey().getFirst()) && entry.getValue().isExpired(now)) {
+                    cacheSize -= entry.getValue().value.length();
+                    entries.remove();
+                }
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void updateContextExpiration(@Nonnull @NotEmpty final String context, @Nullable final Long expiration)
+            throws IOException {
+        try {
+            storage.updateContextExpiration(context, expiration);
+        } finally {
+            invalidateContext(context);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void deleteContext(@Nonnull @NotEmpty final String context) throws IOException {
+        try {
+            storage.deleteContext(context);
+        } finally {
+            invalidateContext(context);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull @Unmodifiable public Set<String> createAll(@Nonnull @NotEmpty final String context,
+            @Nonnull final Map<String,String> values, @Nullable @Positive final Long expiration) throws IOException {
+        try {
+            return storage.createAll(context, values, expiration);
+        } finally {
+            for (final String key : values.keySet()) {
+                invalidate(context, key);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull @Unmodifiable public <T> Map<String,StorageRecord<T>> readAll(@Nonnull @NotEmpty final String context,
+            @Nonnull final Collection<String> keys) throws IOException {
+
+        final long now = System.currentTimeMillis();
+        final Map<String,StorageRecord<T>> results = new HashMap<>(keys.size());
+        final List<String> missing = new ArrayList<>();
+
+        for (final String key : keys) {
+            final CachedRecord cached = lookup(new Pair<>(context, key), now);
+            if (cached != null && now - cached.validated < revalidationInterval.toMillis()) {
+                hits.increment();
+                results.put(key, cached.<T>toRecord());
+            } else {
+                missing.add(key);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            misses.add(missing.size());
+            final long[] stamps = new long[missing.size()];
+            for (int i = 0; i < stamps.length; i++) {
+                stamps[i] = getInvalidationStamp(new Pair<>(context, missing.get(i)));
+            }
+            final Map<String,StorageRecord<T>> records = storage.readAll(context, missing);
+            for (int i = 0; i < stamps.length; i++) {
+                final StorageRecord<T> record = records.get(missing.get(i));
+                if (record != null) {
+                    populate(new Pair<>(context, missing.get(i)), record, stamps[i], now);
+                    results.put(missing.get(i), record);
+                }
+            }
+        }
+
+        return CollectionSupport.copyToMap(results);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull @Unmodifiable public Set<String> deleteAll(@Nonnull @NotEmpty final String context,
+            @Nonnull final Collection<String> keys) throws IOException {
+        try {
+            return storage.deleteAll(context, keys);
+        } finally {
+            for (final String key : keys) {
+                invalidate(context, key);
+            }
+        }
+    }
+
+    /**
+     * Revalidate a cached record whose revalidation interval has passed.
+     *
+     * @param <T> type of record
+     * @param cacheKey key of the record
+     * @param cached the cached record
+     * @param now current time
+     *
+     * @return the current record, or null if it no longer exists
+     *
+     * @throws IOException if an error occurs reading from the underlying service
+     */
+    @Nullable private <T> StorageRecord<T> revalidate(@Nonnull final Pair<String,String> cacheKey,
+            @Nonnull final CachedRecord cached, final long now) throws IOException {
+
+        final String context = cacheKey.getFirst();
+        final String key = cacheKey.getSecond();
+        assert context != null && key != null;
+
+        final long stamp = getInvalidationStamp(cacheKey);
+        final boolean exists;
+        final StorageRecord<T> record;
+        if (versionedRevalidation) {
+            final Pair<Long,StorageRecord<T>> result = storage.read(context, key, cached.version);
+            exists = result.getFirst() != null;
+            record = result.getSecond();
+        } else {
+            final StorageRecord<T> current = storage.read(context, key);
+            exists = current != null;
+            record = current != null && !cached.matches(current) ? current : null;
+        }
+
+        if (!exists) {
+            misses.increment();
+            invalidate(context, key);
+            return null;
+        } else if (record != null) {
+            misses.increment();
+            populate(cacheKey, record, stamp, now);
+            return record;
+        }
+
+        revalidations.increment();
+        cacheLock.lock();
+        try {
+            if (invalidations.get(stripe(cacheKey)) == stamp && cache.get(cacheKey) == cached) {
+                cached.validated = now;
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+        log.trace("Record '{}' in context '{}' unchanged at version {}", key, context, cached.version);
+        return cached.toRecord();
+    }
+
+    /**
+     * Get an unexpired cached record, discarding it if it has expired.
+     *
+     * @param cacheKey key of the record
+     * @param now current time
+     *
+     * @return the cached record, or null
+     */
+    @Nullable private CachedRecord lookup(@Nonnull final Pair<String,String> cacheKey, final long now) {
+        cacheLock.lock();
+        try {
+            final CachedRecord cached = cache.get(cacheKey);
+            if (cached != null && cached.isExpired(now)) {
+                cache.remove(cacheKey);
+                cacheSize -= cached.value.length();
+                return null;
+            }
+            return cached;
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    /**
+     * Cache a record read from the underlying service, unless it was invalidated in the meantime.
+     *
+     * @param cacheKey key of the record
+     * @param record the record read
+     * @param stamp invalidation stamp obtained before the read
+     * @param now time of the read
+     */
+    private void populate(@Nonnull final Pair<String,String> cacheKey, @Nonnull final StorageRecord<?> record,
+            final long stamp, final long now) {
+
+        final String value = record.getValue();
+        if (value.length() > maxCacheSize || record.isExpired(now)) {
+            return;
+        }
+
+        cacheLock.lock();
+        try {
+            if (invalidations.get(stripe(cacheKey)) != stamp) {
+                return;
+            }
+
+            final CachedRecord previous =
+                    cache.put(cacheKey, new CachedRecord(value, record.getExpiration(), record.getVersion(), now));
+            if (previous != null) {
+                cacheSize -= previous.value.length();
+            }
+            cacheSize += value.length();
+
+            final Iterator<CachedRecord> eldest = cache.values().iterator();
+            while (cache.size() > maxEntries || cacheSize > maxCacheSize) {
+                cacheSize -= eldest.next().value.length();
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    /**
+     * Discard any cached copy of a record.
+     *
+     * @param context context of the record
+     * @param key key of the record
+     */
+    private void invalidate(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key) {
+        final Pair<String,String> cacheKey = new Pair<>(context, key);
+        invalidations.incrementAndGet(stripe(cacheKey));
+
+        cacheLock.lock();
+        try {
+            final CachedRecord cached = cache.remove(cacheKey);
+            if (cached != null) {
+                cacheSize -= cached.value.length();
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    /**
+     * Discard any cached copies of the records in a context.
+     *
+     * @param context context to discard
+     */
+    private void invalidateContext(@Nonnull @NotEmpty final String context) {
+        for (int i = 0; i < INVALIDATION_STRIPES; i++) {
+            invalidations.incrementAndGet(i);
+        }
+
+        cacheLock.lock();
+        try {
+            final Iterator<Map.Entry<Pair<String,String>,CachedRecord>> entries = cache.entrySet().iterator();
+            while (entries.hasNext()) {
+                final Map.Entry<Pair<String,String>,CachedRecord> entry = entries.next();
+                if (context.equals(entry.getKey().getFirst())) {
+                    cacheSize -= entry.getValue().value.length();
+                    entries.remove();
+                }
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    /**
+     * Get the current invalidation stamp covering a record.
+     *
+     * @param cacheKey key of the record
+     *
+     * @return the invalidation stamp
+     */
+    private long getInvalidationStamp(@Nonnull final Pair<String,String> cacheKey) {
+        return invalidations.get(stripe(cacheKey));
+    }
+
+    /**
+     * Get the invalidation stripe covering a record.
+     *
+     * @param cacheKey key of the record
+     *
+     * @return the stripe index
+     */
+    private static int stripe(@Nonnull final Pair<String,String> cacheKey) {
+        final int hash = cacheKey.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), INVALIDATION_STRIPES);
+    }
+
+    /** Locally cached copy of a record. */
+    private static final class CachedRecord {
+
+        /** Record value. */
+        @Nonnull @NotEmpty private final String value;
+
+        /** Record expiration. */
+        @Nullable private final Long expiration;
+
+        /** Record version. */
+        private final long version;
+
+        /** Time the record was last known to be current. */
+        private volatile long validated;
+
+        /**
+         * Constructor.
+         *
+         * @param val record value
+         * @param exp record expiration
+         * @param ver record version
+         * @param now time the record was read
+         */
+        CachedRecord(@Nonnull @NotEmpty final String val, @Nullable final Long exp, final long ver,
+                final long now) {
+            value = val;
+            expiration = exp;
+            version = ver;
+            validated = now;
+        }
+
+        /**
+         * Get whether the record has expired.
+         *
+         * @param now current time
+         *
+         * @return true iff the record has expired
+         */
+        boolean isExpired(final long now) {
+            return expiration != null && now >= expiration;
+        }
+
+        /**
+         * Get whether a record read from the underlying service is the same as this copy.
+         *
+         * @param record the record read
+         *
+         * @return true iff the value, expiration and version are all unchanged
+         */
+        boolean matches(@Nonnull final StorageRecord<?> record) {
+            return version == record.getVersion() && value.equals(record.getValue())
+                    && Objects.equals(expiration, record.getExpiration());
+        }
+
+        /**
+         * Get a copy of the record to return to a caller.
+         *
+         * @param <T> type of record
+         *
+         * @return copy of the record
+         */
+        @Nonnull <T> StorageRecord<T> toRecord() {
+            return new VersionedStorageRecord<>(value, expiration, version);
+        }
+    }
+
+    /**
+     * {@link StorageRecord} with an explicit version.
+     *
+     * @param <T> type of record
+     */
+    private static final class VersionedStorageRecord<T> extends StorageRecord<T> {
+
+        /**
+         * Constructor.
+         *
+         * @param val record value
+         * @param exp record expiration
+         * @param ver record version
+         */
+        VersionedStorageRecord(@Nonnull @NotEmpty final String val, @Nullable final Long exp, final long ver) {
+            super(val, exp);
+            setVersion(ver);
+        }
+    }
+
+}
@@ -17,9 +17,12 @@ package org.opensaml.storage.impl;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import org.opensaml.storage.AsyncStorageService;
 import org.opensaml.storage.ReplayCache;
 import org.opensaml.storage.StorageCapabilities;
 import org.opensaml.storage.StorageRecord;
@@ -39,8 +42,16 @@ import net.shibboleth.shared.primitive.LoggerFactory;
 /**
  * {@link ReplayCache} implementation backed by a {@link StorageService}.
  * 
- * <p>This class is thread-safe and uses a synchronized method to prevent race conditions within the underlying
- * store (lacking an atomic "check and insert" operation).</p>
+ * <p>This class is thread-safe and by default uses a synchronized method to prevent race conditions within the
+ * underlying store (lacking an atomic "check and insert" operation).</p>
+ * 
+ * <p>If the concurrent mode is enabled and the underlying store reports that record creation is atomic
+ * via {@link StorageCapabilities#isCreateAtomic()}, the check is reduced to a single unsynchronized
+ * create operation, relying on the store to reject duplicates. Checks on unrelated values then do not
+ * contend with each other within this class.</p>
+ * 
+ * <p>If an {@link AsyncStorageService} over the same store is also supplied, and it reports atomic record
+ * creation, {@link #checkAsync(String, String, Instant)} performs the check without blocking.</p>
  * 
  * @since 5.0.0
  */
@@ -53,11 +64,20 @@ public class StorageServiceReplayCache extends AbstractIdentifiableInitializable
     /** Backing storage for the replay cache. */
     @NonnullAfterInit private StorageService storage;
 
+    /** Optional non-blocking access to the backing storage. */
+    @Nullable private AsyncStorageService asyncStorage;
+
     /** Digester if key is too long. */
     @NonnullAfterInit private StringDigester digester;
     
     /** Flag controlling behavior on storage failure. */
     private boolean strict;
+
+    /** Flag enabling the use of atomic record creation in place of synchronization. */
+    private boolean concurrent;
+
+    /** Whether checks are performed by atomic record creation, established at initialization. */
+    private boolean atomicCheck;
     
     /**
      * Get the backing store for the cache.
@@ -80,6 +100,37 @@ public class StorageServiceReplayCache extends AbstractIdentifiableInitializable
         Constraint.isTrue(storage.getCapabilities().isServerSide(), "StorageService cannot be client-side");
     }
     
+    /**
+     * Get the non-blocking view of the backing store, if any.
+     * 
+     * @return the non-blocking view of the backing store
+     * 
+     * @since 5.1.0
+     */
+    @Nullable public AsyncStorageService getAsyncStorage() {
+        return asyncStorage;
+    }
+
+    /**
+     * Set a non-blocking view of the backing store, used by {@link #checkAsync(String, String, Instant)}.
+     * 
+     * <p>This must operate on the same underlying data as the service supplied to
+     * {@link #setStorage(StorageService)}.</p>
+     * 
+     * @param storageService non-blocking view of the backing store
+     * 
+     * @since 5.1.0
+     */
+    public void setAsyncStorage(@Nullable final AsyncStorageService storageService) {
+        checkSetterPreconditions();
+        
+        if (storageService != null) {
+            Constraint.isTrue(storageService.getCapabilities().isServerSide(),
+                    "AsyncStorageService cannot be client-side");
+        }
+        asyncStorage = storageService;
+    }
+
     /**
      * Get the strictness flag.
      * 
@@ -100,6 +151,33 @@ public class StorageServiceReplayCache extends AbstractIdentifiableInitializable
         strict = flag;
     }
 
+    /**
+     * Get whether checks should rely on atomic record creation rather than synchronization.
+     * 
+     * @return true iff checks should rely on atomic record creation when the store supports it
+     * 
+     * @since 5.1.0
+     */
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * Set whether checks should rely on atomic record creation rather than synchronization.
+     * 
+     * <p>If the backing store does not report that record creation is atomic, the default
+     * synchronized behavior is retained.</p>
+     * 
+     * @param flag true iff checks should rely on atomic record creation when the store supports it
+     * 
+     * @since 5.1.0
+     */
+    public void setConcurrent(final boolean flag) {
+        checkSetterPreconditions();
+        
+        concurrent = flag;
+    }
+
 
     /** {@inheritDoc} */
     @Override
@@ -113,45 +191,145 @@ public class StorageServiceReplayCache extends AbstractIdentifiableInitializable
         } catch (final NoSuchAlgorithmException e) {
             throw new ComponentInitializationException(e);
         }
+        
+        if (concurrent) {
+            atomicCheck = storage.getCapabilities().isCreateAtomic();
+            if (!atomicCheck) {
+                log.warn("StorageService '{}' does not support atomic record creation, checks will be synchronized",
+                        storage.getId());
+            }
+        }
     }
 
     /** {@inheritDoc} */
-    public synchronized boolean check(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String s,
+    public boolean check(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String s,
             @Nonnull final Instant expires) {
 
-        final String key;
+        final String key = getStorageKey(storage.getCapabilities(), context, s);
+        if (key == null) {
+            return false;
+        }
+
+        try {
+            if (atomicCheck) {
+                return checkWithCreate(context, key, s, expires);
+            }
+            return checkWithRead(context, key, s, expires);
+        } catch (final IOException e) {
+            log.error("Exception reading/writing to storage service, returning {}", strict ? "failure" : "success", e);
+            return !strict;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>This is non-blocking only if a suitable {@link AsyncStorageService} has been supplied.</p>
+     */
+    @Override
+    @Nonnull public CompletableFuture<Boolean> checkAsync(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String s, @Nonnull final Instant expires) {
+        
+        final AsyncStorageService async = asyncStorage;
+        if (async == null || !async.getCapabilities().isCreateAtomic()) {
+            return CompletableFuture.completedFuture(check(context, s, expires));
+        }
         
-        final StorageCapabilities caps = storage.getCapabilities();
+        final String key = getStorageKey(async.getCapabilities(), context, s);
+        if (key == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        
+        return async.create(context, key, "x", expires.toEpochMilli()).handle((created, e) -> {
+            if (e != null) {
+                log.error("Exception writing to storage service, returning {}", strict ? "failure" : "success", e);
+                return !strict;
+            } else if (created) {
+                log.debug("Value '{}' was not a replay, added to cache with expiration time {}", s, expires);
+                return true;
+            }
+            log.debug("Replay of value '{}' detected in cache", s);
+            return false;
+        });
+    }
+
+    /**
+     * Derive the storage key for a value, digesting it if necessary to fit the store.
+     * 
+     * @param caps capabilities of the store
+     * @param context context of the value
+     * @param s the value being checked
+     * 
+     * @return the storage key, or null if the value cannot be stored
+     */
+    @Nullable private String getStorageKey(@Nonnull final StorageCapabilities caps,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String s) {
         if (context.length() > caps.getContextSize()) {
             log.error("Context '{}' too long for StorageService (limit {})", context, caps.getContextSize());
-            return false;
+            return null;
         } else if (s.length() > caps.getKeySize()) {
-            key = digester.apply(s);
+            final String key = digester.apply(s);
             if (key == null) {
                 log.error("Result of digesting key was null");
-                return false;
             }
-        } else {
-            key = s;
+            return key;
         }
+        return s;
+    }
 
-        try {
-            final StorageRecord<?> entry = storage.read(context, key);
-            if (entry == null) {
-                log.debug("Value '{}' was not a replay, adding to cache with expiration time {}", s, expires);
-                storage.create(context, key, "x", expires.toEpochMilli());
-                return true;
-            }
+    /**
+     * Check for a replay by reading the record and then creating it if absent.
+     * 
+     * <p>This is synchronized to compensate for the lack of atomicity in the store.</p>
+     * 
+     * @param context context of the value
+     * @param key storage key derived from the value
+     * @param s the value being checked
+     * @param expires time for disposal of value from cache
+     * 
+     * @return true iff the check value is not found in the cache
+     * 
+     * @throws IOException if an error occurs accessing the store
+     */
+    private synchronized boolean checkWithRead(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String s, @Nonnull final Instant expires)
+                    throws IOException {
+        
+        final StorageRecord<?> entry = storage.read(context, key);
+        if (entry == null) {
+            log.debug("Value '{}' was not a replay, adding to cache with expiration time {}", s, expires);
+            storage.create(context, key, "x", expires.toEpochMilli());
+            return true;
+        }
 
-            final Long existingExp = entry.getExpiration();
-            log.debug("Replay of value '{}' detected in cache, expires at {}", s,
-                    Instant.ofEpochMilli(existingExp != null ? existingExp : 0));
-            return false;
-            
-        } catch (final IOException e) {
-            log.error("Exception reading/writing to storage service, returning {}", strict ? "failure" : "success", e);
-            return !strict;
+        final Long existingExp = entry.getExpiration();
+        log.debug("Replay of value '{}' detected in cache, expires at {}", s,
+                Instant.ofEpochMilli(existingExp != null ? existingExp : 0));
+        return false;
+    }
+
+    /**
+     * Check for a replay by attempting to create the record, relying on the store to reject duplicates.
+     * 
+     * @param context context of the value
+     * @param key storage key derived from the value
+     * @param s the value being checked
+     * @param expires time for disposal of value from cache
+     * 
+     * @return true iff the check value is not found in the cache
+     * 
+     * @throws IOException if an error occurs accessing the store
+     */
+    private boolean checkWithCreate(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String s, @Nonnull final Instant expires) throws IOException {
+        
+        if (storage.create(context, key, "x", expires.toEpochMilli())) {
+            log.debug("Value '{}' was not a replay, added to cache with expiration time {}", s, expires);
+            return true;
         }
+        
+        log.debug("Replay of value '{}' detected in cache", s);
+        return false;
     }
 
-}
\ No newline at end of file
+}
@@ -448,7 +448,7 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
                 if (keyStrategy != null) {
                     try {
                         if (!keyStrategy.getDefaultKeyRecord().name().equals(keyAliasUsed.toString())) {
-                            storageObject.setDirty(true);
+                            storageObject.forceSave();
                         }
                     } catch (final KeyException e) {
                         log.error("{} Exception while accessing default key during stale key detection",
@@ -460,11 +460,11 @@ public class ClientStorageService extends AbstractMapBackedStorageService implem
             } catch (final DataExpiredException e) {
                 log.debug("{} Secured data or key has expired", getLogPrefix());
                 storageObject = storeFactory.load(null, source);
-                storageObject.setDirty(true);
+                storageObject.forceSave();
             } catch (final DataSealerException e) {
                 log.error("{} Exception unwrapping secured data", getLogPrefix(), e);
                 storageObject = storeFactory.load(null, source);
-                storageObject.setDirty(true);
+                storageObject.forceSave();
             }
         } else {
             log.trace("{} Initializing empty storage state into session", getLogPrefix());
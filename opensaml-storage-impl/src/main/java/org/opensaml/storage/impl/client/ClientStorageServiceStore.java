@@ -54,6 +54,18 @@ public interface ClientStorageServiceStore {
      */
     void setDirty(final boolean flag);
 
+    /**
+     * Force the next save to overwrite the client's copy of the data, even if the data appears to be
+     * unchanged, as when the client's copy could not be read or was sealed with an outdated key.
+     * 
+     * <p>The default implementation sets the dirty bit.</p>
+     * 
+     * @since 5.1.0
+     */
+    default void forceSave() {
+        setDirty(true);
+    }
+
     /**
      * Get the map of contexts to manipulate during operations.
      * 
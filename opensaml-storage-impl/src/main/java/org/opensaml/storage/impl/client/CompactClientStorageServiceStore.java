@@ -0,0 +1,349 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl.client;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.storage.MutableStorageRecord;
+import org.opensaml.storage.impl.client.ClientStorageService.ClientStorageSource;
+import org.slf4j.Logger;
+
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.primitive.LoggerFactory;
+import net.shibboleth.shared.security.DataSealerException;
+
+/**
+ * Compact storage for {@link ClientStorageService}.
+ *
+ * <p>Data is written as length-prefixed fields with no per-record names or quoting, and with expirations
+ * encoded in base 36 relative to the earliest one, which is considerably smaller and cheaper to produce and
+ * parse than the JSON or XML forms.</p>
+ *
+ * <p>The serialized form is canonical, so a save that would reproduce exactly the data loaded from, or last
+ * saved to, the client is skipped even if the data was marked dirty, avoiding the cost of resealing it and
+ * of rewriting the client's copy.</p>
+ *
+ * <p>Data in the format of {@link JSONClientStorageServiceStore}, the default, is also accepted, and is
+ * rewritten in the compact format on the next save.</p>
+ *
+ * @since 5.1.0
+ */
+public class CompactClientStorageServiceStore extends AbstractClientStorageServiceStore {
+
+    /** Prefix identifying (and versioning) the format. */
+    @Nonnull @NotEmpty private static final String FORMAT_PREFIX = "~1";
+
+    /** Radix for numeric fields. */
+    private static final int RADIX = Character.MAX_RADIX;
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(CompactClientStorageServiceStore.class);
+
+    /** Serialized form of the data held by the client, if known, with an empty string for none. */
+    @Nullable private String clientData;
+
+    /** {@inheritDoc} */
+    @Override
+    public void load(@Nullable @NotEmpty final String raw, @Nonnull final ClientStorageSource src) {
+        clientData = raw == null ? "" : null;
+        super.load(raw, src);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void forceSave() {
+        clientData = null;
+        setDirty(true);
+    }
+
+    /** {@inheritDoc} */
+    public void doLoad(@Nullable @NotEmpty final String raw) throws IOException {
+        if (raw == null) {
+            throw new IOException("Found invalid data structure while parsing context map");
+        } else if (!raw.startsWith(FORMAT_PREFIX)) {
+            doLoadJSON(raw);
+            return;
+        }
+
+        try {
+            final Parser parser = new Parser(raw, FORMAT_PREFIX.length());
+            final long base = parser.readNumber();
+            while (!parser.isComplete()) {
+                final String context = parser.readField();
+
+                // Create new context if necessary.
+                Map<String,MutableStorageRecord<?>> dataMap = getContextMap().get(context);
+                if (dataMap == null) {
+                    dataMap = new HashMap<>();
+                    getContextMap().put(context, dataMap);
+                }
+
+                for (long count = parser.readNumber(); count > 0; --count) {
+                    final String key = parser.readField();
+                    final Long exp = parser.readExpiration(base);
+                    dataMap.put(key, new MutableStorageRecord<>(parser.readField(), exp));
+                }
+            }
+            clientData = raw;
+            setDirty(false);
+        } catch (final IndexOutOfBoundsException | NumberFormatException | ArithmeticException e) {
+            log.error("Found invalid data structure while parsing context map", e);
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Reconstitute data stored in the JSON format, marking it to be rewritten in the compact format.
+     *
+     * @param raw serialized data to load
+     *
+     * @throws IOException if an error occurs
+     */
+    private void doLoadJSON(@Nonnull @NotEmpty final String raw) throws IOException {
+        final JSONClientStorageServiceStore json = new JSONClientStorageServiceStore();
+        json.doLoad(raw);
+        getContextMap().putAll(json.getContextMap());
+        log.debug("Loaded data in JSON format, will be rewritten in compact format");
+        clientData = null;
+        setDirty(true);
+    }
+
+//Checkstyle: CyclomaticComplexity|MethodLength OFF
+    /** {@inheritDoc} */
+    @Nullable public ClientStorageServiceOperation save(@Nonnull final ClientStorageService storageService)
+            throws IOException {
+
+        if (!isDirty()) {
+            log.trace("{} Storage state has not been modified, save operation skipped", storageService.getLogPrefix());
+            return null;
+        }
+
+        final ClientStorageSource source = getSource();
+        if (source == null) {
+            throw new IOException("Client storage medium not set");
+        }
+
+        // Gather unexpired records in canonical order.
+        final long now = System.currentTimeMillis();
+        final Map<String,Map<String,MutableStorageRecord<?>>> live = new TreeMap<>();
+        long base = Long.MAX_VALUE;
+        long exp = 0L;
+        for (final Map.Entry<String,Map<String,MutableStorageRecord<?>>> context : getContextMap().entrySet()) {
+            final Map<String,MutableStorageRecord<?>> records = new TreeMap<>();
+            for (final Map.Entry<String,MutableStorageRecord<?>> entry : context.getValue().entrySet()) {
+                final Long recexp = entry.getValue().getExpiration();
+                if (recexp == null || recexp > now) {
+                    records.put(entry.getKey(), entry.getValue());
+                    if (recexp != null) {
+                        base = Math.min(base, recexp);
+                        exp = Math.max(exp, recexp);
+                    }
+                }
+            }
+            if (!records.isEmpty()) {
+                live.put(context.getKey(), records);
+            }
+        }
+
+        if (live.isEmpty()) {
+            setDirty(false);
+            if ("".equals(clientData)) {
+                log.trace("{} Data is empty and client holds none, save operation skipped",
+                        storageService.getLogPrefix());
+                return null;
+            }
+            log.trace("{} Data is empty", storageService.getLogPrefix());
+            clientData = "";
+            return new ClientStorageServiceOperation(storageService.ensureId(), storageService.getStorageName(), null,
+                    source);
+        }
+
+        if (base == Long.MAX_VALUE) {
+            base = 0;
+        }
+
+        final StringBuilder sink = new StringBuilder(128).append(FORMAT_PREFIX);
+        writeNumber(sink, base);
+        for (final Map.Entry<String,Map<String,MutableStorageRecord<?>>> context : live.entrySet()) {
+            writeField(sink, context.getKey());
+            writeNumber(sink, context.getValue().size());
+            for (final Map.Entry<String,MutableStorageRecord<?>> entry : context.getValue().entrySet()) {
+                writeField(sink, entry.getKey());
+                final Long recexp = entry.getValue().getExpiration();
+                if (recexp != null) {
+                    writeNumber(sink, recexp - base);
+                } else {
+                    sink.append(Parser.NO_EXPIRATION);
+                }
+                writeField(sink, entry.getValue().getValue());
+            }
+        }
+
+        final String raw = sink.toString();
+        if (raw.equals(clientData)) {
+            log.trace("{} Data matches that held by client, save operation skipped", storageService.getLogPrefix());
+            setDirty(false);
+            return null;
+        }
+
+        log.trace("{} Size of data before encryption is {}", storageService.getLogPrefix(), raw.length());
+        log.trace("{} Data before encryption is {}", storageService.getLogPrefix(), raw);
+        try {
+            final String wrapped = storageService.getDataSealer().wrap(raw,
+                    exp > 0 ? Instant.ofEpochMilli(exp) : Instant.now().plus(Duration.ofDays(1)));
+            log.trace("{} Size of data after encryption is {}", storageService.getLogPrefix(), wrapped.length());
+            clientData = raw;
+            setDirty(false);
+            return new ClientStorageServiceOperation(storageService.getId(), storageService.getStorageName(),
+                    wrapped, source);
+        } catch (final DataSealerException e) {
+            throw new IOException(e);
+        }
+    }
+//Checkstyle: CyclomaticComplexity|MethodLength ON
+
+    /**
+     * Append a non-negative number.
+     *
+     * @param sink output
+     * @param number number to append
+     */
+    private static void writeNumber(@Nonnull final StringBuilder sink, final long number) {
+        sink.append(Long.toString(number, RADIX)).append(Parser.NUMBER_END);
+    }
+
+    /**
+     * Append a length-prefixed string.
+     *
+     * @param sink output
+     * @param field string to append
+     */
+    private static void writeField(@Nonnull final StringBuilder sink, @Nonnull final String field) {
+        sink.append(Integer.toString(field.length(), RADIX)).append(Parser.LENGTH_END).append(field);
+    }
+
+    /** Reads the serialized form. */
+    private static final class Parser {
+
+        /** Terminates a number. */
+        static final char NUMBER_END = ';';
+
+        /** Terminates the length prefix of a field. */
+        static final char LENGTH_END = ':';
+
+        /** Stands in for the expiration of a record that has none. */
+        static final char NO_EXPIRATION = '-';
+
+        /** Data to parse. */
+        @Nonnull private final String data;
+
+        /** Current position. */
+        private int pos;
+
+        /**
+         * Constructor.
+         *
+         * @param input data to parse
+         * @param start position to start at
+         */
+        Parser(@Nonnull final String input, final int start) {
+            data = input;
+            pos = start;
+        }
+
+        /**
+         * Get whether all the data has been consumed.
+         *
+         * @return true iff all the data has been consumed
+         */
+        boolean isComplete() {
+            return pos >= data.length();
+        }
+
+        /**
+         * Read a non-negative number.
+         *
+         * @return the number
+         */
+        long readNumber() {
+            return Long.parseUnsignedLong(readUntil(NUMBER_END), RADIX);
+        }
+
+        /**
+         * Read a record expiration.
+         *
+         * @param base value the expiration is relative to
+         *
+         * @return the expiration, or null
+         */
+        @Nullable Long readExpiration(final long base) {
+            if (data.charAt(pos) == NO_EXPIRATION) {
+                pos++;
+                return null;
+            }
+            return Math.addExact(base, readNumber());
+        }
+
+        /**
+         * Read a length-prefixed string.
+         *
+         * @return the string
+         */
+        @Nonnull String readField() {
+            final int length = Integer.parseUnsignedInt(readUntil(LENGTH_END), RADIX);
+            final String field = data.substring(pos, pos + length);
+            pos += length;
+            return field;
+        }
+
+        /**
+         * Read up to, and consume, a terminating character.
+         *
+         * @param terminator terminating character
+         *
+         * @return the characters before the terminator
+         */
+        @Nonnull private String readUntil(final char terminator) {
+            final int end = data.indexOf(terminator, pos);
+            if (end < 0) {
+                throw new IndexOutOfBoundsException("Missing terminator '" + terminator + "'");
+            }
+            final String token = data.substring(pos, end);
+            pos = end + 1;
+            return token;
+        }
+    }
+
+    /** Factory for compact store. */
+    public static class CompactClientStorageServiceStoreFactory implements Factory {
+
+        /** {@inheritDoc} */
+        @Nonnull public ClientStorageServiceStore load(@Nullable @NotEmpty final String raw,
+                @Nonnull final ClientStorageSource src) {
+            final ClientStorageServiceStore store = new CompactClientStorageServiceStore();
+            store.load(raw, src);
+            return store;
+        }
+    }
+
+}
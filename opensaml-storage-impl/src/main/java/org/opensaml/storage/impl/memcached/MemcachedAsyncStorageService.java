@@ -0,0 +1,526 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl.memcached;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.annotation.constraint.Positive;
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.shared.logic.Constraint;
+import net.shibboleth.shared.primitive.LoggerFactory;
+import net.shibboleth.shared.primitive.StringSupport;
+import net.spy.memcached.CASResponse;
+import net.spy.memcached.CASValue;
+import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.internal.OperationFuture;
+import net.spy.memcached.transcoders.Transcoder;
+
+import org.cryptacular.util.ByteUtil;
+import org.cryptacular.util.CodecUtil;
+import org.opensaml.storage.AsyncStorageService;
+import org.opensaml.storage.StorageCapabilities;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.VersionMismatchException;
+import org.slf4j.Logger;
+
+/**
+ * Non-blocking memcached storage service.
+ * 
+ * <p>This stores records in the same layout as {@link MemcachedStorageService}, including its context namespaces,
+ * so records written through either can be read, updated and deleted through the other. Rather than waiting on
+ * the client's operation futures, it chains completion listeners on them, so no thread is held while an operation
+ * is outstanding.</p>
+ * 
+ * <p>Context key tracking, which {@link #updateContextExpiration(String, Long)} requires, is optional as for
+ * {@link MemcachedStorageService}, and uses the same key lists. Services sharing a cache should agree on whether
+ * it is enabled, since records created by a service without tracking are missed when the context expiration
+ * is updated.</p>
+ * 
+ * <p>Futures that are not completed within the operation timeout complete exceptionally with a
+ * {@link java.util.concurrent.TimeoutException}.</p>
+ * 
+ * @since 5.1.0
+ */
+public class MemcachedAsyncStorageService extends AbstractIdentifiableInitializableComponent
+        implements AsyncStorageService {
+
+    /** Logger instance. */
+    @Nonnull private final Logger logger = LoggerFactory.getLogger(MemcachedAsyncStorageService.class);
+
+    /** Handles conversion of {@link MemcachedStorageRecord} to bytes and vice versa. */
+    @Nonnull private final Transcoder<MemcachedStorageRecord<?>> storageRecordTranscoder;
+
+    /** Handles conversion of strings to bytes and vice versa. */
+    @Nonnull private final Transcoder<String> stringTranscoder;
+
+    /** Invariant storage capabilities. */
+    @Nonnull private MemcachedStorageCapabilities storageCapabilities;
+
+    /** Memcached client instance. */
+    @Nonnull private final MemcachedClient memcacheClient;
+
+    /** Memcached asynchronous operation timeout in seconds. */
+    @Positive private final int operationTimeout;
+
+    /** Flag that controls context key tracking. */
+    private final boolean trackContextKeys;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param client Memcached client object. The client MUST be configured to use the binary memcached protocol,
+     *               i.e. {@link net.spy.memcached.BinaryConnectionFactory}, in order for
+     *               {@link #deleteWithVersion(long, String, String)} to work correctly.
+     * @param timeout Memcached operation timeout in seconds.
+     */
+    public MemcachedAsyncStorageService(@Nonnull final MemcachedClient client, @Positive final int timeout) {
+        this(client, timeout, false);
+    }
+
+    /**
+     * Creates a new instance with optional context key tracking.
+     *
+     * @param client Memcached client object. The client MUST be configured to use the binary memcached protocol,
+     *               i.e. {@link net.spy.memcached.BinaryConnectionFactory}, in order for
+     *               {@link #deleteWithVersion(long, String, String)} to work correctly.
+     * @param timeout Memcached operation timeout in seconds.
+     * @param enableContextKeyTracking True to enable context key tracking, false otherwise. <strong>NOTE</strong>
+     *                                 this flag must be set to <code>true</code> in order for
+     *                                 {@link #updateContextExpiration(String, Long)} to work. If that capability is
+     *                                 not needed, the flag should be set to <code>false</code> for better
+     *                                 performance. The feature is disabled by default.
+     */
+    public MemcachedAsyncStorageService(@Nonnull final MemcachedClient client, @Positive final int timeout,
+            final boolean enableContextKeyTracking) {
+        Constraint.isNotNull(client, "Client cannot be null");
+        Constraint.isGreaterThan(0, timeout, "Operation timeout must be positive");
+        memcacheClient = client;
+        operationTimeout = timeout;
+        trackContextKeys = enableContextKeyTracking;
+        storageCapabilities = new MemcachedStorageCapabilities();
+        storageRecordTranscoder = new StorageRecordTranscoder();
+        stringTranscoder = new StringTranscoder();
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public StorageCapabilities getCapabilities() {
+        return storageCapabilities;
+    }
+
+    /**
+     * Sets the storage capabilities. This method should be used when the default 1M slab size is changed;
+     * the {@link MemcachedStorageCapabilities#getValueSize()} should be set equal to the chosen slab size.
+     *
+     * @param capabilities Memcached storage capabilities.
+     */
+    public void setCapabilities(@Nonnull final MemcachedStorageCapabilities capabilities) {
+        checkSetterPreconditions();
+        storageCapabilities = Constraint.isNotNull(capabilities, "Storage capabilities cannot be null");
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Boolean> create(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration) {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(value), "Value cannot be null or empty");
+        final MemcachedStorageRecord<?> record = new MemcachedStorageRecord<>(value, expiration);
+        final int expiry = record.getExpiry();
+        Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
+        return lookupNamespace(context)
+                .thenCompose(ns -> ns != null ? CompletableFuture.completedFuture(ns) : createNamespace(context))
+                .thenCompose(ns -> {
+                    final String cacheKey = MemcachedStorageService.memcachedKey(ns, key);
+                    logger.debug("Creating new entry at {} for context={}, key={}, exp={}", cacheKey, context, key,
+                            expiry);
+                    return toFuture(memcacheClient.add(cacheKey, expiry, record, storageRecordTranscoder))
+                            .thenCompose(success -> {
+                                if (!success || !trackContextKeys) {
+                                    return CompletableFuture.completedFuture(success);
+                                }
+                                logger.debug("Tracking key {} for context {}", cacheKey, context);
+                                return updateContextKeyList(MemcachedStorageService.CTX_KEY_LIST_SUFFIX, ns, cacheKey)
+                                        .thenCompose(result -> {
+                                            if (result) {
+                                                return CompletableFuture.completedFuture(true);
+                                            }
+                                            logger.debug("Failed appending {} to list of keys for context {}",
+                                                    cacheKey, context);
+                                            // Try to clean up record we just created
+                                            // Cache entry expiration will clean it up regardless
+                                            return toFuture(memcacheClient.delete(cacheKey)).thenApply(d -> false);
+                                        });
+                            });
+                });
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public <T> CompletableFuture<StorageRecord<T>> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        return lookupNamespace(context).thenCompose(ns -> {
+            if (ns == null) {
+                logger.debug("Namespace for context {} does not exist", context);
+                return CompletableFuture.<StorageRecord<T>>completedFuture(null);
+            }
+            final String cacheKey = MemcachedStorageService.memcachedKey(ns, key);
+            logger.debug("Reading entry at {} for context={}, key={}", cacheKey, context, key);
+            return toFuture(memcacheClient.asyncGets(cacheKey, storageRecordTranscoder)).thenApply(this::<T>toRecord);
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public <T> CompletableFuture<Pair<Long,StorageRecord<T>>> read(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Positive final long version) {
+        Constraint.isGreaterThan(0, version, "Version must be positive");
+        return this.<T>read(context, key).thenApply(record -> {
+            if (record == null) {
+                return new Pair<>();
+            }
+            final Pair<Long,StorageRecord<T>> result = new Pair<>(record.getVersion(), null);
+            if (version != record.getVersion()) {
+                // Only set the record if it's not the same as the version requested
+                result.setSecond(record);
+            }
+            return result;
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Boolean> update(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nonnull @NotEmpty final String value,
+            @Nullable @Positive final Long expiration) {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(value), "Value cannot be null or empty");
+        final MemcachedStorageRecord<?> record = new MemcachedStorageRecord<>(value, expiration);
+        final int expiry = record.getExpiry();
+        Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
+        return lookupNamespace(context).thenCompose(ns -> {
+            if (ns == null) {
+                logger.debug("Namespace for context {} does not exist", context);
+                return CompletableFuture.completedFuture(false);
+            }
+            final String cacheKey = MemcachedStorageService.memcachedKey(ns, key);
+            logger.debug("Updating entry at {} for context={}, key={}, exp={}", cacheKey, context, key, expiry);
+            return toFuture(memcacheClient.replace(cacheKey, expiry, record, storageRecordTranscoder));
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Long> updateWithVersion(@Positive final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key,
+            @Nonnull @NotEmpty final String value, @Nullable @Positive final Long expiration) {
+        Constraint.isGreaterThan(0, version, "Version must be positive");
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(value), "Value cannot be null or empty");
+        final MemcachedStorageRecord<?> record = new MemcachedStorageRecord<>(value, expiration);
+        final int expiry = record.getExpiry();
+        Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
+        return lookupNamespace(context).thenCompose(ns -> {
+            if (ns == null) {
+                logger.debug("Namespace for context {} does not exist", context);
+                return CompletableFuture.<Long>completedFuture(null);
+            }
+            final String cacheKey = MemcachedStorageService.memcachedKey(ns, key);
+            logger.debug("Updating entry at {} for context={}, key={}, version={}, exp={}",
+                    cacheKey, context, key, version, expiry);
+            return toFuture(memcacheClient.asyncCAS(cacheKey, version, expiry, record, storageRecordTranscoder))
+                    .thenCompose(response -> {
+                        if (CASResponse.OK == response) {
+                            return toFuture(memcacheClient.asyncGets(cacheKey, storageRecordTranscoder))
+                                    .thenApply(newRecord ->
+                                            newRecord != null ? Long.valueOf(newRecord.getCas()) : null);
+                        } else if (CASResponse.EXISTS == response) {
+                            throw new CompletionException(new VersionMismatchException());
+                        }
+                        return CompletableFuture.<Long>completedFuture(null);
+                    });
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Boolean> updateExpiration(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key, @Nullable @Positive final Long expiration) {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        final int expiry = MemcachedStorageRecord.expiry(expiration);
+        Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
+        return lookupNamespace(context).thenCompose(ns -> {
+            if (ns == null) {
+                logger.debug("Namespace for context {} does not exist", context);
+                return CompletableFuture.completedFuture(false);
+            }
+            final String cacheKey = MemcachedStorageService.memcachedKey(ns, key);
+            logger.debug("Updating expiration for entry at {} for context={}, key={}", cacheKey, context, key);
+            return toFuture(memcacheClient.touch(cacheKey, expiry));
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Boolean> delete(@Nonnull @NotEmpty final String context,
+            @Nonnull @NotEmpty final String key) {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        return lookupNamespace(context).thenCompose(ns -> {
+            if (ns == null) {
+                logger.debug("Namespace for context {} does not exist", context);
+                return CompletableFuture.completedFuture(false);
+            }
+            final String cacheKey = MemcachedStorageService.memcachedKey(ns, key);
+            logger.debug("Deleting entry at {} for context={}, key={}", cacheKey, context, key);
+            return noteDeletion(toFuture(memcacheClient.delete(cacheKey)), context, ns, cacheKey);
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Boolean> deleteWithVersion(@Positive final long version,
+            @Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String key) {
+        Constraint.isGreaterThan(0, version, "Version must be positive");
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+        return lookupNamespace(context).thenCompose(ns -> {
+            if (ns == null) {
+                logger.debug("Namespace for context {} does not exist", context);
+                return CompletableFuture.completedFuture(false);
+            }
+            final String cacheKey = MemcachedStorageService.memcachedKey(ns, key);
+            logger.debug("Deleting entry at {} for context={}, key={}, version={}", cacheKey, context, key, version);
+            return noteDeletion(toFuture(memcacheClient.delete(cacheKey, version)), context, ns, cacheKey);
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Void> reap(@Nonnull @NotEmpty final String context) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Void> updateContextExpiration(@Nonnull @NotEmpty final String context,
+            @Nullable final Long expiration) {
+        if (!trackContextKeys) {
+            throw new UnsupportedOperationException(
+                    "updateContextExpiration not supported when trackContextKeys == false");
+        }
+        final int expiry = MemcachedStorageRecord.expiry(expiration);
+        Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
+        return lookupNamespace(context).thenCompose(ns -> {
+            if (ns == null) {
+                logger.debug("Cannot update context expiration since context namespace does not exist");
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            final CompletableFuture<CASValue<String>> keys = toFuture(memcacheClient.asyncGets(
+                    ns + MemcachedStorageService.CTX_KEY_LIST_SUFFIX, stringTranscoder));
+            final CompletableFuture<CASValue<String>> deletedKeys = toFuture(memcacheClient.asyncGets(
+                    ns + MemcachedStorageService.CTX_KEY_DELETED_SUFFIX, stringTranscoder));
+            return keys.thenCombine(deletedKeys, (k, d) -> {
+                if (k == null) {
+                    logger.debug("No context keys found to update expiration");
+                    return Set.<String>of();
+                }
+                final Set<String> keySet = new HashSet<>(
+                        Arrays.asList(k.getValue().split(MemcachedStorageService.CTX_KEY_LIST_DELIMITER)));
+                if (d != null) {
+                    keySet.removeAll(
+                            Arrays.asList(d.getValue().split(MemcachedStorageService.CTX_KEY_LIST_DELIMITER)));
+                }
+                return keySet;
+            }).thenCompose(keySet -> {
+                final List<CompletableFuture<Boolean>> results = new ArrayList<>(keySet.size());
+                for (final String key : keySet) {
+                    logger.debug("Updating expiration of key {} to {}", key, expiry);
+                    results.add(toFuture(memcacheClient.touch(key, expiry)));
+                }
+                return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]));
+            });
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public CompletableFuture<Void> deleteContext(@Nonnull @NotEmpty final String context) {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        return lookupNamespace(context).thenCompose(ns -> {
+            if (ns == null) {
+                logger.debug("Namespace for context {} does not exist. Context values effectively deleted.",
+                        context);
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            if (trackContextKeys) {
+                return CompletableFuture.allOf(toFuture(memcacheClient.delete(context)),
+                        toFuture(memcacheClient.delete(ns)),
+                        toFuture(memcacheClient.delete(ns + MemcachedStorageService.CTX_KEY_LIST_SUFFIX)),
+                        toFuture(memcacheClient.delete(ns + MemcachedStorageService.CTX_KEY_DELETED_SUFFIX)));
+            }
+            return CompletableFuture.allOf(toFuture(memcacheClient.delete(context)),
+                    toFuture(memcacheClient.delete(ns)));
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        memcacheClient.shutdown();
+    }
+
+    /**
+     * Looks up the namespace for the given context name in the cache.
+     *
+     * @param context Context name.
+     *
+     * @return future completing with the namespace for the context, or null if none exists
+     */
+    @Nonnull protected CompletableFuture<String> lookupNamespace(@Nonnull @NotEmpty final String context) {
+        return toFuture(memcacheClient.asyncGets(MemcachedStorageService.memcachedKey(context), stringTranscoder))
+                .thenApply(result -> result == null ? null : result.getValue());
+    }
+
+    /**
+     * Creates a cache-wide unique namespace for the given context name, in the manner of
+     * {@link MemcachedStorageService#createNamespace(String)}.
+     *
+     * @param context Context name.
+     *
+     * @return future completing with the namespace for the context
+     */
+    @Nonnull protected CompletableFuture<String> createNamespace(@Nonnull @NotEmpty final String context) {
+        final String namespace = CodecUtil.hex(ByteUtil.toBytes(System.currentTimeMillis()));
+        // Perform successive add operations until success to ensure unique namespace
+        return toFuture(memcacheClient.add(namespace, 0, context, stringTranscoder)).thenCompose(success -> {
+            if (!success) {
+                return createNamespace(context);
+            }
+            // Create the reverse mapping to support looking up namespace by context name
+            return toFuture(memcacheClient.add(MemcachedStorageService.memcachedKey(context), 0, namespace,
+                    stringTranscoder)).thenApply(mapped -> {
+                        if (!mapped) {
+                            throw new IllegalStateException(context + " already exists");
+                        }
+                        return namespace;
+                    });
+        });
+    }
+
+    /**
+     * Note the deletion of a record in the context's list of deleted keys, if it succeeded and context keys are
+     * tracked.
+     * 
+     * @param deletion the pending deletion
+     * @param context context name
+     * @param namespace the context's namespace
+     * @param cacheKey the deleted record's memcached key
+     * 
+     * @return future completing with the result of the deletion once it has been noted
+     */
+    @Nonnull private CompletableFuture<Boolean> noteDeletion(@Nonnull final CompletableFuture<Boolean> deletion,
+            @Nonnull final String context, @Nonnull final String namespace, @Nonnull final String cacheKey) {
+        if (!trackContextKeys) {
+            return deletion;
+        }
+        return deletion.thenCompose(success -> {
+            if (!success) {
+                return CompletableFuture.completedFuture(false);
+            }
+            logger.debug("Noting deletion of key {} for context {}", cacheKey, context);
+            return updateContextKeyList(MemcachedStorageService.CTX_KEY_DELETED_SUFFIX, namespace, cacheKey)
+                    .thenApply(noted -> {
+                        if (!noted) {
+                            logger.debug("Failed appending {} to list of deleted keys for context {}", cacheKey,
+                                    context);
+                        }
+                        return true;
+                    });
+        });
+    }
+
+    /**
+     * Update context key list, in the manner of {@link MemcachedStorageService}.
+     * 
+     * @param suffix the suffix
+     * @param namespace the namespace
+     * @param key the storage key
+     * 
+     * @return future completing with whether the update was a success
+     */
+    @Nonnull private CompletableFuture<Boolean> updateContextKeyList(@Nonnull final String suffix,
+            @Nonnull final String namespace, @Nonnull final String key) {
+        final String listKey = namespace + suffix;
+        final String newItem = key + MemcachedStorageService.CTX_KEY_LIST_DELIMITER;
+        return toFuture(memcacheClient.append(listKey, newItem, stringTranscoder)).thenCompose(success -> {
+            if (success) {
+                return CompletableFuture.completedFuture(true);
+            }
+            // Assume list does not exist and create it
+            return toFuture(memcacheClient.add(listKey, 0, newItem, stringTranscoder));
+        });
+    }
+
+    /**
+     * Convert a versioned memcached record into a storage record.
+     * 
+     * @param <T> type of record
+     * @param value the memcached value, or null
+     * 
+     * @return the storage record, or null
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable private <T> StorageRecord<T> toRecord(@Nullable final CASValue<MemcachedStorageRecord<?>> value) {
+        if (value == null) {
+            return null;
+        }
+        value.getValue().setVersion(value.getCas());
+        return (StorageRecord<T>) value.getValue();
+    }
+
+    /**
+     * Adapt a memcached operation to a {@link CompletableFuture} completed by the operation's listener.
+     * 
+     * @param <T> type of result
+     * @param operation the pending operation
+     * 
+     * @return future completing with the result of the operation
+     */
+    @Nonnull private <T> CompletableFuture<T> toFuture(@Nonnull final OperationFuture<T> operation) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        operation.addListener(f -> {
+            try {
+                // The operation is complete, so this does not block.
+                result.complete(operation.get());
+            } catch (final ExecutionException e) {
+                result.completeExceptionally(new IOException("Memcached operation error", e));
+            } catch (final Exception e) {
+                result.completeExceptionally(new IOException("Memcached operation failed", e));
+            }
+        });
+        return result.orTimeout(operationTimeout, TimeUnit.SECONDS);
+    }
+
+}
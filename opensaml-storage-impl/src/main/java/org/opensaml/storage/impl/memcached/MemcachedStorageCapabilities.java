@@ -75,5 +75,22 @@ public class MemcachedStorageCapabilities implements StorageCapabilities {
     public boolean isClustered() {
         return true;
     }
-    
-}
\ No newline at end of file
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Records are created with the memcached <code>add</code> command, which only succeeds if the key
+     * does not already exist.</p>
+     */
+    @Override
+    public boolean isCreateAtomic() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isBatchNative() {
+        return true;
+    }
+
+}
@@ -16,6 +16,8 @@ package org.opensaml.storage.impl.memcached;
 
 import net.shibboleth.shared.annotation.constraint.NotEmpty;
 import net.shibboleth.shared.annotation.constraint.Positive;
+import net.shibboleth.shared.annotation.constraint.Unmodifiable;
+import net.shibboleth.shared.collection.CollectionSupport;
 import net.shibboleth.shared.collection.Pair;
 import net.shibboleth.shared.component.AbstractIdentifiableInitializableComponent;
 import net.shibboleth.shared.logic.Constraint;
@@ -42,8 +44,12 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -73,6 +79,10 @@ import java.util.concurrent.TimeoutException;
  * slab size, which decreases overall cache memory consumption efficiency. When key tracking is disabled, there is no
  * limit on the number of keys per context other than overall cache capacity.
  * <p>
+ * The batch operations issue all of their memcached operations before waiting on any of them, so that the client
+ * pipelines them over the connection rather than paying a round trip per record. Reads are pipelined <code>gets</code>
+ * operations rather than a bulk get, since the latter does not return the CAS values used as record versions.
+ * <p>
  * <strong>Limitations and requirements</strong>
  * <ol>
  *     <li>The memcached binary protocol is strong recommended for efficiency and full versioning support.
@@ -94,7 +104,7 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
     @Nonnull @NotEmpty protected static final String CTX_KEY_DELETED_SUFFIX = ":contextKeyDeletedList";
 
     /** Delimiter of items in the context key list. */
-    @Nonnull @NotEmpty private static final String CTX_KEY_LIST_DELIMITER = "\n";
+    @Nonnull @NotEmpty static final String CTX_KEY_LIST_DELIMITER = "\n";
 
     /** Maximum length in bytes of memcached keys. */
     private static final int MAX_KEY_LENGTH = 250;
@@ -505,6 +515,131 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
         return deleteWithVersion(version, context, key);
     }
 
+    /** {@inheritDoc} */
+    @Nonnull @Unmodifiable public Set<String> createAll(@Nonnull @NotEmpty final String context,
+            @Nonnull final Map<String,String> values, @Nullable @Positive final Long expiration) throws IOException {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        final int expiry = MemcachedStorageRecord.expiry(expiration);
+        Constraint.isGreaterThan(-1, expiry, "Expiration must be null or positive");
+        if (values.isEmpty()) {
+            return CollectionSupport.emptySet();
+        }
+        String namespace = lookupNamespace(context);
+        if (namespace == null) {
+            namespace = createNamespace(context);
+        }
+        final Map<String,OperationFuture<Boolean>> results = new LinkedHashMap<>(values.size());
+        for (final Map.Entry<String,String> entry : values.entrySet()) {
+            Constraint.isNotNull(StringSupport.trimOrNull(entry.getKey()), "Key cannot be null or empty");
+            Constraint.isNotNull(StringSupport.trimOrNull(entry.getValue()), "Value cannot be null or empty");
+            final String cacheKey = memcachedKey(namespace, entry.getKey());
+            logger.debug("Creating new entry at {} for context={}, key={}, exp={}", cacheKey, context,
+                    entry.getKey(), expiry);
+            results.put(entry.getKey(), memcacheClient.add(cacheKey, expiry,
+                    new MemcachedStorageRecord<>(entry.getValue(), expiration), storageRecordTranscoder));
+        }
+        final Set<String> created = new LinkedHashSet<>(results.size());
+        final List<String> cacheKeys = new ArrayList<>(results.size());
+        for (final Map.Entry<String,OperationFuture<Boolean>> result : results.entrySet()) {
+            if (handleAsyncResult(result.getValue())) {
+                created.add(result.getKey());
+                cacheKeys.add(result.getValue().getKey());
+            }
+        }
+        if (!cacheKeys.isEmpty() && trackContextKeys) {
+            logger.debug("Tracking {} keys for context {}", cacheKeys.size(), context);
+            if (!updateContextKeyList(CTX_KEY_LIST_SUFFIX, namespace,
+                    String.join(CTX_KEY_LIST_DELIMITER, cacheKeys))) {
+                logger.debug("Failed appending {} keys to list of keys for context {}", cacheKeys.size(), context);
+                // Try to clean up records we just created
+                // Cache entry expiration will clean them up regardless
+                final List<OperationFuture<Boolean>> deletes = new ArrayList<>(cacheKeys.size());
+                for (final String cacheKey : cacheKeys) {
+                    deletes.add(memcacheClient.delete(cacheKey));
+                }
+                for (final OperationFuture<Boolean> delete : deletes) {
+                    handleAsyncResult(delete);
+                }
+                return CollectionSupport.emptySet();
+            }
+        }
+        return CollectionSupport.copyToSet(created);
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull @Unmodifiable public <T> Map<String,StorageRecord<T>> readAll(@Nonnull @NotEmpty final String context,
+            @Nonnull final Collection<String> keys) throws IOException {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        if (keys.isEmpty()) {
+            return CollectionSupport.emptyMap();
+        }
+        final String namespace = lookupNamespace(context);
+        if (namespace == null) {
+            logger.debug("Namespace for context {} does not exist", context);
+            return CollectionSupport.emptyMap();
+        }
+        final Map<String,OperationFuture<CASValue<MemcachedStorageRecord<?>>>> results =
+                new LinkedHashMap<>(keys.size());
+        try {
+            for (final String key : keys) {
+                Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+                final String cacheKey = memcachedKey(namespace, key);
+                logger.debug("Reading entry at {} for context={}, key={}", cacheKey, context, key);
+                results.put(key, memcacheClient.asyncGets(cacheKey, storageRecordTranscoder));
+            }
+        } catch (final RuntimeException e) {
+            throw new IOException("Memcached operation failed", e);
+        }
+        final Map<String,StorageRecord<T>> records = new LinkedHashMap<>(results.size());
+        for (final Map.Entry<String,OperationFuture<CASValue<MemcachedStorageRecord<?>>>> result
+                : results.entrySet()) {
+            final CASValue<MemcachedStorageRecord<?>> record = handleAsyncResult(result.getValue());
+            if (record != null) {
+                record.getValue().setVersion(record.getCas());
+                records.put(result.getKey(), (StorageRecord<T>) record.getValue());
+            }
+        }
+        return CollectionSupport.copyToMap(records);
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull @Unmodifiable public Set<String> deleteAll(@Nonnull @NotEmpty final String context,
+            @Nonnull final Collection<String> keys) throws IOException {
+        Constraint.isNotNull(StringSupport.trimOrNull(context), "Context cannot be null or empty");
+        if (keys.isEmpty()) {
+            return CollectionSupport.emptySet();
+        }
+        final String namespace = lookupNamespace(context);
+        if (namespace == null) {
+            logger.debug("Namespace for context {} does not exist", context);
+            return CollectionSupport.emptySet();
+        }
+        final Map<String,OperationFuture<Boolean>> results = new LinkedHashMap<>(keys.size());
+        for (final String key : keys) {
+            Constraint.isNotNull(StringSupport.trimOrNull(key), "Key cannot be null or empty");
+            final String cacheKey = memcachedKey(namespace, key);
+            logger.debug("Deleting entry at {} for context={}, key={}", cacheKey, context, key);
+            results.put(key, memcacheClient.delete(cacheKey));
+        }
+        final Set<String> deleted = new LinkedHashSet<>(results.size());
+        final List<String> cacheKeys = new ArrayList<>(results.size());
+        for (final Map.Entry<String,OperationFuture<Boolean>> result : results.entrySet()) {
+            if (handleAsyncResult(result.getValue())) {
+                deleted.add(result.getKey());
+                cacheKeys.add(result.getValue().getKey());
+            }
+        }
+        if (!cacheKeys.isEmpty() && trackContextKeys) {
+            logger.debug("Noting deletion of {} keys for context {}", cacheKeys.size(), context);
+            if (!updateContextKeyList(CTX_KEY_DELETED_SUFFIX, namespace,
+                    String.join(CTX_KEY_LIST_DELIMITER, cacheKeys))) {
+                logger.debug("Failed appending {} keys to list of deleted keys for context {}", cacheKeys.size(),
+                        context);
+            }
+        }
+        return CollectionSupport.copyToSet(deleted);
+    }
+
     /** {@inheritDoc} */
     public void reap(@Nonnull @NotEmpty final String context) throws IOException {
         return;
@@ -629,7 +764,7 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
      *
      * @return Key comprised of 250 characters or less.
      */
-    private String memcachedKey(@Nonnull final String ... parts) {
+    @Nonnull static String memcachedKey(@Nonnull final String ... parts) {
         final String key;
         if (parts.length > 0) {
             final StringBuilder sb = new StringBuilder();
@@ -675,7 +810,7 @@ public class MemcachedStorageService extends AbstractIdentifiableInitializableCo
      * 
      * @param suffix the suffix
      * @param namespace the namespace
-     * @param key the storage key
+     * @param key the storage key, or several delimited by {@link #CTX_KEY_LIST_DELIMITER}
      * @return whether the update was a success
      * @throws IOException if an error occurs
      */
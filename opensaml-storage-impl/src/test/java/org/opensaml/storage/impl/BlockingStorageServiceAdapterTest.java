@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.storage.EnumeratableStorageService;
+import org.opensaml.storage.testing.StorageServiceTest;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+
+import net.shibboleth.shared.annotation.constraint.NotEmpty;
+import net.shibboleth.shared.component.ComponentInitializationException;
+
+/**
+ * Test of {@link BlockingStorageServiceAdapter} over an {@link AsyncStorageServiceAdapter} over a
+ * {@link MemoryStorageService}.
+ */
+public class BlockingStorageServiceAdapterTest extends StorageServiceTest {
+
+    /** Store at the bottom of the stack. */
+    private MemoryStorageService backingStore;
+
+    /** Asynchronous view of the backing store. */
+    private AsyncStorageServiceAdapter asyncStorage;
+
+    /** Executor for the asynchronous view. */
+    private ExecutorService executor;
+
+    /** {@inheritDoc} */
+    @BeforeClass
+    @Override
+    protected void setUp() throws ComponentInitializationException {
+        backingStore = new MemoryStorageService();
+        backingStore.setId("backing");
+        backingStore.setCleanupInterval(Duration.ofSeconds(1));
+        backingStore.initialize();
+        
+        executor = Executors.newFixedThreadPool(4);
+        asyncStorage = new AsyncStorageServiceAdapter();
+        asyncStorage.setId("async");
+        asyncStorage.setStorage(backingStore);
+        asyncStorage.setExecutor(executor);
+        asyncStorage.initialize();
+        
+        super.setUp();
+    }
+
+    /** {@inheritDoc} */
+    @AfterClass
+    @Override
+    protected void tearDown() {
+        super.tearDown();
+        asyncStorage.destroy();
+        executor.shutdownNow();
+        backingStore.destroy();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull protected EnumeratableStorageService getStorageService() {
+        final EnumeratingAdapter adapter = new EnumeratingAdapter();
+        adapter.setId("test");
+        adapter.setStorage(asyncStorage);
+        return adapter;
+    }
+
+    /**
+     * Adapter that enumerates keys from the backing store, since the asynchronous API cannot.
+     */
+    private class EnumeratingAdapter extends BlockingStorageServiceAdapter implements EnumeratableStorageService {
+
+        /** {@inheritDoc} */
+        @Nonnull public Iterable<String> getContextKeys(@Nonnull @NotEmpty final String context,
+                @Nullable final String prefix) throws IOException {
+            return backingStore.getContextKeys(context, prefix);
+        }
+    }
+
+}
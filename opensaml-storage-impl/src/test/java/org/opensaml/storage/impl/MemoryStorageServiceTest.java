@@ -14,14 +14,24 @@
 
 package org.opensaml.storage.impl;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
 
 import javax.annotation.Nonnull;
 
 import org.opensaml.storage.EnumeratableStorageService;
+import org.opensaml.storage.expiration.BucketedExpirationIndex;
 import org.opensaml.storage.testing.StorageServiceTest;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import net.shibboleth.shared.collection.Pair;
 import net.shibboleth.shared.component.ComponentInitializationException;
 
 /**
@@ -50,5 +60,134 @@ public class MemoryStorageServiceTest extends StorageServiceTest {
         ss.initialize();
         ss.destroy();
     }
-    
-}
\ No newline at end of file
+
+    /**
+     * Test that exclusive access to one context does not block writes to another.
+     * 
+     * @throws Exception if the storage operation fails or times out
+     */
+    @Test
+    public void contextIsolation() throws Exception {
+        final MemoryStorageService ss = new MemoryStorageService();
+        ss.setId("test");
+        ss.initialize();
+        
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final ReadWriteLock lock = ss.getContextLock("contextA");
+            Assert.assertNotSame(lock, ss.getContextLock("contextB"));
+            
+            lock.writeLock().lock();
+            try {
+                final Future<Boolean> result = executor.submit(() -> ss.create("contextB", "key", "value", null));
+                Assert.assertTrue(result.get(5, TimeUnit.SECONDS));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            executor.shutdownNow();
+            ss.destroy();
+        }
+    }
+
+    /**
+     * Test that reaping removes expired records and empty contexts.
+     * 
+     * @throws IOException if a storage operation fails
+     */
+    @Test
+    public void reap() throws IOException {
+        final MemoryStorageService ss = new MemoryStorageService();
+        ss.setId("test");
+        ss.initialize();
+        
+        try {
+            ss.create("context", "expired", "value", System.currentTimeMillis() - 1000);
+            ss.create("context", "valid", "value", null);
+            ss.reap("context");
+            Assert.assertEquals(ss.getContextMap().get("context").size(), 1);
+            
+            ss.delete("context", "valid");
+            ss.reap("context");
+            Assert.assertNull(ss.getContextMap().get("context"));
+        } finally {
+            ss.destroy();
+        }
+    }
+
+    /**
+     * Test that records created in a context are not lost when a concurrent delete empties and prunes it.
+     * 
+     * @throws Exception if a storage operation fails or times out
+     */
+    @Test
+    public void concurrentCreateAndPrune() throws Exception {
+        final MemoryStorageService ss = new MemoryStorageService();
+        ss.setId("test");
+        ss.initialize();
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> pruner = executor.submit(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    ss.create("context", "pruned", "value", null);
+                    ss.delete("context", "pruned");
+                }
+                return null;
+            });
+            final Future<Integer> creator = executor.submit(() -> {
+                int lost = 0;
+                for (int i = 0; i < 10000; i++) {
+                    ss.create("context", "key" + i, "value", null);
+                    if (ss.read("context", "key" + i) == null) {
+                        lost++;
+                    }
+                    ss.delete("context", "key" + i);
+                }
+                return lost;
+            });
+            pruner.get(30, TimeUnit.SECONDS);
+            Assert.assertEquals(creator.get(30, TimeUnit.SECONDS).intValue(), 0);
+            Assert.assertNull(ss.getContextMap().get("context"));
+        } finally {
+            executor.shutdownNow();
+            ss.destroy();
+        }
+    }
+
+    /**
+     * Test that the cleanup task evicts expired records via an expiration index.
+     * 
+     * @throws IOException if a storage operation fails
+     */
+    @Test
+    public void indexedCleanup() throws IOException {
+        final BucketedExpirationIndex<Pair<String,String>> index = new BucketedExpirationIndex<>();
+        final MemoryStorageService ss = new MemoryStorageService();
+        ss.setId("test");
+        ss.setCleanupInterval(Duration.ZERO);
+        ss.setExpirationIndex(index);
+        ss.initialize();
+        
+        try {
+            final long now = System.currentTimeMillis();
+            ss.create("context", "expiring", "value", now - 1000);
+            ss.create("context", "extended", "value", now + 60000);
+            // A stale schedule, as if the record's expiration had since been extended.
+            index.schedule(new Pair<>("context", "extended"), now - 1000);
+            ss.create("other", "expiring", "value", now - 1000);
+            
+            final TimerTask cleanup = ss.getCleanupTask();
+            Assert.assertNotNull(cleanup);
+            cleanup.run();
+            
+            Assert.assertNull(ss.getContextMap().get("other"));
+            Assert.assertNull(ss.getContextMap().get("context").get("expiring"));
+            Assert.assertNotNull(ss.getContextMap().get("context").get("extended"));
+            Assert.assertEquals(index.getBucketCount(), 1);
+        } finally {
+            ss.destroy();
+        }
+    }
+
+}
@@ -0,0 +1,249 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.VersionMismatchException;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.shared.collection.Pair;
+import net.shibboleth.shared.component.ComponentInitializationException;
+
+/**
+ * Tests for {@link NearCacheStorageService}.
+ */
+public class NearCacheStorageServiceTest {
+
+    private MemoryStorageService backing;
+
+    private NearCacheStorageService cache;
+
+    @BeforeMethod
+    protected void setUp() throws ComponentInitializationException {
+        backing = new MemoryStorageService();
+        backing.setId("backing");
+        backing.initialize();
+
+        cache = new NearCacheStorageService();
+        cache.setId("cache");
+        cache.setStorage(backing);
+        cache.setRevalidationInterval(Duration.ofMinutes(5));
+        cache.initialize();
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        cache.destroy();
+        backing.destroy();
+    }
+
+    @Test
+    public void hitsAndMisses() throws IOException {
+        backing.create("context", "key", "value", null);
+
+        StorageRecord<?> record = cache.read("context", "key");
+        Assert.assertNotNull(record);
+        Assert.assertEquals(record.getValue(), "value");
+        Assert.assertEquals(cache.getMissCount(), 1);
+
+        record = cache.read("context", "key");
+        Assert.assertNotNull(record);
+        Assert.assertEquals(record.getValue(), "value");
+        Assert.assertEquals(record.getVersion(), 1);
+        Assert.assertEquals(cache.getHitCount(), 1);
+
+        final Pair<Long,StorageRecord<Object>> versioned = cache.read("context", "key", 1);
+        Assert.assertEquals(versioned.getFirst(), Long.valueOf(1));
+        Assert.assertNull(versioned.getSecond());
+        Assert.assertEquals(cache.getHitCount(), 2);
+
+        Assert.assertNull(cache.read("context", "missing"));
+        Assert.assertEquals(cache.getMissCount(), 2);
+    }
+
+    @Test
+    public void invalidation() throws IOException, VersionMismatchException {
+        cache.create("context", "key", "value", null);
+        Assert.assertEquals(cache.read("context", "key").getValue(), "value");
+
+        Assert.assertEquals(cache.updateWithVersion(1, "context", "key", "value2", null), Long.valueOf(2));
+        StorageRecord<?> record = cache.read("context", "key");
+        Assert.assertEquals(record.getValue(), "value2");
+        Assert.assertEquals(record.getVersion(), 2);
+
+        // A write behind the cache's back leaves a stale copy, until a version mismatch is detected.
+        backing.updateWithVersion(2, "context", "key", "value3", null);
+        Assert.assertEquals(cache.read("context", "key").getValue(), "value2");
+        try {
+            cache.updateWithVersion(2, "context", "key", "value4", null);
+            Assert.fail("Version mismatch should have been reported");
+        } catch (final VersionMismatchException e) {
+
+        }
+        record = cache.read("context", "key");
+        Assert.assertEquals(record.getValue(), "value3");
+        Assert.assertEquals(record.getVersion(), 3);
+
+        cache.delete("context", "key");
+        Assert.assertNull(cache.read("context", "key"));
+
+        cache.create("context", "key", "value", null);
+        cache.read("context", "key");
+        cache.deleteContext("context");
+        Assert.assertNull(cache.read("context", "key"));
+        Assert.assertEquals(cache.getCachedCount(), 0);
+    }
+
+    @Test
+    public void revalidation() throws IOException, ComponentInitializationException {
+        cache.destroy();
+        cache = new NearCacheStorageService();
+        cache.setId("cache");
+        cache.setStorage(backing);
+        cache.setRevalidationInterval(Duration.ZERO);
+        cache.initialize();
+
+        backing.create("context", "key", "value", null);
+        cache.read("context", "key");
+        Assert.assertEquals(cache.read("context", "key").getValue(), "value");
+        Assert.assertEquals(cache.getRevalidationCount(), 1);
+
+        backing.update("context", "key", "value2", null);
+        Assert.assertEquals(cache.read("context", "key").getValue(), "value2");
+        Assert.assertEquals(cache.getMissCount(), 2);
+
+        backing.delete("context", "key");
+        Assert.assertNull(cache.read("context", "key"));
+        Assert.assertEquals(cache.getCachedCount(), 0);
+    }
+
+    @Test
+    public void revalidationOfRecreatedRecord() throws IOException, ComponentInitializationException {
+        cache.destroy();
+        cache = new NearCacheStorageService();
+        cache.setId("cache");
+        cache.setStorage(backing);
+        cache.setRevalidationInterval(Duration.ZERO);
+        cache.initialize();
+
+        backing.create("context", "key", "value", null);
+        Assert.assertEquals(cache.read("context", "key").getValue(), "value");
+
+        // Recreated behind the cache's back, at the same version as the cached copy.
+        backing.delete("context", "key");
+        backing.create("context", "key", "value2", null);
+        StorageRecord<?> record = cache.read("context", "key");
+        Assert.assertEquals(record.getValue(), "value2");
+        Assert.assertEquals(record.getVersion(), 1);
+
+        // Recreated with the same value and version, but a different expiration.
+        final long expiration = System.currentTimeMillis() + 60000;
+        backing.delete("context", "key");
+        backing.create("context", "key", "value2", expiration);
+        record = cache.read("context", "key");
+        Assert.assertEquals(record.getExpiration(), Long.valueOf(expiration));
+        Assert.assertEquals(cache.getRevalidationCount(), 0);
+    }
+
+    @Test
+    public void versionedRevalidation() throws IOException, ComponentInitializationException {
+        cache.destroy();
+        cache = new NearCacheStorageService();
+        cache.setId("cache");
+        cache.setStorage(backing);
+        cache.setRevalidationInterval(Duration.ZERO);
+        cache.setVersionedRevalidation(true);
+        cache.initialize();
+
+        backing.create("context", "key", "value", null);
+        cache.read("context", "key");
+        Assert.assertEquals(cache.read("context", "key").getValue(), "value");
+        Assert.assertEquals(cache.getRevalidationCount(), 1);
+
+        backing.update("context", "key", "value2", null);
+        Assert.assertEquals(cache.read("context", "key").getValue(), "value2");
+
+        backing.delete("context", "key");
+        Assert.assertNull(cache.read("context", "key"));
+        Assert.assertEquals(cache.getCachedCount(), 0);
+    }
+
+    @Test
+    public void expiration() throws IOException, InterruptedException {
+        backing.create("context", "key", "value", System.currentTimeMillis() + 100);
+        Assert.assertNotNull(cache.read("context", "key"));
+
+        Thread.sleep(150);
+        Assert.assertNull(cache.read("context", "key"));
+        Assert.assertEquals(cache.getCachedCount(), 0);
+    }
+
+    @Test
+    public void bounds() throws IOException, ComponentInitializationException {
+        cache.destroy();
+        cache = new NearCacheStorageService();
+        cache.setId("cache");
+        cache.setStorage(backing);
+        cache.setMaxEntries(2);
+        cache.setMaxCacheSize(10);
+        cache.initialize();
+
+        backing.create("context", "a", "aaaa", null);
+        backing.create("context", "b", "bbbb", null);
+        backing.create("context", "c", "cccc", null);
+        backing.create("context", "d", "dddddddddddd", null);
+
+        cache.read("context", "a");
+        cache.read("context", "b");
+        cache.read("context", "a");
+        cache.read("context", "c");
+        Assert.assertEquals(cache.getCachedCount(), 2);
+        Assert.assertEquals(cache.getEvictionCount(), 1);
+
+        // b was least recently used.
+        cache.read("context", "a");
+        cache.read("context", "c");
+        Assert.assertEquals(cache.getHitCount(), 3);
+
+        // Too large to cache at all.
+        cache.read("context", "d");
+        Assert.assertEquals(cache.getCachedCount(), 2);
+    }
+
+    @Test
+    public void batch() throws IOException {
+        backing.create("context", "a", "a", null);
+        backing.create("context", "b", "b", null);
+        cache.read("context", "a");
+
+        final Map<String,StorageRecord<Object>> records = cache.readAll("context", List.of("a", "b", "c"));
+        Assert.assertEquals(records.size(), 2);
+        Assert.assertEquals(cache.getHitCount(), 1);
+        Assert.assertEquals(cache.getMissCount(), 3);
+
+        cache.deleteAll("context", List.of("a", "b"));
+        Assert.assertEquals(cache.getCachedCount(), 0);
+        Assert.assertTrue(cache.readAll("context", List.of("a", "b")).isEmpty());
+    }
+
+}
@@ -14,7 +14,16 @@
 
 package org.opensaml.storage.impl;
 
+import java.io.IOException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.opensaml.storage.impl.client.ClientStorageService;
 import org.testng.annotations.AfterMethod;
@@ -125,4 +134,167 @@ public class StorageServiceReplayCacheTest {
         Assert.assertTrue(replayCache.check(context, messageID, Instant.now().plusSeconds(1)),
                 "Message was not replay, previous cache entry should have expired");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test replay detection using atomic record creation.
+     */
+    @Test
+    public void testConcurrentReplay() {
+        replayCache = new StorageServiceReplayCache();
+        replayCache.setStorage(storageService);
+        replayCache.setConcurrent(true);
+        replayCache.initialize();
+        
+        Assert.assertTrue(replayCache.check(context, messageID, expiration),
+                "Message was not replay, insert into empty cache");
+        Assert.assertTrue(replayCache.check(context, "IDWhichIsNot" + messageID, expiration),
+                "Message was not replay, insert into empty cache");
+        Assert.assertFalse(replayCache.check(context, messageID, expiration),
+                "Message was replay");
+    }
+
+    /**
+     * Test that simultaneous checks of the same value using atomic record creation admit exactly one.
+     * 
+     * @throws Exception ...
+     */
+    @Test
+    public void testConcurrentReplayRace() throws Exception {
+        replayCache = new StorageServiceReplayCache();
+        replayCache.setStorage(storageService);
+        replayCache.setConcurrent(true);
+        replayCache.initialize();
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                tasks.add(() -> replayCache.check(context, messageID, expiration));
+            }
+            int admitted = 0;
+            for (final Future<Boolean> result : executor.invokeAll(tasks)) {
+                if (result.get()) {
+                    admitted++;
+                }
+            }
+            Assert.assertEquals(admitted, 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test non-blocking checks through an asynchronous view of the store.
+     * 
+     * @throws Exception ...
+     */
+    @Test
+    public void testAsyncReplay() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final AsyncStorageServiceAdapter asyncStorage = new AsyncStorageServiceAdapter();
+        try {
+            asyncStorage.setId("async");
+            asyncStorage.setStorage(storageService);
+            asyncStorage.setExecutor(executor);
+            asyncStorage.initialize();
+            
+            replayCache = new StorageServiceReplayCache();
+            replayCache.setStorage(storageService);
+            replayCache.setAsyncStorage(asyncStorage);
+            replayCache.initialize();
+            
+            Assert.assertTrue(replayCache.checkAsync(context, messageID, expiration).get(),
+                    "Message was not replay, insert into empty cache");
+            Assert.assertFalse(replayCache.checkAsync(context, messageID, expiration).get(), "Message was replay");
+            Assert.assertFalse(replayCache.check(context, messageID, expiration), "Message was replay");
+        } finally {
+            asyncStorage.destroy();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test that simultaneous non-blocking checks of the same value admit exactly one.
+     * 
+     * @throws Exception ...
+     */
+    @Test
+    public void testAsyncReplayRace() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final AsyncStorageServiceAdapter asyncStorage = new AsyncStorageServiceAdapter();
+        try {
+            asyncStorage.setId("async");
+            asyncStorage.setStorage(storageService);
+            asyncStorage.setExecutor(executor);
+            asyncStorage.initialize();
+            
+            replayCache = new StorageServiceReplayCache();
+            replayCache.setStorage(storageService);
+            replayCache.setAsyncStorage(asyncStorage);
+            replayCache.initialize();
+            
+            final List<CompletableFuture<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(replayCache.checkAsync(context, messageID, expiration));
+            }
+            int admitted = 0;
+            for (final CompletableFuture<Boolean> result : results) {
+                if (result.get(10, TimeUnit.SECONDS)) {
+                    admitted++;
+                }
+            }
+            Assert.assertEquals(admitted, 1);
+        } finally {
+            asyncStorage.destroy();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test that a failing asynchronous store is treated according to the strict setting.
+     * 
+     * @throws Exception ...
+     */
+    @Test
+    public void testAsyncStorageFailure() throws Exception {
+        final MemoryStorageService failingStore = new MemoryStorageService() {
+            @Override
+            public boolean create(final String ctx, final String key, final String value, final Long exp)
+                    throws IOException {
+                throw new IOException("Simulated failure");
+            }
+        };
+        failingStore.setId("failing");
+        failingStore.initialize();
+        
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final AsyncStorageServiceAdapter asyncStorage = new AsyncStorageServiceAdapter();
+        try {
+            asyncStorage.setId("async");
+            asyncStorage.setStorage(failingStore);
+            asyncStorage.setExecutor(executor);
+            asyncStorage.initialize();
+            
+            replayCache = new StorageServiceReplayCache();
+            replayCache.setStorage(failingStore);
+            replayCache.setAsyncStorage(asyncStorage);
+            replayCache.initialize();
+            Assert.assertTrue(replayCache.checkAsync(context, messageID, expiration).get(10, TimeUnit.SECONDS),
+                    "Failure should be treated as success when not strict");
+            replayCache.destroy();
+            
+            replayCache = new StorageServiceReplayCache();
+            replayCache.setStorage(failingStore);
+            replayCache.setAsyncStorage(asyncStorage);
+            replayCache.setStrict(true);
+            replayCache.initialize();
+            Assert.assertFalse(replayCache.checkAsync(context, messageID, expiration).get(10, TimeUnit.SECONDS),
+                    "Failure should be treated as replay when strict");
+        } finally {
+            asyncStorage.destroy();
+            executor.shutdownNow();
+            failingStore.destroy();
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.storage.impl.client;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.storage.MutableStorageRecord;
+import org.opensaml.storage.impl.client.ClientStorageService.ClientStorageSource;
+import org.opensaml.storage.impl.client.CompactClientStorageServiceStore.CompactClientStorageServiceStoreFactory;
+import org.opensaml.storage.impl.client.JSONClientStorageServiceStore.JSONClientStorageServiceStoreFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import net.shibboleth.shared.component.ComponentInitializationException;
+import net.shibboleth.shared.security.DataSealerException;
+
+/** Unit test for {@link CompactClientStorageServiceStore}. */
+public class CompactClientStorageServiceStoreTest extends AbstractBaseClientStorageServiceTest {
+
+    private ClientStorageService ss;
+
+    private long expiration;
+
+    @BeforeClass public void setUpClass() throws ComponentInitializationException {
+        init();
+        ss = getStorageService();
+        expiration = System.currentTimeMillis() + 24 * 3600 * 1000;
+    }
+
+    @Test public void testRoundTrip() throws IOException, DataSealerException {
+        final ClientStorageServiceStore store = new CompactClientStorageServiceStoreFactory().load(null,
+                ClientStorageSource.COOKIE);
+        populate(store);
+
+        final ClientStorageServiceOperation op = store.save(ss);
+        Assert.assertNotNull(op);
+        Assert.assertFalse(store.isDirty());
+
+        final ClientStorageServiceStore loaded = new CompactClientStorageServiceStoreFactory().load(unwrap(op),
+                ClientStorageSource.COOKIE);
+        Assert.assertFalse(loaded.isDirty());
+        Assert.assertEquals(loaded.getContextMap().size(), 2);
+
+        final MutableStorageRecord<?> record = loaded.getContextMap().get("context1").get("key:with;delimiters");
+        Assert.assertEquals(record.getValue(), "value;with:delimiters");
+        Assert.assertEquals(record.getExpiration(), Long.valueOf(expiration));
+        Assert.assertNull(loaded.getContextMap().get("context2").get("key").getExpiration());
+    }
+
+    @Test public void testUnchanged() throws IOException, DataSealerException {
+        final ClientStorageServiceStore store = new CompactClientStorageServiceStoreFactory().load(null,
+                ClientStorageSource.COOKIE);
+        populate(store);
+        final ClientStorageServiceOperation op = store.save(ss);
+        Assert.assertNotNull(op);
+
+        // Rewriting the same data doesn't require a save.
+        store.getContextMap().get("context2").put("key", new MutableStorageRecord<>("value", null));
+        store.setDirty(true);
+        Assert.assertNull(store.save(ss));
+        Assert.assertFalse(store.isDirty());
+
+        final ClientStorageServiceStore loaded = new CompactClientStorageServiceStoreFactory().load(unwrap(op),
+                ClientStorageSource.COOKIE);
+        loaded.setDirty(true);
+        Assert.assertNull(loaded.save(ss));
+
+        loaded.forceSave();
+        Assert.assertNotNull(loaded.save(ss));
+
+        loaded.getContextMap().get("context2").remove("key");
+        loaded.setDirty(true);
+        Assert.assertNotNull(loaded.save(ss));
+
+        // Nothing to save, nothing held by client.
+        final ClientStorageServiceStore empty = new CompactClientStorageServiceStoreFactory().load(null,
+                ClientStorageSource.COOKIE);
+        empty.setDirty(true);
+        Assert.assertNull(empty.save(ss));
+        empty.forceSave();
+        final ClientStorageServiceOperation clear = empty.save(ss);
+        Assert.assertNotNull(clear);
+        Assert.assertNull(clear.getValue());
+    }
+
+    @Test public void testInvalid() {
+        final ClientStorageServiceStore store = new CompactClientStorageServiceStoreFactory().load("[\"foo\"]",
+                ClientStorageSource.COOKIE);
+        Assert.assertTrue(store.isDirty());
+        Assert.assertTrue(store.getContextMap().isEmpty());
+
+        final ClientStorageServiceStore truncated = new CompactClientStorageServiceStoreFactory().load("~10;3:foo1;",
+                ClientStorageSource.COOKIE);
+        Assert.assertTrue(truncated.isDirty());
+        Assert.assertTrue(truncated.getContextMap().isEmpty());
+    }
+
+    @Test public void testJSONMigration() throws IOException, DataSealerException {
+        final ClientStorageServiceStore json = new JSONClientStorageServiceStoreFactory().load(null,
+                ClientStorageSource.COOKIE);
+        populate(json);
+        final ClientStorageServiceOperation op = json.save(ss);
+        Assert.assertNotNull(op);
+
+        final ClientStorageServiceStore loaded = new CompactClientStorageServiceStoreFactory().load(unwrap(op),
+                ClientStorageSource.COOKIE);
+        Assert.assertTrue(loaded.isDirty());
+        Assert.assertEquals(loaded.getContextMap().size(), 2);
+        final MutableStorageRecord<?> record = loaded.getContextMap().get("context1").get("key:with;delimiters");
+        Assert.assertEquals(record.getValue(), "value;with:delimiters");
+        Assert.assertEquals(record.getExpiration(), Long.valueOf(expiration));
+
+        final ClientStorageServiceOperation rewritten = loaded.save(ss);
+        Assert.assertNotNull(rewritten);
+        Assert.assertTrue(unwrap(rewritten).startsWith("~1"));
+        Assert.assertFalse(loaded.isDirty());
+    }
+
+    @Test public void testSmallerThanJSON() throws IOException, DataSealerException {
+        final ClientStorageServiceStore compact = new CompactClientStorageServiceStoreFactory().load(null,
+                ClientStorageSource.COOKIE);
+        final ClientStorageServiceStore json = new JSONClientStorageServiceStoreFactory().load(null,
+                ClientStorageSource.COOKIE);
+
+        final long exp = System.currentTimeMillis() + 3600 * 1000;
+        for (int i = 0; i < 10; i++) {
+            final Map<String,MutableStorageRecord<?>> records = new HashMap<>();
+            for (int j = 0; j < 5; j++) {
+                records.put("key" + j, new MutableStorageRecord<>("value" + j, exp + i * j));
+            }
+            compact.getContextMap().put("context" + i, new HashMap<>(records));
+            json.getContextMap().put("context" + i, new HashMap<>(records));
+        }
+        compact.setDirty(true);
+        json.setDirty(true);
+
+        Assert.assertTrue(unwrap(compact.save(ss)).length() < unwrap(json.save(ss)).length());
+    }
+
+    /**
+     * Add test data to a store.
+     *
+     * @param store store to populate
+     */
+    private void populate(@Nonnull final ClientStorageServiceStore store) {
+        final Map<String,MutableStorageRecord<?>> context1 = new HashMap<>();
+        context1.put("key:with;delimiters", new MutableStorageRecord<>("value;with:delimiters", expiration));
+        context1.put("key2", new MutableStorageRecord<>("value2", System.currentTimeMillis() + 60000));
+        context1.put("expired", new MutableStorageRecord<>("value3", System.currentTimeMillis() - 1));
+        store.getContextMap().put("context1", context1);
+
+        final Map<String,MutableStorageRecord<?>> context2 = new HashMap<>();
+        context2.put("key", new MutableStorageRecord<>("value", null));
+        store.getContextMap().put("context2", context2);
+
+        store.setDirty(true);
+    }
+
+    /**
+     * Unseal the data from an operation.
+     *
+     * @param op operation
+     *
+     * @return the unsealed data
+     *
+     * @throws DataSealerException if unsealing fails
+     */
+    @Nonnull private String unwrap(@Nonnull final ClientStorageServiceOperation op) throws DataSealerException {
+        final String value = op.getValue();
+        assert value != null;
+        return ss.getDataSealer().unwrap(value, new StringBuffer());
+    }
+
+}
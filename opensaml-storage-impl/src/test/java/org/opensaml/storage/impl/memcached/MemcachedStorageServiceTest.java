@@ -31,6 +31,8 @@ import org.testng.annotations.Test;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -121,6 +123,21 @@ public class MemcachedStorageServiceTest {
     }
 
 
+    @Test
+    public void testBatch() throws IOException {
+        final String context = "batch_context";
+        keyTrackingService.deleteContext(context);
+        assertEquals(keyTrackingService.createAll(context, Map.of("a", "1", "b", "2"), null), Set.of("a", "b"));
+        assertEquals(keyTrackingService.createAll(context, Map.of("b", "3", "c", "4"), null), Set.of("c"));
+        final Map<String, StorageRecord<Object>> records = keyTrackingService.readAll(context, List.of("a", "b", "d"));
+        assertEquals(records.keySet(), Set.of("a", "b"));
+        assertEquals(records.get("b").getValue(), "2");
+        assertTrue(records.get("b").getVersion() > 0);
+        assertEquals(keyTrackingService.deleteAll(context, List.of("a", "d")), Set.of("a"));
+        assertNull(keyTrackingService.read(context, "a"));
+        keyTrackingService.deleteContext(context);
+    }
+
     @Test(dataProvider = "testValues")
     public void testCreateReadUpdateDeleteVersion(
             final String context, final String key, final String value, final String updatedValue)
@@ -20,7 +20,10 @@ import static org.testng.Assert.assertNotEquals;
 import java.io.IOException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 
@@ -288,6 +291,37 @@ public abstract class StorageServiceTest {
         Assert.assertEquals(copy.size(), 2);
     }
     
+    /**
+     * Test batch operations.
+     * 
+     * @throws IOException on error
+     */
+    @Test
+    public void batch() throws IOException {
+        final String context = Long.toString(random.nextLong());
+        
+        final Map<String,String> values = new LinkedHashMap<>();
+        for (int i = 1; i <= 10; i++) {
+            values.put(Integer.toString(i), Integer.toString(i + 1));
+        }
+        
+        Set<String> result = shared.createAll(context, values, System.currentTimeMillis() + 300000);
+        Assert.assertEquals(result, values.keySet());
+        
+        values.put("11", "12");
+        result = shared.createAll(context, values, System.currentTimeMillis() + 300000);
+        Assert.assertEquals(result, Set.of("11"));
+        
+        final Map<String,StorageRecord<Object>> records = shared.readAll(context, List.of("1", "5", "11", "12"));
+        Assert.assertEquals(records.keySet(), Set.of("1", "5", "11"));
+        Assert.assertEquals(records.get("5").getValue(), "6");
+        
+        result = shared.deleteAll(context, List.of("1", "5", "12"));
+        Assert.assertEquals(result, Set.of("1", "5"));
+        Assert.assertNull(shared.read(context, "1"));
+        Assert.assertNotNull(shared.read(context, "2"));
+    }
+
     /**
      * Annotated object class to test with.
      */